@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.github.rinde.rinsim.central.arrays.ArraysSolverValidator;
+
+/**
+ * A randomly generated problem instance in the array format as used by the
+ * array solvers. Locations are placed in a 10x10 km square, vehicles travel at
+ * 30 km/h and all times are in seconds. Location <code>0</code> is the start
+ * and location <code>n-1</code> is the depot, each order consists of a pickup
+ * (odd index) and a delivery (even index).
+ * @author Rinde van Lon
+ */
+final class ArraysInstance {
+  private static final double SIZE = 10d;
+  private static final double SECONDS_PER_KM = 120d;
+  private static final int SERVICE_TIME = 300;
+  private static final int HORIZON = 4 * 60 * 60;
+  private static final int PICKUP_WINDOW = 30 * 60;
+  private static final int DELIVERY_WINDOW = 60 * 60;
+
+  final int[][] travelTime;
+  final int[] releaseDates;
+  final int[] dueDates;
+  final int[][] servicePairs;
+  final int[] serviceTimes;
+  final int[][] vehicleTravelTimes;
+  final int[][] inventories;
+  final int[] remainingServiceTimes;
+  final int[] currentDestinations;
+
+  private ArraysInstance(int orders, int vehicles, long seed) {
+    final RandomGenerator rng = new MersenneTwister(seed);
+    final int n = 2 * orders + 2;
+    final double[][] points = new double[n][];
+    for (int i = 0; i < n; i++) {
+      points[i] = randomPoint(rng);
+    }
+    // start and depot share the same location
+    points[n - 1] = points[0];
+
+    travelTime = new int[n][n];
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        travelTime[i][j] = travelTime(points[i], points[j]);
+      }
+    }
+
+    releaseDates = new int[n];
+    dueDates = new int[n];
+    serviceTimes = new int[n];
+    servicePairs = new int[orders][];
+    for (int i = 0; i < orders; i++) {
+      final int pickup = 2 * i + 1;
+      final int delivery = pickup + 1;
+      servicePairs[i] = new int[] {pickup, delivery };
+
+      releaseDates[pickup] = rng.nextInt(HORIZON);
+      dueDates[pickup] = releaseDates[pickup] + PICKUP_WINDOW
+          + rng.nextInt(PICKUP_WINDOW);
+      releaseDates[delivery] = releaseDates[pickup];
+      dueDates[delivery] = dueDates[pickup] + DELIVERY_WINDOW
+          + rng.nextInt(DELIVERY_WINDOW);
+      serviceTimes[pickup] = SERVICE_TIME;
+      serviceTimes[delivery] = SERVICE_TIME;
+    }
+    dueDates[n - 1] = 2 * HORIZON;
+
+    vehicleTravelTimes = new int[vehicles][n];
+    for (int v = 0; v < vehicles; v++) {
+      // a vehicle is always at its own start location
+      final double[] pos = randomPoint(rng);
+      for (int i = 1; i < n; i++) {
+        vehicleTravelTimes[v][i] = travelTime(pos, points[i]);
+      }
+    }
+    inventories = new int[0][];
+    remainingServiceTimes = new int[vehicles];
+    currentDestinations = new int[vehicles];
+  }
+
+  static ArraysInstance create(int orders, int vehicles, long seed) {
+    final ArraysInstance inst = new ArraysInstance(orders, vehicles, seed);
+    ArraysSolverValidator.validateInputs(inst.travelTime, inst.releaseDates,
+      inst.dueDates, inst.servicePairs, inst.serviceTimes,
+      inst.vehicleTravelTimes, inst.inventories, inst.remainingServiceTimes,
+      inst.currentDestinations, null);
+    return inst;
+  }
+
+  static double[] randomPoint(RandomGenerator rng) {
+    return new double[] {rng.nextDouble() * SIZE, rng.nextDouble() * SIZE };
+  }
+
+  static int travelTime(double[] from, double[] to) {
+    return (int) Math.ceil(Math.hypot(from[0] - to[0], from[1] - to[1])
+        * SECONDS_PER_KM);
+  }
+}
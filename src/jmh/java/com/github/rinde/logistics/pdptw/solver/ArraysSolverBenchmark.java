@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rinde.rinsim.central.arrays.SolutionObject;
+
+/**
+ * Benchmarks of the array solvers ({@link HeuristicSolver} and
+ * {@link MultiVehicleHeuristicSolver}) on randomly generated instances of
+ * varying size. Every invocation uses the same random seed such that each
+ * invocation performs the same search.
+ * @author Rinde van Lon
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ArraysSolverBenchmark {
+  static final long SEED = 123L;
+  static final int LIST_LENGTH = 100;
+  static final int MAX_NON_IMPROVEMENTS = 1000;
+
+  /**
+   * Single vehicle late acceptance.
+   * @param s The instance.
+   * @return The solution.
+   */
+  @Benchmark
+  public SolutionObject heuristicSolver(SingleVehicleInstance s) {
+    final ArraysInstance i = s.instance;
+    return new HeuristicSolver(new MersenneTwister(SEED)).solve(i.travelTime,
+      i.releaseDates, i.dueDates, i.servicePairs, i.serviceTimes, null);
+  }
+
+  /**
+   * Multi vehicle late acceptance.
+   * @param s The instance.
+   * @return The solution.
+   */
+  @Benchmark
+  public SolutionObject[] multiVehicleHeuristicSolver(
+      MultiVehicleInstance s) {
+    final ArraysInstance i = s.instance;
+    return new MultiVehicleHeuristicSolver(new MersenneTwister(SEED),
+        LIST_LENGTH, MAX_NON_IMPROVEMENTS).solve(i.travelTime,
+      i.releaseDates, i.dueDates, i.servicePairs, i.serviceTimes,
+      i.vehicleTravelTimes, i.inventories, i.remainingServiceTimes,
+      i.currentDestinations, null);
+  }
+
+  /**
+   * Multi vehicle late acceptance with one trajectory per available
+   * processor.
+   * @param s The instance.
+   * @return The solution.
+   */
+  @Benchmark
+  public SolutionObject[] multiStartHeuristicSolver(MultiVehicleInstance s) {
+    final ArraysInstance i = s.instance;
+    return new MultiVehicleHeuristicSolver(new MersenneTwister(SEED),
+        MultiVehicleHeuristicSolver.options(LIST_LENGTH,
+          MultiVehicleHeuristicSolver.budget(MAX_NON_IMPROVEMENTS))
+            .withMultiStart(s.pool.getParallelism(), 0)
+            .withExecutor(s.pool))
+        .solve(i.travelTime, i.releaseDates, i.dueDates, i.servicePairs,
+          i.serviceTimes, i.vehicleTravelTimes, i.inventories,
+          i.remainingServiceTimes, i.currentDestinations, null);
+  }
+
+  /**
+   * An instance for a single vehicle.
+   */
+  @State(Scope.Benchmark)
+  public static class SingleVehicleInstance {
+    @Param({"5", "10", "20" })
+    int orders;
+
+    ArraysInstance instance;
+
+    /**
+     * Generates the instance.
+     */
+    @Setup
+    public void setUp() {
+      instance = ArraysInstance.create(orders, 1, SEED);
+    }
+  }
+
+  /**
+   * An instance for several vehicles.
+   */
+  @State(Scope.Benchmark)
+  public static class MultiVehicleInstance {
+    @Param({"10", "25", "50" })
+    int orders;
+
+    @Param({"2", "5", "10" })
+    int vehicles;
+
+    ArraysInstance instance;
+    ForkJoinPool pool;
+
+    /**
+     * Generates the instance.
+     */
+    @Setup
+    public void setUp() {
+      instance = ArraysInstance.create(orders, vehicles, SEED);
+      pool = new ForkJoinPool();
+    }
+
+    /**
+     * Stops the threads of the pool.
+     */
+    @TearDown
+    public void tearDown() {
+      pool.shutdown();
+    }
+  }
+}
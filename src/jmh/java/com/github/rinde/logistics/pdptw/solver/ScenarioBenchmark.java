@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.measure.unit.SI;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rinde.rinsim.central.Central;
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.central.arrays.MultiVehicleSolverAdapter;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.experiment.Experiment;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06Parser;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Benchmarks of the {@link Solver}s on the states that occur during a
+ * simulation of a Gendreau06 scenario. The states are recorded once by
+ * simulating the scenario with the {@link CheapestInsertionHeuristic}, each
+ * invocation solves the next recorded state. As a result the latency
+ * distribution reflects the distribution of problem sizes in the scenario.
+ * @author Rinde van Lon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ScenarioBenchmark {
+  static final String SCENARIO_DIR = "files/scenarios/gendreau06/";
+  static final long SEED = 123L;
+
+  @Param({"req_rapide_1_240_24" })
+  String scenario;
+
+  ObjectiveFunction objectiveFunction;
+  List<GlobalStateObject> states;
+  int cursor;
+  ForkJoinPool pool;
+
+  /**
+   * Records the states by simulating the scenario.
+   */
+  @Setup
+  public void setUp() {
+    objectiveFunction = Gendreau06ObjectiveFunction.instance();
+    final StateRecorder recorder = new StateRecorder(
+        CheapestInsertionHeuristic.supplier(objectiveFunction));
+    Experiment.build(objectiveFunction)
+        .addScenario(Gendreau06Parser.parse(new File(SCENARIO_DIR + scenario)))
+        .addConfiguration(Central.solverConfiguration(recorder))
+        .perform();
+    states = recorder.states;
+    checkState(!states.isEmpty(), "No states recorded for %s.", scenario);
+    pool = new ForkJoinPool();
+  }
+
+  /**
+   * Stops the threads of the pool.
+   */
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  GlobalStateObject nextState() {
+    cursor = (cursor + 1) % states.size();
+    return states.get(cursor);
+  }
+
+  /**
+   * @return The schedule computed by {@link CheapestInsertionHeuristic}.
+   */
+  @Benchmark
+  public ImmutableList<ImmutableList<Parcel>> cheapestInsertion() {
+    return new CheapestInsertionHeuristic(objectiveFunction)
+        .solve(nextState());
+  }
+
+  /**
+   * @return The schedule computed by {@link CheapestInsertionHeuristic} with
+   *         parallel evaluation of the vehicles.
+   */
+  @Benchmark
+  public ImmutableList<ImmutableList<Parcel>> parallelCheapestInsertion() {
+    return new CheapestInsertionHeuristic(objectiveFunction,
+        Optional.<ExecutorService>of(pool), Optional.<Integer>absent())
+        .solve(nextState());
+  }
+
+  /**
+   * @return The schedule computed by {@link CheapestInsertionHeuristic} using
+   *         regret-2 insertion.
+   */
+  @Benchmark
+  public ImmutableList<ImmutableList<Parcel>> regretInsertion() {
+    return new CheapestInsertionHeuristic(objectiveFunction,
+        Optional.<ExecutorService>absent(), Optional.of(2))
+        .solve(nextState());
+  }
+
+  /**
+   * @return The schedule computed by breadth-first {@link Opt2} on top of
+   *         {@link CheapestInsertionHeuristic}.
+   */
+  @Benchmark
+  public ImmutableList<ImmutableList<Parcel>> opt2BreadthFirst() {
+    return new Opt2(SEED, new CheapestInsertionHeuristic(objectiveFunction),
+        objectiveFunction, false).solve(nextState());
+  }
+
+  /**
+   * @return The schedule computed by parallel breadth-first {@link Opt2} on
+   *         top of {@link CheapestInsertionHeuristic}.
+   */
+  @Benchmark
+  public ImmutableList<ImmutableList<Parcel>> opt2ParallelBreadthFirst() {
+    return new Opt2(new CheapestInsertionHeuristic(objectiveFunction),
+        objectiveFunction, pool).solve(nextState());
+  }
+
+  /**
+   * @return The schedule computed by {@link MultiVehicleHeuristicSolver}.
+   */
+  @Benchmark
+  public ImmutableList<ImmutableList<Parcel>> multiVehicleHeuristicSolver() {
+    return new MultiVehicleSolverAdapter(new MultiVehicleHeuristicSolver(
+        new MersenneTwister(SEED), ArraysSolverBenchmark.LIST_LENGTH,
+        ArraysSolverBenchmark.MAX_NON_IMPROVEMENTS), SI.SECOND)
+        .solve(nextState());
+  }
+
+  static class StateRecorder implements StochasticSupplier<Solver> {
+    final StochasticSupplier<Solver> delegate;
+    final List<GlobalStateObject> states;
+
+    StateRecorder(StochasticSupplier<Solver> deleg) {
+      delegate = deleg;
+      states = newArrayList();
+    }
+
+    @Override
+    public Solver get(long seed) {
+      final Solver solver = delegate.get(seed);
+      return new Solver() {
+        @Override
+        public ImmutableList<ImmutableList<Parcel>> solve(
+            GlobalStateObject state) {
+          states.add(state);
+          return solver.solve(state);
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomAdaptor;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Microbenchmarks for {@link Swaps} and {@link Insertions}. Routes consist of
+ * synthetic pickup and delivery stops, each item occurs exactly twice in a
+ * route (just like a parcel does).
+ * @author Rinde van Lon
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LocalSearchBenchmark {
+  static final long SEED = 123L;
+
+  /**
+   * Breadth-first 2-opt over a randomly constructed schedule.
+   * @param s The schedule to optimize.
+   * @return The optimized schedule.
+   */
+  @Benchmark
+  public ImmutableList<ImmutableList<Integer>> bfsOpt2(ScheduleState s) {
+    return Swaps.bfsOpt2(s.schedule, s.startIndices, s.instance,
+      s.instance);
+  }
+
+  /**
+   * Depth-first 2-opt over a randomly constructed schedule, the random number
+   * generator is reset for every invocation.
+   * @param s The schedule to optimize.
+   * @return The optimized schedule.
+   */
+  @Benchmark
+  public ImmutableList<ImmutableList<Integer>> dfsOpt2(ScheduleState s) {
+    return Swaps.dfsOpt2(s.schedule, s.startIndices, s.instance,
+      s.instance, new MersenneTwister(SEED));
+  }
+
+  /**
+   * Breadth-first 2-opt using {@link IntSwaps}, produces the same schedule as
+   * {@link #bfsOpt2(ScheduleState)}.
+   * @param s The schedule to optimize.
+   * @return The optimized schedule.
+   */
+  @Benchmark
+  public ImmutableList<ImmutableList<Integer>> intBfsOpt2(ScheduleState s) {
+    return IntSwaps.bfsOpt2(s.schedule, s.startIndices, s.instance,
+      s.instance);
+  }
+
+  /**
+   * Depth-first 2-opt using {@link IntSwaps}, produces the same schedule as
+   * {@link #dfsOpt2(ScheduleState)}.
+   * @param s The schedule to optimize.
+   * @return The optimized schedule.
+   */
+  @Benchmark
+  public ImmutableList<ImmutableList<Integer>> intDfsOpt2(ScheduleState s) {
+    return IntSwaps.dfsOpt2(s.schedule, s.startIndices, s.instance,
+      s.instance, new MersenneTwister(SEED));
+  }
+
+  /**
+   * Enumerates all double insertions of one item in a route.
+   * @param s The route to insert in.
+   * @param bh Consumes the insertions.
+   */
+  @Benchmark
+  public void insertionsIterator(RouteState s, Blackhole bh) {
+    final Iterator<ImmutableList<Integer>> it = Insertions.insertionsIterator(
+      s.route, s.item, 0, 2);
+    while (it.hasNext()) {
+      bh.consume(it.next());
+    }
+  }
+
+  /**
+   * A schedule of several vehicles.
+   */
+  @State(Scope.Benchmark)
+  public static class ScheduleState {
+    @Param({"10", "20", "40" })
+    int routeLength;
+
+    @Param({"1", "2", "4" })
+    int vehicles;
+
+    PointInstance instance;
+    ImmutableList<ImmutableList<Integer>> schedule;
+    ImmutableList<Integer> startIndices;
+
+    /**
+     * Creates the schedule.
+     */
+    @Setup
+    public void setUp() {
+      final int items = routeLength / 2;
+      instance = PointInstance.create(items * vehicles, SEED);
+      final RandomGenerator rng = new MersenneTwister(SEED);
+      final ImmutableList.Builder<ImmutableList<Integer>> b =
+        ImmutableList.builder();
+      for (int i = 0; i < vehicles; i++) {
+        b.add(randomRoute(i * items, items, rng));
+      }
+      schedule = b.build();
+      startIndices = ImmutableList.copyOf(Collections.nCopies(vehicles, 0));
+    }
+  }
+
+  /**
+   * A single route and an item to insert.
+   */
+  @State(Scope.Benchmark)
+  public static class RouteState {
+    @Param({"10", "20", "40" })
+    int routeLength;
+
+    ImmutableList<Integer> route;
+    Integer item;
+
+    /**
+     * Creates the route.
+     */
+    @Setup
+    public void setUp() {
+      final int items = routeLength / 2;
+      route = randomRoute(0, items, new MersenneTwister(SEED));
+      item = items;
+    }
+  }
+
+  static ImmutableList<Integer> randomRoute(int firstItem, int items,
+      RandomGenerator rng) {
+    final List<Integer> stops = newArrayList();
+    for (int i = firstItem; i < firstItem + items; i++) {
+      stops.add(i);
+      stops.add(i);
+    }
+    Collections.shuffle(stops, new RandomAdaptor(rng));
+    return ImmutableList.copyOf(stops);
+  }
+
+  /**
+   * Items with a pickup and a delivery location in the unit square. The cost
+   * of a route is its length plus the tardiness of each delivery, where the
+   * due 'time' of an item is expressed as a distance.
+   */
+  static final class PointInstance implements
+      RouteEvaluator<PointInstance, Integer> {
+    final double[][] pickups;
+    final double[][] deliveries;
+    final double[] dueDates;
+
+    PointInstance(double[][] p, double[][] d, double[] due) {
+      pickups = p;
+      deliveries = d;
+      dueDates = due;
+    }
+
+    @Override
+    public double computeCost(PointInstance context, int routeIndex,
+        ImmutableList<Integer> newRoute) {
+      final boolean[] visited = new boolean[dueDates.length];
+      double x = 0;
+      double y = 0;
+      double length = 0;
+      double tardiness = 0;
+      for (final Integer item : newRoute) {
+        final boolean isDelivery = visited[item];
+        visited[item] = true;
+        final double[] loc = isDelivery ? deliveries[item] : pickups[item];
+        length += Math.hypot(loc[0] - x, loc[1] - y);
+        x = loc[0];
+        y = loc[1];
+        if (isDelivery) {
+          tardiness += Math.max(0, length - dueDates[item]);
+        }
+      }
+      return length + tardiness;
+    }
+
+    static PointInstance create(int items, long seed) {
+      final RandomGenerator rng = new MersenneTwister(seed);
+      final double[][] p = new double[items][];
+      final double[][] d = new double[items][];
+      final double[] due = new double[items];
+      for (int i = 0; i < items; i++) {
+        p[i] = new double[] {rng.nextDouble(), rng.nextDouble() };
+        d[i] = new double[] {rng.nextDouble(), rng.nextDouble() };
+        due[i] = rng.nextDouble() * items / 2d;
+      }
+      return new PointInstance(p, d, due);
+    }
+  }
+}
@@ -30,6 +30,7 @@ import com.github.rinde.rinsim.core.model.pdp.VehicleDTO;
 import com.github.rinde.rinsim.core.model.road.RoadModel;
 import com.github.rinde.rinsim.core.model.time.TimeLapse;
 import com.github.rinde.rinsim.event.Event;
+import com.github.rinde.rinsim.event.EventDispatcher;
 import com.github.rinde.rinsim.event.Listener;
 import com.github.rinde.rinsim.fsm.StateMachine.StateMachineEvent;
 import com.github.rinde.rinsim.fsm.StateMachine.StateTransitionEvent;
@@ -44,8 +45,22 @@ import com.google.common.base.Optional;
 public class Truck extends RouteFollowingVehicle implements Listener,
   SimulatorUser {
 
+  /**
+   * The types of events that are dispatched by a {@link Truck}.
+   * @author Rinde van Lon
+   */
+  public enum TruckEventType {
+    /**
+     * Indicates that the route of the truck may have changed, either because
+     * a new route was set or because the first parcel of the route has been
+     * serviced.
+     */
+    ROUTE_CHANGE;
+  }
+
   private final RoutePlanner routePlanner;
   private final Communicator communicator;
+  private final EventDispatcher eventDispatcher;
   private boolean changed;
 
   /**
@@ -59,6 +74,7 @@ public class Truck extends RouteFollowingVehicle implements Listener,
     super(pDto, true);
     routePlanner = rp;
     communicator = c;
+    eventDispatcher = new EventDispatcher(TruckEventType.values());
     communicator.addUpdateListener(this);
     stateMachine.getEventAPI().addListener(this,
       StateMachineEvent.STATE_TRANSITION);
@@ -112,6 +128,21 @@ public class Truck extends RouteFollowingVehicle implements Listener,
     }
   }
 
+  @Override
+  public void setRoute(Iterable<? extends Parcel> r) {
+    super.setRoute(r);
+    eventDispatcher.dispatchEvent(new Event(TruckEventType.ROUTE_CHANGE, this));
+  }
+
+  /**
+   * Add the {@link Listener} to this {@link Truck}. The listener will from now
+   * receive all {@link TruckEventType#ROUTE_CHANGE} events.
+   * @param l The listener to add.
+   */
+  public void addRouteListener(Listener l) {
+    eventDispatcher.addListener(l, TruckEventType.ROUTE_CHANGE);
+  }
+
   @Override
   public void handleEvent(Event e) {
     if (e.getEventType() == CommunicatorEventType.CHANGE) {
@@ -139,6 +170,9 @@ public class Truck extends RouteFollowingVehicle implements Listener,
       } else if (event.trigger == DefaultEvent.DONE) {
         communicator.done();
         routePlanner.next(getCurrentTime().getTime());
+        // the serviced parcel has been removed from the route
+        eventDispatcher.dispatchEvent(
+          new Event(TruckEventType.ROUTE_CHANGE, this));
       }
 
       if ((event.newState == waitState
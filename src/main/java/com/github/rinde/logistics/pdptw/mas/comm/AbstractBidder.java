@@ -79,6 +79,8 @@ public abstract class AbstractBidder implements Bidder {
    */
   protected Optional<Vehicle> vehicle;
 
+  private long version;
+
   /**
    * Initializes bidder.
    */
@@ -113,6 +115,7 @@ public abstract class AbstractBidder implements Bidder {
     checkArgument(claimedParcels.isEmpty(),
       "claimed parcels must be empty, is %s.", claimedParcels);
     claimedParcels.add(p);
+    assignmentChanged();
     LOGGER.info(" > assigned parcels {}", assignedParcels);
     LOGGER.info(" > claimed parcels {}", claimedParcels);
   }
@@ -125,6 +128,7 @@ public abstract class AbstractBidder implements Bidder {
     checkArgument(pdpModel.get().getParcelState(p) == ParcelState.AVAILABLE
       || pdpModel.get().getParcelState(p) == ParcelState.ANNOUNCED);
     claimedParcels.remove(p);
+    assignmentChanged();
   }
 
   @Override
@@ -132,6 +136,7 @@ public abstract class AbstractBidder implements Bidder {
     LOGGER.info("done {}", claimedParcels);
     assignedParcels.removeAll(claimedParcels);
     claimedParcels.clear();
+    assignmentChanged();
   }
 
   @Override
@@ -148,6 +153,7 @@ public abstract class AbstractBidder implements Bidder {
   public void receiveParcel(Parcel p) {
     LOGGER.info("{} receiveParcel {}", this, p);
     assignedParcels.add(p);
+    assignmentChanged();
     eventDispatcher
     .dispatchEvent(new Event(CommunicatorEventType.CHANGE, this));
   }
@@ -157,6 +163,7 @@ public abstract class AbstractBidder implements Bidder {
     LOGGER.info("{} releaseParcel {}", this, p);
     checkArgument(assignedParcels.contains(p));
     assignedParcels.remove(p);
+    assignmentChanged();
     eventDispatcher
     .dispatchEvent(new Event(CommunicatorEventType.CHANGE, this));
   }
@@ -169,6 +176,25 @@ public abstract class AbstractBidder implements Bidder {
     afterInit();
   }
 
+  /**
+   * Increments the version of the assignment, this is done automatically by
+   * all methods of this class that modify {@link #assignedParcels} or
+   * {@link #claimedParcels}. Subclasses that modify these sets directly should
+   * call this method afterwards.
+   */
+  protected final void assignmentChanged() {
+    version++;
+  }
+
+  /**
+   * @return A counter that is incremented each time the assigned or claimed
+   *         parcels of this bidder change, can be used to invalidate data that
+   *         is cached by a bidder.
+   */
+  protected final long getAssignmentVersion() {
+    return version;
+  }
+
   /**
    * This method can optionally be overridden to execute additional code right
    * after {@link #init(RoadModel, PDPModel, Vehicle)} is called.
@@ -15,12 +15,22 @@
  */
 package com.github.rinde.logistics.pdptw.mas.comm;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newIdentityHashMap;
 
 import java.io.Serializable;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.math3.random.RandomGenerator;
 
@@ -29,48 +39,273 @@ import com.github.rinde.rinsim.core.model.ModelBuilder.AbstractModelBuilder;
 import com.github.rinde.rinsim.core.model.pdp.Parcel;
 import com.github.rinde.rinsim.core.model.rand.RandomProvider;
 import com.google.auto.value.AutoValue;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 
 /**
- * A communication model that supports auctions.
+ * A communication model that supports auctions. By default the bids are
+ * collected sequentially. Optionally, the bids of {@link ConcurrentBidder}s
+ * can be computed concurrently (see
+ * {@link Builder#withExecutor(ExecutorService)}) and a deadline can be imposed
+ * on each auction (see {@link Builder#withBidDeadline(long, TimeUnit)}). In all
+ * modes the winner is selected by considering the bids in the order in which
+ * the bidders were registered, ties are broken using the
+ * {@link RandomGenerator} of this model.
+ * <p>
+ * To reduce the number of full bids, bidders can be prescreened (see
+ * {@link Builder#withPrescreening(int)}): all {@link EstimatingBidder}s first
+ * estimate their bid, only the bidders with the lowest estimates compute a
+ * full bid.
  * @author Rinde van Lon
  */
 public class AuctionCommModel extends AbstractCommModel<Bidder> {
-  private static final double TOLERANCE = .0001;
+  static final double TOLERANCE = .0001;
   private final RandomGenerator rng;
+  private final Optional<ExecutorService> executor;
+  private final long bidDeadlineNanos;
+  private final int numCandidates;
+  // bidders that are still computing a bid of an earlier auction
+  private final Map<Bidder, Future<Double>> lateBids;
 
   AuctionCommModel(RandomGenerator r) {
+    this(r, Optional.<ExecutorService>absent(), Long.MAX_VALUE);
+  }
+
+  AuctionCommModel(RandomGenerator r, Optional<ExecutorService> exec,
+    long deadlineNanos) {
+    this(r, exec, deadlineNanos, Integer.MAX_VALUE);
+  }
+
+  AuctionCommModel(RandomGenerator r, Optional<ExecutorService> exec,
+    long deadlineNanos, int candidates) {
     rng = r;
+    executor = exec;
+    bidDeadlineNanos = deadlineNanos;
+    numCandidates = candidates;
+    lateBids = newIdentityHashMap();
   }
 
   @Override
   protected void receiveParcel(Parcel p, long time) {
     checkState(!communicators.isEmpty(), "there are no bidders..");
-    final Iterator<Bidder> it = communicators.iterator();
-    final List<Bidder> bestBidders = newArrayList();
-    bestBidders.add(it.next());
-
     // if there are no other bidders, there is no need to organize an
     // auction at all (mainly used in test cases)
-    if (it.hasNext()) {
-      double bestValue = bestBidders.get(0).getBidFor(p, time);
-      while (it.hasNext()) {
-        final Bidder cur = it.next();
-        final double curValue = cur.getBidFor(p, time);
-        if (curValue < bestValue) {
-          bestValue = curValue;
-          bestBidders.clear();
-          bestBidders.add(cur);
-        } else if (Math.abs(curValue - bestValue) < TOLERANCE) {
-          bestBidders.add(cur);
-        }
+    if (communicators.size() == 1) {
+      communicators.get(0).receiveParcel(p);
+      return;
+    }
+    if (executor.isPresent()) {
+      awaitAvailableBidder();
+    }
+    final List<Boolean> candidates = prescreen(p, time);
+    final List<Optional<Double>> bids = executor.isPresent()
+      ? collectBidsConcurrently(p, time, candidates)
+      : collectBids(p, time, candidates);
+    communicators.get(selectWinner(bids, rng)).receiveParcel(p);
+  }
+
+  /**
+   * Selects the lowest bid. The bids are considered in order, a bid that is
+   * within {@link #TOLERANCE} of the best bid so far is a tie. Ties are broken
+   * using the specified {@link RandomGenerator}, it is only used when there
+   * is a tie.
+   * @param bids The bids, absent bids are ignored. At least one bid must be
+   *          present.
+   * @param rng The random generator for breaking ties.
+   * @return The index of the winning bid.
+   */
+  static int selectWinner(List<Optional<Double>> bids, RandomGenerator rng) {
+    final List<Integer> best = newArrayList();
+    double bestValue = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < bids.size(); i++) {
+      if (!bids.get(i).isPresent()) {
+        continue;
+      }
+      final double curValue = bids.get(i).get();
+      if (best.isEmpty() || curValue < bestValue) {
+        bestValue = curValue;
+        best.clear();
+        best.add(i);
+      } else if (Math.abs(curValue - bestValue) < TOLERANCE) {
+        best.add(i);
+      }
+    }
+    checkArgument(!best.isEmpty(), "There are no bids.");
+    return best.size() > 1 ? best.get(rng.nextInt(best.size())) : best.get(0);
+  }
+
+  /**
+   * Selects the bidders that compute a full bid. Bidders that are still
+   * computing a late bid are never selected and are not asked for an
+   * estimate. Of the other bidders, the bidders that can not estimate their
+   * bid are always selected, of the {@link EstimatingBidder}s only the ones
+   * with the lowest estimates are selected such that at most
+   * <code>numCandidates</code> bidders are selected (unless there are more
+   * bidders that can not estimate). Equal estimates are ordered by
+   * registration order.
+   */
+  List<Boolean> prescreen(Parcel p, long time) {
+    final List<Boolean> candidates = newArrayList();
+    final List<Integer> estimating = newArrayList();
+    final double[] estimates = new double[communicators.size()];
+    int plain = 0;
+    for (int i = 0; i < communicators.size(); i++) {
+      final Bidder b = communicators.get(i);
+      if (lateBids.containsKey(b)) {
+        candidates.add(false);
+      } else if (numCandidates < communicators.size()
+        && b instanceof EstimatingBidder) {
+        estimates[i] = ((EstimatingBidder) b).estimateBidFor(p, time);
+        estimating.add(i);
+        candidates.add(false);
+      } else {
+        plain++;
+        candidates.add(true);
+      }
+    }
+    if (estimating.isEmpty()) {
+      return candidates;
+    }
+    Collections.sort(estimating, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        final int c = Double.compare(estimates[o1], estimates[o2]);
+        return c == 0 ? Integer.compare(o1, o2) : c;
       }
+    });
+    final int selected = Math.min(estimating.size(),
+      Math.max(1, numCandidates - plain));
+    for (final int i : estimating.subList(0, selected)) {
+      candidates.set(i, true);
     }
+    LOGGER.trace("prescreened {} of {} bidders for {}", selected,
+      estimating.size(), p);
+    return candidates;
+  }
+
+  List<Optional<Double>> collectBids(Parcel p, long time,
+    List<Boolean> candidates) {
+    final List<Optional<Double>> bids = newArrayList();
+    for (int i = 0; i < communicators.size(); i++) {
+      bids.add(candidates.get(i)
+        ? Optional.of(communicators.get(i).getBidFor(p, time))
+        : Optional.<Double>absent());
+    }
+    return bids;
+  }
 
-    if (bestBidders.size() > 1) {
-      bestBidders.get(rng.nextInt(bestBidders.size())).receiveParcel(p);
+  /**
+   * Computes the bids using the executor. Only the bids of
+   * {@link ConcurrentBidder}s are computed by the executor, the simulation
+   * state that they need is read in the simulation thread (see
+   * {@link ConcurrentBidder#prepareBidFor(Parcel, long)}). The bids of the
+   * other bidders are computed in the simulation thread while the executor
+   * computes the concurrent bids. A concurrent bid that is not computed before
+   * the deadline is absent from the returned list, its computation continues
+   * in the background but its result is dropped. Such a bidder does not take
+   * part in the auctions that start before the computation is finished, this
+   * ensures that a bidder never computes two bids at the same time (see
+   * {@link #awaitAvailableBidder()}). If none of the bids is computed before
+   * the deadline the auction waits for all bids. Bidders that are not a
+   * candidate do not compute a bid.
+   */
+  List<Optional<Double>> collectBidsConcurrently(final Parcel p,
+    final long time, List<Boolean> candidates) {
+    final long start = System.nanoTime();
+    final List<Optional<Future<Double>>> futures = newArrayList();
+    for (int i = 0; i < communicators.size(); i++) {
+      final Bidder b = communicators.get(i);
+      if (lateBids.containsKey(b)) {
+        LOGGER.info("{} is still computing a late bid", b);
+      }
+      if (candidates.get(i) && !lateBids.containsKey(b)
+        && b instanceof ConcurrentBidder) {
+        futures.add(Optional.of(executor.get().submit(
+          ((ConcurrentBidder) b).prepareBidFor(p, time))));
+      } else {
+        futures.add(Optional.<Future<Double>>absent());
+      }
+    }
+
+    final List<Optional<Double>> bids = newArrayList();
+    boolean received = false;
+    for (int i = 0; i < communicators.size(); i++) {
+      final Bidder b = communicators.get(i);
+      Optional<Double> bid = Optional.absent();
+      if (candidates.get(i) && !(b instanceof ConcurrentBidder)) {
+        bid = Optional.of(b.getBidFor(p, time));
+      }
+      received |= bid.isPresent();
+      bids.add(bid);
+    }
+    for (int i = 0; i < futures.size(); i++) {
+      if (futures.get(i).isPresent()) {
+        final Optional<Double> bid = get(futures.get(i).get(),
+          bidDeadlineNanos - (System.nanoTime() - start));
+        received |= bid.isPresent();
+        bids.set(i, bid);
+      }
+    }
+    if (!received) {
+      LOGGER.warn("No bids for {} before the deadline, waiting for all bids.",
+        p);
+      for (int i = 0; i < futures.size(); i++) {
+        if (futures.get(i).isPresent()) {
+          bids.set(i, Optional.of(waitFor(futures.get(i).get())));
+        }
+      }
     } else {
-      bestBidders.get(0).receiveParcel(p);
+      for (int i = 0; i < futures.size(); i++) {
+        if (futures.get(i).isPresent() && !bids.get(i).isPresent()) {
+          lateBids.put(communicators.get(i), futures.get(i).get());
+        }
+      }
     }
+    return bids;
+  }
+
+  /**
+   * Removes the late bids that are finished. If all bidders are still
+   * computing a late bid, waits until all late bids are finished.
+   */
+  void awaitAvailableBidder() {
+    removeFinishedLateBids();
+    if (lateBids.size() == communicators.size()) {
+      for (final Future<Double> f : lateBids.values()) {
+        waitFor(f);
+      }
+      lateBids.clear();
+    }
+  }
+
+  void removeFinishedLateBids() {
+    for (final Bidder b : newArrayList(lateBids.keySet())) {
+      if (lateBids.get(b).isDone()) {
+        lateBids.remove(b);
+      }
+    }
+  }
+
+  // the bid or absent if it is not computed within the timeout
+  static Optional<Double> get(Future<Double> f, long timeoutNanos) {
+    try {
+      if (timeoutNanos == Long.MAX_VALUE) {
+        return Optional.of(f.get());
+      }
+      return Optional.of(f.get(Math.max(0L, timeoutNanos),
+        TimeUnit.NANOSECONDS));
+    } catch (final TimeoutException e) {
+      return Optional.absent();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (final ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  static double waitFor(Future<Double> f) {
+    return get(f, Long.MAX_VALUE).get();
   }
 
   /**
@@ -94,15 +329,101 @@ public class AuctionCommModel extends AbstractCommModel<Bidder> {
       setDependencies(RandomProvider.class);
     }
 
+    /**
+     * @return The executor that computes the bids, if absent the bids are
+     *         computed sequentially in the simulation thread.
+     */
+    public abstract Optional<ExecutorService> getExecutor();
+
+    /**
+     * @return The deadline of an auction in nanoseconds,
+     *         {@link Long#MAX_VALUE} means no deadline.
+     */
+    public abstract long getBidDeadlineNanos();
+
+    /**
+     * @return The maximum number of bidders that compute a full bid,
+     *         {@link Integer#MAX_VALUE} means no prescreening.
+     */
+    public abstract int getNumCandidates();
+
+    /**
+     * Sets the executor that is used to compute the bids of an auction. Only
+     * the bids of {@link ConcurrentBidder}s are computed by the executor, the
+     * simulation state that they need is read in the simulation thread. The
+     * bids of other bidders are computed in the simulation thread. Without a
+     * deadline the result of an auction is the same as with sequential bid
+     * computation. The caller owns the executor: it is never shut down by
+     * the model and should be shut down by the caller when the simulations
+     * that use it are finished. The executor can be shared by several
+     * simulations.
+     * @param executor The executor.
+     * @return A copy of this builder with the specified executor.
+     */
+    public Builder withExecutor(ExecutorService executor) {
+      return create(Optional.of(executor), getBidDeadlineNanos(),
+        getNumCandidates());
+    }
+
+    /**
+     * Sets the deadline of an auction, measured in wall clock time from the
+     * start of the auction. Bids of {@link ConcurrentBidder}s that are
+     * computed after the deadline are dropped, the winner is selected among
+     * the bids that were computed in time. The deadline does not apply to the
+     * bids of other bidders, they are always computed. Note that this makes
+     * the result of an auction dependent on the computation time of the bids.
+     * A deadline requires an executor (see
+     * {@link #withExecutor(ExecutorService)}).
+     * @param deadline The deadline, must be positive.
+     * @param unit The unit of the deadline.
+     * @return A copy of this builder with the specified deadline.
+     */
+    public Builder withBidDeadline(long deadline, TimeUnit unit) {
+      checkArgument(deadline > 0, "The deadline must be positive, is %s.",
+        deadline);
+      return create(getExecutor(), unit.toNanos(deadline),
+        getNumCandidates());
+    }
+
+    /**
+     * Enables prescreening of the bidders. In an auction all
+     * {@link EstimatingBidder}s first compute an estimate of their bid (see
+     * {@link EstimatingBidder#estimateBidFor(Parcel, long)}), only the
+     * bidders with the <code>k</code> lowest estimates compute a full bid.
+     * Bidders that do not implement {@link EstimatingBidder} always compute a
+     * full bid and count towards <code>k</code>. The winner is the best of the
+     * full bids, as such the result may differ from an auction without
+     * prescreening if the estimates do not rank the bidders correctly.
+     * @param k The maximum number of bidders that compute a full bid, must be
+     *          positive.
+     * @return A copy of this builder with the specified number of candidates.
+     */
+    public Builder withPrescreening(int k) {
+      checkArgument(k > 0, "The number of candidates must be positive, is %s.",
+        k);
+      return create(getExecutor(), getBidDeadlineNanos(), k);
+    }
+
     @Override
     public AuctionCommModel build(DependencyProvider dependencyProvider) {
+      checkArgument(getExecutor().isPresent()
+        || getBidDeadlineNanos() == Long.MAX_VALUE,
+        "A bid deadline requires an executor, see withExecutor(..).");
       final RandomGenerator r = dependencyProvider.get(RandomProvider.class)
         .newInstance();
-      return new AuctionCommModel(r);
+      return new AuctionCommModel(r, getExecutor(), getBidDeadlineNanos(),
+        getNumCandidates());
     }
 
     static Builder create() {
-      return new AutoValue_AuctionCommModel_Builder();
+      return create(Optional.<ExecutorService>absent(), Long.MAX_VALUE,
+        Integer.MAX_VALUE);
+    }
+
+    static Builder create(Optional<ExecutorService> executor,
+      long deadlineNanos, int candidates) {
+      return new AutoValue_AuctionCommModel_Builder(executor, deadlineNanos,
+        candidates);
     }
   }
 }
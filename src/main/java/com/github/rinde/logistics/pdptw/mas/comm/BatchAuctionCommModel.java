@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.mas.comm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.github.rinde.rinsim.core.model.DependencyProvider;
+import com.github.rinde.rinsim.core.model.ModelBuilder.AbstractModelBuilder;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.core.model.rand.RandomProvider;
+import com.github.rinde.rinsim.core.model.time.TickListener;
+import com.github.rinde.rinsim.core.model.time.TimeLapse;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A communication model that auctions new parcels in batches. New parcels are
+ * collected until the batch window has passed since the arrival of the first
+ * parcel of the batch, the batch is auctioned at the end of the tick in which
+ * this happens. With a window of <code>0</code> all parcels that arrive in the
+ * same tick form a batch.
+ * <p>
+ * In an auction every bidder computes its bids for all parcels of the batch
+ * at once (see {@link BatchBidder}), each parcel is then assigned to the
+ * bidder with the lowest bid for that parcel. A {@link SolverBidder} computes
+ * the bids of a batch using a single solver run, an auction of a batch
+ * therefore requires <code>b</code> solver runs for <code>b</code> bidders
+ * instead of the <code>b * n</code> runs of auctioning <code>n</code> parcels
+ * individually. The bids are not recomputed after an assignment, a bidder can
+ * therefore win several parcels of a batch based on bids that each assume
+ * only that parcel is added. Bidders that do not implement
+ * {@link BatchBidder} compute their bids one parcel at a time. The winner of
+ * a parcel is selected as in {@link AuctionCommModel}, ties are broken using
+ * the {@link RandomGenerator} of this model.
+ * <p>
+ * Unlike {@link AuctionCommModel}, all bids are computed sequentially in the
+ * simulation thread by all bidders: there is no deadline and no
+ * prescreening. Note that a non-zero batch window delays the assignment of
+ * the parcels of a batch by up to the window.
+ * @author Rinde van Lon
+ */
+public class BatchAuctionCommModel extends AbstractCommModel<Bidder> implements
+  TickListener {
+  private final RandomGenerator rng;
+  private final long batchWindow;
+  private final List<Parcel> batch;
+  private long batchStart;
+
+  BatchAuctionCommModel(RandomGenerator r, long window) {
+    rng = r;
+    batchWindow = window;
+    batch = newArrayList();
+  }
+
+  @Override
+  protected void receiveParcel(Parcel p, long time) {
+    if (batch.isEmpty()) {
+      batchStart = time;
+    }
+    batch.add(p);
+  }
+
+  @Override
+  public void tick(TimeLapse timeLapse) {}
+
+  @Override
+  public void afterTick(TimeLapse timeLapse) {
+    if (!batch.isEmpty() && timeLapse.getEndTime() - batchStart > batchWindow) {
+      final ImmutableList<Parcel> parcels = ImmutableList.copyOf(batch);
+      batch.clear();
+      auction(parcels, timeLapse.getEndTime());
+    }
+  }
+
+  /**
+   * @return The parcels that are waiting to be auctioned.
+   */
+  public ImmutableList<Parcel> getBatch() {
+    return ImmutableList.copyOf(batch);
+  }
+
+  void auction(ImmutableList<Parcel> parcels, long time) {
+    checkState(!communicators.isEmpty(), "there are no bidders..");
+    LOGGER.trace("auction {}", parcels);
+    // if there are no other bidders, there is no need to organize an
+    // auction at all (mainly used in test cases)
+    if (communicators.size() == 1) {
+      for (final Parcel p : parcels) {
+        communicators.get(0).receiveParcel(p);
+      }
+      return;
+    }
+
+    final List<ImmutableList<Double>> bids = newArrayList();
+    for (final Bidder b : communicators) {
+      bids.add(bidsFor(b, parcels, time));
+    }
+    // the parcels are assigned in the order of arrival
+    for (int j = 0; j < parcels.size(); j++) {
+      final List<Optional<Double>> parcelBids = newArrayList();
+      for (final ImmutableList<Double> list : bids) {
+        parcelBids.add(Optional.of(list.get(j)));
+      }
+      communicators.get(AuctionCommModel.selectWinner(parcelBids, rng))
+        .receiveParcel(parcels.get(j));
+    }
+  }
+
+  static ImmutableList<Double> bidsFor(Bidder b, ImmutableList<Parcel> ps,
+    long time) {
+    if (b instanceof BatchBidder) {
+      final ImmutableList<Double> bids = ((BatchBidder) b).getBidsFor(ps, time);
+      checkState(bids.size() == ps.size(),
+        "%s returned %s bids for %s parcels.", b, bids.size(), ps.size());
+      return bids;
+    }
+    final ImmutableList.Builder<Double> bids = ImmutableList.builder();
+    for (final Parcel p : ps) {
+      bids.add(b.getBidFor(p, time));
+    }
+    return bids.build();
+  }
+
+  /**
+   * @return A new {@link Builder} instance.
+   */
+  public static Builder builder() {
+    return Builder.create(0L);
+  }
+
+  /**
+   * Builder for creating {@link BatchAuctionCommModel}.
+   * @author Rinde van Lon
+   */
+  @AutoValue
+  public abstract static class Builder extends
+    AbstractModelBuilder<BatchAuctionCommModel, Bidder> implements
+    Serializable {
+
+    private static final long serialVersionUID = -6204627935386612442L;
+
+    Builder() {
+      setDependencies(RandomProvider.class);
+    }
+
+    /**
+     * @return The batch window in simulation time units.
+     */
+    public abstract long getBatchWindow();
+
+    /**
+     * Sets the batch window, a batch is auctioned at the end of the first tick
+     * that ends more than the window after the arrival of the first parcel of
+     * the batch.
+     * @param window The window in simulation time units, must be
+     *          non-negative.
+     * @return A copy of this builder with the specified window.
+     */
+    public Builder withBatchWindow(long window) {
+      checkArgument(window >= 0, "The batch window must be non-negative, is %s.",
+        window);
+      return create(window);
+    }
+
+    @Override
+    public BatchAuctionCommModel build(DependencyProvider dependencyProvider) {
+      final RandomGenerator r = dependencyProvider.get(RandomProvider.class)
+        .newInstance();
+      return new BatchAuctionCommModel(r, getBatchWindow());
+    }
+
+    static Builder create(long window) {
+      return new AutoValue_BatchAuctionCommModel_Builder(window);
+    }
+  }
+}
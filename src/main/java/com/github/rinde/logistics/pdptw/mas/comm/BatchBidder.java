@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.mas.comm;
+
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A {@link Bidder} that can compute the bids of several parcels at once, this
+ * allows it to evaluate all parcels using a single solver run instead of one
+ * run per parcel. Used by {@link BatchAuctionCommModel}.
+ * @author Rinde van Lon
+ */
+public interface BatchBidder extends Bidder {
+
+  /**
+   * Computes the 'bid value' for each of the specified parcels. The bids are
+   * computed together, the bid of a parcel may therefore take the other
+   * parcels into account. The bid of a single parcel is equal to
+   * {@link #getBidFor(Parcel, long)} of that parcel.
+   * @param parcels The parcels that need to be handled.
+   * @param time The current time.
+   * @return The bid values in the same order as the parcels, the lower the
+   *         better (i.e. cheaper).
+   */
+  ImmutableList<Double> getBidsFor(ImmutableList<Parcel> parcels, long time);
+}
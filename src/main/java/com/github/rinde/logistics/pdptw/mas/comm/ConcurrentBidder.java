@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.mas.comm;
+
+import java.util.concurrent.Callable;
+
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+
+/**
+ * A {@link Bidder} that can compute its bids outside of the simulation thread.
+ * The computation of a bid is split in two parts: the first part reads all
+ * simulation state that is needed and is executed in the simulation thread,
+ * the second part only uses the state that was read by the first part and
+ * may be executed in another thread. Used by {@link AuctionCommModel} for
+ * computing bids concurrently, see
+ * {@link AuctionCommModel.Builder#withExecutor}.
+ * @author Rinde van Lon
+ */
+public interface ConcurrentBidder extends Bidder {
+
+  /**
+   * Reads the simulation state that is needed for computing the bid for the
+   * specified parcel. This method is called in the simulation thread. The
+   * returned computation may be executed in another thread while the
+   * simulation continues, as such it may not access the simulation (e.g. the
+   * models or the vehicle) or modify the state of this bidder. A bidder is
+   * never asked to prepare a bid while an earlier computation is still
+   * running. The result of the computation must be equal to
+   * {@link #getBidFor(Parcel, long)}.
+   * @param p The {@link Parcel} that needs to be handled.
+   * @param time The current time.
+   * @return The computation of the bid value.
+   */
+  Callable<Double> prepareBidFor(Parcel p, long time);
+}
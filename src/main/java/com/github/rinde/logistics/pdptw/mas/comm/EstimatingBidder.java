@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.mas.comm;
+
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+
+/**
+ * A {@link Bidder} that can cheaply estimate its bid value. The estimate is
+ * used by {@link AuctionCommModel} to select the bidders that compute a full
+ * bid, see {@link AuctionCommModel.Builder#withPrescreening(int)}.
+ * @author Rinde van Lon
+ */
+public interface EstimatingBidder extends Bidder {
+
+  /**
+   * Should compute an estimate of {@link #getBidFor(Parcel, long)} that is
+   * considerably cheaper to compute. Estimates are only compared with
+   * estimates of other bidders, they do not need to be in the same unit as the
+   * bids.
+   * @param p The {@link Parcel} that needs to be handled.
+   * @param time The current time.
+   * @return The estimated bid value, the lower the better (i.e. cheaper).
+   */
+  double estimateBidFor(Parcel p, long time);
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.mas.comm;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.github.rinde.rinsim.geom.Point;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A spatial index that answers <code>k</code>-nearest queries using a uniform
+ * grid. The plane is divided in square cells, a query inspects the cells in
+ * rings of increasing distance around the cell of the reference point and
+ * stops as soon as no unvisited cell can contain a closer item. The cell size
+ * is chosen such that a cell contains on average {@link #ITEMS_PER_CELL}
+ * items, it is adapted when the number of items grows or shrinks
+ * considerably.
+ * <p>
+ * Items at equal distance are ordered by the time at which they were added to
+ * the index, a query therefore gives the same result as a stable sort by
+ * distance of all items in order of insertion. This class is not thread-safe.
+ * @param <T> The item type.
+ * @author Rinde van Lon
+ */
+final class GridIndex<T> {
+  /**
+   * The average number of items per cell.
+   */
+  static final int ITEMS_PER_CELL = 2;
+
+  private final double area;
+  private final Map<T, Entry<T>> entries;
+  private final Map<Long, List<Entry<T>>> cells;
+  private double cellSize;
+  private int layoutSize;
+  private long sequence;
+  private int minX;
+  private int maxX;
+  private int minY;
+  private int maxY;
+
+  private GridIndex(double a) {
+    area = a;
+    entries = newLinkedHashMap();
+    cells = newHashMap();
+    layout(1);
+  }
+
+  /**
+   * Adds the item to the index, or moves it if it is already in the index.
+   * @param item The item.
+   * @param position The new position of the item.
+   */
+  void put(T item, Point position) {
+    final Entry<T> old = entries.get(item);
+    if (old != null) {
+      if (old.position.equals(position)) {
+        return;
+      }
+      removeFromCell(old);
+      old.position = position;
+      addToCell(old);
+    } else {
+      final Entry<T> e = new Entry<T>(item, position, sequence++);
+      entries.put(item, e);
+      addToCell(e);
+      if (entries.size() > 2 * layoutSize) {
+        layout(entries.size());
+      }
+    }
+  }
+
+  /**
+   * Removes the item from the index, does nothing if it is not in the index.
+   * @param item The item.
+   */
+  void remove(T item) {
+    final Entry<T> e = entries.remove(item);
+    if (e != null) {
+      removeFromCell(e);
+      if (entries.size() < layoutSize / 2) {
+        layout(entries.size());
+      }
+    }
+  }
+
+  /**
+   * @return The number of items in the index.
+   */
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * Finds the items that are closest to the reference point.
+   * @param reference The reference point.
+   * @param k The maximum number of items to return, must be positive.
+   * @return The <code>min(k, size())</code> items that are closest to the
+   *         reference point, ordered by distance. Items at equal distance are
+   *         ordered by insertion.
+   */
+  ImmutableList<T> nearest(Point reference, int k) {
+    checkArgument(k > 0, "k must be positive, is %s.", k);
+    final int n = Math.min(k, entries.size());
+    final List<Candidate<T>> found = newArrayList();
+    if (n > 0) {
+      final int cx = cell(reference.x);
+      final int cy = cell(reference.y);
+      final int maxRing = Math.max(Math.max(cx - minX, maxX - cx),
+        Math.max(cy - minY, maxY - cy));
+      for (int r = 0; r <= maxRing; r++) {
+        visitRing(cx, cy, r, reference, found);
+        if (found.size() >= n) {
+          Collections.sort(found, CandidateComparator.INSTANCE);
+          // all items in unvisited cells are at least r cells away
+          if (found.get(n - 1).distance < r * cellSize) {
+            break;
+          }
+        }
+      }
+      Collections.sort(found, CandidateComparator.INSTANCE);
+    }
+    final ImmutableList.Builder<T> b = ImmutableList.builder();
+    for (int i = 0; i < n; i++) {
+      b.add(found.get(i).entry.item);
+    }
+    return b.build();
+  }
+
+  private void visitRing(int cx, int cy, int r, Point reference,
+    List<Candidate<T>> found) {
+    for (int x = Math.max(cx - r, minX); x <= Math.min(cx + r, maxX); x++) {
+      visitCell(x, cy - r, reference, found);
+      if (r > 0) {
+        visitCell(x, cy + r, reference, found);
+      }
+    }
+    for (int y = Math.max(cy - r + 1, minY); y <= Math.min(cy + r - 1, maxY);
+      y++) {
+      visitCell(cx - r, y, reference, found);
+      visitCell(cx + r, y, reference, found);
+    }
+  }
+
+  private void visitCell(int x, int y, Point reference,
+    List<Candidate<T>> found) {
+    final List<Entry<T>> cell = cells.get(key(x, y));
+    if (cell != null) {
+      for (final Entry<T> e : cell) {
+        found.add(new Candidate<T>(e, Point.distance(e.position, reference)));
+      }
+    }
+  }
+
+  private void layout(int size) {
+    layoutSize = Math.max(1, size);
+    cellSize = Math.sqrt(area * ITEMS_PER_CELL / layoutSize);
+    if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+      cellSize = 1d;
+    }
+    cells.clear();
+    minX = Integer.MAX_VALUE;
+    maxX = Integer.MIN_VALUE;
+    minY = Integer.MAX_VALUE;
+    maxY = Integer.MIN_VALUE;
+    for (final Entry<T> e : entries.values()) {
+      addToCell(e);
+    }
+  }
+
+  private void addToCell(Entry<T> e) {
+    final int x = cell(e.position.x);
+    final int y = cell(e.position.y);
+    // the bounding box of the occupied cells is never shrunk, it is only
+    // used for bounding the search
+    minX = Math.min(minX, x);
+    maxX = Math.max(maxX, x);
+    minY = Math.min(minY, y);
+    maxY = Math.max(maxY, y);
+    final Long key = key(x, y);
+    List<Entry<T>> cell = cells.get(key);
+    if (cell == null) {
+      cell = newArrayList();
+      cells.put(key, cell);
+    }
+    cell.add(e);
+  }
+
+  private void removeFromCell(Entry<T> e) {
+    final Long key = key(cell(e.position.x), cell(e.position.y));
+    final List<Entry<T>> cell = cells.get(key);
+    cell.remove(e);
+    if (cell.isEmpty()) {
+      cells.remove(key);
+    }
+  }
+
+  private int cell(double coordinate) {
+    return (int) Math.floor(coordinate / cellSize);
+  }
+
+  private static Long key(int x, int y) {
+    return (long) x << Integer.SIZE | y & 0xFFFFFFFFL;
+  }
+
+  /**
+   * Creates a new empty index.
+   * @param min The minimum corner of the area in which most items are
+   *          expected, items outside this area are allowed.
+   * @param max The maximum corner of the area.
+   * @param <T> The item type.
+   * @return A new index.
+   */
+  static <T> GridIndex<T> create(Point min, Point max) {
+    checkArgument(min.x <= max.x && min.y <= max.y,
+      "min %s must be smaller than or equal to max %s.", min, max);
+    return new GridIndex<T>((max.x - min.x) * (max.y - min.y));
+  }
+
+  private static final class Entry<T> {
+    final T item;
+    final long seq;
+    Point position;
+
+    Entry(T i, Point pos, long s) {
+      item = i;
+      position = pos;
+      seq = s;
+    }
+  }
+
+  private static final class Candidate<T> {
+    final Entry<T> entry;
+    final double distance;
+
+    Candidate(Entry<T> e, double d) {
+      entry = e;
+      distance = d;
+    }
+  }
+
+  private enum CandidateComparator implements Comparator<Candidate<?>> {
+    INSTANCE {
+      @Override
+      public int compare(@Nullable Candidate<?> o1,
+        @Nullable Candidate<?> o2) {
+        final Candidate<?> c1 = checkNotNull(o1);
+        final Candidate<?> c2 = checkNotNull(o2);
+        final int cmp = Double.compare(c1.distance, c2.distance);
+        return cmp != 0 ? cmp : Long.compare(c1.entry.seq, c2.entry.seq);
+      }
+    };
+  }
+}
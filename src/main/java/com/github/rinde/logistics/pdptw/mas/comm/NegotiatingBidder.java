@@ -16,20 +16,15 @@
 package com.github.rinde.logistics.pdptw.mas.comm;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Sets.newLinkedHashSet;
 
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 
-import javax.annotation.Nullable;
-
 import com.github.rinde.logistics.pdptw.mas.Truck;
 import com.github.rinde.logistics.pdptw.mas.route.SolverRoutePlanner;
 import com.github.rinde.rinsim.central.SimSolver;
@@ -37,26 +32,24 @@ import com.github.rinde.rinsim.central.SimSolverBuilder;
 import com.github.rinde.rinsim.central.Solver;
 import com.github.rinde.rinsim.central.Solvers.SolveArgs;
 import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.core.model.road.RoadModel;
 import com.github.rinde.rinsim.geom.Point;
 import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
 import com.github.rinde.rinsim.util.StochasticSupplier;
 import com.github.rinde.rinsim.util.StochasticSuppliers.AbstractStochasticSupplier;
-import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
-import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
 
 /**
  * {@link SolverBidder} that uses a negotiation phase for exchanging parcels.
+ * When a {@link TruckIndexModel} is added to the simulation (see
+ * {@link TruckIndexModel#builder()}) it is used for selecting the negotiators,
+ * otherwise an index of all trucks is built for every negotiation.
  * @author Rinde van Lon
  */
 public class NegotiatingBidder extends SolverBidder {
 
-  private static final Comparator<TruckDist> TRUCK_DIST_COMPARATOR = TruckDistComparator.INSTANCE;
-  private static final Function<TruckDist, Truck> TRUCK_DIST_TO_TRUCK = ToTruckFunc.INSTANCE;
-
   /**
    * This heuristic determines the property on which the selection of
    * negotiators is done.
@@ -79,6 +72,7 @@ public class NegotiatingBidder extends SolverBidder {
   private final int negotiators;
   private final SelectNegotiatorsHeuristic heuristic;
   Optional<SimSolverBuilder> simSolvBuilder;
+  Optional<TruckIndexModel> truckIndex;
 
   /**
    * Create a new instance.
@@ -97,44 +91,61 @@ public class NegotiatingBidder extends SolverBidder {
     negotiators = numOfNegotiators;
     heuristic = h;
     simSolvBuilder = Optional.absent();
+    truckIndex = Optional.absent();
   }
 
   private List<Truck> findTrucks() {
-    final Point reference = convertToPos((Truck) vehicle.get());
-    final List<TruckDist> pos = newArrayList(Collections2.transform(roadModel
-      .get().getObjectsOfType(Truck.class), new ToTruckDistFunc(reference)));
-
+    final Truck self = (Truck) vehicle.get();
+    final boolean byPosition =
+      heuristic == SelectNegotiatorsHeuristic.VEHICLE_POSITION;
+    final int size;
+    final List<Truck> trucks;
+    if (truckIndex.isPresent()) {
+      final TruckIndexModel index = truckIndex.get();
+      size = index.size();
+      if (byPosition) {
+        trucks = newArrayList(index.nearestByPosition(
+          roadModel.get().getPosition(self), negotiators));
+      } else {
+        trucks = newArrayList(index.nearestByDestination(
+          index.getDestination(self), negotiators));
+      }
+    } else {
+      final GridIndex<Truck> index = createIndex(byPosition);
+      size = index.size();
+      trucks = newArrayList(index.nearest(convertToPos(self, byPosition),
+        negotiators));
+    }
     checkState(
-      pos.size() >= negotiators,
+      size >= negotiators,
       "There are not enough vehicles in the system to hold a %s-party negotiation, there are only %s vehicle(s).",
-      negotiators, pos.size());
-    Collections.sort(pos, TRUCK_DIST_COMPARATOR);
-    final List<Truck> trucks = newArrayList(Lists.transform(pos,
-      TRUCK_DIST_TO_TRUCK).subList(0, negotiators));
+      negotiators, size);
 
-    if (!trucks.contains(vehicle.get())) {
+    if (!trucks.contains(self)) {
       // remove the last one in the list
       trucks.remove(trucks.size() - 1);
-      trucks.add((Truck) vehicle.get());
+      trucks.add(self);
     }
-    checkArgument(trucks.contains(vehicle.get()));
+    checkArgument(trucks.contains(self));
     return trucks;
   }
 
-  Point convertToPos(Truck t) {
-    Point p;
-    if (t.getRoute().isEmpty()
-      || heuristic == SelectNegotiatorsHeuristic.VEHICLE_POSITION) {
-      p = roadModel.get().getPosition(t);
-    } else {
-      final Parcel firstDestination = t.getRoute().iterator().next();
-      if (pdpModel.get().getParcelState(firstDestination).isPickedUp()) {
-        p = firstDestination.getDto().getDeliveryLocation();
-      } else {
-        p = firstDestination.getDto().getPickupLocation();
-      }
+  // without a TruckIndexModel the index is built for every negotiation
+  private GridIndex<Truck> createIndex(boolean byPosition) {
+    final RoadModel rm = roadModel.get();
+    final GridIndex<Truck> index = GridIndex.create(rm.getBounds().get(0),
+      rm.getBounds().get(1));
+    for (final Truck t : rm.getObjectsOfType(Truck.class)) {
+      index.put(t, convertToPos(t, byPosition));
     }
-    return p;
+    return index;
+  }
+
+  private Point convertToPos(Truck t, boolean byPosition) {
+    if (byPosition) {
+      return roadModel.get().getPosition(t);
+    }
+    return TruckIndexModel.getDestination(t, roadModel.get(), pdpModel.get());
   }
 
   @Override
@@ -181,6 +192,8 @@ public class NegotiatingBidder extends SolverBidder {
       list.addAll(newAssignedParcels);
       ((NegotiatingBidder) trucks.get(i).getCommunicator()).assignedParcels
         .addAll(newAssignedParcels);
+      ((NegotiatingBidder) trucks.get(i).getCommunicator())
+        .assignmentChanged();
 
       final List<Parcel> l = newArrayList(route);
       checkArgument(!newAssignedParcels.retainAll(route), "", l,
@@ -198,6 +211,10 @@ public class NegotiatingBidder extends SolverBidder {
     simSolvBuilder = Optional.of(builder);
   }
 
+  void setTruckIndex(TruckIndexModel index) {
+    truckIndex = Optional.of(index);
+  }
+
   /**
    * Create a supplier that creates new instances.
    * @param objFunc The objective function to use for optimization.
@@ -232,54 +249,4 @@ public class NegotiatingBidder extends SolverBidder {
       }
     };
   }
-
-  enum ToTruckFunc implements Function<TruckDist, Truck> {
-    INSTANCE {
-      @Override
-      @Nullable
-      public Truck apply(@Nullable TruckDist input) {
-        if (input == null) {
-          throw new IllegalArgumentException("Null input is not allowed.");
-        }
-        return input.truck;
-      }
-    }
-  }
-
-  class ToTruckDistFunc implements Function<Truck, TruckDist> {
-    private final Point reference;
-
-    ToTruckDistFunc(Point ref) {
-      reference = ref;
-    }
-
-    @Override
-    @Nullable
-    public TruckDist apply(@Nullable Truck t) {
-      if (t == null) {
-        throw new IllegalArgumentException("Null is not allowed.");
-      }
-      return new TruckDist(t, Point.distance(convertToPos(t), reference));
-    }
-  }
-
-  private enum TruckDistComparator implements Comparator<TruckDist> {
-    INSTANCE {
-      @Override
-      public int compare(@Nullable TruckDist o1, @Nullable TruckDist o2) {
-        return Double.compare(checkNotNull(o1).distance,
-          checkNotNull(o2).distance);
-      }
-    };
-  }
-
-  private static class TruckDist {
-    final Truck truck;
-    final double distance;
-
-    TruckDist(Truck t, double d) {
-      truck = t;
-      distance = d;
-    }
-  }
 }
@@ -15,12 +15,18 @@
  */
 package com.github.rinde.logistics.pdptw.mas.comm;
 
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Sets.newHashSet;
 import static com.google.common.collect.Sets.newLinkedHashSet;
 
+import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import com.github.rinde.logistics.pdptw.mas.Truck;
+import com.github.rinde.opt.localsearch.Insertions;
 import com.github.rinde.rinsim.central.GlobalStateObject;
 import com.github.rinde.rinsim.central.SimSolver;
 import com.github.rinde.rinsim.central.SimSolverBuilder;
@@ -31,21 +37,27 @@ import com.github.rinde.rinsim.central.Solvers;
 import com.github.rinde.rinsim.central.Solvers.SolveArgs;
 import com.github.rinde.rinsim.central.Solvers.StateContext;
 import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.core.model.pdp.Vehicle;
+import com.github.rinde.rinsim.geom.Point;
 import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
 import com.github.rinde.rinsim.util.StochasticSupplier;
 import com.github.rinde.rinsim.util.StochasticSuppliers.AbstractStochasticSupplier;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 /**
  * A {@link Bidder} that uses a {@link Solver} for computing the bid value.
  * @author Rinde van Lon
  */
-public class SolverBidder extends AbstractBidder implements SolverUser {
+public class SolverBidder extends AbstractBidder implements BatchBidder,
+  ConcurrentBidder, EstimatingBidder, SolverUser {
 
   private final ObjectiveFunction objectiveFunction;
   private final Solver solver;
+  private final BidEstimator estimator;
   private Optional<SimSolver> solverHandle;
+  private Optional<Baseline> baseline;
 
   /**
    * Creates a new bidder using the specified solver and objective function.
@@ -55,47 +67,154 @@ public class SolverBidder extends AbstractBidder implements SolverUser {
    *          calculating a bid.
    */
   public SolverBidder(ObjectiveFunction objFunc, Solver s) {
+    this(objFunc, s, BidEstimator.DISTANCE);
+  }
+
+  /**
+   * Creates a new bidder using the specified solver, objective function and
+   * estimator.
+   * @param objFunc The {@link ObjectiveFunction} to use to calculate the bid
+   *          value.
+   * @param s The solver used to compute the (near) optimal schedule when
+   *          calculating a bid.
+   * @param est The estimator used by {@link #estimateBidFor(Parcel, long)}.
+   */
+  public SolverBidder(ObjectiveFunction objFunc, Solver s, BidEstimator est) {
     objectiveFunction = objFunc;
     solver = s;
+    estimator = est;
     solverHandle = Optional.absent();
+    baseline = Optional.absent();
   }
 
   @Override
   public double getBidFor(Parcel p, long time) {
     LOGGER.info("{} getBidFor {}", this, p);
+    return prepare(p, time).call();
+  }
+
+  /**
+   * {@inheritDoc} The state is converted once and the solver is invoked once
+   * for all parcels together. The bid of a parcel is the cost of the
+   * resulting route from which the other parcels of the batch are removed,
+   * minus the cost of the current route (see {@link #baseline(long)}). For a
+   * single parcel this is equal to {@link #getBidFor(Parcel, long)}.
+   */
+  @Override
+  public ImmutableList<Double> getBidsFor(ImmutableList<Parcel> ps,
+    long time) {
+    LOGGER.info("{} getBidsFor {}", this, ps);
+    final Baseline base = baseline(time);
+    final StateContext context = solverHandle.get().convert(
+      solveArgs(base, ps));
+    final ImmutableList<Parcel> route = ImmutableList.copyOf(
+      solverHandle.get().solve(context).get(0));
+    final ImmutableList.Builder<Double> bids = ImmutableList.builder();
+    for (final Parcel p : ps) {
+      final Set<Parcel> others = newHashSet(ps);
+      others.remove(p);
+      final List<Parcel> r = newArrayList(route);
+      r.removeAll(others);
+      bids.add(cost(context.state, ImmutableList.copyOf(r)) - base.cost);
+    }
+    return bids.build();
+  }
+
+  /**
+   * {@inheritDoc} The state is converted in the calling thread, only the
+   * solver is invoked by the returned computation.
+   */
+  @Override
+  public Callable<Double> prepareBidFor(Parcel p, long time) {
+    return prepare(p, time);
+  }
+
+  BidComputation prepare(Parcel p, long time) {
+    final Baseline base = baseline(time);
+    return new BidComputation(this,
+      solverHandle.get().convert(solveArgs(base, ImmutableList.of(p))),
+      base.cost);
+  }
+
+  SolveArgs solveArgs(Baseline base, ImmutableList<Parcel> ps) {
     final Set<Parcel> parcels = newLinkedHashSet(assignedParcels);
-    parcels.add(p);
-    final ImmutableList<Parcel> currentRoute = ImmutableList
-      .copyOf(((Truck) vehicle.get()).getRoute());
+    parcels.addAll(ps);
+    parcels.addAll(base.routeParcels);
+    final SolveArgs args = SolveArgs.create().useParcels(parcels);
+    // if the route is not compatible, don't use routes at all
+    if (base.compatible) {
+      args.useCurrentRoutes(ImmutableList.of(base.route));
+    } else {
+      args.noCurrentRoutes();
+    }
+    return args;
+  }
+
+  /**
+   * Computes the cost of the current route and checks whether the route is
+   * compatible with the solver. Neither depends on the parcel that is
+   * auctioned, the result is reused until the assigned parcels (see
+   * {@link #getAssignmentVersion()}), the route or the time changes. Since
+   * the time is part of the key, the baseline is only reused within a single
+   * tick: repeated auctions in the same tick compute it once, an auction in a
+   * later tick always computes it again. The
+   * cache is confined to the simulation thread: it is only used by
+   * {@link #prepareBidFor(Parcel, long)}, {@link #getBidsFor(ImmutableList,
+   * long)} and {@link #estimateBidFor(Parcel, long)}, the computations that
+   * are returned by {@link #prepareBidFor(Parcel, long)} only use the cost
+   * that was read while preparing.
+   * @param time The current time.
+   * @return The baseline.
+   */
+  Baseline baseline(long time) {
+    final ImmutableList<Parcel> currentRoute = currentRoute();
+    if (baseline.isPresent()
+      && baseline.get().isValid(getAssignmentVersion(), time, currentRoute)) {
+      return baseline.get();
+    }
     LOGGER.trace(" > currentRoute {}", currentRoute);
+    final Set<Parcel> parcels = newLinkedHashSet(assignedParcels);
     final StateContext context = solverHandle.get().convert(
       SolveArgs.create().noCurrentRoutes().useParcels(parcels));
-    final double baseline = objectiveFunction.computeCost(Solvers.computeStats(
-      context.state, ImmutableList.of(currentRoute)));
+    final double cost = cost(context.state, currentRoute);
 
     // make sure that all parcels in the route are always in the available
     // parcel list when needed. This is needed to satisfy the solver.
+    final Set<Parcel> routeParcels = newLinkedHashSet();
     for (final Parcel dp : currentRoute) {
       if (!pdpModel.get().getParcelState(dp).isPickedUp()) {
-        parcels.add(dp);
+        routeParcels.add(dp);
       }
     }
+    parcels.addAll(routeParcels);
 
     // check whether the RoutePlanner produces routes compatible with the solver
-    final SolveArgs args = SolveArgs.create().useParcels(parcels)
-      .useCurrentRoutes(ImmutableList.of(currentRoute));
+    boolean compatible = true;
     try {
-      final GlobalStateObject gso = solverHandle.get().convert(args).state;
+      final GlobalStateObject gso = solverHandle.get().convert(SolveArgs
+        .create().useParcels(parcels)
+        .useCurrentRoutes(ImmutableList.of(currentRoute))).state;
       SolverValidator.checkRoute(gso.getVehicles().get(0), 0);
     } catch (final IllegalArgumentException e) {
-      args.noCurrentRoutes();
+      compatible = false;
     }
-    // if the route is not compatible, don't use routes at all
-    final Queue<Parcel> newRoute = solverHandle.get().solve(args).get(0);
-    final double newCost = objectiveFunction.computeCost(Solvers.computeStats(
-      context.state, ImmutableList.of(ImmutableList.copyOf(newRoute))));
+    baseline = Optional.of(new Baseline(getAssignmentVersion(), time,
+      currentRoute, cost, routeParcels, compatible));
+    return baseline.get();
+  }
 
-    return newCost - baseline;
+  double cost(GlobalStateObject state, ImmutableList<Parcel> route) {
+    return objectiveFunction.computeCost(Solvers.computeStats(state,
+      ImmutableList.of(route)));
+  }
+
+  @Override
+  public double estimateBidFor(Parcel p, long time) {
+    return estimator.estimate(this, p, time);
+  }
+
+  ImmutableList<Parcel> currentRoute() {
+    return ImmutableList.copyOf(((Truck) vehicle.get()).getRoute());
   }
 
   @Override
@@ -112,12 +231,26 @@ public class SolverBidder extends AbstractBidder implements SolverUser {
   public static StochasticSupplier<SolverBidder> supplier(
     final ObjectiveFunction objFunc,
     final StochasticSupplier<? extends Solver> solverSupplier) {
+    return supplier(objFunc, solverSupplier, BidEstimator.DISTANCE);
+  }
+
+  /**
+   * Creates a new {@link SolverBidder} supplier.
+   * @param objFunc The objective function to use.
+   * @param solverSupplier The solver to use.
+   * @param estimator The estimator to use for prescreening.
+   * @return A supplier of {@link SolverBidder} instances.
+   */
+  public static StochasticSupplier<SolverBidder> supplier(
+    final ObjectiveFunction objFunc,
+    final StochasticSupplier<? extends Solver> solverSupplier,
+    final BidEstimator estimator) {
     return new AbstractStochasticSupplier<SolverBidder>() {
       private static final long serialVersionUID = -3290309520168516504L;
 
       @Override
       public SolverBidder get(long seed) {
-        return new SolverBidder(objFunc, solverSupplier.get(seed));
+        return new SolverBidder(objFunc, solverSupplier.get(seed), estimator);
       }
 
       @Override
@@ -126,4 +259,138 @@ public class SolverBidder extends AbstractBidder implements SolverUser {
       }
     };
   }
+
+  /**
+   * Computes a bid using a converted state, it does not access the simulation.
+   */
+  static final class BidComputation implements Callable<Double> {
+    private final SolverBidder bidder;
+    private final StateContext context;
+    private final double baselineCost;
+
+    BidComputation(SolverBidder b, StateContext ctx, double base) {
+      bidder = b;
+      context = ctx;
+      baselineCost = base;
+    }
+
+    @Override
+    public Double call() {
+      final Queue<Parcel> newRoute = bidder.solverHandle.get().solve(context)
+        .get(0);
+      return bidder.cost(context.state, ImmutableList.copyOf(newRoute))
+        - baselineCost;
+    }
+  }
+
+  static final class Baseline {
+    final long version;
+    final long time;
+    final ImmutableList<Parcel> route;
+    final double cost;
+    final ImmutableSet<Parcel> routeParcels;
+    final boolean compatible;
+
+    Baseline(long v, long t, ImmutableList<Parcel> r, double c,
+      Set<Parcel> rps, boolean comp) {
+      version = v;
+      time = t;
+      route = r;
+      cost = c;
+      routeParcels = ImmutableSet.copyOf(rps);
+      compatible = comp;
+    }
+
+    boolean isValid(long v, long t, ImmutableList<Parcel> r) {
+      return version == v && time == t && route.equals(r);
+    }
+  }
+
+  /**
+   * Estimators of the bid value of a {@link SolverBidder}, both insert the
+   * parcel into the current route of the truck without changing the order of
+   * the other stops. They are considerably cheaper than a solver invocation.
+   */
+  public enum BidEstimator {
+    /**
+     * The increase in travel distance when the pickup and delivery location
+     * are inserted at the cheapest positions of the current route. This
+     * estimate is purely geometric, it ignores time windows.
+     */
+    DISTANCE {
+      @Override
+      double estimate(SolverBidder bidder, Parcel p, long time) {
+        final Vehicle v = bidder.vehicle.get();
+        final ImmutableList<Parcel> route = bidder.currentRoute();
+        final Set<Parcel> contents = bidder.pdpModel.get().getContents(v);
+        final List<Point> stops = newArrayList();
+        stops.add(bidder.roadModel.get().getPosition(v));
+        final Set<Parcel> seen = newHashSet();
+        for (final Parcel dp : route) {
+          stops.add(seen.add(dp) && !contents.contains(dp)
+            ? dp.getPickupLocation() : dp.getDeliveryLocation());
+        }
+        stops.add(((Truck) v).getStartPosition());
+
+        final Point pickup = p.getPickupLocation();
+        final Point delivery = p.getDeliveryLocation();
+        final int n = stops.size() - 1;
+        // cheapest delivery insertion at edge j or later
+        final double[] bestDelivery = new double[n + 1];
+        bestDelivery[n] = Double.POSITIVE_INFINITY;
+        for (int j = n - 1; j >= 0; j--) {
+          bestDelivery[j] = Math.min(bestDelivery[j + 1],
+            detour(stops.get(j), delivery, stops.get(j + 1)));
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+          final Point from = stops.get(i);
+          final Point to = stops.get(i + 1);
+          // both in the same edge
+          final double same = Point.distance(from, pickup)
+            + Point.distance(pickup, delivery) + Point.distance(delivery, to)
+            - Point.distance(from, to);
+          best = Math.min(best, same);
+          if (i + 1 < n) {
+            best = Math.min(best,
+              detour(from, pickup, to) + bestDelivery[i + 1]);
+          }
+        }
+        return best;
+      }
+    },
+
+    /**
+     * The increase of the objective value when the parcel is inserted at the
+     * cheapest positions of the current route. This estimate takes time
+     * windows into account but requires a conversion of the state.
+     */
+    CHEAPEST_INSERTION {
+      @Override
+      double estimate(SolverBidder bidder, Parcel p, long time) {
+        final ImmutableList<Parcel> route = bidder.currentRoute();
+        final Set<Parcel> parcels = newLinkedHashSet(bidder.assignedParcels);
+        parcels.add(p);
+        final GlobalStateObject state = bidder.solverHandle.get().convert(
+          SolveArgs.create().noCurrentRoutes().useParcels(parcels)).state;
+        final double baseline = bidder.baseline(time).cost;
+        final int startIndex = state.getVehicles().get(0).getDestination()
+          .isPresent() && !route.isEmpty() ? 1 : 0;
+        double best = Double.POSITIVE_INFINITY;
+        final Iterator<ImmutableList<Parcel>> it = Insertions
+          .insertionsIterator(route, p, startIndex, 2);
+        while (it.hasNext()) {
+          best = Math.min(best, bidder.cost(state, it.next()));
+        }
+        return best - baseline;
+      }
+    };
+
+    abstract double estimate(SolverBidder bidder, Parcel p, long time);
+
+    static double detour(Point from, Point via, Point to) {
+      return Point.distance(from, via) + Point.distance(via, to)
+        - Point.distance(from, to);
+    }
+  }
 }
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.mas.comm;
+
+import static com.google.common.collect.Sets.newLinkedHashSet;
+
+import java.io.Serializable;
+import java.util.Set;
+
+import com.github.rinde.logistics.pdptw.mas.Truck;
+import com.github.rinde.rinsim.core.model.DependencyProvider;
+import com.github.rinde.rinsim.core.model.Model.AbstractModel;
+import com.github.rinde.rinsim.core.model.ModelBuilder.AbstractModelBuilder;
+import com.github.rinde.rinsim.core.model.pdp.PDPModel;
+import com.github.rinde.rinsim.core.model.pdp.PDPModel.PDPModelEventType;
+import com.github.rinde.rinsim.core.model.pdp.PDPModelEvent;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.core.model.road.GenericRoadModel.RoadEventType;
+import com.github.rinde.rinsim.core.model.road.RoadModel;
+import com.github.rinde.rinsim.core.model.road.RoadModelEvent;
+import com.github.rinde.rinsim.event.Event;
+import com.github.rinde.rinsim.event.Listener;
+import com.github.rinde.rinsim.geom.Point;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A model that keeps track of the positions and the first destinations of all
+ * {@link Truck}s, it is used by {@link NegotiatingBidder}s for selecting the
+ * negotiators. The position of a truck is updated when it moves. The first
+ * destination of a truck is updated when it is requested after the route of
+ * the truck has changed or after the truck has started or finished a pickup.
+ * @author Rinde van Lon
+ */
+public final class TruckIndexModel extends AbstractModel<NegotiatingBidder> {
+  private final RoadModel roadModel;
+  private final PDPModel pdpModel;
+  private final GridIndex<Truck> positions;
+  private final GridIndex<Truck> destinations;
+  // trucks of which the first destination in the index may be outdated
+  private final Set<Truck> changed;
+  private final Listener routeListener;
+
+  TruckIndexModel(RoadModel rm, PDPModel pm) {
+    roadModel = rm;
+    pdpModel = pm;
+    final Point min = rm.getBounds().get(0);
+    final Point max = rm.getBounds().get(1);
+    positions = GridIndex.create(min, max);
+    destinations = GridIndex.create(min, max);
+    changed = newLinkedHashSet();
+    routeListener = new Listener() {
+      @Override
+      public void handleEvent(Event e) {
+        changed.add((Truck) e.getIssuer());
+      }
+    };
+    for (final Truck t : rm.getObjectsOfType(Truck.class)) {
+      add(t);
+    }
+    rm.getEventAPI().addListener(new Listener() {
+      @Override
+      public void handleEvent(Event e) {
+        final RoadModelEvent event = (RoadModelEvent) e;
+        if (event.roadUser instanceof Truck) {
+          final Truck t = (Truck) event.roadUser;
+          if (e.getEventType() == RoadEventType.ADD_ROAD_USER) {
+            add(t);
+          } else if (e.getEventType() == RoadEventType.REMOVE_ROAD_USER) {
+            positions.remove(t);
+            destinations.remove(t);
+            changed.remove(t);
+          } else {
+            positions.put(t, roadModel.getPosition(t));
+            // without a route the first destination is the position
+            if (t.getRoute().isEmpty()) {
+              changed.add(t);
+            }
+          }
+        }
+      }
+    }, RoadEventType.MOVE, RoadEventType.ADD_ROAD_USER,
+      RoadEventType.REMOVE_ROAD_USER);
+    pm.getEventAPI().addListener(new Listener() {
+      @Override
+      public void handleEvent(Event e) {
+        final PDPModelEvent event = (PDPModelEvent) e;
+        if (event.vehicle instanceof Truck) {
+          changed.add((Truck) event.vehicle);
+        }
+      }
+    }, PDPModelEventType.START_PICKUP, PDPModelEventType.END_PICKUP);
+  }
+
+  private void add(Truck t) {
+    positions.put(t, roadModel.getPosition(t));
+    destinations.put(t, getDestination(t));
+    t.addRouteListener(routeListener);
+  }
+
+  /**
+   * @return The number of trucks in the index.
+   */
+  int size() {
+    return positions.size();
+  }
+
+  /**
+   * Finds the trucks that are closest to the reference point.
+   * @param reference The reference point.
+   * @param k The maximum number of trucks to return.
+   * @return The trucks ordered by the distance of their position to the
+   *         reference point.
+   */
+  ImmutableList<Truck> nearestByPosition(Point reference, int k) {
+    return positions.nearest(reference, k);
+  }
+
+  /**
+   * Finds the trucks of which the first destination is closest to the
+   * reference point.
+   * @param reference The reference point.
+   * @param k The maximum number of trucks to return.
+   * @return The trucks ordered by the distance of their first destination to
+   *         the reference point.
+   */
+  ImmutableList<Truck> nearestByDestination(Point reference, int k) {
+    for (final Truck t : changed) {
+      // a removed truck may still dispatch route events
+      if (roadModel.containsObject(t)) {
+        destinations.put(t, getDestination(t));
+      }
+    }
+    changed.clear();
+    return destinations.nearest(reference, k);
+  }
+
+  /**
+   * Computes the first destination of the truck: the location where the first
+   * parcel of its route is picked up or delivered, or its position if its
+   * route is empty.
+   * @param t The truck.
+   * @return The first destination.
+   */
+  Point getDestination(Truck t) {
+    return getDestination(t, roadModel, pdpModel);
+  }
+
+  // also used by NegotiatingBidder when no model is added to the simulation
+  static Point getDestination(Truck t, RoadModel rm, PDPModel pm) {
+    if (t.getRoute().isEmpty()) {
+      return rm.getPosition(t);
+    }
+    final Parcel first = t.getRoute().iterator().next();
+    if (pm.getParcelState(first).isPickedUp()) {
+      return first.getDto().getDeliveryLocation();
+    }
+    return first.getDto().getPickupLocation();
+  }
+
+  @Override
+  public boolean register(NegotiatingBidder element) {
+    element.setTruckIndex(this);
+    return true;
+  }
+
+  @Override
+  public boolean unregister(NegotiatingBidder element) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @return A new {@link Builder} instance.
+   */
+  public static Builder builder() {
+    return new AutoValue_TruckIndexModel_Builder();
+  }
+
+  /**
+   * Builder for creating {@link TruckIndexModel}.
+   * @author Rinde van Lon
+   */
+  @AutoValue
+  public abstract static class Builder extends
+    AbstractModelBuilder<TruckIndexModel, NegotiatingBidder> implements
+    Serializable {
+
+    private static final long serialVersionUID = -2513482616376491375L;
+
+    Builder() {
+      setDependencies(RoadModel.class, PDPModel.class);
+    }
+
+    @Override
+    public TruckIndexModel build(DependencyProvider dependencyProvider) {
+      return new TruckIndexModel(dependencyProvider.get(RoadModel.class),
+        dependencyProvider.get(PDPModel.class));
+    }
+  }
+}
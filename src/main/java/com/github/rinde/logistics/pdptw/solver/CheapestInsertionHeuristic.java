@@ -17,30 +17,57 @@ package com.github.rinde.logistics.pdptw.solver;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Verify.verifyNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newLinkedHashMap;
 import static com.google.common.collect.Sets.newLinkedHashSet;
 
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import com.github.rinde.opt.localsearch.IncrementalRouteEvaluator.PreparedRoute;
+import com.github.rinde.opt.localsearch.InsertionOracle;
 import com.github.rinde.opt.localsearch.Insertions;
+import com.github.rinde.opt.localsearch.MonotoneRouteEvaluator;
 import com.github.rinde.rinsim.central.GlobalStateObject;
 import com.github.rinde.rinsim.central.GlobalStateObject.VehicleStateObject;
 import com.github.rinde.rinsim.central.Solver;
-import com.github.rinde.rinsim.central.Solvers;
 import com.github.rinde.rinsim.core.model.pdp.Parcel;
 import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
 import com.github.rinde.rinsim.util.StochasticSupplier;
 import com.github.rinde.rinsim.util.StochasticSuppliers;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 
 /**
- * An implementation of a cheapest insertion heuristic.
+ * An implementation of a cheapest insertion heuristic. By default the new
+ * parcels are inserted one by one in the order in which they are available,
+ * each parcel is inserted at the cheapest position of all vehicles.
+ * Alternatively, in <i>regret-k</i> mode the parcel with the largest regret is
+ * inserted first, the regret of a parcel is the sum of the differences between
+ * the cheapest insertion in the best vehicle and the cheapest insertion in the
+ * <code>k-1</code> next best vehicles. The insertions of the vehicles can be
+ * evaluated in parallel, this does not influence the result.
  * @author Rinde van Lon
  */
 public class CheapestInsertionHeuristic implements Solver {
+  // margin for rounding errors in the lower bound of an insertion
+  static final double EPSILON = 1e-3;
 
-  private final ObjectiveFunction objectiveFunction;
+  private final ParcelRouteEvaluator evaluator;
+  private final Optional<ExecutorService> executor;
+  private final Optional<Integer> regret;
+  private final boolean prune;
 
   /**
    * Creates a new instance.
@@ -48,7 +75,16 @@ public class CheapestInsertionHeuristic implements Solver {
    *          schedule.
    */
   public CheapestInsertionHeuristic(ObjectiveFunction objFunc) {
-    objectiveFunction = objFunc;
+    this(objFunc, Optional.<ExecutorService>absent(),
+      Optional.<Integer>absent());
+  }
+
+  CheapestInsertionHeuristic(ObjectiveFunction objFunc,
+    Optional<ExecutorService> exec, Optional<Integer> regretK) {
+    evaluator = ParcelRouteEvaluator.create(objFunc);
+    executor = exec;
+    regret = regretK;
+    prune = evaluator instanceof MonotoneRouteEvaluator;
   }
 
   static ImmutableSet<Parcel> unassignedParcels(GlobalStateObject state) {
@@ -63,6 +99,9 @@ public class CheapestInsertionHeuristic implements Solver {
 
   @Override
   public ImmutableList<ImmutableList<Parcel>> solve(GlobalStateObject state) {
+    if (regret.isPresent()) {
+      return regret(state, regret.get());
+    }
     return decomposed(state);
   }
 
@@ -80,55 +119,231 @@ public class CheapestInsertionHeuristic implements Solver {
     return b.build();
   }
 
-  ImmutableList<Double> decomposedCost(GlobalStateObject state,
-    ImmutableList<ImmutableList<Parcel>> schedule) {
-    final ImmutableList.Builder<Double> builder = ImmutableList.builder();
-    for (int i = 0; i < schedule.size(); i++) {
-      builder.add(objectiveFunction.computeCost(Solvers.computeStats(
-        state.withSingleVehicle(i), ImmutableList.of(schedule.get(i)))));
-    }
-    return builder.build();
-  }
-
   ImmutableList<ImmutableList<Parcel>> decomposed(GlobalStateObject state) {
     ImmutableList<ImmutableList<Parcel>> schedule = createSchedule(state);
-    ImmutableList<Double> costs = decomposedCost(state, schedule);
+    // the prepared routes allow to evaluate an insertion starting from the
+    // first modified position
+    final List<PreparedRoute<Parcel>> routes = prepare(state, schedule);
     final ImmutableSet<Parcel> newParcels = unassignedParcels(state);
     // all new parcels need to be inserted in the plan
     for (final Parcel p : newParcels) {
-      double cheapestInsertion = Double.POSITIVE_INFINITY;
-      ImmutableList<Parcel> cheapestRoute = null;
-      double cheapestRouteCost = 0;
-      int cheapestRouteIndex = -1;
-
+      final List<Callable<Insertion>> tasks = newArrayList();
       for (int i = 0; i < state.getVehicles().size(); i++) {
-        final int startIndex = state.getVehicles().get(i).getDestination()
-          .isPresent() ? 1 : 0;
-
-        final Iterator<ImmutableList<Parcel>> insertions = Insertions
-          .insertionsIterator(schedule.get(i), p, startIndex, 2);
-
-        while (insertions.hasNext()) {
-          final ImmutableList<Parcel> r = insertions.next();
-          final double absCost = objectiveFunction.computeCost(Solvers
-            .computeStats(state.withSingleVehicle(i), ImmutableList.of(r)));
-
-          final double insertionCost = absCost - costs.get(i);
-          if (insertionCost < cheapestInsertion) {
-            cheapestInsertion = insertionCost;
-            cheapestRoute = r;
-            cheapestRouteIndex = i;
-            cheapestRouteCost = absCost;
-          }
+        tasks.add(new InsertionTask(state, i, routes.get(i),
+          ImmutableList.of(p), prune).single());
+      }
+      // the first vehicle with the cheapest insertion is chosen
+      Insertion cheapest = null;
+      for (final Insertion ins : execute(tasks)) {
+        if (cheapest == null || ins.cost < cheapest.cost) {
+          cheapest = ins;
         }
       }
-      schedule = modifySchedule(schedule, verifyNotNull(cheapestRoute),
-        cheapestRouteIndex);
-      costs = modifyCosts(costs, cheapestRouteCost, cheapestRouteIndex);
+      final Insertion best = verifyNotNull(cheapest);
+      schedule = modifySchedule(schedule, best.route, best.vehicle);
+      routes.set(best.vehicle,
+        evaluator.prepare(state, best.vehicle, best.route));
     }
     return schedule;
   }
 
+  ImmutableList<ImmutableList<Parcel>> regret(GlobalStateObject state, int k) {
+    ImmutableList<ImmutableList<Parcel>> schedule = createSchedule(state);
+    final List<PreparedRoute<Parcel>> routes = prepare(state, schedule);
+    final int numVehicles = state.getVehicles().size();
+    final List<Parcel> parcels = newArrayList(unassignedParcels(state));
+
+    // table.get(p)[v] is the cheapest insertion of parcel p in vehicle v
+    final Map<Parcel, Insertion[]> table = newLinkedHashMap();
+    for (final Parcel p : parcels) {
+      table.put(p, new Insertion[numVehicles]);
+    }
+    final List<Callable<List<Insertion>>> tasks = newArrayList();
+    for (int i = 0; i < numVehicles; i++) {
+      tasks.add(new InsertionTask(state, i, routes.get(i),
+        ImmutableList.copyOf(parcels), prune));
+    }
+    fill(table, execute(tasks));
+
+    while (!parcels.isEmpty()) {
+      // the first parcel with the largest regret is inserted
+      Parcel selected = null;
+      double largestRegret = Double.NEGATIVE_INFINITY;
+      for (final Parcel p : parcels) {
+        final double r = regret(table.get(p), k);
+        if (r > largestRegret) {
+          largestRegret = r;
+          selected = p;
+        }
+      }
+      final Parcel p = verifyNotNull(selected);
+      Insertion best = null;
+      for (final Insertion ins : table.get(p)) {
+        if (best == null || ins.cost < best.cost) {
+          best = ins;
+        }
+      }
+      final Insertion ins = verifyNotNull(best);
+      schedule = modifySchedule(schedule, ins.route, ins.vehicle);
+      routes.set(ins.vehicle,
+        evaluator.prepare(state, ins.vehicle, ins.route));
+      parcels.remove(p);
+      table.remove(p);
+
+      // only the insertions in the modified vehicle have changed
+      tasks.clear();
+      for (final List<Parcel> part : partition(parcels)) {
+        tasks.add(new InsertionTask(state, ins.vehicle, routes.get(ins.vehicle),
+          ImmutableList.copyOf(part), prune));
+      }
+      fill(table, execute(tasks));
+    }
+    return schedule;
+  }
+
+  List<PreparedRoute<Parcel>> prepare(GlobalStateObject state,
+    ImmutableList<ImmutableList<Parcel>> schedule) {
+    final List<PreparedRoute<Parcel>> routes = newArrayList();
+    for (int i = 0; i < schedule.size(); i++) {
+      routes.add(evaluator.prepare(state, i, schedule.get(i)));
+    }
+    return routes;
+  }
+
+  // splits the parcels in one part per thread
+  List<List<Parcel>> partition(List<Parcel> parcels) {
+    if (parcels.isEmpty()) {
+      return ImmutableList.of();
+    }
+    int parts = 1;
+    if (executor.isPresent() && executor.get() instanceof ForkJoinPool) {
+      parts = ((ForkJoinPool) executor.get()).getParallelism();
+    }
+    final int size = (parcels.size() + parts - 1) / parts;
+    return Lists.partition(parcels, size);
+  }
+
+  // executes the tasks in order in the executor (if present)
+  <T> List<T> execute(List<? extends Callable<T>> tasks) {
+    final List<T> results = newArrayList();
+    try {
+      if (executor.isPresent()) {
+        for (final Future<T> f : executor.get().invokeAll(tasks)) {
+          results.add(f.get());
+        }
+      } else {
+        for (final Callable<T> task : tasks) {
+          results.add(task.call());
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (final ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } catch (final Exception e) {
+      throw Throwables.propagate(e);
+    }
+    return results;
+  }
+
+  static void fill(Map<Parcel, Insertion[]> table,
+    List<List<Insertion>> results) {
+    for (final List<Insertion> list : results) {
+      for (final Insertion ins : list) {
+        table.get(ins.parcel)[ins.vehicle] = ins;
+      }
+    }
+  }
+
+  // sum of the differences between the k-1 next cheapest vehicles and the
+  // cheapest vehicle
+  static double regret(Insertion[] insertions, int k) {
+    final double[] costs = new double[insertions.length];
+    for (int i = 0; i < insertions.length; i++) {
+      costs[i] = insertions[i].cost;
+    }
+    Arrays.sort(costs);
+    double sum = 0;
+    for (int i = 1; i < Math.min(k, costs.length); i++) {
+      sum += costs[i] - costs[0];
+    }
+    return sum;
+  }
+
+  // computes the cheapest insertion of a parcel in the route of a vehicle, if
+  // prune is true the cost of the route must never decrease by inserting a
+  // stop, the pickup positions that can not lead to a cheaper insertion are
+  // skipped
+  static Insertion cheapestInsertion(GlobalStateObject state, int vehicle,
+    PreparedRoute<Parcel> route, Parcel p, boolean prune) {
+    final int startIndex = state.getVehicles().get(vehicle).getDestination()
+      .isPresent() ? 1 : 0;
+    final ImmutableList<Parcel> original = route.getRoute();
+    final Optional<LowerBoundOracle> oracle = prune
+      ? Optional.of(new LowerBoundOracle(route, p))
+      : Optional.<LowerBoundOracle>absent();
+    final Iterator<ImmutableList<Parcel>> insertions = oracle.isPresent()
+      ? Insertions.insertionsIterator(original, p, startIndex, 2, oracle.get())
+      : Insertions.insertionsIterator(original, p, startIndex, 2);
+
+    double cheapestInsertion = Double.POSITIVE_INFINITY;
+    ImmutableList<Parcel> cheapestRoute = null;
+    while (insertions.hasNext()) {
+      final ImmutableList<Parcel> r = insertions.next();
+      final double absCost = route.computeCost(r, firstDifference(original, r));
+      final double insertionCost = absCost - route.getCost();
+      if (cheapestRoute == null || insertionCost < cheapestInsertion) {
+        cheapestInsertion = insertionCost;
+        cheapestRoute = r;
+        if (oracle.isPresent()) {
+          oracle.get().cheapest = insertionCost;
+        }
+      }
+    }
+    return new Insertion(p, vehicle, verifyNotNull(cheapestRoute),
+      cheapestInsertion);
+  }
+
+  // The cost of a route in which only the pickup is inserted is a lower bound
+  // on the cost of all insertions with the same pickup position. A pickup
+  // position is skipped if the bound is not better than the cheapest
+  // insertion so far.
+  static final class LowerBoundOracle implements InsertionOracle {
+    final PreparedRoute<Parcel> route;
+    final Parcel parcel;
+    double cheapest;
+
+    LowerBoundOracle(PreparedRoute<Parcel> r, Parcel p) {
+      route = r;
+      parcel = p;
+      cheapest = Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public boolean isPromising(int[] positions, int depth) {
+      if (depth > 0 || cheapest == Double.POSITIVE_INFINITY) {
+        return true;
+      }
+      final ImmutableList<Parcel> partial = Insertions.insert(
+        route.getRoute(), ImmutableList.of(positions[0]), parcel);
+      final double lowerBound = route.computeCost(partial, positions[0])
+        - route.getCost();
+      return lowerBound - EPSILON < cheapest;
+    }
+  }
+
+  // the index of the first position at which the lists differ
+  static <T> int firstDifference(List<T> original, List<T> modified) {
+    final int size = Math.min(original.size(), modified.size());
+    for (int i = 0; i < size; i++) {
+      if (!original.get(i).equals(modified.get(i))) {
+        return i;
+      }
+    }
+    return size;
+  }
+
   static ImmutableList<Double> modifyCosts(ImmutableList<Double> costs,
     double newCost, int index) {
     return ImmutableList.<Double> builder().addAll(costs.subList(0, index))
@@ -179,4 +394,136 @@ public class CheapestInsertionHeuristic implements Solver {
     };
   }
 
+  /**
+   * Supplies {@link CheapestInsertionHeuristic} instances that evaluate the
+   * insertions in each vehicle in parallel using the specified executor. The
+   * result is the same as for {@link #supplier(ObjectiveFunction)}.
+   * @param objFunc The objective function used to calculate the cost of a
+   *          schedule.
+   * @param executor The executor that is shared by all supplied instances.
+   *          The caller owns the executor: it is never shut down by the
+   *          supplier or the instances and should be shut down by the caller
+   *          when the instances are no longer used.
+   * @return A {@link StochasticSupplier} that supplies
+   *         {@link CheapestInsertionHeuristic} instances.
+   */
+  public static StochasticSupplier<Solver> supplier(
+    ObjectiveFunction objFunc, ExecutorService executor) {
+    return new CihSupplier(objFunc, Optional.of(executor),
+      Optional.<Integer>absent());
+  }
+
+  /**
+   * Supplies {@link CheapestInsertionHeuristic} instances that use
+   * <i>regret-k</i> insertion: the parcel with the largest regret is inserted
+   * first.
+   * @param objFunc The objective function used to calculate the cost of a
+   *          schedule.
+   * @param k The number of vehicles that is considered for the regret, must be
+   *          <code>&ge; 2</code>.
+   * @return A {@link StochasticSupplier} that supplies
+   *         {@link CheapestInsertionHeuristic} instances.
+   */
+  public static StochasticSupplier<Solver> regretSupplier(
+    ObjectiveFunction objFunc, int k) {
+    checkArgument(k >= 2, "k must be >= 2, is %s.", k);
+    return new CihSupplier(objFunc, Optional.<ExecutorService>absent(),
+      Optional.of(k));
+  }
+
+  /**
+   * Supplies {@link CheapestInsertionHeuristic} instances that use
+   * <i>regret-k</i> insertion and that evaluate the insertions in each vehicle
+   * in parallel using the specified executor. The result is the same as for
+   * {@link #regretSupplier(ObjectiveFunction, int)}.
+   * @param objFunc The objective function used to calculate the cost of a
+   *          schedule.
+   * @param k The number of vehicles that is considered for the regret, must be
+   *          <code>&ge; 2</code>.
+   * @param executor The executor that is shared by all supplied instances.
+   *          The caller owns the executor: it is never shut down by the
+   *          supplier or the instances and should be shut down by the caller
+   *          when the instances are no longer used.
+   * @return A {@link StochasticSupplier} that supplies
+   *         {@link CheapestInsertionHeuristic} instances.
+   */
+  public static StochasticSupplier<Solver> regretSupplier(
+    ObjectiveFunction objFunc, int k, ExecutorService executor) {
+    checkArgument(k >= 2, "k must be >= 2, is %s.", k);
+    return new CihSupplier(objFunc, Optional.of(executor), Optional.of(k));
+  }
+
+  static class CihSupplier extends
+    StochasticSuppliers.AbstractStochasticSupplier<Solver> {
+    private static final long serialVersionUID = -4785366409473436528L;
+    private final ObjectiveFunction objectiveFunction;
+    private final Optional<ExecutorService> executor;
+    private final Optional<Integer> regret;
+
+    CihSupplier(ObjectiveFunction objFunc, Optional<ExecutorService> exec,
+      Optional<Integer> regretK) {
+      objectiveFunction = objFunc;
+      executor = exec;
+      regret = regretK;
+    }
+
+    @Override
+    public Solver get(long seed) {
+      return new CheapestInsertionHeuristic(objectiveFunction, executor,
+        regret);
+    }
+  }
+
+  static class Insertion {
+    final Parcel parcel;
+    final int vehicle;
+    final ImmutableList<Parcel> route;
+    // the increase in cost
+    final double cost;
+
+    Insertion(Parcel p, int v, ImmutableList<Parcel> r, double c) {
+      parcel = p;
+      vehicle = v;
+      route = r;
+      cost = c;
+    }
+  }
+
+  // computes the cheapest insertion of each parcel in one vehicle
+  static class InsertionTask implements Callable<List<Insertion>> {
+    final GlobalStateObject state;
+    final int vehicle;
+    final PreparedRoute<Parcel> route;
+    final ImmutableList<Parcel> parcels;
+    final boolean prune;
+
+    InsertionTask(GlobalStateObject s, int v, PreparedRoute<Parcel> r,
+      ImmutableList<Parcel> ps, boolean pr) {
+      state = s;
+      vehicle = v;
+      route = r;
+      parcels = ps;
+      prune = pr;
+    }
+
+    @Override
+    public List<Insertion> call() {
+      final List<Insertion> list = newArrayList();
+      for (final Parcel p : parcels) {
+        list.add(cheapestInsertion(state, vehicle, route, p, prune));
+      }
+      return list;
+    }
+
+    // a task for a single parcel
+    Callable<Insertion> single() {
+      return new Callable<Insertion>() {
+        @Override
+        public Insertion call() {
+          return InsertionTask.this.call().get(0);
+        }
+      };
+    }
+  }
+
 }
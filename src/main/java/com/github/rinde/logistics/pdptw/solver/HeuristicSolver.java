@@ -15,20 +15,36 @@
  */
 package com.github.rinde.logistics.pdptw.solver;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import javax.annotation.Nullable;
+import javax.measure.unit.SI;
 
+import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomAdaptor;
 import org.apache.commons.math3.random.RandomGenerator;
 
+import com.github.rinde.logistics.pdptw.solver.SearchListener.Move;
+import com.github.rinde.logistics.pdptw.solver.SolverBudget.Limit;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.central.SolverValidator;
+import com.github.rinde.rinsim.central.arrays.ArraysSolverValidator;
 import com.github.rinde.rinsim.central.arrays.SingleVehicleArraysSolver;
+import com.github.rinde.rinsim.central.arrays.SingleVehicleSolverAdapter;
 import com.github.rinde.rinsim.central.arrays.SolutionObject;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.github.rinde.rinsim.util.StochasticSuppliers;
+import com.google.common.base.Optional;
 
 /**
- * This class contains a heuristic implementation of the solver interface.
+ * This class contains a heuristic implementation of the solver interface. The
+ * late acceptance search stops when its {@link SolverBudget} is exhausted, by
+ * default this is after {@link #DEFAULT_MAX_ITERATIONS} iterations.
  * @author Tony Wauters
  * 
  */
@@ -37,11 +53,73 @@ public class HeuristicSolver implements SingleVehicleArraysSolver {
   private static final int TRAVEL_TIME_WEIGHT = 1;
   private static final int TARDINESS_WEIGHT = 1;
   private static final boolean DEBUG = false;
+  private static final int[][] NO_INVENTORIES = new int[0][];
+  private static final int[] NO_DESTINATIONS = new int[0];
+
+  /**
+   * The default length of the late acceptance list.
+   */
+  public static final int DEFAULT_LIST_LENGTH = 2000;
+
+  /**
+   * The default maximum number of iterations.
+   */
+  public static final long DEFAULT_MAX_ITERATIONS = 100000L;
 
   private final RandomGenerator rand;
+  private final int listLength;
+  private final SolverBudget budget;
+  private final SearchListener listener;
+  @Nullable
+  private SearchStatistics statistics;
+  @Nullable
+  private ProblemStructure structure;
 
   public HeuristicSolver(RandomGenerator rand) {
+    this(rand, DEFAULT_LIST_LENGTH,
+        SolverBudget.unlimited().withMaxIterations(DEFAULT_MAX_ITERATIONS));
+  }
+
+  /**
+   * Create a new instance.
+   * @param rand The random generator.
+   * @param listLength The length of the late acceptance list, must be
+   *          positive.
+   * @param budget The budget of each invocation of
+   *          {@link #solve}.
+   */
+  public HeuristicSolver(RandomGenerator rand, int listLength,
+      SolverBudget budget) {
+    this(rand, listLength, budget, SearchListeners.noOp());
+  }
+
+  /**
+   * Create a new instance.
+   * @param rand The random generator.
+   * @param listLength The length of the late acceptance list, must be
+   *          positive.
+   * @param budget The budget of each invocation of
+   *          {@link #solve}.
+   * @param listener The listener that is notified of the progress of the
+   *          search.
+   */
+  public HeuristicSolver(RandomGenerator rand, int listLength,
+      SolverBudget budget, SearchListener listener) {
+    checkArgument(listLength > 0,
+        "The list length must be positive, is %s.", listLength);
     this.rand = rand;
+    this.listLength = listLength;
+    this.budget = budget;
+    this.listener = listener;
+  }
+
+  /**
+   * @return The statistics of the last invocation of
+   *         {@link #solve}
+   *         or {@link Optional#absent()} if it has not been invoked yet.
+   */
+  public Optional<SearchStatistics> getLastStatistics() {
+    return Optional.fromNullable(statistics);
   }
 
   /**
@@ -53,20 +131,12 @@ public class HeuristicSolver implements SingleVehicleArraysSolver {
       @Nullable SolutionObject currentSolution) {
     final int n = releaseDates.length;
 
-    final int[] pickupToDeliveryMap = new int[n];
-    for (int i = 0; i < pickupToDeliveryMap.length; i++) {
-      pickupToDeliveryMap[i] = -1;
-    }
-    final int[] deliveryToPickupMap = new int[n];
-    for (int i = 0; i < deliveryToPickupMap.length; i++) {
-      deliveryToPickupMap[i] = -1;
-    }
-    for (final int[] pair : servicePairs) {
-      final int pickup = pair[0];
-      final int delivery = pair[1];
-      pickupToDeliveryMap[pickup] = delivery;
-      deliveryToPickupMap[delivery] = pickup;
-    }
+    structure = structure == null
+        ? ProblemStructure.create(n, servicePairs, NO_INVENTORIES,
+            NO_DESTINATIONS)
+        : structure.rebuild(n, servicePairs, NO_INVENTORIES, NO_DESTINATIONS);
+    final int[] pickupToDeliveryMap = structure.pickupToDeliveryMap;
+    final int[] deliveryToPickupMap = structure.deliveryToPickupMap;
 
     // two possible heuristics (steepest descent and late acceptance)
     // SolutionObject bestSol = performSteepestDescent(travelTime,
@@ -74,11 +144,9 @@ public class HeuristicSolver implements SingleVehicleArraysSolver {
     // dueDates, servicePairs,
     // serviceTime,pickupToDeliveryMap,deliveryToPickupMap);
 
-    final int laListSize = 2000;
-    final int maxIterations = 100000;
     final SolutionObject bestSol = performLateAcceptance(travelTime,
         releaseDates, dueDates, servicePairs, serviceTime, pickupToDeliveryMap,
-        deliveryToPickupMap, laListSize, maxIterations);
+        deliveryToPickupMap, listLength, budget.start(), currentSolution);
 
     // ADDED BY RINDE TO CONFORM TO CHANGED SOLUTION OBJECT SPEC
     // SEE SolutionObject.arrivalTimes
@@ -181,49 +249,62 @@ public class HeuristicSolver implements SingleVehicleArraysSolver {
   private SolutionObject performLateAcceptance(int[][] travelTime,
       int[] releaseDates, int[] dueDates, int[][] servicePairs,
       int[] serviceTime, int[] pickupToDeliveryMap, int[] deliveryToPickupMap,
-      int L, int maxIt) {
+      int L, SolverBudget.Tracker tracker,
+      @Nullable SolutionObject currentSolution) {
     final int n = releaseDates.length;
 
-    final List<Integer> perm0 = generateFeasibleRandomPermutation(n,
-        servicePairs);
-    final SolutionObject sol0 = construct(intListToArray(perm0), travelTime,
-        releaseDates, dueDates, servicePairs, serviceTime);
-
-    List<Integer> current = new ArrayList<Integer>(perm0);
-    int currentObj = sol0.objectiveValue;
+    final List<Integer> perm0 = currentSolution == null
+        ? generateFeasibleRandomPermutation(n, servicePairs)
+        : warmStartPermutation(n, servicePairs, currentSolution);
+
+    /*
+     * A shift move only modifies the permutation from position min(i,j), the
+     * evaluation of a move therefore resumes from the prefix of the accepted
+     * permutation at that position. The move is applied in place and is
+     * undone when it is rejected, the position of each element is maintained
+     * incrementally.
+     */
+    final int[] current = intListToArray(perm0);
+    final int[] elementLocations = new int[n];
+    for (int i = 0; i < n; i++) {
+      elementLocations[current[i]] = i;
+    }
+    final Prefixes accepted = new Prefixes(n);
+    final Prefixes candidate = new Prefixes(n);
+    int currentObj = accepted.evaluate(current, 0, accepted, travelTime,
+        releaseDates, dueDates, serviceTime);
 
-    SolutionObject bestSol = sol0;
-    List<Integer> bestPerm = new ArrayList<Integer>(perm0);
+    final int[] bestPerm = Arrays.copyOf(current, n);
+    int bestObj = currentObj;
+    long bestIt = 0;
+    long bestNanos = tracker.elapsedNanos();
+    listener.searchStarted(currentObj);
 
     final int[] laList = new int[L];
     for (int l = 0; l < L; l++) {
-      laList[l] = sol0.objectiveValue;
+      laList[l] = currentObj;
     }
 
-    for (int it = 0; it < maxIt; it++) {
+    int it = 0;
+    long nonImprovements = 0;
+    Limit limit;
+    while ((limit = tracker.check(it, nonImprovements)) == null) {
       if (DEBUG) {
         if (it % 100 == 0) {
           System.out.println("Current:\t " + currentObj + "\tbest:\t"
-              + bestSol.objectiveValue);
+              + bestObj);
         }
       }
 
-      final int[] elementLocations = new int[n];
-      for (int i = 0; i < n; i++) {
-        elementLocations[current.get(i)] = i;
-      }
-
-      final List<Integer> newPerm = new ArrayList<Integer>(current);
-
+      int i = 0;
+      int j = 0;
       if (rand.nextBoolean()) {
         // try all forward shifts
         boolean ok = false;
-        int i = 0;
-        int j = 0;
         do {
           ok = true;
           i = 1 + rand.nextInt(n - 3);
-          final int delivery = pickupToDeliveryMap[current.get(i)];
+          final int delivery = pickupToDeliveryMap[current[i]];
           int deliveryLocation = n;
           if (delivery != -1) {
             deliveryLocation = elementLocations[delivery];
@@ -234,19 +315,13 @@ public class HeuristicSolver implements SingleVehicleArraysSolver {
           }
           j = i + 1 + rand.nextInt(Math.min(deliveryLocation, n - 1) - (i + 1));
         } while (!ok);
-
-        final int el = newPerm.remove(i);
-        newPerm.add(j, el);
-
       } else {
         // try all backward shifts
         boolean ok = false;
-        int i = 0;
-        int j = 0;
         do {
           ok = true;
           i = 2 + rand.nextInt(n - 3);
-          final int pickup = deliveryToPickupMap[current.get(i)];
+          final int pickup = deliveryToPickupMap[current[i]];
           int pickupLocation = 0;
           if (pickup != -1) {
             pickupLocation = elementLocations[pickup];
@@ -258,32 +333,46 @@ public class HeuristicSolver implements SingleVehicleArraysSolver {
           j = Math.max(1, pickupLocation + 1)
               + rand.nextInt(i - Math.max(1, pickupLocation + 1));
         } while (!ok);
-
-        final int el = newPerm.remove(i);
-        newPerm.add(j, el);
       }
 
-      final SolutionObject newSol = construct(intListToArray(newPerm),
-          travelTime, releaseDates, dueDates, servicePairs, serviceTime);
-      if (newSol.objectiveValue <= laList[it % L]) {
+      MultiVehicleHeuristicSolver.shift(current, i, j);
+      final int from = Math.min(i, j);
+      final int to = Math.max(i, j);
+      final int newObj = candidate.evaluate(current, from, accepted,
+          travelTime, releaseDates, dueDates, serviceTime);
+      nonImprovements++;
+      final boolean accept = newObj <= laList[it % L];
+      listener.moveEvaluated(Move.SHIFT, accept);
+      if (accept) {
         // accept
-        current = newPerm;
-        currentObj = newSol.objectiveValue;
+        accepted.copySuffix(candidate, from);
+        for (int k = from; k <= to; k++) {
+          elementLocations[current[k]] = k;
+        }
+        currentObj = newObj;
 
-        if (newSol.objectiveValue < bestSol.objectiveValue) {
+        if (newObj < bestObj) {
           // better than best
-          bestSol = newSol;
-          bestPerm = newPerm;
-          // if (DEBUG)
-          // System.out.println("Found new best solution with objective: "+newSol.objectiveValue);
+          System.arraycopy(current, 0, bestPerm, 0, n);
+          bestObj = newObj;
+          nonImprovements = 0;
+          bestIt = it;
+          bestNanos = tracker.elapsedNanos();
+          listener.bestFound(bestObj, bestIt, bestNanos);
         }
-
+      } else {
+        // undo
+        MultiVehicleHeuristicSolver.shift(current, j, i);
       }
       laList[it % L] = currentObj;
-
+      it++;
     }
+    statistics = tracker.statistics(it, limit);
+    listener.searchFinished(it, statistics.getElapsedNanos(), bestIt,
+        bestNanos);
 
-    return bestSol;
+    return construct(bestPerm, travelTime, releaseDates, dueDates,
+        servicePairs, serviceTime);
   }
 
   /**
@@ -304,30 +393,42 @@ public class HeuristicSolver implements SingleVehicleArraysSolver {
     elements.add(0, 0);
     elements.add(n - 1);
 
-    for (final int[] pair : servicePairs) {
-      final int pickup = pair[0];
-      final int delivery = pair[1];
+    ProblemStructure.correctPickupDeliveryOrder(servicePairs, elements);
+    return elements;
+  }
 
-      int pickupLoc = -1;
-      int deliveryLoc = -1;
-      for (int i = 1; i < n - 1; i++) {
-        if (elements.get(i) == pickup) {
-          pickupLoc = i;
-        }
-        if (elements.get(i) == delivery) {
-          deliveryLoc = i;
-        }
+  /**
+   * Constructs the initial permutation from the current solution (the route
+   * that the vehicle is following). Locations that are not in the route (e.g.
+   * newly arrived orders) are inserted at the end of the route in a random
+   * order, the pickup and delivery pairs are repaired.
+   * @param n
+   * @param servicePairs
+   * @param currentSolution
+   * @return A feasible permutation.
+   */
+  private List<Integer> warmStartPermutation(int n, int[][] servicePairs,
+      SolutionObject currentSolution) {
+    final boolean[] used = new boolean[n];
+    final List<Integer> elements = new ArrayList<Integer>();
+    for (final int loc : currentSolution.route) {
+      if (loc > 0 && loc < n - 1 && !used[loc]) {
+        elements.add(loc);
+        used[loc] = true;
       }
-      if (pickupLoc > deliveryLoc) {
-        // move pickup before delivery
-        final int randomPosition = 1 + rand.nextInt(deliveryLoc);
-        elements.remove(pickupLoc);
-        elements.add(randomPosition, pickup);
-
+    }
+    final List<Integer> missing = new ArrayList<Integer>();
+    for (int i = 1; i < n - 1; i++) {
+      if (!used[i]) {
+        missing.add(i);
       }
-
     }
+    Collections.shuffle(missing, new RandomAdaptor(rand));
+    elements.addAll(missing);
+    elements.add(0, 0);
+    elements.add(n - 1);
 
+    ProblemStructure.correctPickupDeliveryOrder(servicePairs, elements);
     return elements;
   }
 
@@ -342,7 +443,7 @@ public class HeuristicSolver implements SingleVehicleArraysSolver {
    * @param serviceTime
    * @return a solution
    */
-  private SolutionObject construct(int[] permutation, int[][] travelTime,
+  static SolutionObject construct(int[] permutation, int[][] travelTime,
       int[] releaseDates, int[] dueDates, int[][] servicePairs,
       int[] serviceTime) {
 
@@ -380,6 +481,111 @@ public class HeuristicSolver implements SingleVehicleArraysSolver {
     return solutionObject;
   }
 
+  /**
+   * Supplies {@link HeuristicSolver} instances that are adapted to the
+   * {@link Solver} interface.
+   * @param listLength The length of the late acceptance list, must be
+   *          positive.
+   * @param budget The budget of each invocation of the solver.
+   * @return The supplier.
+   */
+  public static StochasticSupplier<Solver> supplier(final int listLength,
+      final SolverBudget budget) {
+    return supplier(listLength, budget, SearchListeners.noOp());
+  }
+
+  /**
+   * Supplies {@link HeuristicSolver} instances that are adapted to the
+   * {@link Solver} interface.
+   * @param listLength The length of the late acceptance list, must be
+   *          positive.
+   * @param budget The budget of each invocation of the solver.
+   * @param listener The listener that is shared by all supplied solvers, it
+   *          must be thread-safe when the solvers are used concurrently.
+   * @return The supplier.
+   */
+  public static StochasticSupplier<Solver> supplier(final int listLength,
+      final SolverBudget budget, final SearchListener listener) {
+    checkArgument(listLength > 0,
+        "The list length must be positive, is %s.", listLength);
+    return new StochasticSuppliers.AbstractStochasticSupplier<Solver>() {
+      private static final long serialVersionUID = 5389467052376118390L;
+
+      @Override
+      public Solver get(long seed) {
+        return SolverValidator.wrap(new SingleVehicleSolverAdapter(
+            ArraysSolverValidator.wrap(new HeuristicSolver(
+                new MersenneTwister(seed), listLength, budget, listener)),
+            SI.SECOND));
+      }
+    };
+  }
+
+  /**
+   * The departure time, the travel time and the tardiness at every position
+   * of a permutation, the travel time and tardiness are cumulative. The
+   * values are computed exactly as in {@link HeuristicSolver#construct}.
+   */
+  static final class Prefixes {
+    final int[] departureTimes;
+    final int[] travelTimes;
+    final int[] tardiness;
+
+    Prefixes(int n) {
+      departureTimes = new int[n];
+      travelTimes = new int[n];
+      tardiness = new int[n];
+    }
+
+    /**
+     * Evaluates the permutation from position <code>from</code>, the values
+     * of the preceding position are taken from <code>prefix</code>.
+     * @return The objective value of the permutation.
+     */
+    int evaluate(int[] permutation, int from, Prefixes prefix,
+        int[][] travelTime, int[] releaseDates, int[] dueDates,
+        int[] serviceTime) {
+      final int n = permutation.length;
+      int k = from;
+      if (k == 0) {
+        departureTimes[0] = releaseDates[0];
+        travelTimes[0] = 0;
+        tardiness[0] = Math.max(0, releaseDates[0] + serviceTime[0]
+            - dueDates[0]);
+        k++;
+      }
+      int previous = permutation[k - 1];
+      int previousT = prefix.departureTimes[k - 1];
+      int totalTravelTime = prefix.travelTimes[k - 1];
+      int totalTardiness = prefix.tardiness[k - 1];
+      for (; k < n; k++) {
+        final int next = permutation[k];
+        final int arrivalTime = Math.max(
+            previousT + travelTime[previous][next], releaseDates[next]);
+        totalTravelTime += travelTime[previous][next];
+        totalTardiness += Math.max(0, arrivalTime + serviceTime[next]
+            - dueDates[next]);
+        previousT = arrivalTime + serviceTime[next];
+        previous = next;
+
+        departureTimes[k] = previousT;
+        travelTimes[k] = totalTravelTime;
+        tardiness[k] = totalTardiness;
+      }
+      return totalTardiness * TARDINESS_WEIGHT
+          + totalTravelTime * TRAVEL_TIME_WEIGHT;
+    }
+
+    // copies the values from position 'from' onwards
+    void copySuffix(Prefixes other, int from) {
+      final int length = departureTimes.length - from;
+      System.arraycopy(other.departureTimes, from, departureTimes, from,
+          length);
+      System.arraycopy(other.travelTimes, from, travelTimes, from, length);
+      System.arraycopy(other.tardiness, from, tardiness, from, length);
+    }
+  }
+
   private int[] intListToArray(List<Integer> list) {
     final int[] perm = new int[list.size()];
     for (int i = 0; i < list.size(); i++) {
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A thread-safe {@link SearchListener} that aggregates the notifications of
+ * all searches it listens to. It counts the accepted and rejected moves per
+ * type of move, it keeps histograms of the number of iterations, of the
+ * time-to-best and of the iterations-to-best of the searches and it keeps a
+ * trace of the most recent best solutions. The histograms have logarithmic
+ * buckets: bucket <code>0</code> counts the value <code>0</code> and bucket
+ * <code>i &gt; 0</code> counts the values in
+ * <code>[2<sup>i-1</sup>,2<sup>i</sup>)</code>.
+ * @author Rinde van Lon
+ */
+public final class HistogramSearchListener implements SearchListener {
+  /**
+   * The default number of best solutions in the trace.
+   */
+  public static final int DEFAULT_TRACE_CAPACITY = 1000;
+
+  static final int BUCKETS = Long.SIZE;
+
+  private final AtomicLongArray accepted;
+  private final AtomicLongArray rejected;
+  private final AtomicLong searches;
+  private final AtomicLong totalIterations;
+  private final AtomicLong totalElapsedNanos;
+  private final AtomicLongArray iterations;
+  private final AtomicLongArray timeToBest;
+  private final AtomicLongArray iterationsToBest;
+  private final int traceCapacity;
+  private final Deque<BestSolution> trace;
+
+  private HistogramSearchListener(int capacity) {
+    accepted = new AtomicLongArray(Move.values().length);
+    rejected = new AtomicLongArray(Move.values().length);
+    searches = new AtomicLong();
+    totalIterations = new AtomicLong();
+    totalElapsedNanos = new AtomicLong();
+    iterations = new AtomicLongArray(BUCKETS);
+    timeToBest = new AtomicLongArray(BUCKETS);
+    iterationsToBest = new AtomicLongArray(BUCKETS);
+    traceCapacity = capacity;
+    trace = new ArrayDeque<BestSolution>();
+  }
+
+  @Override
+  public void searchStarted(double objective) {}
+
+  @Override
+  public void moveEvaluated(Move move, boolean isAccepted) {
+    if (isAccepted) {
+      accepted.incrementAndGet(move.ordinal());
+    } else {
+      rejected.incrementAndGet(move.ordinal());
+    }
+  }
+
+  @Override
+  public void bestFound(double objective, long iteration, long elapsedNanos) {
+    if (traceCapacity == 0) {
+      return;
+    }
+    final BestSolution best = BestSolution.create(objective, iteration,
+      elapsedNanos);
+    synchronized (trace) {
+      if (trace.size() == traceCapacity) {
+        trace.removeFirst();
+      }
+      trace.addLast(best);
+    }
+  }
+
+  @Override
+  public void searchFinished(long its, long elapsedNanos, long bestIteration,
+      long bestElapsedNanos) {
+    searches.incrementAndGet();
+    totalIterations.addAndGet(its);
+    totalElapsedNanos.addAndGet(elapsedNanos);
+    iterations.incrementAndGet(bucket(its));
+    timeToBest.incrementAndGet(bucket(bestElapsedNanos));
+    iterationsToBest.incrementAndGet(bucket(bestIteration));
+  }
+
+  /**
+   * @return The number of finished searches.
+   */
+  public long getSearches() {
+    return searches.get();
+  }
+
+  /**
+   * @return The total number of iterations of all finished searches.
+   */
+  public long getIterations() {
+    return totalIterations.get();
+  }
+
+  /**
+   * @param move The type of move.
+   * @return The number of accepted moves of the specified type.
+   */
+  public long getAccepted(Move move) {
+    return accepted.get(move.ordinal());
+  }
+
+  /**
+   * @param move The type of move.
+   * @return The number of rejected moves of the specified type.
+   */
+  public long getRejected(Move move) {
+    return rejected.get(move.ordinal());
+  }
+
+  /**
+   * @param move The type of move.
+   * @return The fraction of the evaluated moves of the specified type that is
+   *         accepted, <code>0</code> if no such moves are evaluated.
+   */
+  public double getAcceptanceRate(Move move) {
+    final long acc = getAccepted(move);
+    final long total = acc + getRejected(move);
+    return total == 0 ? 0d : acc / (double) total;
+  }
+
+  /**
+   * @return The number of evaluated moves per second of search time. The
+   *         search time is the sum of the durations of the finished searches,
+   *         concurrent searches are therefore not counted as one.
+   */
+  public double getEvaluationsPerSecond() {
+    long evaluations = 0;
+    for (int i = 0; i < accepted.length(); i++) {
+      evaluations += accepted.get(i) + rejected.get(i);
+    }
+    final long nanos = totalElapsedNanos.get();
+    return nanos == 0 ? 0d : evaluations
+      / (nanos / (double) TimeUnit.SECONDS.toNanos(1));
+  }
+
+  /**
+   * @return The histogram of the number of iterations of the searches.
+   */
+  public long[] getIterationsHistogram() {
+    return toArray(iterations);
+  }
+
+  /**
+   * @return The histogram of the time in nanoseconds it took the searches to
+   *         find their best solution.
+   */
+  public long[] getTimeToBestHistogram() {
+    return toArray(timeToBest);
+  }
+
+  /**
+   * @return The histogram of the iteration in which the searches found their
+   *         best solution.
+   */
+  public long[] getIterationsToBestHistogram() {
+    return toArray(iterationsToBest);
+  }
+
+  /**
+   * @return The most recent best solutions of all searches, in the order in
+   *         which they were found.
+   */
+  public ImmutableList<BestSolution> getBestTrace() {
+    synchronized (trace) {
+      return ImmutableList.copyOf(trace);
+    }
+  }
+
+  /**
+   * Resets all counters and histograms and clears the trace.
+   */
+  public void reset() {
+    for (int i = 0; i < accepted.length(); i++) {
+      accepted.set(i, 0);
+      rejected.set(i, 0);
+    }
+    searches.set(0);
+    totalIterations.set(0);
+    totalElapsedNanos.set(0);
+    for (int i = 0; i < BUCKETS; i++) {
+      iterations.set(i, 0);
+      timeToBest.set(i, 0);
+      iterationsToBest.set(i, 0);
+    }
+    synchronized (trace) {
+      trace.clear();
+    }
+  }
+
+  /**
+   * @param value A non-negative value.
+   * @return The index of the histogram bucket of the value.
+   */
+  static int bucket(long value) {
+    return value <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(value);
+  }
+
+  static long[] toArray(AtomicLongArray array) {
+    final long[] result = new long[array.length()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = array.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * Creates a new listener with a trace of
+   * {@link #DEFAULT_TRACE_CAPACITY} best solutions.
+   * @return A new listener.
+   */
+  public static HistogramSearchListener create() {
+    return create(DEFAULT_TRACE_CAPACITY);
+  }
+
+  /**
+   * Creates a new listener.
+   * @param traceCapacity The maximum number of best solutions in the trace,
+   *          must be non-negative.
+   * @return A new listener.
+   */
+  public static HistogramSearchListener create(int traceCapacity) {
+    checkArgument(traceCapacity >= 0,
+      "The trace capacity must be non-negative, is %s.", traceCapacity);
+    return new HistogramSearchListener(traceCapacity);
+  }
+
+  /**
+   * A best solution that was found by a search.
+   * @author Rinde van Lon
+   */
+  @AutoValue
+  public abstract static class BestSolution {
+    BestSolution() {}
+
+    /**
+     * @return The objective value of the solution.
+     */
+    public abstract double getObjective();
+
+    /**
+     * @return The iteration in which the solution was found.
+     */
+    public abstract long getIteration();
+
+    /**
+     * @return The time between the start of the search and the moment the
+     *         solution was found, in nanoseconds.
+     */
+    public abstract long getElapsedNanos();
+
+    static BestSolution create(double objective, long iteration,
+        long elapsedNanos) {
+      return new AutoValue_HistogramSearchListener_BestSolution(objective,
+        iteration, elapsedNanos);
+    }
+  }
+}
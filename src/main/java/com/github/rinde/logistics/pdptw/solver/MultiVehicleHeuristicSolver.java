@@ -16,12 +16,20 @@
 package com.github.rinde.logistics.pdptw.solver;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Verify.verifyNotNull;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 import javax.measure.unit.SI;
@@ -29,18 +37,36 @@ import javax.measure.unit.SI;
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
 
+import com.github.rinde.logistics.pdptw.solver.SearchListener.Move;
+import com.github.rinde.logistics.pdptw.solver.SolverBudget.Limit;
 import com.github.rinde.rinsim.central.Solver;
 import com.github.rinde.rinsim.central.SolverValidator;
 import com.github.rinde.rinsim.central.arrays.ArraysSolverValidator;
-import com.github.rinde.rinsim.central.arrays.ArraysSolvers;
 import com.github.rinde.rinsim.central.arrays.MultiVehicleArraysSolver;
 import com.github.rinde.rinsim.central.arrays.MultiVehicleSolverAdapter;
 import com.github.rinde.rinsim.central.arrays.SolutionObject;
 import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 import com.google.common.primitives.Ints;
 
 /**
  * A heuristic implementation of the {@link MultiVehicleArraysSolver} interface.
+ * <p>
+ * By default the late acceptance search uses the moves of
+ * {@link #DEFAULT_MOVES}, the additional moves of {@link #ALL_MOVES} (pair
+ * relocation, exchange and or-opt) can be enabled via the {@link Options}.
+ * <p>
+ * In multi-start mode several independent late acceptance trajectories are
+ * run in parallel, each with its own random generator of which the seed is
+ * drawn from the random generator of the solver, the best solution of all
+ * trajectories is returned. Optionally, the trajectories periodically share
+ * their best solution: a trajectory continues from the shared best solution
+ * when it is better than its current solution. Without sharing the result is
+ * deterministic, with sharing it depends on the scheduling of the threads.
  * 
  * @author Tony
  * 
@@ -49,13 +75,44 @@ public class MultiVehicleHeuristicSolver implements MultiVehicleArraysSolver {
 
   private static final int TRAVEL_TIME_WEIGHT = 1;
   private static final int TARDINESS_WEIGHT = 1;
+  // the order in which the move types are selected
+  private static final Move[] MOVE_ORDER = {Move.REASSIGNMENT, Move.SHIFT,
+      Move.RELOCATE_PAIR, Move.EXCHANGE, Move.OR_OPT};
+  // the maximum number of locations that is moved by an or-opt move
+  private static final int OR_OPT_LENGTH = 3;
+  // the maximum number of attempts to find a pair in another vehicle
+  private static final int EXCHANGE_ATTEMPTS = 10;
+
+  /**
+   * The moves of the original algorithm: reassignment and shift.
+   */
+  public static final ImmutableSet<Move> DEFAULT_MOVES = Sets
+      .immutableEnumSet(Move.REASSIGNMENT, Move.SHIFT);
+
+  /**
+   * All moves that are supported by this solver.
+   */
+  public static final ImmutableSet<Move> ALL_MOVES = Sets.immutableEnumSet(
+      Arrays.asList(MOVE_ORDER));
+
   private final boolean debug;
   private final boolean strictMode;
 
   private final RandomGenerator rand;
   private final int listLength;
-  private final int maxNrOfNonImprovements;
+  private final SolverBudget budget;
+  private final Optional<ExecutorService> executor;
+  private final int starts;
+  private final int sharingInterval;
+  private final SearchListener listener;
+  private final SolverAdaptation adaptation;
+  // the enabled moves in MOVE_ORDER
+  private final Move[] operators;
   private SolutionObject[] sols;
+  @Nullable
+  private SearchStatistics statistics;
+  @Nullable
+  private ProblemStructure structure;
 
   public MultiVehicleHeuristicSolver(RandomGenerator rand, int listLength,
       int maxNrOfNonImprovements) {
@@ -64,51 +121,69 @@ public class MultiVehicleHeuristicSolver implements MultiVehicleArraysSolver {
 
   public MultiVehicleHeuristicSolver(RandomGenerator rand, int listLength,
       int maxNrOfNonImprovements, boolean debug, boolean strictMode) {
+    this(rand, options(listLength, budget(maxNrOfNonImprovements))
+        .withDebug(debug).withStrictMode(strictMode));
+  }
+
+  /**
+   * Creates a solver with the specified options.
+   * @param rand The random generator, in multi-start mode the seeds of the
+   *          trajectories are drawn from it.
+   * @param options The options of the solver.
+   */
+  public MultiVehicleHeuristicSolver(RandomGenerator rand, Options options) {
     this.rand = rand;
-    this.listLength = listLength;
-    this.maxNrOfNonImprovements = maxNrOfNonImprovements;
-    this.debug = debug;
-    this.strictMode = strictMode;
+    listLength = options.getListLength();
+    budget = options.getBudget();
+    debug = options.isDebug();
+    strictMode = options.isStrictMode();
+    executor = options.getExecutor();
+    starts = options.getStarts();
+    sharingInterval = options.getSharingInterval();
+    adaptation = options.getAdaptation();
+    listener = options.getListener();
+    final List<Move> enabled = new ArrayList<Move>();
+    for (final Move m : MOVE_ORDER) {
+      if (options.getMoves().contains(m)) {
+        enabled.add(m);
+      }
+    }
+    operators = enabled.toArray(new Move[enabled.size()]);
+  }
+
+  /**
+   * @return The statistics of the last invocation of
+   *         {@link #solve}
+   *         or {@link Optional#absent()} if it has not been invoked yet.
+   */
+  public Optional<SearchStatistics> getLastStatistics() {
+    return Optional.fromNullable(statistics);
+  }
+
+  // the budget that corresponds to the original stopping criterion
+  static SolverBudget budget(int maxNrOfNonImprovements) {
+    return SolverBudget.unlimited().withMaxNonImprovements(
+        maxNrOfNonImprovements);
   }
 
   @Override
-  public SolutionObject[] solve(int[][] travelTime, int[] releaseDates,
-      int[] dueDates, int[][] servicePairs, int[] serviceTimes,
-      int[][] vehicleTravelTimes, int[][] inventories,
-      int[] remainingServiceTimes, int[] currentDestinations,
-      @Nullable SolutionObject[] currentSolutions) {
+  public SolutionObject[] solve(final int[][] travelTime,
+      final int[] releaseDates, final int[] dueDates,
+      final int[][] servicePairs, final int[] serviceTimes,
+      final int[][] vehicleTravelTimes, final int[][] inventories,
+      final int[] remainingServiceTimes, final int[] currentDestinations,
+      @Nullable final SolutionObject[] currentSolutions) {
     final int n = releaseDates.length;
     final int v = vehicleTravelTimes.length;
 
     /* Calculate useful data structures */
-    final int[] pickupToDeliveryMap = new int[n];
-    for (int i = 0; i < pickupToDeliveryMap.length; i++) {
-      pickupToDeliveryMap[i] = -1;
-    }
-    final int[] deliveryToPickupMap = new int[n];
-    for (int i = 0; i < deliveryToPickupMap.length; i++) {
-      deliveryToPickupMap[i] = -1;
-    }
-    for (final int[] pair : servicePairs) {
-      final int pickup = pair[0];
-      final int delivery = pair[1];
-      pickupToDeliveryMap[pickup] = delivery;
-      deliveryToPickupMap[delivery] = pickup;
-    }
-
-    final int[] fixedVehicleAssignment = new int[n];
-    for (int i = 0; i < n; i++) {
-      // not fixed = -1
-      fixedVehicleAssignment[i] = -1;
-    }
-    for (final int[] inventoryPair : inventories) {
-      fixedVehicleAssignment[inventoryPair[1]] = inventoryPair[0];
-    }
-    for (int veh = 0; veh < v; veh++) {
-      if (currentDestinations[veh] != 0) {
-        fixedVehicleAssignment[currentDestinations[veh]] = veh;
-      }
-    }
+    structure = structure == null
+        ? ProblemStructure.create(n, servicePairs, inventories,
+            currentDestinations)
+        : structure.rebuild(n, servicePairs, inventories, currentDestinations);
+    final int[] pickupToDeliveryMap = structure.pickupToDeliveryMap;
+    final int[] deliveryToPickupMap = structure.deliveryToPickupMap;
+    final int[] fixedVehicleAssignment = structure.fixedVehicleAssignment;
     // --
 
     //
@@ -129,28 +204,112 @@ public class MultiVehicleHeuristicSolver implements MultiVehicleArraysSolver {
     // remainingServiceTimes);
     //
 
-    sols = solveWithLateAcceptance(n, v, travelTime, releaseDates, dueDates,
-        servicePairs, serviceTimes, vehicleTravelTimes, inventories,
-        remainingServiceTimes, currentDestinations, pickupToDeliveryMap,
-        deliveryToPickupMap, fixedVehicleAssignment);
+    final SolverBudget.Tracker tracker = budget.start();
+    if (starts == 1) {
+      final Trajectory trajectory = solveWithLateAcceptance(rand, null,
+          tracker, n, v, travelTime, releaseDates, dueDates, servicePairs,
+          serviceTimes, vehicleTravelTimes, inventories,
+          remainingServiceTimes, currentDestinations, pickupToDeliveryMap,
+          deliveryToPickupMap, fixedVehicleAssignment, currentSolutions);
+      statistics = tracker.statistics(trajectory.iterations, trajectory.limit);
+      sols = trajectory.solution;
+      return sols;
+    }
+
+    /* Multi-start: one trajectory per seed */
+    @Nullable
+    final SharedBest shared = sharingInterval > 0 ? new SharedBest() : null;
+    final List<Callable<Trajectory>> trajectories =
+        new ArrayList<Callable<Trajectory>>();
+    for (int s = 0; s < starts; s++) {
+      final long seed = rand.nextLong();
+      trajectories.add(new Callable<Trajectory>() {
+        @Override
+        public Trajectory call() {
+          return solveWithLateAcceptance(new MersenneTwister(seed), shared,
+              tracker, n, v, travelTime, releaseDates, dueDates, servicePairs,
+              serviceTimes, vehicleTravelTimes, inventories,
+              remainingServiceTimes, currentDestinations, pickupToDeliveryMap,
+              deliveryToPickupMap, fixedVehicleAssignment, currentSolutions);
+        }
+      });
+    }
+    Trajectory best = null;
+    double bestObj = Double.POSITIVE_INFINITY;
+    long iterations = 0;
+    for (final Trajectory trajectory : execute(trajectories)) {
+      final double obj = getTotalObjective(trajectory.solution);
+      if (obj < bestObj) {
+        best = trajectory;
+        bestObj = obj;
+      }
+      iterations += trajectory.iterations;
+    }
+    statistics = tracker.statistics(iterations, verifyNotNull(best).limit);
+    sols = best.solution;
     return sols;
   }
 
-  private SolutionObject[] solveWithLateAcceptance(int n, int v,
+  // the new list repeats the old list, such that the acceptance threshold is
+  // not lowered
+  static double[] grow(double[] laList, int length) {
+    final double[] newList = new double[length];
+    for (int l = 0; l < length; l++) {
+      newList[l] = laList[l % laList.length];
+    }
+    return newList;
+  }
+
+  private List<Trajectory> execute(List<Callable<Trajectory>> tasks) {
+    final List<Trajectory> results = new ArrayList<Trajectory>();
+    try {
+      if (executor.isPresent()) {
+        for (final Future<Trajectory> f : executor.get().invokeAll(tasks)) {
+          results.add(f.get());
+        }
+      } else {
+        for (final Callable<Trajectory> task : tasks) {
+          results.add(task.call());
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (final ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } catch (final Exception e) {
+      throw Throwables.propagate(e);
+    }
+    return results;
+  }
+
+  private Trajectory solveWithLateAcceptance(RandomGenerator rng,
+      @Nullable SharedBest shared, SolverBudget.Tracker tracker, int n, int v,
       int[][] travelTime, int[] releaseDates, int[] dueDates,
       int[][] servicePairs, int[] serviceTimes, int[][] vehicleTravelTimes,
       int[][] inventories, int[] remainingServiceTimes,
       int[] currentDestinations, int[] pickupToDeliveryMap,
-      int[] deliveryToPickupMap, int[] fixedVehicleAssignment) {
-
-    /* Determine a random feasible vehicle assignment */
-    final int[] initialVehicleAssignment = randomFeasibleAssignment(n, v,
-        fixedVehicleAssignment, pickupToDeliveryMap, deliveryToPickupMap,
-        currentDestinations);
+      int[] deliveryToPickupMap, int[] fixedVehicleAssignment,
+      @Nullable SolutionObject[] currentSolutions) {
 
-    /* Determine a random feasible permutation of orders */
-    final List<Integer> perm0 = generateFeasibleRandomPermutation(n,
-        servicePairs, currentDestinations, dueDates);
+    final int[] initialVehicleAssignment;
+    final List<Integer> perm0;
+    if (currentSolutions != null) {
+      /* Start from the current solutions */
+      initialVehicleAssignment = new int[n];
+      perm0 = warmStartPermutation(rng, n, v, currentSolutions, servicePairs,
+          fixedVehicleAssignment, pickupToDeliveryMap, currentDestinations,
+          dueDates, initialVehicleAssignment);
+    } else {
+      /* Determine a random feasible vehicle assignment */
+      initialVehicleAssignment = randomFeasibleAssignment(rng, n, v,
+          fixedVehicleAssignment, pickupToDeliveryMap, deliveryToPickupMap,
+          currentDestinations);
+
+      /* Determine a random feasible permutation of orders */
+      perm0 = generateFeasibleRandomPermutation(n, servicePairs,
+          currentDestinations, dueDates);
+    }
 
     /* Construct a solution with this permutation and vehicle assignment */
     final SolutionObject[] sol0 = construct(n, v, Ints.toArray(perm0),
@@ -170,27 +329,74 @@ public class MultiVehicleHeuristicSolver implements MultiVehicleArraysSolver {
     final double obj0 = getTotalObjective(sol0);
 
     /* initialize LA list with initial objective value */
-    final double[] laList = new double[listLength];
+    double[] laList = new double[listLength];
     for (int l = 0; l < listLength; l++) {
       laList[l] = obj0;
     }
-
-    List<Integer> currentPerm = new ArrayList<Integer>(perm0);
-    int[] currentVehicleAssignment = Arrays.copyOf(initialVehicleAssignment,
+    // the number of iterations without improvement of the current solution,
+    // the list grows when the search has converged for the current length
+    int stagnation = 0;
+    @Nullable
+    final OperatorSelector selector = adaptation.isOperatorSelectionEnabled()
+        ? new OperatorSelector(adaptation, operators.length) : null;
+
+    /*
+     * The moves are applied in place on the permutation and the vehicle
+     * assignment. A rejected move is undone by restoring the modified range
+     * of the permutation from the accepted permutation and by restoring the
+     * modified vehicle assignments. The route of each vehicle is maintained
+     * alongside the permutation. A move modifies the routes of at most two
+     * vehicles, these are only evaluated from the first modified position of
+     * the route onwards, in preallocated buffers. As such, an iteration does
+     * not allocate unless the move is accepted.
+     */
+    final int[] perm = Ints.toArray(perm0);
+    final int[] acceptedPerm = Arrays.copyOf(perm, perm.length);
+    final int[] vehicleAssignment = Arrays.copyOf(initialVehicleAssignment,
         initialVehicleAssignment.length);
-    double currentObj = obj0;
-    SolutionObject[] currentSol = sol0;
+    final int[] undoOrders = new int[4];
+    final int[] undoVehicles = new int[4];
+    // the pickups of the pairs that are not fixed to a vehicle
+    final int[] movablePickups = movablePickups(n, pickupToDeliveryMap,
+        fixedVehicleAssignment);
+    // the position of each element in the accepted permutation
+    final int[] elementLocations = new int[n];
+    // the position of each element in the accepted route of its vehicle
+    final int[] routeIndices = new int[n];
+    final RouteBuffer[] routes = new RouteBuffer[v];
+    for (int j = 0; j < v; j++) {
+      routes[j] = new RouteBuffer(n);
+    }
+    initRoutes(n, perm, vehicleAssignment, travelTime, releaseDates, dueDates,
+        serviceTimes, vehicleTravelTimes, remainingServiceTimes, routes,
+        elementLocations, routeIndices);
+    final RouteBuffer firstRoute = new RouteBuffer(n);
+    final RouteBuffer secondRoute = new RouteBuffer(n);
+    // the fixed first locations are at positions [1,numFixed]
+    int numFixed = 0;
+    for (final int dest : currentDestinations) {
+      if (dest != 0) {
+        numFixed++;
+      }
+    }
 
-    // List<Integer> bestPerm = new ArrayList<Integer>(perm0);
-    int[] bestVehicleAssignment = Arrays.copyOf(initialVehicleAssignment,
-        initialVehicleAssignment.length);
+    final SolutionObject[] currentSol = Arrays.copyOf(sol0, v);
+    double currentObj = obj0;
+    final SolutionObject[] bestSol = Arrays.copyOf(sol0, v);
     double bestObj = obj0;
-    SolutionObject[] bestSol = sol0;
+    // only needed for sharing the best solution with other trajectories
+    final int[] bestPerm = Arrays.copyOf(perm, perm.length);
+    final int[] bestVehicleAssignment = Arrays.copyOf(vehicleAssignment,
+        vehicleAssignment.length);
+    long bestIt = 0;
+    long bestNanos = tracker.elapsedNanos();
+    listener.searchStarted(obj0);
 
     int nrOfNonImprovements = 0;
-    boolean stagnation = false;
     int it = 0;
-    while (!stagnation) {
+    Limit limit;
+    while ((limit = tracker.check(it, nrOfNonImprovements)) == null) {
+      final long startNanos = selector == null ? 0L : System.nanoTime();
       if (debug) {
         if (it % 100 == 0) {
           System.out.println("[" + it + "] Current:\t " + (currentObj / 60d)
@@ -198,86 +404,81 @@ public class MultiVehicleHeuristicSolver implements MultiVehicleArraysSolver {
         }
       }
 
-      final List<Integer> newPerm = new ArrayList<Integer>(currentPerm);
-      final int[] newVehicleAssignment = Arrays.copyOf(
-          currentVehicleAssignment, currentVehicleAssignment.length);
-
-      SolutionObject[] newSol = null;
+      int undoSize = 0;
+      // the modified range of the permutation
+      int from = 0;
+      int to = -1;
+      final int firstVehicle;
+      int secondVehicle = -1;
+      // the first modified position of the route of each vehicle, -1 if the
+      // route is not modified
+      int firstFrom = -1;
+      int secondFrom = -1;
+      int operator = 0;
+      final Move move;
+      if (n <= 4) {
+        move = Move.REASSIGNMENT;
+      } else if (selector == null) {
+        if (operators.length == 2) {
+          move = rng.nextBoolean() ? operators[0] : operators[1];
+        } else {
+          move = operators[rng.nextInt(operators.length)];
+        }
+      } else {
+        operator = selector.select(rng);
+        move = operators[operator];
+      }
 
       // move 1:change vehicle assignment
-      if (newPerm.size() <= 4 || rand.nextBoolean()) {
-        // System.out.println("VM");
-        int ro = 1 + rand.nextInt(n - 2); // random order
+      if (move == Move.REASSIGNMENT) {
+        int ro = 1 + rng.nextInt(n - 2); // random order
         while (fixedVehicleAssignment[ro] != -1
         // if is fixed or its pickup is fixed
             || (deliveryToPickupMap[ro] != -1 && fixedVehicleAssignment[deliveryToPickupMap[ro]] != -1)) {
-          ro = rand.nextInt(n); // new random order
+          ro = rng.nextInt(n); // new random order
         }
-        final int rv = rand.nextInt(v); // random vehicle
-        newVehicleAssignment[ro] = rv; // assign
+        final int rv = rng.nextInt(v); // random vehicle
+        firstVehicle = vehicleAssignment[ro];
+        secondVehicle = rv;
+
+        undoOrders[undoSize] = ro;
+        undoVehicles[undoSize++] = vehicleAssignment[ro];
+        vehicleAssignment[ro] = rv; // assign
+        // pickup and delivery must have the same vehicle
         if (deliveryToPickupMap[ro] != -1) {
-          newVehicleAssignment[deliveryToPickupMap[ro]] = rv; // pickup must
-                                                              // have same
-                                                              // vehicle as
-                                                              // delivery
+          undoOrders[undoSize] = deliveryToPickupMap[ro];
+          undoVehicles[undoSize++] = vehicleAssignment[deliveryToPickupMap[ro]];
+          vehicleAssignment[deliveryToPickupMap[ro]] = rv;
         }
         if (pickupToDeliveryMap[ro] != -1) {
-          newVehicleAssignment[pickupToDeliveryMap[ro]] = rv; // delivery must
-                                                              // have same
-                                                              // vehicle as
-                                                              // pickup
-        }
-
-        final int originalVehicle = currentVehicleAssignment[ro];
-
-        // newSol =
-        // construct(n,v,intListToArray(newPerm),newVehicleAssignment,travelTime,
-        // releaseDates, dueDates,
-        // servicePairs, serviceTimes, vehicleTravelTimes, inventories,
-        // remainingServiceTimes);
-        // delta eval
-        newSol = copySolution(currentSol);
-        final int[] newPermAr = Ints.toArray(newPerm);
-        final SolutionObject newSolForOriginalVehicle = constructSingleVehicle(
-            n, newPermAr, newVehicleAssignment, travelTime, releaseDates,
-            dueDates, serviceTimes, vehicleTravelTimes, remainingServiceTimes,
-            originalVehicle);
-        newSol[originalVehicle] = newSolForOriginalVehicle;
-        final SolutionObject newSolForNewVehicle = constructSingleVehicle(n,
-            newPermAr, newVehicleAssignment, travelTime, releaseDates,
-            dueDates, serviceTimes, vehicleTravelTimes, remainingServiceTimes,
-            rv);
-        newSol[rv] = newSolForNewVehicle;
-
-        // for (int k = 0; k < dsol.length; k++) {
-        // if (getTotalObjective(newSol)!=getTotalObjective(dsol)){
-        // System.out.println("Difference in obj!");
-        // for (int q = 0; q < dsol.length; q++) {
-        // System.out.println(dsol[q]);
-        // }
-        // System.out.println("---");
-        // for (int q = 0; q < newSol.length; q++) {
-        // System.out.println(newSol[q]);
-        // }
-        // System.out.println();
-        // }
-        // }
-
-      } else {
-        // System.out.println("FM");
-        final int[] elementLocations = new int[n];
-        for (int i = 0; i < n; i++) {
-          elementLocations[currentPerm.get(i)] = i;
+          undoOrders[undoSize] = pickupToDeliveryMap[ro];
+          undoVehicles[undoSize++] = vehicleAssignment[pickupToDeliveryMap[ro]];
+          vehicleAssignment[pickupToDeliveryMap[ro]] = rv;
+        }
+        // the depot is not part of a route
+        if (rv != firstVehicle && ro != 0 && ro != n - 1) {
+          int partner = deliveryToPickupMap[ro] != -1
+              ? deliveryToPickupMap[ro] : pickupToDeliveryMap[ro];
+          if (partner == -1) {
+            partner = ro;
+          }
+          firstFrom = remove(routes[firstVehicle], firstRoute,
+              Math.min(routeIndices[ro], routeIndices[partner]), firstVehicle,
+              vehicleAssignment);
+          secondFrom = insert(routes[rv], secondRoute, elementLocations,
+              elementLocations[ro] < elementLocations[partner] ? ro : partner,
+              elementLocations[ro] < elementLocations[partner] ? partner : ro);
         }
-        if (rand.nextBoolean()) {
+      } else if (move == Move.SHIFT) {
+        int i = 0;
+        int j = 0;
+        if (rng.nextBoolean()) {
           // try all forward shifts
           boolean ok = false;
-          int i = 0;
-          int j = 0;
           do {
             ok = true;
-            i = 1 + rand.nextInt(n - 3);
-            final int delivery = pickupToDeliveryMap[currentPerm.get(i)];
+            i = 1 + rng.nextInt(n - 3);
+            final int delivery = pickupToDeliveryMap[perm[i]];
             int deliveryLocation = n;
             if (delivery != -1) {
               deliveryLocation = elementLocations[delivery];
@@ -287,34 +488,16 @@ public class MultiVehicleHeuristicSolver implements MultiVehicleArraysSolver {
               continue;
             }
             j = i + 1
-                + rand.nextInt(Math.min(deliveryLocation, n - 1) - (i + 1));
+                + rng.nextInt(Math.min(deliveryLocation, n - 1) - (i + 1));
 
           } while (!ok);
-
-          final int el = newPerm.remove(i);
-          newPerm.add(j, el);
-
-          putFixedFirstLocationsAtTheBeginning(n, currentDestinations, newPerm);
-
-          // delta eval
-          newSol = copySolution(currentSol);
-          final int veh = newVehicleAssignment[el];
-          final SolutionObject newSolForVehicle = constructSingleVehicle(n,
-              Ints.toArray(newPerm), newVehicleAssignment, travelTime,
-              releaseDates, dueDates, serviceTimes, vehicleTravelTimes,
-              remainingServiceTimes, veh);
-          newSol[veh] = newSolForVehicle;
-
         } else {
-
           // try all backward shifts
           boolean ok = false;
-          int i = 0;
-          int j = 0;
           do {
             ok = true;
-            i = 2 + rand.nextInt(n - 3);
-            final int pickup = deliveryToPickupMap[currentPerm.get(i)];
+            i = 2 + rng.nextInt(n - 3);
+            final int pickup = deliveryToPickupMap[perm[i]];
             int pickupLocation = 0;
             if (pickup != -1) {
               pickupLocation = elementLocations[pickup];
@@ -324,27 +507,155 @@ public class MultiVehicleHeuristicSolver implements MultiVehicleArraysSolver {
               continue;
             }
             j = Math.max(1, pickupLocation + 1)
-                + rand.nextInt(i - Math.max(1, pickupLocation + 1));
+                + rng.nextInt(i - Math.max(1, pickupLocation + 1));
           } while (!ok);
-
-          final int el = newPerm.remove(i);
-          newPerm.add(j, el);
-          // System.out.println("BM "+el+" : "+i+"->"+j);
-
-          putFixedFirstLocationsAtTheBeginning(n, currentDestinations, newPerm);
-
-          // delta eval
-          newSol = copySolution(currentSol);
-          final int veh = newVehicleAssignment[el];
-          final SolutionObject newSolForVehicle = constructSingleVehicle(n,
-              Ints.toArray(newPerm), newVehicleAssignment, travelTime,
-              releaseDates, dueDates, serviceTimes, vehicleTravelTimes,
-              remainingServiceTimes, veh);
-          newSol[veh] = newSolForVehicle;
+        }
+        final int el = shift(perm, i, j);
+        from = Math.min(i, j);
+        to = Math.max(i, j);
+
+        // only the first numFixed + 1 positions can contain a fixed first
+        // location that is not at the beginning
+        final int fixedTo = putFixedFirstLocationsAtTheBeginning(n,
+            currentDestinations, perm, Math.max(to, numFixed + 1));
+        if (fixedTo > 0) {
+          from = 1;
+          to = Math.max(to, fixedTo);
+        }
+        firstVehicle = vehicleAssignment[el];
+        firstFrom = reorder(routes[firstVehicle], firstRoute, perm,
+            acceptedPerm, from, to, firstVehicle, vehicleAssignment,
+            routeIndices);
+      } else if (move == Move.RELOCATE_PAIR) {
+        // move 3: move a pickup and its delivery to new positions of a random
+        // vehicle, the fixed first locations remain at the beginning
+        if (movablePickups.length == 0) {
+          firstVehicle = 0;
+        } else {
+          final int p = movablePickups[rng.nextInt(movablePickups.length)];
+          final int d = pickupToDeliveryMap[p];
+          final int rv = rng.nextInt(v);
+          final int x = numFixed + 1 + rng.nextInt(n - 3 - numFixed);
+          final int y = x + 1 + rng.nextInt(n - 2 - x);
+          from = Math.min(elementLocations[p], x);
+          to = Math.max(elementLocations[d], y);
+          relocate(perm, acceptedPerm, from, to, p, d, x, y);
+
+          firstVehicle = vehicleAssignment[p];
+          secondVehicle = rv;
+          undoOrders[undoSize] = p;
+          undoVehicles[undoSize++] = firstVehicle;
+          undoOrders[undoSize] = d;
+          undoVehicles[undoSize++] = firstVehicle;
+          vehicleAssignment[p] = rv;
+          vehicleAssignment[d] = rv;
+          firstFrom = rebuild(routes[firstVehicle], firstRoute, perm, from,
+              to, firstVehicle, vehicleAssignment, elementLocations);
+          if (rv != firstVehicle) {
+            secondFrom = rebuild(routes[rv], secondRoute, perm, from, to, rv,
+                vehicleAssignment, elementLocations);
+          }
+        }
+      } else if (move == Move.EXCHANGE) {
+        // move 4: two pairs of different vehicles swap their positions and
+        // vehicles
+        int p1 = -1;
+        int p2 = -1;
+        if (movablePickups.length > 1 && v > 1) {
+          p1 = movablePickups[rng.nextInt(movablePickups.length)];
+          for (int a = 0; a < EXCHANGE_ATTEMPTS && p2 == -1; a++) {
+            final int candidate = movablePickups[rng
+                .nextInt(movablePickups.length)];
+            if (vehicleAssignment[candidate] != vehicleAssignment[p1]) {
+              p2 = candidate;
+            }
+          }
+        }
+        if (p2 == -1) {
+          firstVehicle = 0;
+        } else {
+          final int d1 = pickupToDeliveryMap[p1];
+          final int d2 = pickupToDeliveryMap[p2];
+          perm[elementLocations[p1]] = p2;
+          perm[elementLocations[d1]] = d2;
+          perm[elementLocations[p2]] = p1;
+          perm[elementLocations[d2]] = d1;
+          from = Math.min(elementLocations[p1], elementLocations[p2]);
+          to = Math.max(elementLocations[d1], elementLocations[d2]);
+
+          firstVehicle = vehicleAssignment[p1];
+          secondVehicle = vehicleAssignment[p2];
+          undoOrders[undoSize] = p1;
+          undoVehicles[undoSize++] = firstVehicle;
+          undoOrders[undoSize] = d1;
+          undoVehicles[undoSize++] = firstVehicle;
+          undoOrders[undoSize] = p2;
+          undoVehicles[undoSize++] = secondVehicle;
+          undoOrders[undoSize] = d2;
+          undoVehicles[undoSize++] = secondVehicle;
+          vehicleAssignment[p1] = secondVehicle;
+          vehicleAssignment[d1] = secondVehicle;
+          vehicleAssignment[p2] = firstVehicle;
+          vehicleAssignment[d2] = firstVehicle;
+          firstFrom = rebuild(routes[firstVehicle], firstRoute, perm, from,
+              to, firstVehicle, vehicleAssignment, elementLocations);
+          secondFrom = rebuild(routes[secondVehicle], secondRoute, perm, from,
+              to, secondVehicle, vehicleAssignment, elementLocations);
+        }
+      } else {
+        // move 5: or-opt, move a segment of consecutive locations of a route
+        // to another position in the same route
+        firstVehicle = rng.nextInt(v);
+        final int[] route = routes[firstVehicle].route;
+        // the range of route positions that can be moved
+        final int first = currentDestinations[firstVehicle] != 0 ? 2 : 1;
+        final int last = routes[firstVehicle].length - 2;
+        if (last > first) {
+          final int k = 1 + rng.nextInt(Math.min(OR_OPT_LENGTH, last - first));
+          final int s = first + rng.nextInt(last - first - k + 2);
+          // the range of start positions of the segment in which no pickup
+          // is moved after its delivery
+          int low = first;
+          int high = last - k + 1;
+          for (int q = s; q < s + k; q++) {
+            final int pickup = deliveryToPickupMap[route[q]];
+            if (pickup != -1 && routeIndices[pickup] < s) {
+              low = Math.max(low, routeIndices[pickup] + 1);
+            }
+            final int delivery = pickupToDeliveryMap[route[q]];
+            if (delivery != -1 && routeIndices[delivery] >= s + k) {
+              high = Math.min(high, routeIndices[delivery] - k);
+            }
+          }
+          if (high > low) {
+            int t = low + rng.nextInt(high - low);
+            if (t >= s) {
+              t++;
+            }
+            from = elementLocations[route[Math.min(s, t)]];
+            to = elementLocations[route[Math.max(s, t) + k - 1]];
+            orOpt(perm, route, elementLocations, s, t, k);
+            firstFrom = reorder(routes[firstVehicle], firstRoute, perm,
+                acceptedPerm, from, to, firstVehicle, vehicleAssignment,
+                routeIndices);
+          }
         }
       }
 
-      final double newObj = getTotalObjective(newSol);
+      // delta eval
+      double newObj = currentObj;
+      if (firstFrom >= 0) {
+        newObj += evaluateRoute(firstRoute, firstFrom, routes[firstVehicle],
+            firstVehicle, travelTime, releaseDates, dueDates, serviceTimes,
+            vehicleTravelTimes, remainingServiceTimes)
+            - currentSol[firstVehicle].objectiveValue;
+      }
+      if (secondFrom >= 0) {
+        newObj += evaluateRoute(secondRoute, secondFrom, routes[secondVehicle],
+            secondVehicle, travelTime, releaseDates, dueDates, serviceTimes,
+            vehicleTravelTimes, remainingServiceTimes)
+            - currentSol[secondVehicle].objectiveValue;
+      }
       if (newObj < 0) {
         throw new RuntimeException("Found a negative objective value: "
             + newObj);
@@ -353,46 +664,211 @@ public class MultiVehicleHeuristicSolver implements MultiVehicleArraysSolver {
       // ADDED BY RINDE
       // only for checking feasibility
       if (strictMode) {
+        final SolutionObject[] newSol = Arrays.copyOf(currentSol, v);
+        if (firstFrom >= 0) {
+          firstRoute.copyPrefix(routes[firstVehicle], firstFrom);
+          newSol[firstVehicle] = firstRoute.toSolutionObject();
+        }
+        if (secondFrom >= 0) {
+          secondRoute.copyPrefix(routes[secondVehicle], secondFrom);
+          newSol[secondVehicle] = secondRoute.toSolutionObject();
+        }
         ArraysSolverValidator.validateOutputs(newSol, travelTime, releaseDates,
             dueDates, servicePairs, serviceTimes, vehicleTravelTimes,
             inventories, remainingServiceTimes, currentDestinations);
       }
       // END ADDED BY RINDE
 
-      if (newObj <= laList[it % listLength]) {
+      final boolean accept = newObj <= laList[it % laList.length];
+      listener.moveEvaluated(move, accept);
+      final double improvement = accept ? Math.max(0d, currentObj - newObj)
+          : 0d;
+      if (accept) {
         // accept
-        currentPerm = newPerm;
-        currentVehicleAssignment = newVehicleAssignment;
+        if (to >= from) {
+          System.arraycopy(perm, from, acceptedPerm, from, to - from + 1);
+          for (int k = from; k <= to; k++) {
+            elementLocations[perm[k]] = k;
+          }
+        }
+        if (firstFrom >= 0) {
+          routes[firstVehicle].copySuffix(firstRoute, firstFrom, routeIndices);
+          currentSol[firstVehicle] = routes[firstVehicle].toSolutionObject();
+        }
+        if (secondFrom >= 0) {
+          routes[secondVehicle].copySuffix(secondRoute, secondFrom,
+              routeIndices);
+          currentSol[secondVehicle] = routes[secondVehicle].toSolutionObject();
+        }
         currentObj = newObj;
-        currentSol = newSol;
-
-        // if (newObj < laList[it % L]) nrOfNonAcceptances=0;
 
         if (newObj < bestObj) {
-          // better than best
-          bestSol = copySolution(newSol);
-          // bestPerm = new ArrayList<Integer>(newPerm);
+          // better than best, the solution objects are never modified so
+          // they can be shared
+          System.arraycopy(currentSol, 0, bestSol, 0, v);
           bestObj = newObj;
-          bestVehicleAssignment = Arrays.copyOf(newVehicleAssignment,
-              newVehicleAssignment.length);
+          bestIt = it;
+          bestNanos = tracker.elapsedNanos();
+          listener.bestFound(bestObj, bestIt, bestNanos);
+          if (shared != null) {
+            System.arraycopy(perm, 0, bestPerm, 0, n);
+            System.arraycopy(vehicleAssignment, 0, bestVehicleAssignment, 0,
+                vehicleAssignment.length);
+          }
           nrOfNonImprovements = 0;
           if (debug) {
             System.out.println("Found new best solution with objective: "
                 + (newObj / 60d));
           }
         }
-
+      } else {
+        // undo
+        if (to >= from) {
+          System.arraycopy(acceptedPerm, from, perm, from, to - from + 1);
+        }
+        for (int u = undoSize - 1; u >= 0; u--) {
+          vehicleAssignment[undoOrders[u]] = undoVehicles[u];
+        }
       }
       nrOfNonImprovements++;
+      stagnation = improvement > 0 ? 0 : stagnation + 1;
+      if (selector != null) {
+        selector.update(operator, improvement,
+            System.nanoTime() - startNanos);
+      }
 
-      laList[it % listLength] = currentObj;
+      laList[it % laList.length] = currentObj;
       it++;
-      if (nrOfNonImprovements > maxNrOfNonImprovements) {
-        stagnation = true;
+      if (adaptation.isListLengthScheduleEnabled()
+          && laList.length < adaptation.getMaxListLength()
+          && stagnation >= (long) adaptation.getPatience() * laList.length) {
+        laList = grow(laList, Math.min(adaptation.getMaxListLength(),
+            2 * laList.length));
+        stagnation = 0;
+      }
+
+      if (shared != null && it % sharingInterval == 0) {
+        shared.offer(bestObj, bestSol, bestPerm, bestVehicleAssignment);
+        final double sharedObj = shared.adopt(currentObj, currentSol, perm,
+            vehicleAssignment);
+        if (sharedObj < currentObj) {
+          System.arraycopy(perm, 0, acceptedPerm, 0, n);
+          initRoutes(n, perm, vehicleAssignment, travelTime, releaseDates,
+              dueDates, serviceTimes, vehicleTravelTimes,
+              remainingServiceTimes, routes, elementLocations, routeIndices);
+          currentObj = sharedObj;
+          if (currentObj < bestObj) {
+            System.arraycopy(currentSol, 0, bestSol, 0, v);
+            System.arraycopy(perm, 0, bestPerm, 0, n);
+            System.arraycopy(vehicleAssignment, 0, bestVehicleAssignment, 0,
+                vehicleAssignment.length);
+            bestObj = currentObj;
+            bestIt = it;
+            bestNanos = tracker.elapsedNanos();
+            listener.bestFound(bestObj, bestIt, bestNanos);
+          }
+        }
       }
     }
+    if (shared != null) {
+      shared.offer(bestObj, bestSol, bestPerm, bestVehicleAssignment);
+    }
+    listener.searchFinished(it, tracker.elapsedNanos(), bestIt, bestNanos);
+    return new Trajectory(bestSol, it, limit);
+  }
+
+  /**
+   * Moves the element at position <code>i</code> to position <code>j</code>
+   * and shifts the elements in between.
+   * @param perm The permutation to modify.
+   * @param i The current position of the element.
+   * @param j The new position of the element.
+   * @return The moved element.
+   */
+  static int shift(int[] perm, int i, int j) {
+    final int el = perm[i];
+    if (i < j) {
+      System.arraycopy(perm, i + 1, perm, i, j - i);
+    } else {
+      System.arraycopy(perm, j, perm, j + 1, i - j);
+    }
+    perm[j] = el;
+    return el;
+  }
+
+  /**
+   * Moves two elements to new positions, the elements must be in the range
+   * <code>[from,to]</code> of the source. The other elements of the range
+   * keep their order.
+   * @param perm The permutation to modify, only the range is written.
+   * @param source The original permutation.
+   * @param from The start of the range.
+   * @param to The end of the range (inclusive).
+   * @param first The first element.
+   * @param second The second element.
+   * @param firstPos The new position of the first element.
+   * @param secondPos The new position of the second element, must be larger
+   *          than the new position of the first element.
+   */
+  static void relocate(int[] perm, int[] source, int from, int to, int first,
+      int second, int firstPos, int secondPos) {
+    int k = from;
+    for (int i = from; i <= to; i++) {
+      final int el = source[i];
+      if (el != first && el != second) {
+        if (k == firstPos) {
+          perm[k++] = first;
+        }
+        if (k == secondPos) {
+          perm[k++] = second;
+        }
+        perm[k++] = el;
+      }
+    }
+    if (k == firstPos) {
+      perm[k++] = first;
+    }
+    if (k == secondPos) {
+      perm[k] = second;
+    }
+  }
+
+  /**
+   * Moves the segment of length <code>k</code> at position <code>s</code> of
+   * the route to position <code>t</code>. The route is not modified, the new
+   * order of the affected route positions is written into the positions of
+   * their elements in the permutation.
+   * @param perm The permutation to modify.
+   * @param route The route.
+   * @param elementLocations The position of each element in the permutation.
+   * @param s The start of the segment.
+   * @param t The new start of the segment.
+   * @param k The length of the segment.
+   */
+  static void orOpt(int[] perm, int[] route, int[] elementLocations, int s,
+      int t, int k) {
+    if (t < s) {
+      for (int i = t; i < s + k; i++) {
+        final int el = i < t + k ? route[s + i - t] : route[i - k];
+        perm[elementLocations[route[i]]] = el;
+      }
+    } else {
+      for (int i = s; i < t + k; i++) {
+        final int el = i < t ? route[i + k] : route[s + i - t];
+        perm[elementLocations[route[i]]] = el;
+      }
+    }
+  }
 
-    return bestSol;
+  static int[] movablePickups(int n, int[] pickupToDeliveryMap,
+      int[] fixedVehicleAssignment) {
+    final List<Integer> pickups = new ArrayList<Integer>();
+    for (int i = 1; i < n - 1; i++) {
+      if (pickupToDeliveryMap[i] != -1 && fixedVehicleAssignment[i] == -1) {
+        pickups.add(i);
+      }
+    }
+    return Ints.toArray(pickups);
   }
 
   public SolutionObject[] copySolution(SolutionObject[] sol) {
@@ -433,6 +909,27 @@ public class MultiVehicleHeuristicSolver implements MultiVehicleArraysSolver {
     }
   }
 
+  // returns the largest modified position, or 0 if nothing is modified, the
+  // fixed first locations must be at positions [1,limit]
+  private int putFixedFirstLocationsAtTheBeginning(int n,
+      int[] currentDestinations, int[] perm, int limit) {
+    int modified = 0;
+    for (int d = 0; d < currentDestinations.length; d++) {
+      if (currentDestinations[d] != 0) {
+        final int ffl = currentDestinations[d];
+        int fflLoc = -1;
+        for (int p = 1; p <= Math.min(limit, n - 2); p++) {
+          if (perm[p] == ffl) {
+            fflLoc = p;
+          }
+        }
+        shift(perm, fflLoc, 1);
+        modified = Math.max(modified, fflLoc);
+      }
+    }
+    return modified;
+  }
+
   /**
    * This method calculates the total objective cost from an array of
    * solutionObjects
@@ -488,65 +985,269 @@ public class MultiVehicleHeuristicSolver implements MultiVehicleArraysSolver {
       int[] vehicleAssignment, int[][] travelTime, int[] releaseDates,
       int[] dueDates, int[] serviceTimes, int[][] vehicleTravelTimes,
       int[] remainingServiceTimes, int j) {
+    final RouteBuffer buffer = new RouteBuffer(n);
+    evaluateSingleVehicle(n, permutation, vehicleAssignment, travelTime,
+        releaseDates, dueDates, serviceTimes, vehicleTravelTimes,
+        remainingServiceTimes, j, buffer);
+    return buffer.toSolutionObject();
+  }
+
+  /**
+   * Computes the route, arrival times and objective value of vehicle
+   * <code>j</code> in the specified buffer, this method does not allocate.
+   * @return The objective value of the vehicle.
+   */
+  private int evaluateSingleVehicle(int n, int[] permutation,
+      int[] vehicleAssignment, int[][] travelTime, int[] releaseDates,
+      int[] dueDates, int[] serviceTimes, int[][] vehicleTravelTimes,
+      int[] remainingServiceTimes, int j, RouteBuffer buffer) {
     /* calculate route */
-    final List<Integer> route = getRouteForVehicle(n, permutation,
-        vehicleAssignment, j);
-
-    /* calculate arrival times + track total travel time */
-    int totalTravelTime = 0;
-    final int[] arrivalTimes = new int[route.size()];
-    int previousT = Math.max(releaseDates[0], remainingServiceTimes[j]);
-    arrivalTimes[0] = 0;// previousT;
-    for (int i = 1; i < route.size(); i++) {
-      final int next = route.get(i);
+    final int[] route = buffer.route;
+    int length = 0;
+    route[length++] = 0;
+    for (final int i : permutation) {
+      if (vehicleAssignment[i] == j && i != 0 && i != n - 1) {
+        route[length++] = i;
+      }
+    }
+    route[length++] = n - 1;
+    buffer.length = length;
+
+    buffer.arrivalTimes[0] = 0;// previousT;
+    buffer.departureTimes[0] = Math.max(releaseDates[0],
+        remainingServiceTimes[j]);
+    buffer.travelTimes[0] = 0;
+    buffer.tardiness[0] = 0;
+    return evaluateRoute(buffer, 1, buffer, j, travelTime, releaseDates,
+        dueDates, serviceTimes, vehicleTravelTimes, remainingServiceTimes);
+  }
+
+  /**
+   * Computes the arrival times and objective value of the route of vehicle
+   * <code>j</code> in the specified buffer from position <code>from</code>
+   * onwards, the values at the preceding positions are taken from
+   * <code>prefix</code>. The tardiness is computed in the same way as in
+   * ArraysSolvers.computeRouteTardiness, this method does not allocate.
+   * @return The objective value of the vehicle.
+   */
+  private int evaluateRoute(RouteBuffer buffer, int from, RouteBuffer prefix,
+      int j, int[][] travelTime, int[] releaseDates, int[] dueDates,
+      int[] serviceTimes, int[][] vehicleTravelTimes,
+      int[] remainingServiceTimes) {
+    final int[] route = buffer.route;
+    final int[] arrivalTimes = buffer.arrivalTimes;
+    int previousT = prefix.departureTimes[from - 1];
+    int totalTravelTime = prefix.travelTimes[from - 1];
+    int totalTardiness = prefix.tardiness[from - 1];
+    int previous = prefix.route[from - 1];
+    for (int i = from; i < buffer.length; i++) {
+      final int next = route[i];
       int tt = 0;
       if (i == 1 /* && route.size()>2 */) {
         tt = vehicleTravelTimes[j][next];
       } else {
-        tt = travelTime[route.get(i - 1)][next];
+        tt = travelTime[previous][next];
+      }
+      previous = next;
+      if (tt < 0 || tt == Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Found invalid travel time: " + tt);
       }
-      checkArgument(tt >= 0 && tt < Integer.MAX_VALUE,
-          "Found invalid travel time: %s", tt);
 
       arrivalTimes[i] = Math.max(previousT + tt, releaseDates[next]);
       totalTravelTime += tt;
 
       previousT = arrivalTimes[i] + serviceTimes[next];
-    }
 
-    /* compute total tardiness */
-    final int totalTardiness = ArraysSolvers.computeRouteTardiness(
-        Ints.toArray(route), arrivalTimes, serviceTimes, dueDates,
-        remainingServiceTimes[j]);
+      final int st = i == 1 && remainingServiceTimes[j] > 0
+          ? remainingServiceTimes[j] : serviceTimes[next];
+      final int lateness = arrivalTimes[i] + st - dueDates[next];
+      if (lateness > 0) {
+        totalTardiness += lateness;
+      }
+      buffer.departureTimes[i] = previousT;
+      buffer.travelTimes[i] = totalTravelTime;
+      buffer.tardiness[i] = totalTardiness;
+    }
 
     // calculate objective value for vehicle j
     final int objectiveValue = totalTardiness * TARDINESS_WEIGHT
         + totalTravelTime * TRAVEL_TIME_WEIGHT;
+    if (objectiveValue < 0) {
+      throw new IllegalArgumentException("Found negative objective value: "
+          + objectiveValue);
+    }
+    buffer.objectiveValue = objectiveValue;
+    return objectiveValue;
+  }
 
-    final SolutionObject solutionObject = new SolutionObject(
-        Ints.toArray(route), arrivalTimes, objectiveValue);
-    return solutionObject;
+  // computes the routes of all vehicles and the positions of all elements in
+  // the permutation and in the routes
+  private void initRoutes(int n, int[] permutation, int[] vehicleAssignment,
+      int[][] travelTime, int[] releaseDates, int[] dueDates,
+      int[] serviceTimes, int[][] vehicleTravelTimes,
+      int[] remainingServiceTimes, RouteBuffer[] routes,
+      int[] elementLocations, int[] routeIndices) {
+    for (int i = 0; i < n; i++) {
+      elementLocations[permutation[i]] = i;
+    }
+    for (int j = 0; j < routes.length; j++) {
+      evaluateSingleVehicle(n, permutation, vehicleAssignment, travelTime,
+          releaseDates, dueDates, serviceTimes, vehicleTravelTimes,
+          remainingServiceTimes, j, routes[j]);
+      for (int k = 1; k < routes[j].length - 1; k++) {
+        routeIndices[routes[j].route[k]] = k;
+      }
+    }
   }
 
   /**
-   * This method calculates the route for a given vehicle.
-   * @param n
-   * @param permutation
-   * @param vehicleAssignment
-   * @param vehicle
-   * @return Route
+   * Copies the route of vehicle <code>j</code> from position
+   * <code>from</code> onwards into the candidate, without the elements that
+   * are no longer assigned to <code>j</code>.
+   * @return The first modified position.
    */
-  private List<Integer> getRouteForVehicle(int n, int[] permutation,
-      int[] vehicleAssignment, int vehicle) {
-    final List<Integer> route = new ArrayList<Integer>();
-    route.add(0);
-    for (final int i : permutation) {
-      if (vehicleAssignment[i] == vehicle && i != 0 && i != n - 1) {
-        route.add(i);
+  private static int remove(RouteBuffer accepted, RouteBuffer candidate,
+      int from, int j, int[] vehicleAssignment) {
+    int length = from;
+    for (int k = from; k < accepted.length; k++) {
+      final int el = accepted.route[k];
+      // the last position is the depot
+      if (vehicleAssignment[el] == j || k == accepted.length - 1) {
+        candidate.route[length++] = el;
+      }
+    }
+    candidate.length = length;
+    return from;
+  }
+
+  /**
+   * Copies the route into the candidate and inserts the specified elements at
+   * the positions that correspond to their positions in the permutation. The
+   * first element must precede the second element in the permutation, if
+   * both are equal only one element is inserted.
+   * @return The first modified position.
+   */
+  private static int insert(RouteBuffer accepted, RouteBuffer candidate,
+      int[] elementLocations, int first, int second) {
+    // binary search for the position of the first element, the first and
+    // last positions are the depot
+    int low = 1;
+    int high = accepted.length - 1;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (elementLocations[accepted.route[mid]] < elementLocations[first]) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    final int from = low;
+    int k = from;
+    int length = from;
+    candidate.route[length++] = first;
+    if (second != first) {
+      while (k < accepted.length - 1
+          && elementLocations[accepted.route[k]] < elementLocations[second]) {
+        candidate.route[length++] = accepted.route[k++];
+      }
+      candidate.route[length++] = second;
+    }
+    while (k < accepted.length) {
+      candidate.route[length++] = accepted.route[k++];
+    }
+    candidate.length = length;
+    return from;
+  }
+
+  /**
+   * Copies the route of vehicle <code>j</code> into the candidate after the
+   * permutation is modified in the range <code>[from,to]</code>. The elements
+   * of <code>j</code> in this range occupy consecutive positions in the
+   * route, only these positions are reordered.
+   * @return The first modified position or <code>-1</code> if the route is
+   *         not modified.
+   */
+  private static int reorder(RouteBuffer accepted, RouteBuffer candidate,
+      int[] perm, int[] acceptedPerm, int from, int to, int j,
+      int[] vehicleAssignment, int[] routeIndices) {
+    int start = -1;
+    for (int k = from; k <= to && start == -1; k++) {
+      if (vehicleAssignment[acceptedPerm[k]] == j) {
+        start = routeIndices[acceptedPerm[k]];
+      }
+    }
+    int length = start;
+    int modified = -1;
+    for (int k = from; k <= to; k++) {
+      final int el = perm[k];
+      if (vehicleAssignment[el] == j) {
+        if (modified == -1 && accepted.route[length] != el) {
+          modified = length;
+        }
+        candidate.route[length++] = el;
+      }
+    }
+    if (modified == -1) {
+      return -1;
+    }
+    System.arraycopy(accepted.route, length, candidate.route, length,
+        accepted.length - length);
+    candidate.length = accepted.length;
+    return modified;
+  }
+
+
+  /**
+   * Copies the route of vehicle <code>j</code> into the candidate after the
+   * permutation is modified in the range <code>[from,to]</code> and the
+   * vehicle assignments of the elements in this range are modified. The
+   * elements outside the range and their assignments must be unmodified.
+   * @return The first modified position or <code>-1</code> if the route is
+   *         not modified.
+   */
+  private static int rebuild(RouteBuffer accepted, RouteBuffer candidate,
+      int[] perm, int from, int to, int j, int[] vehicleAssignment,
+      int[] elementLocations) {
+    // binary search for the first position in the range, the first and last
+    // positions are the depot
+    int low = 1;
+    int high = accepted.length - 1;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (elementLocations[accepted.route[mid]] < from) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    int length = low;
+    int modified = -1;
+    for (int k = from; k <= to; k++) {
+      final int el = perm[k];
+      if (vehicleAssignment[el] == j) {
+        if (modified == -1 && (length >= accepted.length - 1
+            || accepted.route[length] != el)) {
+          modified = length;
+        }
+        candidate.route[length++] = el;
+      }
+    }
+    // the first position after the range in the accepted route
+    int rest = low;
+    while (rest < accepted.length - 1
+        && elementLocations[accepted.route[rest]] <= to) {
+      rest++;
+    }
+    if (modified == -1) {
+      if (rest == length) {
+        return -1;
       }
+      modified = length;
     }
-    route.add(n - 1);
-    return route;
+    System.arraycopy(accepted.route, rest, candidate.route, length,
+        accepted.length - rest);
+    candidate.length = length + accepted.length - rest;
+    return modified;
   }
 
   /**
@@ -580,32 +1281,90 @@ public class MultiVehicleHeuristicSolver implements MultiVehicleArraysSolver {
     elements.add(n - 1);
 
     /* Check and correct pickup-delivery order */
-    for (final int[] pair : servicePairs) {
-      final int pickup = pair[0];
-      final int delivery = pair[1];
+    ProblemStructure.correctPickupDeliveryOrder(servicePairs, elements);
 
-      int pickupLoc = -1;
-      int deliveryLoc = -1;
-      for (int i = 1; i < n - 1; i++) {
-        if (elements.get(i) == pickup) {
-          pickupLoc = i;
-        }
-        if (elements.get(i) == delivery) {
-          deliveryLoc = i;
+    putFixedFirstLocationsAtTheBeginning(n, fixedFirstLocation, elements);
+
+    return elements;
+  }
+
+  /**
+   * Constructs the initial permutation and vehicle assignment from the
+   * current solutions (the routes that the vehicles are following). The
+   * permutation is the concatenation of the routes, locations that are not in
+   * any route (e.g. newly arrived orders) are appended in order of their due
+   * dates and are assigned to a random vehicle. Assignments that violate the
+   * inventories, the fixed first locations or the pickup and delivery pairs
+   * are repaired, the resulting solution is feasible.
+   * @param assignment The array in which the vehicle assignment is stored.
+   * @return The permutation.
+   */
+  private List<Integer> warmStartPermutation(RandomGenerator rng, int n,
+      int v, SolutionObject[] currentSolutions, int[][] servicePairs,
+      int[] fixedVehicleAssignment, int[] pickupToDeliveryMap,
+      int[] fixedFirstLocation, final int[] dueDates, int[] assignment) {
+    for (int i = 1; i < n - 1; i++) {
+      // no assignment made = -1
+      assignment[i] = -1;
+    }
+
+    /* Concatenate the routes, each location is used at most once */
+    final List<Integer> elements = new ArrayList<Integer>();
+    for (int j = 0; j < Math.min(v, currentSolutions.length); j++) {
+      if (currentSolutions[j] == null) {
+        continue;
+      }
+      for (final int loc : currentSolutions[j].route) {
+        if (loc > 0 && loc < n - 1 && assignment[loc] == -1) {
+          elements.add(loc);
+          assignment[loc] = j;
         }
       }
-      if (pickupLoc > deliveryLoc) {
-        // move pickup before delivery
-        final int randomPosition = 1 + rand.nextInt(deliveryLoc);
-        elements.remove(pickupLoc);
-        elements.add(randomPosition, pickup);
+    }
 
+    /* Append the missing locations */
+    final List<Integer> missing = new ArrayList<Integer>();
+    for (int i = 1; i < n - 1; i++) {
+      if (assignment[i] == -1) {
+        missing.add(i);
+      }
+    }
+    Collections.sort(missing, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return Integer.compare(dueDates[o1], dueDates[o2]);
       }
+    });
+    elements.addAll(missing);
 
+    /* Repair the vehicle assignment */
+    for (int i = 1; i < n - 1; i++) {
+      if (fixedVehicleAssignment[i] != -1) {
+        // because of inventory or fixed first location
+        assignment[i] = fixedVehicleAssignment[i];
+      }
+    }
+    for (int i = 1; i < n - 1; i++) {
+      final int delivery = pickupToDeliveryMap[i];
+      if (delivery != -1) {
+        if (assignment[i] == -1) {
+          assignment[i] = assignment[delivery] == -1 ? rng.nextInt(v)
+              : assignment[delivery];
+        }
+        // delivery must have same assignment
+        assignment[delivery] = assignment[i];
+      }
+    }
+    for (int i = 1; i < n - 1; i++) {
+      if (assignment[i] == -1) {
+        assignment[i] = rng.nextInt(v);
+      }
     }
 
+    elements.add(0, 0);
+    elements.add(n - 1);
+    ProblemStructure.correctPickupDeliveryOrder(servicePairs, elements);
     putFixedFirstLocationsAtTheBeginning(n, fixedFirstLocation, elements);
-
     return elements;
   }
 
@@ -620,7 +1379,7 @@ public class MultiVehicleHeuristicSolver implements MultiVehicleArraysSolver {
    * @param fixedFirstLocation
    * @return
    */
-  private int[] randomFeasibleAssignment(int n, int v,
+  private int[] randomFeasibleAssignment(RandomGenerator rng, int n, int v,
       int[] fixedVehicleAssignment, int[] pickupToDeliveryMap,
       int[] deliveryToPickupMap, int[] fixedFirstLocation) {
 
@@ -653,66 +1412,401 @@ public class MultiVehicleHeuristicSolver implements MultiVehicleArraysSolver {
       } else {
         if (pickupToDeliveryMap[i] != -1) {
           // random assignment
-          assignment[i] = rand.nextInt(v);
+          assignment[i] = rng.nextInt(v);
           // delivery must have same assignment
           assignment[pickupToDeliveryMap[i]] = assignment[i];
         } else if (assignment[i] == -1) {
           // random assignment
-          assignment[i] = rand.nextInt(v);
+          assignment[i] = rng.nextInt(v);
         }
       }
     }
     return assignment;
   }
 
+  /**
+   * The result of a single late acceptance trajectory.
+   */
+  private static final class Trajectory {
+    final SolutionObject[] solution;
+    final long iterations;
+    final Limit limit;
+
+    Trajectory(SolutionObject[] sol, long its, Limit lim) {
+      solution = sol;
+      iterations = its;
+      limit = lim;
+    }
+  }
+
+  /**
+   * The best solution that is shared between the trajectories in multi-start
+   * mode.
+   */
+  private static final class SharedBest {
+    private double objective = Double.POSITIVE_INFINITY;
+    @Nullable
+    private SolutionObject[] solution;
+    @Nullable
+    private int[] permutation;
+    @Nullable
+    private int[] vehicleAssignment;
+
+    SharedBest() {}
+
+    // replaces the shared solution if the offered solution is better
+    synchronized void offer(double obj, SolutionObject[] sol, int[] perm,
+        int[] assignment) {
+      if (obj < objective) {
+        objective = obj;
+        // the solution objects are never modified so they can be shared
+        solution = Arrays.copyOf(sol, sol.length);
+        permutation = Arrays.copyOf(perm, perm.length);
+        vehicleAssignment = Arrays.copyOf(assignment, assignment.length);
+      }
+    }
+
+    // copies the shared solution into the specified arrays if it is better
+    // than the specified objective, returns the resulting objective
+    synchronized double adopt(double obj, SolutionObject[] sol, int[] perm,
+        int[] assignment) {
+      if (objective < obj) {
+        System.arraycopy(verifyNotNull(solution), 0, sol, 0, sol.length);
+        System.arraycopy(verifyNotNull(permutation), 0, perm, 0, perm.length);
+        System.arraycopy(verifyNotNull(vehicleAssignment), 0, assignment, 0,
+            assignment.length);
+        return objective;
+      }
+      return obj;
+    }
+  }
+
+  /**
+   * The route and arrival times of a single vehicle, the arrays have room for
+   * all locations such that they can be reused for every vehicle.
+   */
+  private static final class RouteBuffer {
+    final int[] route;
+    final int[] arrivalTimes;
+    // the values after visiting each position, the travel time and the
+    // tardiness are cumulative
+    final int[] departureTimes;
+    final int[] travelTimes;
+    final int[] tardiness;
+    int length;
+    int objectiveValue;
+
+    RouteBuffer(int capacity) {
+      route = new int[capacity];
+      arrivalTimes = new int[capacity];
+      departureTimes = new int[capacity];
+      travelTimes = new int[capacity];
+      tardiness = new int[capacity];
+    }
+
+    SolutionObject toSolutionObject() {
+      return new SolutionObject(Arrays.copyOf(route, length),
+          Arrays.copyOf(arrivalTimes, length), objectiveValue);
+    }
+
+    // copies the positions [0,to) of the other buffer
+    void copyPrefix(RouteBuffer other, int to) {
+      System.arraycopy(other.route, 0, route, 0, to);
+      System.arraycopy(other.arrivalTimes, 0, arrivalTimes, 0, to);
+      System.arraycopy(other.departureTimes, 0, departureTimes, 0, to);
+      System.arraycopy(other.travelTimes, 0, travelTimes, 0, to);
+      System.arraycopy(other.tardiness, 0, tardiness, 0, to);
+    }
+
+    // copies the positions [from,length) and the objective value of the other
+    // buffer, updates the route indices of the copied elements
+    void copySuffix(RouteBuffer other, int from, int[] routeIndices) {
+      final int len = other.length - from;
+      System.arraycopy(other.route, from, route, from, len);
+      System.arraycopy(other.arrivalTimes, from, arrivalTimes, from, len);
+      System.arraycopy(other.departureTimes, from, departureTimes, from, len);
+      System.arraycopy(other.travelTimes, from, travelTimes, from, len);
+      System.arraycopy(other.tardiness, from, tardiness, from, len);
+      length = other.length;
+      objectiveValue = other.objectiveValue;
+      for (int k = from; k < length - 1; k++) {
+        routeIndices[route[k]] = k;
+      }
+    }
+  }
+
   public static StochasticSupplier<Solver> supplier(int pListLength,
       int pMaxNrOfNonImprovements) {
-    return new Supplier(pListLength, pMaxNrOfNonImprovements);
+    return supplier(pListLength, pMaxNrOfNonImprovements, false, false);
   }
 
   public static StochasticSupplier<Solver> supplier(int pListLength,
       int pMaxNrOfNonImprovements, boolean pDebug, boolean pStrictMode) {
-    return new Supplier(pListLength, pMaxNrOfNonImprovements, pDebug,
-        pStrictMode);
+    return supplier(options(pListLength, budget(pMaxNrOfNonImprovements))
+        .withDebug(pDebug).withStrictMode(pStrictMode));
   }
 
-  private static class Supplier implements StochasticSupplier<Solver> {
+  /**
+   * Supplies solvers with the specified options. The listener and the
+   * executor of the options are shared by all supplied solvers.
+   * @param options The options of the supplied solvers.
+   * @return The supplier.
+   */
+  public static StochasticSupplier<Solver> supplier(Options options) {
+    return new Supplier(options);
+  }
+
+  /**
+   * Creates options that use the moves of {@link #DEFAULT_MOVES}, without
+   * adaptation, with a single trajectory and without listener.
+   * @param listLength The length of the late acceptance list, with a list
+   *          length schedule this is the initial length, must be positive.
+   * @param budget The budget of each invocation of {@link #solve}, in
+   *          multi-start mode this is the budget of each trajectory and the
+   *          clock of the budget is shared by all trajectories.
+   * @return The options.
+   */
+  public static Options options(int listLength, SolverBudget budget) {
+    checkArgument(listLength > 0,
+        "The list length must be positive, is %s.", listLength);
+    return Options.create(listLength, budget, DEFAULT_MOVES,
+        SolverAdaptation.none(), 1, 0, Optional.<ExecutorService>absent(),
+        SearchListeners.noOp(), false, false);
+  }
+
+  /**
+   * The options of a {@link MultiVehicleHeuristicSolver}. Instances are
+   * created via {@link MultiVehicleHeuristicSolver#options(int, SolverBudget)}
+   * and refined via the <code>with</code> methods.
+   * @author Rinde van Lon
+   */
+  @AutoValue
+  public abstract static class Options {
+    Options() {}
+
+    /**
+     * @return The length of the late acceptance list.
+     */
+    public abstract int getListLength();
+
+    /**
+     * @return The budget of each invocation of the solver.
+     */
+    public abstract SolverBudget getBudget();
+
+    /**
+     * @return The moves of the search.
+     */
+    public abstract ImmutableSet<Move> getMoves();
+
+    /**
+     * @return The adaptation of each trajectory.
+     */
+    public abstract SolverAdaptation getAdaptation();
+
+    /**
+     * @return The number of trajectories.
+     */
+    public abstract int getStarts();
+
+    /**
+     * @return The number of iterations between two moments at which the
+     *         trajectories share their best solution, <code>0</code> means no
+     *         sharing.
+     */
+    public abstract int getSharingInterval();
+
+    /**
+     * @return The executor in which the trajectories are run, if absent the
+     *         trajectories are run one after another in the calling thread.
+     */
+    public abstract Optional<ExecutorService> getExecutor();
+
+    /**
+     * @return The listener that is notified of the progress of the search.
+     */
+    public abstract SearchListener getListener();
+
+    /**
+     * @return <code>true</code> if debug output is printed.
+     */
+    public abstract boolean isDebug();
+
+    /**
+     * @return <code>true</code> if the solutions are validated during the
+     *         search.
+     */
+    public abstract boolean isStrictMode();
 
-    private final int listLength;
-    private final int maxNrOfNonImprovements;
-    private final boolean debug;
-    private final boolean strictMode;
+    /**
+     * @param budget The budget of each invocation of the solver.
+     * @return A copy of these options with the specified budget.
+     */
+    public Options withBudget(SolverBudget budget) {
+      return create(getListLength(), budget, getMoves(), getAdaptation(),
+          getStarts(), getSharingInterval(), getExecutor(), getListener(),
+          isDebug(), isStrictMode());
+    }
 
     /**
-     * Create a new instance with the specified list length and maximum number
-     * of non-improvements.
-     * @param pListLength see {@link MultiVehicleHeuristicSolver}.
-     * @param pMaxNrOfNonImprovements see {@link MultiVehicleHeuristicSolver}.
+     * @param moves The moves of the search, a subset of {@link #ALL_MOVES},
+     *          must not be empty. With adaptive operator selection, the
+     *          minimum probability of the adaptation times the number of moves
+     *          may not exceed <code>1</code>.
+     * @return A copy of these options with the specified moves.
      */
-    Supplier(int pListLength, int pMaxNrOfNonImprovements) {
-      this(pListLength, pMaxNrOfNonImprovements, false, false);
+    public Options withMoves(Set<Move> moves) {
+      checkArgument(!moves.isEmpty(), "At least one move is required.");
+      checkArgument(ALL_MOVES.containsAll(moves), "Unsupported moves: %s.",
+          Sets.difference(moves, ALL_MOVES));
+      return create(getListLength(), getBudget(), Sets.immutableEnumSet(moves),
+          getAdaptation(), getStarts(), getSharingInterval(), getExecutor(),
+          getListener(), isDebug(), isStrictMode());
     }
 
-    Supplier(int pListLength, int pMaxNrOfNonImprovements, boolean pDebug,
-        boolean pStrictMode) {
-      listLength = pListLength;
-      maxNrOfNonImprovements = pMaxNrOfNonImprovements;
-      debug = pDebug;
-      strictMode = pStrictMode;
+    /**
+     * @param adaptation The adaptation of each trajectory. With adaptive
+     *          operator selection, its minimum probability times the number of
+     *          moves (see {@link #withMoves(Set)}) may not exceed
+     *          <code>1</code>.
+     * @return A copy of these options with the specified adaptation.
+     */
+    public Options withAdaptation(SolverAdaptation adaptation) {
+      return create(getListLength(), getBudget(), getMoves(), adaptation,
+          getStarts(), getSharingInterval(), getExecutor(), getListener(),
+          isDebug(), isStrictMode());
+    }
+
+    /**
+     * @param starts The number of trajectories, must be positive.
+     * @param sharingInterval The number of iterations between two moments at
+     *          which the trajectories share their best solution,
+     *          <code>0</code> means no sharing, must be non-negative.
+     * @return A copy of these options in multi-start mode.
+     */
+    public Options withMultiStart(int starts, int sharingInterval) {
+      checkArgument(starts > 0, "The number of starts must be positive, "
+          + "is %s.", starts);
+      checkArgument(sharingInterval >= 0,
+          "The sharing interval must be non-negative, is %s.",
+          sharingInterval);
+      return create(getListLength(), getBudget(), getMoves(), getAdaptation(),
+          starts, sharingInterval, getExecutor(), getListener(), isDebug(),
+          isStrictMode());
+    }
+
+    /**
+     * @param executor The executor in which the trajectories are run. The
+     *          caller owns the executor: it is never shut down by the solvers
+     *          or the supplier and should be shut down by the caller when the
+     *          solvers are no longer used.
+     * @return A copy of these options with the specified executor.
+     */
+    public Options withExecutor(ExecutorService executor) {
+      return create(getListLength(), getBudget(), getMoves(), getAdaptation(),
+          getStarts(), getSharingInterval(), Optional.of(executor),
+          getListener(), isDebug(), isStrictMode());
+    }
+
+    /**
+     * @param listener The listener that is notified of the progress of the
+     *          search. A supplier shares it with all its solvers, it must be
+     *          thread-safe when the solvers are used concurrently or when the
+     *          trajectories are run in an executor.
+     * @return A copy of these options with the specified listener.
+     */
+    public Options withListener(SearchListener listener) {
+      return create(getListLength(), getBudget(), getMoves(), getAdaptation(),
+          getStarts(), getSharingInterval(), getExecutor(), listener,
+          isDebug(), isStrictMode());
+    }
+
+    /**
+     * @param debug If <code>true</code> debug output is printed.
+     * @return A copy of these options with the specified debug mode.
+     */
+    public Options withDebug(boolean debug) {
+      return create(getListLength(), getBudget(), getMoves(), getAdaptation(),
+          getStarts(), getSharingInterval(), getExecutor(), getListener(),
+          debug, isStrictMode());
+    }
+
+    /**
+     * @param strictMode If <code>true</code> the solutions are validated
+     *          during the search.
+     * @return A copy of these options with the specified strict mode.
+     */
+    public Options withStrictMode(boolean strictMode) {
+      return create(getListLength(), getBudget(), getMoves(), getAdaptation(),
+          getStarts(), getSharingInterval(), getExecutor(), getListener(),
+          isDebug(), strictMode);
+    }
+
+    static Options create(int listLength, SolverBudget budget,
+        ImmutableSet<Move> moves, SolverAdaptation adaptation, int starts,
+        int sharingInterval, Optional<ExecutorService> executor,
+        SearchListener listener, boolean debug, boolean strictMode) {
+      checkArgument(!adaptation.isOperatorSelectionEnabled()
+          || adaptation.getMinProbability() * moves.size() <= 1,
+          "The minimum probability of the operator selection (%s) times the "
+              + "number of moves (%s) may not exceed 1.",
+          adaptation.getMinProbability(), moves.size());
+      return new AutoValue_MultiVehicleHeuristicSolver_Options(listLength,
+          budget, moves, adaptation, starts, sharingInterval, executor,
+          listener, debug, strictMode);
+    }
+  }
+
+  private static class Supplier implements StochasticSupplier<Solver> {
+    private final Options options;
+
+    Supplier(Options opts) {
+      options = opts;
     }
 
     @Override
     public Solver get(long seed) {
       return SolverValidator.wrap(new MultiVehicleSolverAdapter(
           ArraysSolverValidator.wrap(new MultiVehicleHeuristicSolver(
-              new MersenneTwister(seed), listLength, maxNrOfNonImprovements,
-              debug, strictMode)), SI.SECOND));
+              new MersenneTwister(seed), options)),
+          SI.SECOND));
     }
 
     @Override
     public String toString() {
-      return new StringBuilder("Heuristic-").append(listLength).append("-")
-          .append(maxNrOfNonImprovements).toString();
+      final SolverBudget budget = options.getBudget();
+      final SolverAdaptation adaptation = options.getAdaptation();
+      final StringBuilder sb = new StringBuilder("Heuristic-")
+          .append(options.getListLength());
+      if (budget.getMaxNonImprovements() != Long.MAX_VALUE) {
+        sb.append("-").append(budget.getMaxNonImprovements());
+      }
+      if (budget.getMaxIterations() != Long.MAX_VALUE) {
+        sb.append("-it").append(budget.getMaxIterations());
+      }
+      if (budget.getMaxDurationNanos() != Long.MAX_VALUE) {
+        sb.append("-").append(
+            TimeUnit.NANOSECONDS.toMillis(budget.getMaxDurationNanos()))
+            .append("ms");
+      }
+      if (options.getStarts() > 1) {
+        sb.append("-x").append(options.getStarts());
+        if (options.getSharingInterval() > 0) {
+          sb.append("-share").append(options.getSharingInterval());
+        }
+      }
+      if (!options.getMoves().equals(DEFAULT_MOVES)) {
+        for (final Move m : options.getMoves()) {
+          sb.append("-").append(m.name().toLowerCase(Locale.ENGLISH));
+        }
+      }
+      if (adaptation.isOperatorSelectionEnabled()) {
+        sb.append("-aos").append(adaptation.getSegmentLength());
+      }
+      if (adaptation.isListLengthScheduleEnabled()) {
+        sb.append("-la").append(adaptation.getMaxListLength());
+      }
+      return sb.toString();
     }
   }
 }
@@ -21,6 +21,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import javax.annotation.Nullable;
+
 import org.apache.commons.math3.random.RandomGenerator;
 
 import com.github.rinde.rinsim.central.arrays.ArraysSolvers;
@@ -47,6 +49,9 @@ public class MultiVehicleHeuristicSolverOld implements MultiVehicleArraysSolver
 
   private SolutionObject[] sols;
 
+  @Nullable
+  private ProblemStructure structure;
+
   public MultiVehicleHeuristicSolverOld(RandomGenerator rand, int l,
       int maxIterations) {
     this.rand = rand;
@@ -68,33 +73,13 @@ public class MultiVehicleHeuristicSolverOld implements MultiVehicleArraysSolver
     final int v = vehicleTravelTimes.length;
 
     /* Calculate useful data structures */
-    final int[] pickupToDeliveryMap = new int[n];
-    for (int i = 0; i < pickupToDeliveryMap.length; i++) {
-      pickupToDeliveryMap[i] = -1;
-    }
-    final int[] deliveryToPickupMap = new int[n];
-    for (int i = 0; i < deliveryToPickupMap.length; i++) {
-      deliveryToPickupMap[i] = -1;
-    }
-    for (final int[] pair : servicePairs) {
-      final int pickup = pair[0];
-      final int delivery = pair[1];
-      pickupToDeliveryMap[pickup] = delivery;
-      deliveryToPickupMap[delivery] = pickup;
-    }
-
-    final int[] fixedVehicleAssignment = new int[n];
-    for (int i = 0; i < n; i++) {
-      fixedVehicleAssignment[i] = -1; // not fixed = -1
-    }
-    for (final int[] inventoryPair : inventories) {
-      fixedVehicleAssignment[inventoryPair[1]] = inventoryPair[0];
-    }
-    for (int veh = 0; veh < v; veh++) {
-      if (currentDestinations[veh] != 0) {
-        fixedVehicleAssignment[currentDestinations[veh]] = veh;
-      }
-    }
+    structure = structure == null
+        ? ProblemStructure.create(n, servicePairs, inventories,
+            currentDestinations)
+        : structure.rebuild(n, servicePairs, inventories, currentDestinations);
+    final int[] pickupToDeliveryMap = structure.pickupToDeliveryMap;
+    final int[] deliveryToPickupMap = structure.deliveryToPickupMap;
+    final int[] fixedVehicleAssignment = structure.fixedVehicleAssignment;
     // --
 
     //
@@ -536,29 +521,7 @@ public class MultiVehicleHeuristicSolverOld implements MultiVehicleArraysSolver
     elements.add(n - 1);
 
     /* Check and correct pickup-delivery order */
-    for (final int[] pair : servicePairs) {
-      final int pickup = pair[0];
-      final int delivery = pair[1];
-
-      int pickupLoc = -1;
-      int deliveryLoc = -1;
-      for (int i = 1; i < n - 1; i++) {
-        if (elements.get(i) == pickup) {
-          pickupLoc = i;
-        }
-        if (elements.get(i) == delivery) {
-          deliveryLoc = i;
-        }
-      }
-      if (pickupLoc > deliveryLoc) {
-        // move pickup before delivery
-        final int randomPosition = 1 + rand.nextInt(deliveryLoc);
-        elements.remove(pickupLoc);
-        elements.add(randomPosition, pickup);
-
-      }
-
-    }
+    ProblemStructure.correctPickupDeliveryOrder(servicePairs, elements);
 
     putFixedFirstLocationsAtTheBeginning(n, fixedFirstLocation, elements);
 
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Roulette wheel selection of operators of which the weights are adapted to
+ * the improvement per nanosecond of each operator, see
+ * {@link SolverAdaptation}. A selector is not thread-safe, each search
+ * trajectory has its own selector.
+ * @author Rinde van Lon
+ */
+final class OperatorSelector {
+  private final int segmentLength;
+  private final double reaction;
+  private final double minProbability;
+  // the weights sum to one
+  private final double[] weights;
+  private final double[] rewards;
+  private final long[] nanos;
+  private int iterations;
+
+  OperatorSelector(SolverAdaptation adaptation, int operators) {
+    checkArgument(adaptation.isOperatorSelectionEnabled(),
+      "Operator selection is not enabled in %s.", adaptation);
+    checkArgument(operators > 0, "The number of operators must be positive, "
+      + "is %s.", operators);
+    checkArgument(adaptation.getMinProbability() * operators <= 1,
+      "The minimum probability (%s) times the number of operators (%s) may "
+        + "not exceed 1.", adaptation.getMinProbability(), operators);
+    segmentLength = adaptation.getSegmentLength();
+    reaction = adaptation.getReaction();
+    minProbability = adaptation.getMinProbability();
+    weights = new double[operators];
+    Arrays.fill(weights, 1d / operators);
+    rewards = new double[operators];
+    nanos = new long[operators];
+  }
+
+  /**
+   * @param rng The random generator.
+   * @return The index of the selected operator.
+   */
+  int select(RandomGenerator rng) {
+    double r = rng.nextDouble();
+    for (int i = 0; i < weights.length - 1; i++) {
+      r -= getProbability(i);
+      if (r < 0) {
+        return i;
+      }
+    }
+    return weights.length - 1;
+  }
+
+  /**
+   * Records the result of applying an operator, at the end of a segment the
+   * weights are adapted.
+   * @param operator The index of the operator.
+   * @param improvement The improvement of the current objective, zero if the
+   *          move was rejected or did not improve.
+   * @param elapsedNanos The time that was spent on the move.
+   */
+  void update(int operator, double improvement, long elapsedNanos) {
+    rewards[operator] += improvement;
+    nanos[operator] += elapsedNanos;
+    iterations++;
+    if (iterations == segmentLength) {
+      adapt();
+      iterations = 0;
+    }
+  }
+
+  /**
+   * @param operator The index of the operator.
+   * @return The probability that the operator is selected.
+   */
+  double getProbability(int operator) {
+    return minProbability
+      + (1 - weights.length * minProbability) * weights[operator];
+  }
+
+  private void adapt() {
+    double totalScore = 0;
+    double usedWeight = 0;
+    for (int i = 0; i < weights.length; i++) {
+      if (nanos[i] > 0) {
+        totalScore += rewards[i] / nanos[i];
+        usedWeight += weights[i];
+      }
+    }
+    if (totalScore > 0) {
+      // the operators that were used divide their total weight according to
+      // their score, the weights of the other operators are unchanged
+      for (int i = 0; i < weights.length; i++) {
+        if (nanos[i] > 0) {
+          final double share = rewards[i] / nanos[i] / totalScore;
+          weights[i] = (1 - reaction) * weights[i]
+            + reaction * share * usedWeight;
+        }
+      }
+    }
+    Arrays.fill(rewards, 0d);
+    Arrays.fill(nanos, 0L);
+  }
+}
@@ -15,6 +15,8 @@
  */
 package com.github.rinde.logistics.pdptw.solver;
 
+import java.util.concurrent.ExecutorService;
+
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
 
@@ -26,6 +28,7 @@ import com.github.rinde.rinsim.core.model.pdp.Parcel;
 import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
 import com.github.rinde.rinsim.util.StochasticSupplier;
 import com.github.rinde.rinsim.util.StochasticSuppliers.AbstractStochasticSupplier;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 
 /**
@@ -45,6 +48,7 @@ public class Opt2 implements Solver {
   final Solver delegate;
   final ParcelRouteEvaluator evaluator;
   final boolean depthFirstSearch;
+  final Optional<ExecutorService> executor;
 
   /**
    * Creates a new instance that decorates the specified {@link Solver} and uses
@@ -59,12 +63,37 @@ public class Opt2 implements Solver {
    *          <i>breadth first search</i> is used.
    */
   public Opt2(long seed, Solver deleg, ObjectiveFunction objFunc, boolean dfs) {
+    this(seed, deleg, objFunc, dfs, Optional.<ExecutorService>absent());
+  }
+
+  /**
+   * Creates a new instance that decorates the specified {@link Solver} and uses
+   * <i>breadth first search</i> in which the swaps are evaluated in parallel
+   * using the specified executor. The result is the same as the sequential
+   * <i>breadth first search</i>.
+   * @param deleg The solver to decorate.
+   * @param objFunc The {@link ObjectiveFunction} to use for cost computation.
+   * @param exec The executor to use for evaluating swaps, it is owned by the
+   *          caller and is not shut down by this solver.
+   */
+  public Opt2(Solver deleg, ObjectiveFunction objFunc, ExecutorService exec) {
+    this(0L, deleg, objFunc, false, Optional.of(exec));
+  }
+
+  Opt2(long seed, Solver deleg, ObjectiveFunction objFunc, boolean dfs,
+      Optional<ExecutorService> exec) {
     rng = new MersenneTwister(seed);
     delegate = deleg;
-    evaluator = new ParcelRouteEvaluator(objFunc);
+    evaluator = ParcelRouteEvaluator.create(objFunc);
     depthFirstSearch = dfs;
+    executor = exec;
   }
 
+  /**
+   * {@inheritDoc} The route costs are cached in a bounded cache that is
+   * created for each invocation, the costs depend on the state and can
+   * therefore not be reused by later invocations.
+   */
   @Override
   public ImmutableList<ImmutableList<Parcel>> solve(GlobalStateObject state) {
     final ImmutableList<ImmutableList<Parcel>> schedule = delegate
@@ -77,6 +106,10 @@ public class Opt2 implements Solver {
       return Swaps.dfsOpt2(schedule, indexBuilder.build(), state, evaluator,
         rng);
     }
+    if (executor.isPresent()) {
+      return Swaps.bfsOpt2(schedule, indexBuilder.build(), state, evaluator,
+        executor.get());
+    }
     return Swaps.bfsOpt2(schedule, indexBuilder.build(), state, evaluator);
   }
 
@@ -92,7 +125,28 @@ public class Opt2 implements Solver {
   public static StochasticSupplier<Solver> breadthFirstSupplier(
       final StochasticSupplier<Solver> delegate,
       final ObjectiveFunction objFunc) {
-    return new Opt2Supplier(delegate, objFunc, false);
+    return new Opt2Supplier(delegate, objFunc, false,
+        Optional.<ExecutorService>absent());
+  }
+
+  /**
+   * Decorates the specified {@link Solver} supplier with parallel
+   * <i>breadth-first</i> {@link Opt2}. All created solvers evaluate the swaps
+   * using the specified executor. The result is the same as for
+   * {@link #breadthFirstSupplier(StochasticSupplier, ObjectiveFunction)}.
+   * @param delegate The solver to decorate.
+   * @param objFunc The objective function to use.
+   * @param executor The executor that is shared by all created solvers. The
+   *          caller owns the executor: it is never shut down by the supplier
+   *          or the solvers and should be shut down by the caller when the
+   *          solvers are no longer used.
+   * @return A supplier that creates instances of a solver decorated with
+   *         {@link Opt2}.
+   */
+  public static StochasticSupplier<Solver> breadthFirstSupplier(
+      final StochasticSupplier<Solver> delegate,
+      final ObjectiveFunction objFunc, ExecutorService executor) {
+    return new Opt2Supplier(delegate, objFunc, false, Optional.of(executor));
   }
 
   /**
@@ -108,7 +162,8 @@ public class Opt2 implements Solver {
   public static StochasticSupplier<Solver> depthFirstSupplier(
       final StochasticSupplier<Solver> delegate,
       final ObjectiveFunction objFunc) {
-    return new Opt2Supplier(delegate, objFunc, true);
+    return new Opt2Supplier(delegate, objFunc, true,
+        Optional.<ExecutorService>absent());
   }
 
   private static class Opt2Supplier extends AbstractStochasticSupplier<Solver> {
@@ -116,19 +171,21 @@ public class Opt2 implements Solver {
     private final StochasticSupplier<Solver> delegate;
     private final ObjectiveFunction objectiveFunction;
     private final boolean depthFirstSearch;
+    private final Optional<ExecutorService> executor;
 
     Opt2Supplier(StochasticSupplier<Solver> del, ObjectiveFunction objFunc,
-        boolean dfs) {
+        boolean dfs, Optional<ExecutorService> exec) {
       delegate = del;
       objectiveFunction = objFunc;
       depthFirstSearch = dfs;
+      executor = exec;
     }
 
     @Override
     public Solver get(long seed) {
       final RandomGenerator rand = new MersenneTwister(seed);
       return new Opt2(rand.nextLong(), delegate.get(rand.nextLong()),
-          objectiveFunction, depthFirstSearch);
+          objectiveFunction, depthFirstSearch, executor);
     }
   }
 }
@@ -15,25 +15,249 @@
  */
 package com.github.rinde.logistics.pdptw.solver;
 
-import com.github.rinde.opt.localsearch.RouteEvaluator;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Sets.newHashSet;
+
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.Set;
+
+import javax.measure.Measure;
+import javax.measure.quantity.Length;
+import javax.measure.quantity.Velocity;
+
+import com.github.rinde.opt.localsearch.IncrementalRouteEvaluator;
+import com.github.rinde.opt.localsearch.MonotoneRouteEvaluator;
 import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.GlobalStateObject.VehicleStateObject;
 import com.github.rinde.rinsim.central.Solvers;
 import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.core.model.road.RoadModels;
+import com.github.rinde.rinsim.geom.Point;
 import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.pdptw.common.StatisticsDTO;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
 import com.google.common.collect.ImmutableList;
+import com.google.common.math.DoubleMath;
 
 class ParcelRouteEvaluator implements
-RouteEvaluator<GlobalStateObject, Parcel> {
+IncrementalRouteEvaluator<GlobalStateObject, Parcel> {
   private final ObjectiveFunction objectiveFunction;
 
   ParcelRouteEvaluator(ObjectiveFunction objFunc) {
     objectiveFunction = objFunc;
   }
 
+  /**
+   * Creates an evaluator for the specified objective function. If it is known
+   * that the cost of a route never decreases when a stop is inserted, the
+   * evaluator is a {@link MonotoneRouteEvaluator}. This holds for the
+   * {@link Gendreau06ObjectiveFunction}: travel distance, tardiness and
+   * overtime can only increase by visiting an additional location.
+   * @param objFunc The objective function.
+   * @return A new evaluator.
+   */
+  static ParcelRouteEvaluator create(ObjectiveFunction objFunc) {
+    if (objFunc instanceof Gendreau06ObjectiveFunction) {
+      return new MonotoneParcelRouteEvaluator(objFunc);
+    }
+    return new ParcelRouteEvaluator(objFunc);
+  }
+
   @Override
   public double computeCost(GlobalStateObject context, int routeIndex,
     ImmutableList<Parcel> newRoute) {
     return objectiveFunction.computeCost(Solvers.computeStats(
       context.withSingleVehicle(routeIndex), ImmutableList.of(newRoute)));
   }
+
+  @Override
+  public PreparedRoute<Parcel> prepare(GlobalStateObject context,
+    int routeIndex, ImmutableList<Parcel> route) {
+    return new PreparedParcelRoute(objectiveFunction, context, routeIndex,
+      route);
+  }
+
+  static final class MonotoneParcelRouteEvaluator extends ParcelRouteEvaluator
+    implements MonotoneRouteEvaluator<GlobalStateObject, Parcel> {
+    MonotoneParcelRouteEvaluator(ObjectiveFunction objFunc) {
+      super(objFunc);
+    }
+  }
+
+  /**
+   * Stores the state of the simulation of a single vehicle before every
+   * position of the route. The simulation is the same as in
+   * {@link Solvers#computeStats(GlobalStateObject, ImmutableList)} for a single
+   * vehicle, as such the computed costs are equal to
+   * {@link ParcelRouteEvaluator#computeCost(GlobalStateObject, int, ImmutableList)}
+   * for all objective functions that only depend on the fields of
+   * {@link StatisticsDTO}.
+   */
+  static final class PreparedParcelRoute implements PreparedRoute<Parcel> {
+    private final ObjectiveFunction objectiveFunction;
+    private final GlobalStateObject state;
+    private final VehicleStateObject vehicle;
+    private final Measure<Double, Velocity> speed;
+    private final ImmutableList<Parcel> route;
+    // simulation state before position i, the last one is after the route
+    private final Simulation[] prefixes;
+    // position of the first occurrence of each parcel in the route
+    private final Map<Parcel, Integer> firstIndices;
+    private final double cost;
+
+    PreparedParcelRoute(ObjectiveFunction objFunc, GlobalStateObject st,
+      int routeIndex, ImmutableList<Parcel> r) {
+      objectiveFunction = objFunc;
+      state = st;
+      vehicle = st.getVehicles().get(routeIndex);
+      speed = Measure.valueOf(vehicle.getDto().getSpeed(), st.getSpeedUnit());
+      route = r;
+      prefixes = new Simulation[r.size() + 1];
+      firstIndices = newHashMap();
+
+      final Simulation sim = new Simulation(this);
+      for (int i = 0; i < r.size(); i++) {
+        prefixes[i] = sim.copy();
+        final Parcel cur = r.get(i);
+        final boolean seen = firstIndices.containsKey(cur);
+        if (!seen) {
+          firstIndices.put(cur, i);
+          sim.parcels++;
+        }
+        sim.visit(cur, i, seen || vehicle.getContents().contains(cur));
+      }
+      prefixes[r.size()] = sim;
+      cost = objectiveFunction.computeCost(sim.toStats());
+    }
+
+    @Override
+    public ImmutableList<Parcel> getRoute() {
+      return route;
+    }
+
+    @Override
+    public double getCost() {
+      return cost;
+    }
+
+    @Override
+    public double computeCost(ImmutableList<Parcel> newRoute, int fromIndex) {
+      checkArgument(fromIndex >= 0 && fromIndex <= route.size()
+        && fromIndex <= newRoute.size(),
+        "fromIndex must be >= 0 and <= %s, it is %s.",
+        Math.min(route.size(), newRoute.size()), fromIndex);
+      final Simulation sim = prefixes[fromIndex].copy();
+      final Set<Parcel> seen = newHashSet();
+      for (int i = fromIndex; i < newRoute.size(); i++) {
+        final Parcel cur = newRoute.get(i);
+        final Integer firstIndex = firstIndices.get(cur);
+        final boolean seenInPrefix = firstIndex != null
+          && firstIndex < fromIndex;
+        final boolean seenBefore = seenInPrefix || !seen.add(cur);
+        if (!seenBefore) {
+          sim.parcels++;
+        }
+        sim.visit(cur, i, seenBefore || vehicle.getContents().contains(cur));
+      }
+      return objectiveFunction.computeCost(sim.toStats());
+    }
+  }
+
+  static final class Simulation {
+    final PreparedParcelRoute route;
+    long time;
+    Point location;
+    double totalDistance;
+    int pickups;
+    int deliveries;
+    int parcels;
+    long pickupTardiness;
+    long deliveryTardiness;
+
+    Simulation(PreparedParcelRoute r) {
+      route = r;
+      time = r.state.getTime();
+      location = r.vehicle.getLocation();
+    }
+
+    Simulation copy() {
+      final Simulation copy = new Simulation(route);
+      copy.time = time;
+      copy.location = location;
+      copy.totalDistance = totalDistance;
+      copy.pickups = pickups;
+      copy.deliveries = deliveries;
+      copy.parcels = parcels;
+      copy.pickupTardiness = pickupTardiness;
+      copy.deliveryTardiness = deliveryTardiness;
+      return copy;
+    }
+
+    void visit(Parcel cur, int index, boolean inCargo) {
+      boolean firstAndServicing = false;
+      if (index == 0 && route.vehicle.getRemainingServiceTime() > 0) {
+        firstAndServicing = true;
+        time += route.vehicle.getRemainingServiceTime();
+      } else {
+        final Point nextLoc = inCargo ? cur.getDeliveryLocation() : cur
+          .getPickupLocation();
+        time += travelTime(nextLoc);
+        location = nextLoc;
+      }
+      if (inCargo) {
+        if (cur.getDeliveryTimeWindow().isBeforeStart(time)) {
+          time = cur.getDeliveryTimeWindow().begin();
+        }
+        if (!firstAndServicing) {
+          time += cur.getDeliveryDuration();
+        }
+        if (cur.getDeliveryTimeWindow().isAfterEnd(time)) {
+          deliveryTardiness += time - cur.getDeliveryTimeWindow().end();
+        }
+        deliveries++;
+      } else {
+        if (cur.getPickupTimeWindow().isBeforeStart(time)) {
+          time = cur.getPickupTimeWindow().begin();
+        }
+        if (!firstAndServicing) {
+          time += cur.getPickupDuration();
+        }
+        if (cur.getPickupTimeWindow().isAfterEnd(time)) {
+          pickupTardiness += time - cur.getPickupTimeWindow().end();
+        }
+        pickups++;
+      }
+    }
+
+    // adds the distance to the destination to the total distance
+    long travelTime(Point destination) {
+      final Measure<Double, Length> distance = Measure.valueOf(
+        Point.distance(location, destination), route.state.getDistUnit());
+      totalDistance += distance.getValue();
+      return DoubleMath.roundToLong(RoadModels.computeTravelTime(route.speed,
+        distance, route.state.getTimeUnit()), RoundingMode.CEILING);
+    }
+
+    // the statistics after returning to the depot, does not modify this
+    // simulation
+    StatisticsDTO toStats() {
+      final Simulation end = copy();
+      end.time += end.travelTime(route.vehicle.getDto().getStartPosition());
+      long overTime = 0;
+      if (route.vehicle.getDto().getAvailabilityTimeWindow()
+        .isAfterEnd(end.time)) {
+        overTime = end.time
+          - route.vehicle.getDto().getAvailabilityTimeWindow().end();
+      }
+      final long startTime = route.state.getTime();
+      final long simulationTime = Math.max(0, end.time) - startTime;
+      return new StatisticsDTO(end.totalDistance, pickups, deliveries,
+        parcels, parcels, pickupTardiness, deliveryTardiness, 0,
+        simulationTime, true, 1, overTime, 1, end.time > startTime ? 1 : 0,
+        route.state.getTimeUnit(), route.state.getDistUnit(),
+        route.state.getSpeedUnit());
+    }
+  }
 }
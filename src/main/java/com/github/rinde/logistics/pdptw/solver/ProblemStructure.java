@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.primitives.Ints;
+
+/**
+ * The structure of a problem in the arrays representation that is used by the
+ * array solvers: the pickup and delivery pairs and the vehicle assignments
+ * that are fixed because of the inventories and the current destinations of
+ * the vehicles. A structure is built in <code>O(n)</code>. The locations are
+ * numbered anew by every conversion of a state, a structure can therefore not
+ * be updated incrementally between invocations of a solver. Instead it is
+ * rebuilt for every invocation, its arrays are reused when the number of
+ * locations does not change.
+ * @author Rinde van Lon
+ */
+final class ProblemStructure {
+  /**
+   * The delivery of each pickup, <code>-1</code> if the location is not a
+   * pickup.
+   */
+  final int[] pickupToDeliveryMap;
+
+  /**
+   * The pickup of each delivery, <code>-1</code> if the location is not a
+   * delivery of a pair.
+   */
+  final int[] deliveryToPickupMap;
+
+  /**
+   * The vehicle to which each location is fixed, <code>-1</code> if the
+   * location is not fixed.
+   */
+  final int[] fixedVehicleAssignment;
+
+  private ProblemStructure(int n) {
+    pickupToDeliveryMap = new int[n];
+    deliveryToPickupMap = new int[n];
+    fixedVehicleAssignment = new int[n];
+  }
+
+  /**
+   * @return The number of locations.
+   */
+  int size() {
+    return pickupToDeliveryMap.length;
+  }
+
+  /**
+   * Rebuilds this structure for the specified problem in <code>O(n)</code>.
+   * @param n The number of locations.
+   * @param servicePairs The pickup and delivery pairs.
+   * @param inventories The locations that are fixed to a vehicle, in the same
+   *          format as the arrays solvers.
+   * @param currentDestinations The current destination of each vehicle,
+   *          <code>0</code> if the vehicle has no destination.
+   * @return This structure if it has the same number of locations as the
+   *         problem, a new structure otherwise.
+   */
+  ProblemStructure rebuild(int n, int[][] servicePairs, int[][] inventories,
+      int[] currentDestinations) {
+    if (n != size()) {
+      return create(n, servicePairs, inventories, currentDestinations);
+    }
+    Arrays.fill(pickupToDeliveryMap, -1);
+    Arrays.fill(deliveryToPickupMap, -1);
+    Arrays.fill(fixedVehicleAssignment, -1);
+    for (final int[] pair : servicePairs) {
+      final int pickup = pair[0];
+      final int delivery = pair[1];
+      pickupToDeliveryMap[pickup] = delivery;
+      deliveryToPickupMap[delivery] = pickup;
+    }
+    for (final int[] inventoryPair : inventories) {
+      fixedVehicleAssignment[inventoryPair[1]] = inventoryPair[0];
+    }
+    for (int veh = 0; veh < currentDestinations.length; veh++) {
+      if (currentDestinations[veh] != 0) {
+        fixedVehicleAssignment[currentDestinations[veh]] = veh;
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Creates the structure of the specified problem.
+   * @param n The number of locations.
+   * @param servicePairs The pickup and delivery pairs.
+   * @param inventories The locations that are fixed to a vehicle, in the same
+   *          format as the arrays solvers.
+   * @param currentDestinations The current destination of each vehicle,
+   *          <code>0</code> if the vehicle has no destination.
+   * @return A new structure.
+   */
+  static ProblemStructure create(int n, int[][] servicePairs,
+      int[][] inventories, int[] currentDestinations) {
+    return new ProblemStructure(n).rebuild(n, servicePairs, inventories,
+      currentDestinations);
+  }
+
+  /**
+   * Swaps every pickup that is after its delivery in the permutation with its
+   * delivery. A swap only moves the two locations of the pair, the order of
+   * the other pairs is not affected. The correction takes <code>O(1)</code>
+   * time per pair, <code>O(n)</code> in total.
+   * @param servicePairs The pickup and delivery pairs.
+   * @param elements The permutation, the first and last position are the
+   *          depot.
+   */
+  static void correctPickupDeliveryOrder(int[][] servicePairs,
+      int[] elements) {
+    final int n = elements.length;
+    final int[] positions = new int[n];
+    Arrays.fill(positions, -1);
+    for (int i = 1; i < n - 1; i++) {
+      positions[elements[i]] = i;
+    }
+    for (final int[] pair : servicePairs) {
+      final int pickup = pair[0];
+      final int delivery = pair[1];
+
+      final int pickupLoc = positions[pickup];
+      final int deliveryLoc = positions[delivery];
+      if (pickupLoc > deliveryLoc) {
+        elements[deliveryLoc] = pickup;
+        elements[pickupLoc] = delivery;
+        positions[pickup] = deliveryLoc;
+        positions[delivery] = pickupLoc;
+      }
+    }
+  }
+
+  /**
+   * Corrects the permutation as
+   * {@link #correctPickupDeliveryOrder(int[][], int[])}.
+   * @param servicePairs The pickup and delivery pairs.
+   * @param elements The permutation, the first and last position are the
+   *          depot.
+   */
+  static void correctPickupDeliveryOrder(int[][] servicePairs,
+      List<Integer> elements) {
+    final int[] perm = Ints.toArray(elements);
+    correctPickupDeliveryOrder(servicePairs, perm);
+    for (int i = 0; i < perm.length; i++) {
+      elements.set(i, perm[i]);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+/**
+ * Receives the progress of the local searches of the late acceptance solvers
+ * ({@link HeuristicSolver} and {@link MultiVehicleHeuristicSolver}). The
+ * methods are called from the thread that runs the search, in case of a
+ * multi-start search several searches may run concurrently. The methods are
+ * called for every iteration of a search, implementations should therefore
+ * be cheap. By default the solvers use {@link SearchListeners#noOp()}.
+ * @author Rinde van Lon
+ */
+public interface SearchListener {
+
+  /**
+   * Is called when a search is started.
+   * @param objective The objective value of the initial solution.
+   */
+  void searchStarted(double objective);
+
+  /**
+   * Is called after a move is evaluated and is accepted or rejected.
+   * @param move The type of move.
+   * @param accepted <code>true</code> if the move is accepted.
+   */
+  void moveEvaluated(Move move, boolean accepted);
+
+  /**
+   * Is called when the search finds a new best solution.
+   * @param objective The objective value of the new best solution.
+   * @param iteration The iteration in which the solution was found.
+   * @param elapsedNanos The time since the start of the search.
+   */
+  void bestFound(double objective, long iteration, long elapsedNanos);
+
+  /**
+   * Is called when a search is finished.
+   * @param iterations The number of iterations of the search.
+   * @param elapsedNanos The duration of the search.
+   * @param bestIteration The iteration in which the best solution was found,
+   *          <code>0</code> if it is the initial solution.
+   * @param bestElapsedNanos The time between the start of the search and the
+   *          moment the best solution was found.
+   */
+  void searchFinished(long iterations, long elapsedNanos, long bestIteration,
+      long bestElapsedNanos);
+
+  /**
+   * The types of moves of the searches.
+   */
+  enum Move {
+    /**
+     * Moves an order location to another position in the permutation.
+     */
+    SHIFT,
+
+    /**
+     * Assigns an order to another vehicle.
+     */
+    REASSIGNMENT,
+
+    /**
+     * Moves a pickup and its delivery to new positions, possibly in another
+     * vehicle.
+     */
+    RELOCATE_PAIR,
+
+    /**
+     * Exchanges the positions and vehicles of two orders of different
+     * vehicles.
+     */
+    EXCHANGE,
+
+    /**
+     * Moves a segment of consecutive locations of a route to another position
+     * in the same route.
+     */
+    OR_OPT;
+  }
+}
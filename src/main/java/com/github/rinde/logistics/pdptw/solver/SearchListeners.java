@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+/**
+ * Provides {@link SearchListener} instances.
+ * @author Rinde van Lon
+ */
+public final class SearchListeners {
+
+  private SearchListeners() {}
+
+  /**
+   * @return A listener that ignores all notifications.
+   */
+  public static SearchListener noOp() {
+    return NoOp.INSTANCE;
+  }
+
+  enum NoOp implements SearchListener {
+    INSTANCE {
+      @Override
+      public void searchStarted(double objective) {}
+
+      @Override
+      public void moveEvaluated(Move move, boolean accepted) {}
+
+      @Override
+      public void bestFound(double objective, long iteration,
+          long elapsedNanos) {}
+
+      @Override
+      public void searchFinished(long iterations, long elapsedNanos,
+          long bestIteration, long bestElapsedNanos) {}
+
+      @Override
+      public String toString() {
+        return "SearchListeners.noOp()";
+      }
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import java.util.concurrent.TimeUnit;
+
+import com.github.rinde.logistics.pdptw.solver.SolverBudget.Limit;
+import com.google.auto.value.AutoValue;
+
+/**
+ * Statistics of a local search that was run with a {@link SolverBudget}.
+ * @author Rinde van Lon
+ */
+@AutoValue
+public abstract class SearchStatistics {
+
+  SearchStatistics() {}
+
+  /**
+   * @return The number of iterations that were done, in case of several
+   *         parallel searches this is the sum of their iterations.
+   */
+  public abstract long getIterations();
+
+  /**
+   * @return The elapsed (wall-clock) time in nanoseconds.
+   */
+  public abstract long getElapsedNanos();
+
+  /**
+   * @return The limit of the budget that ended the search.
+   */
+  public abstract Limit getLimit();
+
+  /**
+   * @param unit The unit to convert to.
+   * @return The elapsed (wall-clock) time in the specified unit.
+   */
+  public long getElapsedTime(TimeUnit unit) {
+    return unit.convert(getElapsedNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  static SearchStatistics create(long iterations, long elapsedNanos,
+      Limit limit) {
+    return new AutoValue_SearchStatistics(iterations, elapsedNanos, limit);
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.github.rinde.opt.localsearch.RouteCostCache;
+import com.github.rinde.opt.localsearch.Segments;
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.GlobalStateObject.VehicleStateObject;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.github.rinde.rinsim.util.StochasticSuppliers.AbstractStochasticSupplier;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Local search with segment relocation (or-opt) and segment reversal moves. It
+ * is a decorator for another {@link Solver}, it cannot be used directly since
+ * it relies on a complete schedule as input (i.e. all parcels must already be
+ * assigned to a vehicle). For more information about the algorithm see
+ * {@link Segments}.
+ * @author Rinde van Lon
+ */
+public class SegmentOpt implements Solver {
+
+  final RandomGenerator rng;
+  final Solver delegate;
+  final ParcelRouteEvaluator evaluator;
+  final boolean depthFirstSearch;
+  final int maxSegmentLength;
+
+  /**
+   * Creates a new instance that decorates the specified {@link Solver} and uses
+   * the specified {@link ObjectiveFunction} to compute the cost of a move.
+   * @param seed The seed to use to initialize the random number generator. Note
+   *          that this has only an effect when <i>depth first search</i> is
+   *          used. Breadth first search is deterministic and does not use the
+   *          random number generator.
+   * @param deleg The solver to decorate.
+   * @param objFunc The {@link ObjectiveFunction} to use for cost computation.
+   * @param dfs If true <i>depth first search</i> will be used, otherwise
+   *          <i>breadth first search</i> is used.
+   * @param maxSegmentLen The maximum length of a relocated segment, must be
+   *          positive.
+   */
+  public SegmentOpt(long seed, Solver deleg, ObjectiveFunction objFunc,
+      boolean dfs, int maxSegmentLen) {
+    checkArgument(maxSegmentLen > 0,
+      "maxSegmentLength must be positive, is %s.", maxSegmentLen);
+    rng = new MersenneTwister(seed);
+    delegate = deleg;
+    evaluator = ParcelRouteEvaluator.create(objFunc);
+    depthFirstSearch = dfs;
+    maxSegmentLength = maxSegmentLen;
+  }
+
+  /**
+   * {@inheritDoc} The route costs are cached in a bounded cache that is
+   * created for each invocation, the costs depend on the state and can
+   * therefore not be reused by later invocations.
+   */
+  @Override
+  public ImmutableList<ImmutableList<Parcel>> solve(GlobalStateObject state) {
+    final RouteCostCache<GlobalStateObject, Parcel> routeCostCache =
+      RouteCostCache.create();
+    final ImmutableList<ImmutableList<Parcel>> schedule = delegate
+        .solve(state);
+    final ImmutableList.Builder<Integer> indexBuilder = ImmutableList.builder();
+    for (final VehicleStateObject vso : state.getVehicles()) {
+      indexBuilder.add(vso.getDestination().isPresent() ? 1 : 0);
+    }
+    if (depthFirstSearch) {
+      return Segments.dfs(schedule, indexBuilder.build(), state, evaluator,
+        rng, maxSegmentLength, routeCostCache);
+    }
+    return Segments.bfs(schedule, indexBuilder.build(), state, evaluator,
+      maxSegmentLength, routeCostCache);
+  }
+
+  /**
+   * Decorates the specified {@link Solver} supplier with <i>breadth-first</i>
+   * {@link SegmentOpt} using
+   * {@link Segments#DEFAULT_MAX_SEGMENT_LENGTH}. This algorithm is
+   * deterministic, repeated invocations (even with different random seeds) on
+   * the same data will yield the same result.
+   * @param delegate The solver to decorate.
+   * @param objFunc The objective function to use.
+   * @return A supplier that creates instances of a solver decorated with
+   *         {@link SegmentOpt}.
+   */
+  public static StochasticSupplier<Solver> breadthFirstSupplier(
+      final StochasticSupplier<Solver> delegate,
+      final ObjectiveFunction objFunc) {
+    return new SegmentOptSupplier(delegate, objFunc, false,
+        Segments.DEFAULT_MAX_SEGMENT_LENGTH);
+  }
+
+  /**
+   * Decorates the specified {@link Solver} supplier with <i>depth-first</i>
+   * {@link SegmentOpt} using {@link Segments#DEFAULT_MAX_SEGMENT_LENGTH}. This
+   * algorithm is non-deterministic, repeated invocations on the same data may
+   * yield different results if different random seeds are used.
+   * @param delegate The solver to decorate.
+   * @param objFunc The objective function to use.
+   * @return A supplier that creates instances of a solver decorated with
+   *         {@link SegmentOpt}.
+   */
+  public static StochasticSupplier<Solver> depthFirstSupplier(
+      final StochasticSupplier<Solver> delegate,
+      final ObjectiveFunction objFunc) {
+    return new SegmentOptSupplier(delegate, objFunc, true,
+        Segments.DEFAULT_MAX_SEGMENT_LENGTH);
+  }
+
+  /**
+   * Decorates the specified {@link Solver} supplier with {@link SegmentOpt}.
+   * @param delegate The solver to decorate.
+   * @param objFunc The objective function to use.
+   * @param dfs If true <i>depth first search</i> will be used, otherwise
+   *          <i>breadth first search</i> is used.
+   * @param maxSegmentLength The maximum length of a relocated segment, must be
+   *          positive.
+   * @return A supplier that creates instances of a solver decorated with
+   *         {@link SegmentOpt}.
+   */
+  public static StochasticSupplier<Solver> supplier(
+      final StochasticSupplier<Solver> delegate,
+      final ObjectiveFunction objFunc, boolean dfs, int maxSegmentLength) {
+    checkArgument(maxSegmentLength > 0,
+      "maxSegmentLength must be positive, is %s.", maxSegmentLength);
+    return new SegmentOptSupplier(delegate, objFunc, dfs, maxSegmentLength);
+  }
+
+  private static class SegmentOptSupplier extends
+      AbstractStochasticSupplier<Solver> {
+    private static final long serialVersionUID = 4967339283463916732L;
+    private final StochasticSupplier<Solver> delegate;
+    private final ObjectiveFunction objectiveFunction;
+    private final boolean depthFirstSearch;
+    private final int maxSegmentLength;
+
+    SegmentOptSupplier(StochasticSupplier<Solver> del,
+        ObjectiveFunction objFunc, boolean dfs, int maxSegmentLen) {
+      delegate = del;
+      objectiveFunction = objFunc;
+      depthFirstSearch = dfs;
+      maxSegmentLength = maxSegmentLen;
+    }
+
+    @Override
+    public Solver get(long seed) {
+      final RandomGenerator rand = new MersenneTwister(seed);
+      return new SegmentOpt(rand.nextLong(), delegate.get(rand.nextLong()),
+          objectiveFunction, depthFirstSearch, maxSegmentLength);
+    }
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Serializable;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * The adaptive behavior of a late acceptance search. Two independent
+ * mechanisms can be enabled:
+ * <ul>
+ * <li><i>Operator selection</i>: instead of choosing each move type with the
+ * same probability, the move types are chosen with a roulette wheel. After
+ * every segment of iterations the weight of each move type that was used is
+ * moved towards its share of the improvement of the current objective per
+ * nanosecond spent on that move type. Since the selection depends on the
+ * measured time, a search with operator selection is not deterministic.</li>
+ * <li><i>List length schedule</i>: the late acceptance list starts with the
+ * list length of the solver and its length is doubled, up to a maximum, each
+ * time the best solution did not improve for a number of iterations that is
+ * proportional to the current list length. A short list converges quickly on
+ * small problems and budgets, a long list explores more when the search
+ * stagnates.</li>
+ * </ul>
+ * By default both mechanisms are disabled, instances are created via
+ * {@link #none()} and refined via the <code>with</code> methods.
+ * @author Rinde van Lon
+ */
+@AutoValue
+public abstract class SolverAdaptation implements Serializable {
+  /**
+   * The default number of iterations of a segment of the operator selection.
+   */
+  public static final int DEFAULT_SEGMENT_LENGTH = 1000;
+
+  /**
+   * The default reaction factor of the operator selection.
+   */
+  public static final double DEFAULT_REACTION = .2;
+
+  /**
+   * The default minimum probability of a move type.
+   */
+  public static final double DEFAULT_MIN_PROBABILITY = .05;
+
+  /**
+   * The default number of times the list length of iterations without
+   * improvement that trigger the growth of the list.
+   */
+  public static final int DEFAULT_PATIENCE = 2;
+
+  private static final long serialVersionUID = 5426718043905812256L;
+
+  SolverAdaptation() {}
+
+  /**
+   * @return The number of iterations after which the probabilities of the move
+   *         types are adapted, <code>0</code> means that the move types are
+   *         chosen uniformly.
+   */
+  public abstract int getSegmentLength();
+
+  /**
+   * @return The weight of the last segment in the new weight of a move type,
+   *         in <code>(0,1]</code>.
+   */
+  public abstract double getReaction();
+
+  /**
+   * @return The minimum probability of each move type.
+   */
+  public abstract double getMinProbability();
+
+  /**
+   * @return The maximum length of the late acceptance list, <code>0</code>
+   *         means that the list length is fixed.
+   */
+  public abstract int getMaxListLength();
+
+  /**
+   * @return The number of times the current list length of iterations without
+   *         improvement of the best solution after which the list grows.
+   */
+  public abstract int getPatience();
+
+  /**
+   * @return <code>true</code> if the move types are chosen adaptively.
+   */
+  public boolean isOperatorSelectionEnabled() {
+    return getSegmentLength() > 0;
+  }
+
+  /**
+   * @return <code>true</code> if the length of the late acceptance list is
+   *         adapted.
+   */
+  public boolean isListLengthScheduleEnabled() {
+    return getMaxListLength() > 0;
+  }
+
+  /**
+   * @param segmentLength The number of iterations after which the
+   *          probabilities of the move types are adapted, must be positive.
+   * @param reaction The weight of the last segment in the new weight of a move
+   *          type, must be in <code>(0,1]</code>.
+   * @param minProbability The minimum probability of each move type, must be
+   *          in <code>[0,1]</code>. The minimum probability times the number
+   *          of enabled move types may not exceed <code>1</code>, this is
+   *          checked when the adaptation is added to the options of a
+   *          solver, see
+   *          {@link MultiVehicleHeuristicSolver.Options#withAdaptation}.
+   * @return A copy of this adaptation with adaptive operator selection.
+   */
+  public SolverAdaptation withOperatorSelection(int segmentLength,
+      double reaction, double minProbability) {
+    checkArgument(segmentLength > 0,
+      "The segment length must be positive, is %s.", segmentLength);
+    checkArgument(reaction > 0 && reaction <= 1,
+      "The reaction must be in (0,1], is %s.", reaction);
+    checkArgument(minProbability >= 0 && minProbability <= 1,
+      "The minimum probability must be in [0,1], is %s.", minProbability);
+    return create(segmentLength, reaction, minProbability,
+      getMaxListLength(), getPatience());
+  }
+
+  /**
+   * Enables adaptive operator selection with the default segment length,
+   * reaction and minimum probability.
+   * @return A copy of this adaptation with adaptive operator selection.
+   */
+  public SolverAdaptation withOperatorSelection() {
+    return withOperatorSelection(DEFAULT_SEGMENT_LENGTH, DEFAULT_REACTION,
+      DEFAULT_MIN_PROBABILITY);
+  }
+
+  /**
+   * @param maxListLength The maximum length of the late acceptance list, must
+   *          be positive.
+   * @param patience The number of times the current list length of iterations
+   *          without improvement of the best solution after which the list
+   *          grows, must be positive.
+   * @return A copy of this adaptation with a list length schedule.
+   */
+  public SolverAdaptation withListLengthSchedule(int maxListLength,
+      int patience) {
+    checkArgument(maxListLength > 0,
+      "The maximum list length must be positive, is %s.", maxListLength);
+    checkArgument(patience > 0, "The patience must be positive, is %s.",
+      patience);
+    return create(getSegmentLength(), getReaction(), getMinProbability(),
+      maxListLength, patience);
+  }
+
+  /**
+   * @param maxListLength The maximum length of the late acceptance list, must
+   *          be positive.
+   * @return A copy of this adaptation with a list length schedule with the
+   *         default patience.
+   */
+  public SolverAdaptation withListLengthSchedule(int maxListLength) {
+    return withListLengthSchedule(maxListLength, DEFAULT_PATIENCE);
+  }
+
+  /**
+   * @return An adaptation in which the move types are chosen uniformly and the
+   *         list length is fixed.
+   */
+  public static SolverAdaptation none() {
+    return create(0, DEFAULT_REACTION, DEFAULT_MIN_PROBABILITY, 0,
+      DEFAULT_PATIENCE);
+  }
+
+  static SolverAdaptation create(int segmentLength, double reaction,
+      double minProbability, int maxListLength, int patience) {
+    return new AutoValue_SolverAdaptation(segmentLength, reaction,
+      minProbability, maxListLength, patience);
+  }
+}
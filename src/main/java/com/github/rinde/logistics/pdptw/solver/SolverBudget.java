@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * The budget of a local search: a maximum duration, a maximum number of
+ * iterations and a maximum number of iterations without improvement. The
+ * search stops as soon as one of these limits is reached and returns the best
+ * solution found so far. By default all limits are unbounded, instances are
+ * created via {@link #unlimited()} and refined via the <code>with</code>
+ * methods.
+ * @author Rinde van Lon
+ */
+@AutoValue
+public abstract class SolverBudget implements Serializable {
+  private static final long serialVersionUID = -3127385713062961524L;
+
+  SolverBudget() {}
+
+  /**
+   * @return The maximum duration in nanoseconds, {@link Long#MAX_VALUE} means
+   *         unbounded.
+   */
+  public abstract long getMaxDurationNanos();
+
+  /**
+   * @return The maximum number of iterations, {@link Long#MAX_VALUE} means
+   *         unbounded.
+   */
+  public abstract long getMaxIterations();
+
+  /**
+   * @return The maximum number of iterations without improvement of the best
+   *         solution, {@link Long#MAX_VALUE} means unbounded.
+   */
+  public abstract long getMaxNonImprovements();
+
+  /**
+   * @param duration The maximum duration, must be non-negative.
+   * @param unit The unit of the duration.
+   * @return A copy of this budget with the specified maximum duration.
+   */
+  public SolverBudget withMaxDuration(long duration, TimeUnit unit) {
+    checkArgument(duration >= 0, "The duration must be non-negative, is %s.",
+      duration);
+    return create(unit.toNanos(duration), getMaxIterations(),
+      getMaxNonImprovements());
+  }
+
+  /**
+   * @param iterations The maximum number of iterations, must be non-negative.
+   * @return A copy of this budget with the specified maximum number of
+   *         iterations.
+   */
+  public SolverBudget withMaxIterations(long iterations) {
+    checkArgument(iterations >= 0,
+      "The number of iterations must be non-negative, is %s.", iterations);
+    return create(getMaxDurationNanos(), iterations, getMaxNonImprovements());
+  }
+
+  /**
+   * @param nonImprovements The maximum number of iterations without
+   *          improvement, must be non-negative.
+   * @return A copy of this budget with the specified maximum number of
+   *         iterations without improvement.
+   */
+  public SolverBudget withMaxNonImprovements(long nonImprovements) {
+    checkArgument(nonImprovements >= 0,
+      "The number of non-improvements must be non-negative, is %s.",
+      nonImprovements);
+    return create(getMaxDurationNanos(), getMaxIterations(), nonImprovements);
+  }
+
+  /**
+   * Starts the clock of this budget.
+   * @return A new tracker of which the deadline is computed relative to the
+   *         current time.
+   */
+  Tracker start() {
+    return new Tracker(this, System.nanoTime());
+  }
+
+  /**
+   * @return A budget without limits.
+   */
+  public static SolverBudget unlimited() {
+    return create(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+  }
+
+  static SolverBudget create(long maxDurationNanos, long maxIterations,
+      long maxNonImprovements) {
+    return new AutoValue_SolverBudget(maxDurationNanos, maxIterations,
+      maxNonImprovements);
+  }
+
+  /**
+   * The limit of a budget that ended the search.
+   */
+  public enum Limit {
+    /**
+     * The maximum duration was reached.
+     */
+    DURATION,
+
+    /**
+     * The maximum number of iterations was reached.
+     */
+    ITERATIONS,
+
+    /**
+     * The maximum number of iterations without improvement was reached.
+     */
+    NON_IMPROVEMENTS;
+  }
+
+  /**
+   * Checks whether a budget is exhausted. A tracker is immutable, the same
+   * tracker can be used by several threads that each count their own
+   * iterations.
+   */
+  static final class Tracker {
+    final SolverBudget budget;
+    final long startNanos;
+
+    Tracker(SolverBudget b, long start) {
+      budget = b;
+      startNanos = start;
+    }
+
+    /**
+     * @param iterations The number of iterations done.
+     * @param nonImprovements The number of iterations since the last
+     *          improvement.
+     * @return The limit that is reached or <code>null</code> if the budget is
+     *         not exhausted.
+     */
+    @Nullable
+    Limit check(long iterations, long nonImprovements) {
+      if (iterations >= budget.getMaxIterations()) {
+        return Limit.ITERATIONS;
+      } else if (nonImprovements > budget.getMaxNonImprovements()) {
+        return Limit.NON_IMPROVEMENTS;
+      } else if (budget.getMaxDurationNanos() != Long.MAX_VALUE
+        && elapsedNanos() >= budget.getMaxDurationNanos()) {
+        return Limit.DURATION;
+      }
+      return null;
+    }
+
+    long elapsedNanos() {
+      return System.nanoTime() - startNanos;
+    }
+
+    SearchStatistics statistics(long iterations, Limit limit) {
+      return SearchStatistics.create(iterations, elapsedNanos(), limit);
+    }
+  }
+}
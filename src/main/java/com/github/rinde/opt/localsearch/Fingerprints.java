@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+
+/**
+ * Fingerprints of the routes of a schedule and of the routes that a move
+ * derives from them. A fingerprint consists of two polynomial hashes (modulo
+ * two primes) of the hash codes of the items of a route. The prefix hashes of
+ * every route of the schedule are computed once, the fingerprint of a route
+ * that consists of a few (possibly reversed) slices of the routes of the
+ * schedule and a few single items is then computed in time that does not
+ * depend on the length of the route. Items with equal hash codes are
+ * considered equal.
+ * @author Rinde van Lon
+ */
+final class Fingerprints {
+  private static final long P1 = 1000000007L;
+  private static final long P2 = 998244353L;
+  private static final long B1 = 911382323L;
+  private static final long B2 = 972663749L;
+
+  // prefix hashes of every route and of every reversed route
+  private final long[][] forward1;
+  private final long[][] forward2;
+  private final long[][] backward1;
+  private final long[][] backward2;
+  // powers of the bases up to the total number of items
+  private final long[] powers1;
+  private final long[] powers2;
+  private final List<Map<Object, int[]>> positions;
+
+  private Fingerprints(ImmutableList<? extends ImmutableList<?>> routes) {
+    final int n = routes.size();
+    forward1 = new long[n][];
+    forward2 = new long[n][];
+    backward1 = new long[n][];
+    backward2 = new long[n][];
+    positions = newArrayList();
+    int total = 0;
+    for (int r = 0; r < n; r++) {
+      final ImmutableList<?> route = routes.get(r);
+      final int size = route.size();
+      total += size;
+      forward1[r] = new long[size + 1];
+      forward2[r] = new long[size + 1];
+      backward1[r] = new long[size + 1];
+      backward2[r] = new long[size + 1];
+      final Map<Object, List<Integer>> indices = newHashMap();
+      for (int i = 0; i < size; i++) {
+        final Object item = route.get(i);
+        forward1[r][i + 1] = (forward1[r][i] * B1 + value(item, P1)) % P1;
+        forward2[r][i + 1] = (forward2[r][i] * B2 + value(item, P2)) % P2;
+        final Object reversed = route.get(size - 1 - i);
+        backward1[r][i + 1] = (backward1[r][i] * B1 + value(reversed, P1))
+          % P1;
+        backward2[r][i + 1] = (backward2[r][i] * B2 + value(reversed, P2))
+          % P2;
+        List<Integer> list = indices.get(item);
+        if (list == null) {
+          list = newArrayList();
+          indices.put(item, list);
+        }
+        list.add(i);
+      }
+      final Map<Object, int[]> map = newHashMap();
+      for (final Map.Entry<Object, List<Integer>> entry : indices.entrySet()) {
+        map.put(entry.getKey(), Ints.toArray(entry.getValue()));
+      }
+      positions.add(map);
+    }
+    // a candidate route consists of at most all items of the schedule
+    final int maxLength = Math.max(total, 1);
+    powers1 = new long[maxLength + 1];
+    powers2 = new long[maxLength + 1];
+    powers1[0] = 1;
+    powers2[0] = 1;
+    for (int i = 1; i <= maxLength; i++) {
+      powers1[i] = powers1[i - 1] * B1 % P1;
+      powers2[i] = powers2[i - 1] * B2 % P2;
+    }
+  }
+
+  /**
+   * @return A new builder of a fingerprint.
+   */
+  Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * The positions of an item in a route, in ascending order.
+   * @param row The index of the route.
+   * @param item The item.
+   * @return The positions, an empty array if the item is not in the route.
+   */
+  int[] positions(int row, Object item) {
+    final int[] pos = positions.get(row).get(item);
+    return pos == null ? new int[0] : pos;
+  }
+
+  /**
+   * Computes the fingerprint of the route that results from moving the
+   * occurrences of an item, as done by
+   * {@link Swaps#inListSwap(ImmutableList, List, Object)} and
+   * {@link Insertions#insert(List, List, Object)}. The item is removed from
+   * the specified positions, after which it is inserted at the insertion
+   * indices of the route without the item.
+   * @param row The index of the route.
+   * @param removed The ascending positions of the item in the route.
+   * @param insertions The ascending insertion indices, relative to the route
+   *          without the item.
+   * @param item The item.
+   * @return The fingerprint.
+   */
+  long moved(int row, int[] removed, List<Integer> insertions, Object item) {
+    final Builder builder = new Builder();
+    final int size = forward1[row].length - 1 - removed.length;
+    int prev = 0;
+    for (final int index : insertions) {
+      appendRemoved(builder, row, removed, prev, index);
+      builder.item(item);
+      prev = index;
+    }
+    appendRemoved(builder, row, removed, prev, size);
+    return builder.fingerprint();
+  }
+
+  // appends the range [from, to) of the route without the removed positions
+  private void appendRemoved(Builder builder, int row, int[] removed,
+      int from, int to) {
+    int cur = from;
+    int start = 0;
+    for (int j = 0; j <= removed.length && cur < to; j++) {
+      final int end = j < removed.length ? removed[j]
+        : forward1[row].length - 1;
+      // the position of start in the route without the removed positions
+      final int offset = start - j;
+      final int lo = Math.max(cur, offset);
+      final int hi = Math.min(to, offset + end - start);
+      if (lo < hi) {
+        builder.slice(row, start + lo - offset, start + hi - offset);
+        cur = hi;
+      }
+      start = end + 1;
+    }
+  }
+
+  /**
+   * Computes the fingerprint of a route, independently of any schedule.
+   * @param route The route.
+   * @return The fingerprint.
+   */
+  static long of(List<?> route) {
+    long h1 = 0;
+    long h2 = 0;
+    for (final Object item : route) {
+      h1 = (h1 * B1 + value(item, P1)) % P1;
+      h2 = (h2 * B2 + value(item, P2)) % P2;
+    }
+    return h1 << 32 | h2;
+  }
+
+  static Fingerprints create(
+      ImmutableList<? extends ImmutableList<?>> routes) {
+    return new Fingerprints(routes);
+  }
+
+  // spreads the bits of the hash code such that similar hash codes do not
+  // result in similar values
+  private static long value(Object item, long prime) {
+    long h = item.hashCode();
+    h = (h ^ h >>> 33) * 0xff51afd7ed558ccdL;
+    h = (h ^ h >>> 33) * 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (h >>> 1) % prime;
+  }
+
+  /**
+   * Computes a fingerprint by appending slices of the routes of the schedule
+   * and single items.
+   */
+  final class Builder {
+    private long h1;
+    private long h2;
+
+    Builder() {}
+
+    /**
+     * Appends the items at the positions <code>[from, to)</code> of a route.
+     * @param row The index of the route.
+     * @param from The first position (inclusive).
+     * @param to The last position (exclusive).
+     * @return This builder.
+     */
+    Builder slice(int row, int from, int to) {
+      final int length = to - from;
+      append(length,
+        mod(forward1[row][to] - forward1[row][from] * powers1[length], P1),
+        mod(forward2[row][to] - forward2[row][from] * powers2[length], P2));
+      return this;
+    }
+
+    /**
+     * Appends the items at the positions <code>[from, to)</code> of a route in
+     * reverse order.
+     * @param row The index of the route.
+     * @param from The first position (inclusive).
+     * @param to The last position (exclusive).
+     * @return This builder.
+     */
+    Builder reversed(int row, int from, int to) {
+      final int size = forward1[row].length - 1;
+      final int length = to - from;
+      final int start = size - to;
+      final int end = size - from;
+      append(length,
+        mod(backward1[row][end] - backward1[row][start] * powers1[length], P1),
+        mod(backward2[row][end] - backward2[row][start] * powers2[length], P2));
+      return this;
+    }
+
+    /**
+     * Appends a single item.
+     * @param item The item.
+     * @return This builder.
+     */
+    Builder item(Object item) {
+      append(1, value(item, P1), value(item, P2));
+      return this;
+    }
+
+    /**
+     * @return The fingerprint of the appended items, equal to
+     *         {@link Fingerprints#of(List)} of the route.
+     */
+    long fingerprint() {
+      return h1 << 32 | h2;
+    }
+
+    private void append(int length, long v1, long v2) {
+      h1 = (h1 * powers1[length] + v1) % P1;
+      h2 = (h2 * powers2[length] + v2) % P2;
+    }
+  }
+
+  private static long mod(long value, long prime) {
+    final long m = value % prime;
+    return m < 0 ? m + prime : m;
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Optional extension of {@link RouteEvaluator} for evaluators that can compute
+ * the cost of a modified route without re-evaluating the unmodified part of
+ * the route. An evaluator first prepares a route, this computes the prefix
+ * data (e.g. arrival times) at every position of the route. A modified route
+ * that shares the first <code>k</code> items with the prepared route can then
+ * be evaluated in <code>O(n-k)</code> by resuming the evaluation at position
+ * <code>k</code>.
+ * <p>
+ * {@link Swaps} uses this interface automatically when the supplied evaluator
+ * implements it.
+ *
+ * @param <C> The context type.
+ * @param <T> The generic type of a route.
+ * @author Rinde van Lon
+ */
+public interface IncrementalRouteEvaluator<C, T> extends RouteEvaluator<C, T> {
+
+  /**
+   * Prepares the specified route for incremental evaluation.
+   * @param context The context (schedule).
+   * @param routeIndex The index of the route in the context.
+   * @param route The route to prepare.
+   * @return The prepared route.
+   */
+  PreparedRoute<T> prepare(C context, int routeIndex, ImmutableList<T> route);
+
+  /**
+   * A route together with its precomputed prefix data.
+   * @param <T> The generic type of a route.
+   */
+  interface PreparedRoute<T> {
+
+    /**
+     * @return The route that was prepared.
+     */
+    ImmutableList<T> getRoute();
+
+    /**
+     * @return The cost of the prepared route, this equals the value that is
+     *         returned by {@link RouteEvaluator#computeCost}.
+     */
+    double getCost();
+
+    /**
+     * Computes the cost of a modification of the prepared route.
+     * @param newRoute The new route, the items at positions
+     *          <code>[0,fromIndex)</code> must be equal to the items of the
+     *          prepared route at the same positions.
+     * @param fromIndex The first position at which the new route may differ
+     *          from the prepared route, must be <code>&ge; 0</code> and
+     *          <code>&le;</code> the size of both routes.
+     * @return The cost of the new route, this equals the value that is
+     *         returned by {@link RouteEvaluator#computeCost}.
+     */
+    double computeCost(ImmutableList<T> newRoute, int fromIndex);
+  }
+}
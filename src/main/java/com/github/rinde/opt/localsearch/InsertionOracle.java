@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+/**
+ * Decides which insertion positions are worth exploring, see
+ * {@link Insertions#insertionsIterator(com.google.common.collect.ImmutableList, Object, int, int, InsertionOracle)}
+ * . The insertion positions are generated in ascending order, position by
+ * position. Before the generator extends a prefix of insertion positions it
+ * asks the oracle whether the prefix is promising, if it is not, all
+ * insertions that start with the prefix are skipped. An oracle can skip
+ * prefixes that are infeasible (e.g. because a time window can no longer be
+ * met) or dominated (e.g. because a lower bound on the cost of every
+ * completion is not better than the best insertion found so far). Since the
+ * generator is lazy, an oracle may depend on the insertions that were
+ * evaluated so far.
+ * @author Rinde van Lon
+ */
+public interface InsertionOracle {
+
+  /**
+   * @param positions The insertion positions, only the positions
+   *          <code>[0,depth]</code> are defined. The array may not be
+   *          modified.
+   * @param depth The index of the last defined position.
+   * @return <code>false</code> if none of the insertions that start with the
+   *         defined positions needs to be generated, <code>true</code>
+   *         otherwise.
+   */
+  boolean isPromising(int[] positions, int depth);
+}
@@ -18,6 +18,7 @@ package com.github.rinde.opt.localsearch;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -62,6 +63,32 @@ public final class Insertions {
       new IndexToInsertionTransform<T>(list, item));
   }
 
+  /**
+   * Same as {@link #insertionsIterator(ImmutableList, Object, int, int)} but
+   * skips all insertions of which a prefix of the insertion positions is
+   * rejected by the oracle. The insertions are generated lazily in the same
+   * order, the oracle is consulted when the iterator advances.
+   * @param list The original list.
+   * @param item The item to be inserted.
+   * @param startIndex Must be &ge; 0 &amp;&amp; &le; list size.
+   * @param numOfInsertions The number of times <code>item</code> is inserted.
+   * @param oracle The oracle that decides which prefixes of insertion
+   *          positions are explored.
+   * @param <T> The list item type.
+   * @return Iterator producing the insertions that are not skipped.
+   */
+  public static <T> Iterator<ImmutableList<T>> insertionsIterator(
+      ImmutableList<T> list, T item, int startIndex, int numOfInsertions,
+      InsertionOracle oracle) {
+    checkArgument(startIndex >= 0 && startIndex <= list.size(),
+      "startIndex must be >= 0 and <= %s (list size), it is %s.",
+      list.size(), startIndex);
+    checkArgument(numOfInsertions > 0, "numOfInsertions must be positive.");
+    return Iterators.transform(new PrunedInsertionIndexGenerator(
+        numOfInsertions, list.size(), startIndex, oracle),
+      new IndexToInsertionTransform<T>(list, item));
+  }
+
   /**
    * Creates a list of lists, each list contains a specified number of
    * insertions of <code>item</code> at a different position in the list. Only
@@ -93,6 +120,36 @@ public final class Insertions {
     return CombinatoricsUtils.binomialCoefficient(n + k - 1, k);
   }
 
+  /**
+   * Computes the insertion positions with the specified rank in the order of
+   * {@link InsertionIndexCursor}.
+   * @param rank The rank, must be <code>&ge; 0</code> and smaller than the
+   *          number of insertions.
+   * @param listSize The size of the list.
+   * @param startIndex The first position at which can be inserted.
+   * @param positions The array in which the positions are stored, its length
+   *          is the number of insertions.
+   */
+  static void unrank(long rank, int listSize, int startIndex,
+      int[] positions) {
+    final int k = positions.length;
+    checkArgument(rank >= 0
+      && rank < multichoose(listSize + 1 - startIndex, k),
+      "rank must be >= 0 and < the number of insertions, it is %s.", rank);
+    long r = rank;
+    int lower = startIndex;
+    for (int d = 0; d < k; d++) {
+      // the number of insertions with positions[d] == lower
+      long count = multichoose(listSize + 1 - lower, k - d - 1);
+      while (r >= count) {
+        r -= count;
+        lower++;
+        count = multichoose(listSize + 1 - lower, k - d - 1);
+      }
+      positions[d] = lower;
+    }
+  }
+
   /**
    * Inserts <code>item</code> in the specified indices in the
    * <code>originalList</code>.
@@ -143,50 +200,212 @@ public final class Insertions {
     }
   }
 
-  static class InsertionIndexGenerator implements
-      Iterator<ImmutableList<Integer>> {
-    private final int[] insertionPositions;
-    private final int originalListSize;
-    private final long length;
-    private int index = 0;
+  /**
+   * Inserts <code>item</code> at the specified positions in the first
+   * <code>length</code> elements of <code>route</code> and writes the result in
+   * <code>dest</code>.
+   * @param route The route which will be inserted by <code>item</code>.
+   * @param length The length of the route.
+   * @param positions Insertion positions in ascending order.
+   * @param item The item to insert.
+   * @param dest The array to write the result to, must have a length of at
+   *          least <code>length + positions.length</code> and may not be
+   *          <code>route</code>.
+   * @return The length of the new route.
+   */
+  static int insert(int[] route, int length, int[] positions, int item,
+      int[] dest) {
+    int prev = 0;
+    int size = 0;
+    for (int i = 0; i < positions.length; i++) {
+      final int cur = positions[i];
+      System.arraycopy(route, prev, dest, size, cur - prev);
+      size += cur - prev;
+      dest[size++] = item;
+      prev = cur;
+    }
+    System.arraycopy(route, prev, dest, size, length - prev);
+    return size + length - prev;
+  }
 
-    InsertionIndexGenerator(int numOfInsertions, int listSize, int startIndex) {
+  /**
+   * Enumerates all ascending insertion positions, the same as
+   * {@link InsertionIndexGenerator} but without creating a new object for each
+   * combination: {@link #positions} is updated in place. A cursor can be
+   * reused for different lists via {@link #reset(int, int)}.
+   */
+  static final class InsertionIndexCursor {
+    final int[] positions;
+    private int originalListSize;
+    private long length;
+    private long index;
+
+    InsertionIndexCursor(int numOfInsertions) {
+      positions = new int[numOfInsertions];
+    }
+
+    InsertionIndexCursor reset(int listSize, int startIndex) {
       checkArgument(startIndex <= listSize,
         "startIndex (%s) must be <= listSize (%s).",
         startIndex, listSize);
-      insertionPositions = new int[numOfInsertions];
-      for (int i = 0; i < insertionPositions.length; i++) {
-        insertionPositions[i] = startIndex;
-      }
+      Arrays.fill(positions, startIndex);
       originalListSize = listSize;
-      length = multichoose(listSize + 1 - startIndex, numOfInsertions);
+      length = multichoose(listSize + 1 - startIndex, positions.length);
+      index = 0;
+      return this;
     }
 
-    @Override
-    public boolean hasNext() {
+    boolean hasNext() {
       return index < length;
     }
 
-    @Override
-    public ImmutableList<Integer> next() {
+    int[] next() {
       if (!hasNext()) {
         throw new NoSuchElementException();
       }
       if (index > 0) {
-        for (int i = 0; i < insertionPositions.length; i++) {
-          if (insertionPositions[i] == originalListSize) {
-            insertionPositions[i - 1]++;
-            for (int j = i; j < insertionPositions.length; j++) {
-              insertionPositions[j] = insertionPositions[i - 1];
+        for (int i = 0; i < positions.length; i++) {
+          if (positions[i] == originalListSize) {
+            positions[i - 1]++;
+            for (int j = i; j < positions.length; j++) {
+              positions[j] = positions[i - 1];
             }
             break;
-          } else if (i == insertionPositions.length - 1) {
-            insertionPositions[i]++;
+          } else if (i == positions.length - 1) {
+            positions[i]++;
           }
         }
       }
       index++;
-      return ImmutableList.copyOf(Ints.asList(insertionPositions));
+      return positions;
+    }
+  }
+
+  /**
+   * Enumerates the ascending insertion positions in the same order as
+   * {@link InsertionIndexCursor} by a depth-first traversal of the tree of
+   * positions, a subtree is skipped when its prefix is rejected by the oracle.
+   * The next insertion is only computed when it is requested, {@link #positions}
+   * is updated in place. A cursor can be reused via
+   * {@link #reset(int, int, InsertionOracle)}.
+   */
+  static final class PrunedInsertionIndexCursor {
+    final int[] positions;
+    private int originalListSize;
+    @Nullable
+    private InsertionOracle oracle;
+    // the depth at which the traversal continues, -1 means exhausted
+    private int depth;
+    // positions is an accepted leaf that is not yet returned
+    private boolean ready;
+    // positions is a leaf that is returned by next()
+    private boolean returned;
+
+    PrunedInsertionIndexCursor(int numOfInsertions) {
+      positions = new int[numOfInsertions];
+      depth = -1;
+    }
+
+    PrunedInsertionIndexCursor reset(int listSize, int startIndex,
+        InsertionOracle insertionOracle) {
+      checkArgument(startIndex <= listSize,
+        "startIndex (%s) must be <= listSize (%s).", startIndex, listSize);
+      positions[0] = startIndex;
+      originalListSize = listSize;
+      oracle = insertionOracle;
+      depth = 0;
+      ready = false;
+      returned = false;
+      return this;
+    }
+
+    boolean hasNext() {
+      if (!ready && depth >= 0) {
+        ready = advance();
+      }
+      return ready;
+    }
+
+    int[] next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      ready = false;
+      returned = true;
+      return positions;
+    }
+
+    // moves to the next accepted leaf, returns false if there is none
+    private boolean advance() {
+      final InsertionOracle o = checkNotNull(oracle);
+      if (returned) {
+        // the traversal continues at the sibling of the returned leaf
+        positions[depth]++;
+        returned = false;
+      }
+      while (depth >= 0) {
+        if (positions[depth] > originalListSize) {
+          depth--;
+          if (depth >= 0) {
+            positions[depth]++;
+          }
+        } else if (!o.isPromising(positions, depth)) {
+          positions[depth]++;
+        } else if (depth == positions.length - 1) {
+          return true;
+        } else {
+          positions[depth + 1] = positions[depth];
+          depth++;
+        }
+      }
+      return false;
+    }
+  }
+
+  static final class PrunedInsertionIndexGenerator implements
+      Iterator<ImmutableList<Integer>> {
+    private final PrunedInsertionIndexCursor cursor;
+
+    PrunedInsertionIndexGenerator(int numOfInsertions, int listSize,
+        int startIndex, InsertionOracle oracle) {
+      cursor = new PrunedInsertionIndexCursor(numOfInsertions).reset(listSize,
+        startIndex, oracle);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return cursor.hasNext();
+    }
+
+    @Override
+    public ImmutableList<Integer> next() {
+      return ImmutableList.copyOf(Ints.asList(cursor.next()));
+    }
+
+    @Deprecated
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  static class InsertionIndexGenerator implements
+      Iterator<ImmutableList<Integer>> {
+    private final InsertionIndexCursor cursor;
+
+    InsertionIndexGenerator(int numOfInsertions, int listSize, int startIndex) {
+      cursor = new InsertionIndexCursor(numOfInsertions).reset(listSize,
+        startIndex);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return cursor.hasNext();
+    }
+
+    @Override
+    public ImmutableList<Integer> next() {
+      return ImmutableList.copyOf(Ints.asList(cursor.next()));
     }
 
     @Deprecated
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+/**
+ * Implementations of this interface should assign a cost value to a route of
+ * item ids, it is the primitive counterpart of {@link RouteEvaluator} as used
+ * by {@link IntSwaps}.
+ *
+ * @param <C> The context type.
+ * @author Rinde van Lon
+ */
+public interface IntRouteEvaluator<C> {
+
+  /**
+   * Should compute the cost of the new route.
+   * @param context The context (schedule).
+   * @param routeIndex The index of the new route in the context.
+   * @param newRoute The item ids of the new route, only the first
+   *          <code>length</code> elements are part of the route. The array is
+   *          reused by the caller and may therefore not be modified or stored.
+   * @param length The length of the new route.
+   * @return The cost of the new route.
+   */
+  double computeCost(C context, int routeIndex, int[] newRoute, int length);
+}
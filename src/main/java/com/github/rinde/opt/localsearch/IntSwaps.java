@@ -0,0 +1,571 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.github.rinde.opt.localsearch.Insertions.InsertionIndexCursor;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+
+/**
+ * Primitive variant of the 2-opt procedures in {@link Swaps}. Items are
+ * interned to dense <code>int</code> ids and routes are represented as
+ * <code>int[]</code>. Swaps are enumerated with reused insertion cursors and
+ * evaluated in reused buffers, only the routes of the resulting schedule are
+ * materialized. Given the same input both variants visit the same swaps in the
+ * same order and therefore produce the same schedule.
+ * <p>
+ * The generic methods adapt a {@link RouteEvaluator}, a route is only
+ * converted to an {@link ImmutableList} when its cost is not yet known.
+ * Evaluators that implement {@link IntRouteEvaluator} avoid this conversion
+ * completely.
+ * @author Rinde van Lon
+ */
+public final class IntSwaps {
+
+  private IntSwaps() {}
+
+  /**
+   * Same as
+   * {@link Swaps#bfsOpt2(ImmutableList, ImmutableList, Object, RouteEvaluator)}
+   * but using the primitive representation internally.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified. <code>startIndices[j] = n</code> indicates that
+   *          <code>schedule[j][n]</code> can be modified but
+   *          <code>schedule[j][n-1]</code> not.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a swap.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param <C> The context type.
+   * @param <T> The route item type (i.e. the locations that are part of a
+   *          route).
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> bfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      ImmutableList<Integer> startIndices, C context,
+      RouteEvaluator<C, T> evaluator) {
+    return opt2(schedule, startIndices, context, evaluator, false,
+      Optional.<RandomGenerator>absent());
+  }
+
+  /**
+   * Same as
+   * {@link Swaps#dfsOpt2(ImmutableList, ImmutableList, Object, RouteEvaluator, RandomGenerator)}
+   * but using the primitive representation internally.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified. <code>startIndices[j] = n</code> indicates that
+   *          <code>schedule[j][n]</code> can be modified but
+   *          <code>schedule[j][n-1]</code> not.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a swap.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param rng The random number generator that is used to randomize the
+   *          ordering of the swaps.
+   * @param <C> The context type.
+   * @param <T> The route item type (i.e. the locations that are part of a
+   *          route).
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> dfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      ImmutableList<Integer> startIndices, C context,
+      RouteEvaluator<C, T> evaluator, RandomGenerator rng) {
+    return opt2(schedule, startIndices, context, evaluator, true,
+      Optional.of(rng));
+  }
+
+  /**
+   * Breadth-first 2-opt search on a schedule of item ids, see
+   * {@link Swaps#bfsOpt2(ImmutableList, ImmutableList, Object, RouteEvaluator)}
+   * .
+   * @param schedule The schedule to improve, each item id must be
+   *          <code>&ge; 0</code>. Ids should be dense as memory proportional to
+   *          the largest id is used. The input is not modified.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a swap.
+   * @param evaluator {@link IntRouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param <C> The context type.
+   * @return An improved schedule (or a copy of the input schedule if no
+   *         improvement could be made).
+   */
+  public static <C> int[][] bfsOpt2(int[][] schedule, int[] startIndices,
+      C context, IntRouteEvaluator<C> evaluator) {
+    return opt2(schedule, startIndices, context, evaluator, false,
+      Optional.<RandomGenerator>absent());
+  }
+
+  /**
+   * Depth-first 2-opt search on a schedule of item ids, see
+   * {@link Swaps#dfsOpt2(ImmutableList, ImmutableList, Object, RouteEvaluator, RandomGenerator)}
+   * .
+   * @param schedule The schedule to improve, each item id must be
+   *          <code>&ge; 0</code>. Ids should be dense as memory proportional to
+   *          the largest id is used. The input is not modified.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a swap.
+   * @param evaluator {@link IntRouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param rng The random number generator that is used to randomize the
+   *          ordering of the swaps.
+   * @param <C> The context type.
+   * @return An improved schedule (or a copy of the input schedule if no
+   *         improvement could be made).
+   */
+  public static <C> int[][] dfsOpt2(int[][] schedule, int[] startIndices,
+      C context, IntRouteEvaluator<C> evaluator, RandomGenerator rng) {
+    return opt2(schedule, startIndices, context, evaluator, true,
+      Optional.of(rng));
+  }
+
+  static <C, T> ImmutableList<ImmutableList<T>> opt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      ImmutableList<Integer> startIndices, C context,
+      RouteEvaluator<C, T> evaluator, boolean depthFirst,
+      Optional<RandomGenerator> rng) {
+    checkArgument(schedule.size() == startIndices.size());
+    final Map<T, Integer> ids = newLinkedHashMap();
+    final int[][] routes = new int[schedule.size()][];
+    for (int i = 0; i < schedule.size(); i++) {
+      final ImmutableList<T> route = schedule.get(i);
+      routes[i] = new int[route.size()];
+      for (int j = 0; j < route.size(); j++) {
+        Integer id = ids.get(route.get(j));
+        if (id == null) {
+          id = ids.size();
+          ids.put(route.get(j), id);
+        }
+        routes[i][j] = id;
+      }
+    }
+    final ImmutableList<T> items = ImmutableList.copyOf(ids.keySet());
+    final int[][] result = opt2(routes, Ints.toArray(startIndices), context,
+      new InternedRouteEvaluator<C, T>(evaluator, items), depthFirst, rng);
+
+    final ImmutableList.Builder<ImmutableList<T>> builder =
+      ImmutableList.builder();
+    for (final int[] route : result) {
+      builder.add(toList(route, route.length, items));
+    }
+    return builder.build();
+  }
+
+  static <C> int[][] opt2(int[][] schedule, int[] startIndices, C context,
+      IntRouteEvaluator<C> evaluator, boolean depthFirst,
+      Optional<RandomGenerator> rng) {
+    checkArgument(schedule.length == startIndices.length);
+    final Search<C> search = new Search<C>(schedule, startIndices, context,
+        evaluator);
+    if (depthFirst) {
+      search.dfs(rng.get());
+    } else {
+      search.bfs();
+    }
+    return search.routes;
+  }
+
+  static <T> ImmutableList<T> toList(int[] route, int length,
+      ImmutableList<T> items) {
+    final ImmutableList.Builder<T> builder = ImmutableList.builder();
+    for (int i = 0; i < length; i++) {
+      builder.add(items.get(route[i]));
+    }
+    return builder.build();
+  }
+
+  /**
+   * The state of a 2-opt search. A move is evaluated in two steps, first
+   * {@link #prepare(int, int)} removes the item from its row, then
+   * {@link #evaluate(int, int[])} inserts it at the specified positions.
+   */
+  static final class Search<C> {
+    final int[][] routes;
+    final int[] startIndices;
+    final double[] objectiveValues;
+    double objectiveValue;
+    final C context;
+    final IntRouteEvaluator<C> evaluator;
+    final int numIds;
+
+    private final Map<RouteKey, Double> cache;
+    private final RouteKey probe;
+    private final InsertionIndexCursor[] cursors;
+
+    // the move under evaluation
+    private int item;
+    private int fromRow;
+    private int count;
+    private final int[] originalIndices;
+    private final int[] removed;
+    private int removedLength;
+    private double removedCost;
+    private final int[] candidate;
+    private int candidateLength;
+    private double candidateCost;
+
+    // the best move of a breadth-first iteration
+    private boolean bestFound;
+    private int bestItem;
+    private int bestFromRow;
+    private int bestToRow;
+    private int[] bestPositions;
+    private double bestObjectiveValue;
+
+    // the moves of a depth-first iteration, grouped in blocks of moves of one
+    // item to one row encoded as (item, fromRow, toRow), blockOffsets[b] is
+    // the index of the first move of block b
+    private int[] blocks;
+    private long[] blockOffsets;
+    private int numBlocks;
+
+    Search(int[][] schedule, int[] si, C ctx, IntRouteEvaluator<C> eval) {
+      context = ctx;
+      evaluator = eval;
+      startIndices = Arrays.copyOf(si, si.length);
+      routes = new int[schedule.length][];
+      int maxId = -1;
+      // a route can at most contain all items of the schedule
+      int maxLength = 0;
+      for (int i = 0; i < schedule.length; i++) {
+        routes[i] = Arrays.copyOf(schedule[i], schedule[i].length);
+        maxLength += routes[i].length;
+        for (final int id : routes[i]) {
+          checkArgument(id >= 0, "Item ids must be >= 0, found %s.", id);
+          maxId = Math.max(maxId, id);
+        }
+      }
+      numIds = maxId + 1;
+      cursors = new InsertionIndexCursor[maxLength + 1];
+      originalIndices = new int[maxLength];
+      removed = new int[maxLength];
+      candidate = new int[maxLength];
+      bestPositions = new int[0];
+      blocks = new int[0];
+      blockOffsets = new long[1];
+
+      cache = newHashMap();
+      probe = new RouteKey();
+      objectiveValues = new double[routes.length];
+      for (int i = 0; i < routes.length; i++) {
+        objectiveValues[i] = evaluator.computeCost(context, i, routes[i],
+          routes[i].length);
+        objectiveValue += objectiveValues[i];
+        cache.put(new RouteKey().set(i, routes[i], routes[i].length).copy(),
+          objectiveValues[i]);
+      }
+    }
+
+    void bfs() {
+      boolean isImproving = true;
+      while (isImproving) {
+        bestFound = false;
+        bestObjectiveValue = objectiveValue;
+        visitMoves(false);
+        isImproving = bestFound;
+        if (bestFound) {
+          prepare(bestItem, bestFromRow);
+          evaluate(bestToRow, bestPositions);
+          apply(bestToRow);
+          objectiveValue = bestObjectiveValue;
+        }
+      }
+    }
+
+    void dfs(RandomGenerator rng) {
+      boolean isImproving = true;
+      while (isImproving) {
+        isImproving = false;
+        numBlocks = 0;
+        visitMoves(true);
+
+        // visits the moves in a random order, equivalent to the order of
+        // Swaps.dfsOpt2(), only the visited moves are generated
+        final LazyPermutation order = new LazyPermutation(
+            Ints.checkedCast(blockOffsets[numBlocks]), rng);
+        while (order.hasNext()) {
+          final int index = order.next();
+          int b = Arrays.binarySearch(blockOffsets, 0, numBlocks + 1, index);
+          if (b < 0) {
+            b = -b - 2;
+          }
+          prepare(blocks[3 * b], blocks[3 * b + 1]);
+          final int toRow = blocks[3 * b + 2];
+          int rowSize = routes[toRow].length;
+          if (toRow == fromRow) {
+            rowSize -= count;
+          }
+          final int[] positions = cursor(count).positions;
+          Insertions.unrank(index - blockOffsets[b], rowSize,
+            startIndices[toRow], positions);
+          // filter out swaps that have existing result
+          if (toRow == fromRow && isOriginal(positions)) {
+            continue;
+          }
+          final double diff = evaluate(toRow, positions);
+          if (diff < 0d) {
+            // first improving swap is chosen as new starting point (depth
+            // first).
+            apply(toRow);
+            objectiveValue += diff;
+            isImproving = true;
+            break;
+          }
+        }
+      }
+    }
+
+    // visits moves in the same order as Swaps.swapIterator()
+    void visitMoves(boolean collect) {
+      final boolean[] seen = new boolean[numIds];
+      for (int i = 0; i < routes.length; i++) {
+        final int[] row = routes[i];
+        for (int j = 0; j < row.length; j++) {
+          final int t = row[j];
+          if (j >= startIndices[i] && !seen[t]) {
+            visitItemMoves(t, i, collect);
+          }
+          seen[t] = true;
+        }
+      }
+    }
+
+    void visitItemMoves(int it, int row, boolean collect) {
+      prepare(it, row);
+      int lower = row;
+      int upper = row + 1;
+      if (count > 1) {
+        lower = 0;
+        upper = routes.length;
+      }
+      final InsertionIndexCursor cur = cursor(count);
+      for (int i = lower; i < upper; i++) {
+        int rowSize = routes[i].length;
+        if (i == fromRow) {
+          rowSize -= count;
+        }
+        if (collect) {
+          addBlock(i, rowSize);
+          continue;
+        }
+        cur.reset(rowSize, startIndices[i]);
+        while (cur.hasNext()) {
+          final int[] positions = cur.next();
+          // filter out swaps that have existing result
+          if (i == fromRow && isOriginal(positions)) {
+            continue;
+          }
+          final double threshold = bestObjectiveValue - objectiveValue;
+          final double diff = evaluate(i, positions);
+          if (diff < threshold) {
+            bestFound = true;
+            bestItem = item;
+            bestFromRow = fromRow;
+            bestToRow = i;
+            bestPositions = Arrays.copyOf(positions, positions.length);
+            bestObjectiveValue = objectiveValue + diff;
+          }
+        }
+      }
+    }
+
+    boolean isOriginal(int[] positions) {
+      for (int i = 0; i < count; i++) {
+        if (positions[i] != originalIndices[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    void addBlock(int toRow, int rowSize) {
+      if (3 * numBlocks + 3 > blocks.length) {
+        blocks = Arrays.copyOf(blocks, 2 * blocks.length + 3);
+        blockOffsets = Arrays.copyOf(blockOffsets, blocks.length / 3 + 1);
+      }
+      blocks[3 * numBlocks] = item;
+      blocks[3 * numBlocks + 1] = fromRow;
+      blocks[3 * numBlocks + 2] = toRow;
+      blockOffsets[numBlocks + 1] = blockOffsets[numBlocks]
+        + Insertions.multichoose(rowSize + 1 - startIndices[toRow], count);
+      numBlocks++;
+    }
+
+    InsertionIndexCursor cursor(int numOfInsertions) {
+      if (cursors[numOfInsertions] == null) {
+        cursors[numOfInsertions] = new InsertionIndexCursor(numOfInsertions);
+      }
+      return cursors[numOfInsertions];
+    }
+
+    // removes all occurrences of the item from its row
+    void prepare(int it, int row) {
+      item = it;
+      fromRow = row;
+      count = 0;
+      removedLength = 0;
+      final int[] route = routes[row];
+      for (int i = 0; i < route.length; i++) {
+        if (route[i] == it) {
+          originalIndices[count++] = i;
+        } else {
+          removed[removedLength++] = route[i];
+        }
+      }
+      removedCost = Double.NaN;
+    }
+
+    // computes the objective value difference of inserting the item in toRow
+    double evaluate(int toRow, int[] positions) {
+      if (toRow == fromRow) {
+        // 1. swap within same vehicle
+        candidateLength = Insertions.insert(removed, removedLength, positions,
+          item, candidate);
+        candidateCost = computeCost(fromRow, candidate, candidateLength);
+        return candidateCost - objectiveValues[fromRow];
+      }
+      // 2. swap between vehicles
+      if (Double.isNaN(removedCost)) {
+        removedCost = computeCost(fromRow, removed, removedLength);
+      }
+      final double diffA = removedCost - objectiveValues[fromRow];
+      candidateLength = Insertions.insert(routes[toRow], routes[toRow].length,
+        positions, item, candidate);
+      candidateCost = computeCost(toRow, candidate, candidateLength);
+      final double diffB = candidateCost - objectiveValues[toRow];
+      return diffA + diffB;
+    }
+
+    // applies the last evaluated move
+    void apply(int toRow) {
+      if (toRow != fromRow) {
+        routes[fromRow] = Arrays.copyOf(removed, removedLength);
+        objectiveValues[fromRow] = removedCost;
+      }
+      routes[toRow] = Arrays.copyOf(candidate, candidateLength);
+      objectiveValues[toRow] = candidateCost;
+    }
+
+    double computeCost(int row, int[] route, int length) {
+      final Double cached = cache.get(probe.set(row, route, length));
+      if (cached != null) {
+        return cached;
+      }
+      final double cost = evaluator.computeCost(context, row, route, length);
+      cache.put(probe.copy(), cost);
+      return cost;
+    }
+  }
+
+  /**
+   * Key for caching route costs. The same instance is reused as probe for
+   * lookups, only copies are stored in the cache.
+   */
+  static final class RouteKey {
+    private int row;
+    private int[] route;
+    private int length;
+    private int hash;
+
+    RouteKey() {
+      route = new int[0];
+    }
+
+    RouteKey set(int r, int[] rt, int len) {
+      row = r;
+      route = rt;
+      length = len;
+      int h = 31 + r;
+      for (int i = 0; i < len; i++) {
+        h = 31 * h + rt[i];
+      }
+      hash = h;
+      return this;
+    }
+
+    RouteKey copy() {
+      final RouteKey copy = new RouteKey();
+      copy.row = row;
+      copy.route = Arrays.copyOf(route, length);
+      copy.length = length;
+      copy.hash = hash;
+      return copy;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof RouteKey)) {
+        return false;
+      }
+      final RouteKey o = (RouteKey) other;
+      if (o.hash != hash || o.row != row || o.length != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (o.route[i] != route[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Adapts a {@link RouteEvaluator} to an {@link IntRouteEvaluator} by
+   * converting item ids back to items.
+   */
+  static final class InternedRouteEvaluator<C, T> implements
+      IntRouteEvaluator<C> {
+    private final RouteEvaluator<C, T> delegate;
+    private final ImmutableList<T> items;
+
+    InternedRouteEvaluator(RouteEvaluator<C, T> deleg, ImmutableList<T> its) {
+      delegate = deleg;
+      items = its;
+    }
+
+    @Override
+    public double computeCost(C context, int routeIndex, int[] newRoute,
+        int length) {
+      return delegate.computeCost(context, routeIndex,
+        toList(newRoute, length, items));
+    }
+  }
+}
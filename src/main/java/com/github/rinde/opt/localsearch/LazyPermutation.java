@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Maps.newHashMap;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Generates a uniformly random permutation of <code>[0,n)</code> one element
+ * at a time. This is a Fisher-Yates shuffle of which only the displaced
+ * elements are stored, taking <code>k</code> elements costs
+ * <code>O(k)</code> time and memory independent of <code>n</code>.
+ * @author Rinde van Lon
+ */
+final class LazyPermutation {
+  private final int size;
+  private final RandomGenerator rng;
+  // the elements that are displaced by a swap, all other positions i still
+  // contain element i
+  private final Map<Integer, Integer> displaced;
+  private int index;
+
+  LazyPermutation(int n, RandomGenerator random) {
+    checkArgument(n >= 0, "n must be non-negative, is %s.", n);
+    size = n;
+    rng = random;
+    displaced = newHashMap();
+  }
+
+  boolean hasNext() {
+    return index < size;
+  }
+
+  int next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    final int j = index + rng.nextInt(size - index);
+    final int element = get(j);
+    if (j != index) {
+      displaced.put(j, get(index));
+    }
+    displaced.remove(index);
+    index++;
+    return element;
+  }
+
+  private int get(int i) {
+    final Integer element = displaced.get(i);
+    return element == null ? i : element;
+  }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+/**
+ * Marks a {@link RouteEvaluator} of which the cost of a route never decreases
+ * when an item is inserted in the route. For such evaluators the cost of a
+ * route in which only some of the occurrences of an item are inserted is a
+ * lower bound on the cost of every route in which all occurrences are
+ * inserted. {@link Swaps} uses this bound to skip insertion positions that can
+ * not lead to an improving swap.
+ *
+ * @param <C> The context type.
+ * @param <T> The generic type of a route.
+ * @author Rinde van Lon
+ */
+public interface MonotoneRouteEvaluator<C, T> extends RouteEvaluator<C, T> {}
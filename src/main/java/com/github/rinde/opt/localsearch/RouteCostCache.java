@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A size-bounded cache of route costs as computed by a {@link RouteEvaluator}.
+ * When the maximum size is reached the least recently used entries are
+ * evicted. A cost is identified by the route index and a fingerprint of the
+ * route, the local search procedures in {@link Swaps} and {@link Segments}
+ * derive the fingerprint of a candidate route from the fingerprint of the
+ * route it is derived from and the move, such that a lookup does not iterate
+ * over the route. Routes with equal fingerprints are considered equal.
+ * <p>
+ * Since the cost of a route depends on its context, a cache holds the costs
+ * of a single context instance: when it is used with a different context all
+ * entries are removed. Costs are therefore only shared between invocations
+ * with the <i>same</i> (identical) context instance. A solver that creates a
+ * new context for every invocation can not share costs between invocations.
+ * <p>
+ * The public methods are thread-safe, the parallel searches of {@link Swaps}
+ * synchronize their lookups while the sequential searches do not.
+ *
+ * @param <C> The context type.
+ * @param <T> The route item type.
+ * @author Rinde van Lon
+ */
+public final class RouteCostCache<C, T> {
+  /**
+   * The maximum size of the caches that are created by {@link Swaps} when no
+   * cache is supplied.
+   */
+  public static final long DEFAULT_MAXIMUM_SIZE = 100000L;
+
+  private final Storage storage;
+  private final boolean synchronize;
+
+  private RouteCostCache(Storage s, boolean sync) {
+    storage = s;
+    synchronize = sync;
+  }
+
+  /**
+   * Looks up the cost of the specified route.
+   * @param context The context of the route.
+   * @param routeIndex The index of the route in the context.
+   * @param route The route.
+   * @return The cached cost or {@link Optional#absent()} if the cost is not in
+   *         the cache.
+   */
+  public Optional<Double> getIfPresent(C context, int routeIndex,
+      ImmutableList<T> route) {
+    final Key key = key(routeIndex, route);
+    synchronized (storage) {
+      if (storage.context != context) {
+        storage.misses++;
+        return Optional.absent();
+      }
+      return Optional.fromNullable(storage.lookup(key));
+    }
+  }
+
+  /**
+   * Adds the cost of the specified route to the cache. If the cache contains
+   * costs of another context these are removed first.
+   * @param context The context of the route.
+   * @param routeIndex The index of the route in the context.
+   * @param route The route.
+   * @param cost The cost of the route.
+   */
+  public void put(C context, int routeIndex, ImmutableList<T> route,
+      double cost) {
+    final Key key = key(routeIndex, route);
+    synchronized (storage) {
+      storage.bind(context);
+      storage.put(key, cost);
+    }
+  }
+
+  /**
+   * @return The number of entries in the cache.
+   */
+  public long size() {
+    synchronized (storage) {
+      return storage.size();
+    }
+  }
+
+  /**
+   * @return The hit, miss and eviction statistics of this cache.
+   */
+  public CacheStats stats() {
+    synchronized (storage) {
+      return new CacheStats(storage.hits, storage.misses, 0, 0, 0,
+          storage.evictions);
+    }
+  }
+
+  /**
+   * Removes all entries from the cache.
+   */
+  public void invalidateAll() {
+    synchronized (storage) {
+      storage.clear();
+    }
+  }
+
+  /**
+   * Removes all entries if the cache holds the costs of another context.
+   * @param context The context of the routes that are looked up next.
+   */
+  void bind(C context) {
+    synchronized (storage) {
+      storage.bind(context);
+    }
+  }
+
+  @Nullable
+  Double get(Key key) {
+    if (synchronize) {
+      synchronized (storage) {
+        return storage.lookup(key);
+      }
+    }
+    return storage.lookup(key);
+  }
+
+  void put(Key key, double cost) {
+    if (synchronize) {
+      synchronized (storage) {
+        storage.put(key, cost);
+      }
+    } else {
+      storage.put(key, cost);
+    }
+  }
+
+  /**
+   * @return A cache with the same entries of which all lookups are
+   *         synchronized, to be used by concurrent searches.
+   */
+  RouteCostCache<C, T> synchronizedView() {
+    return new RouteCostCache<C, T>(storage, true);
+  }
+
+  static Key key(int routeIndex, ImmutableList<?> route) {
+    return new Key(routeIndex, route.size(), Fingerprints.of(route));
+  }
+
+  /**
+   * Creates a new cache.
+   * @param maximumSize The maximum number of routes in the cache, must be
+   *          positive.
+   * @param <C> The context type.
+   * @param <T> The route item type.
+   * @return A new cache.
+   */
+  public static <C, T> RouteCostCache<C, T> create(long maximumSize) {
+    checkArgument(maximumSize > 0, "maximumSize must be positive, is %s.",
+      maximumSize);
+    return new RouteCostCache<C, T>(new Storage(maximumSize), false);
+  }
+
+  /**
+   * Creates a new cache with {@link #DEFAULT_MAXIMUM_SIZE}.
+   * @param <C> The context type.
+   * @param <T> The route item type.
+   * @return A new cache.
+   */
+  public static <C, T> RouteCostCache<C, T> create() {
+    return create(DEFAULT_MAXIMUM_SIZE);
+  }
+
+  /**
+   * The key of a route: the route index, the length of the route and its
+   * fingerprint as computed by {@link Fingerprints}.
+   */
+  static final class Key {
+    final int routeIndex;
+    final int length;
+    final long fingerprint;
+
+    Key(int index, int len, long fp) {
+      routeIndex = index;
+      length = len;
+      fingerprint = fp;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (fingerprint ^ fingerprint >>> 32) * 31 + routeIndex;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      final Key o = (Key) other;
+      return fingerprint == o.fingerprint && routeIndex == o.routeIndex
+        && length == o.length;
+    }
+  }
+
+  // a least recently used map with statistics
+  @SuppressWarnings("serial")
+  static final class Storage extends LinkedHashMap<Key, Double> {
+    final long maximumSize;
+    @Nullable
+    Object context;
+    long hits;
+    long misses;
+    long evictions;
+
+    Storage(long max) {
+      super(16, .75f, true);
+      maximumSize = max;
+    }
+
+    @Nullable
+    Double lookup(Key key) {
+      final Double cost = get(key);
+      if (cost == null) {
+        misses++;
+      } else {
+        hits++;
+      }
+      return cost;
+    }
+
+    void bind(Object ctx) {
+      if (context != ctx) {
+        clear();
+        context = ctx;
+      }
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+      if (size() > maximumSize) {
+        evictions++;
+        return true;
+      }
+      return false;
+    }
+  }
+}
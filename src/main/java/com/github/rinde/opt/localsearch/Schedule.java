@@ -16,7 +16,14 @@
 package com.github.rinde.opt.localsearch;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Maps.newHashMap;
 
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.github.rinde.opt.localsearch.IncrementalRouteEvaluator.PreparedRoute;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 
@@ -32,6 +39,11 @@ final class Schedule<C, T> {
   final ImmutableList<Double> objectiveValues;
   final double objectiveValue;
   final RouteEvaluator<C, T> evaluator;
+  // lazily prepared routes, only used with an IncrementalRouteEvaluator
+  private final Map<Integer, PreparedRoute<T>> preparedRoutes;
+  // lazily computed fingerprints, only used for the route cost cache
+  @Nullable
+  private Fingerprints fingerprints;
 
   private Schedule(C s, ImmutableList<ImmutableList<T>> r,
       ImmutableList<Integer> si, ImmutableList<Double> ovs, double ov,
@@ -44,6 +56,44 @@ final class Schedule<C, T> {
     objectiveValues = ovs;
     objectiveValue = ov;
     evaluator = eval;
+    preparedRoutes = newHashMap();
+  }
+
+  boolean isIncremental() {
+    return evaluator instanceof IncrementalRouteEvaluator;
+  }
+
+  /**
+   * Prepares the route at the specified index for incremental evaluation. The
+   * prepared route is computed at most once per schedule.
+   * @param index The route index.
+   * @return The prepared route.
+   * @throws IllegalStateException if the evaluator of this schedule is not an
+   *           {@link IncrementalRouteEvaluator}.
+   */
+  PreparedRoute<T> preparedRoute(int index) {
+    checkState(isIncremental(),
+      "The evaluator must be an IncrementalRouteEvaluator, it is %s.",
+      evaluator);
+    PreparedRoute<T> route = preparedRoutes.get(index);
+    if (route == null) {
+      route = ((IncrementalRouteEvaluator<C, T>) evaluator).prepare(context,
+        index, routes.get(index));
+      preparedRoutes.put(index, route);
+    }
+    return route;
+  }
+
+  /**
+   * Computes the fingerprints of the routes of this schedule, at most once per
+   * schedule.
+   * @return The fingerprints.
+   */
+  Fingerprints fingerprints() {
+    if (fingerprints == null) {
+      fingerprints = Fingerprints.create(routes);
+    }
+    return fingerprints;
   }
 
   static <C, T> Schedule<C, T> create(C context,
@@ -59,16 +109,27 @@ final class Schedule<C, T> {
       ImmutableList<ImmutableList<T>> routes,
       ImmutableList<Integer> startIndices,
       RouteEvaluator<C, T> routeEvaluator) {
+    final Map<Integer, PreparedRoute<T>> prepared = newHashMap();
     final ImmutableList.Builder<Double> costsBuilder = ImmutableList.builder();
     double sumCost = 0;
     for (int i = 0; i < routes.size(); i++) {
-      final double cost = routeEvaluator.computeCost(context, i, routes.get(i));
+      final double cost;
+      if (routeEvaluator instanceof IncrementalRouteEvaluator) {
+        final PreparedRoute<T> route = ((IncrementalRouteEvaluator<C, T>) routeEvaluator)
+            .prepare(context, i, routes.get(i));
+        prepared.put(i, route);
+        cost = route.getCost();
+      } else {
+        cost = routeEvaluator.computeCost(context, i, routes.get(i));
+      }
       costsBuilder.add(cost);
       sumCost += cost;
     }
 
-    return new Schedule<C, T>(context, routes, startIndices,
-        costsBuilder.build(), sumCost, routeEvaluator);
+    final Schedule<C, T> schedule = new Schedule<C, T>(context, routes,
+        startIndices, costsBuilder.build(), sumCost, routeEvaluator);
+    schedule.preparedRoutes.putAll(prepared);
+    return schedule;
   }
 
   @Override
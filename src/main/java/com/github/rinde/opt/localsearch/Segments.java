@@ -0,0 +1,497 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Maps.newHashMap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.github.rinde.opt.localsearch.Swaps.SwapEvaluation;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Local search algorithms that move segments of consecutive items. There are
+ * two kinds of moves:
+ * <ul>
+ * <li>Relocation (or-opt): a segment of at most <code>maxSegmentLength</code>
+ * items is moved to another position in the same row, or to any position in
+ * another row if the segment contains all occurrences of its items.</li>
+ * <li>Reversal: the ordering of a segment of a row is reversed.</li>
+ * </ul>
+ * A single move can change the relative ordering of several items, as such
+ * the search often converges in fewer evaluations than {@link Swaps}. The
+ * schedules, start indices and evaluators have the same meaning as in
+ * {@link Swaps}: items before the start index of a row are never moved, an
+ * item that occurs only once in a row is never moved to another row. An
+ * {@link IncrementalRouteEvaluator} is used incrementally and route costs are
+ * stored in a {@link RouteCostCache}.
+ * @author Rinde van Lon
+ */
+public final class Segments {
+  /**
+   * The maximum length of a relocated segment if it is not specified.
+   */
+  public static final int DEFAULT_MAX_SEGMENT_LENGTH = 3;
+
+  private Segments() {}
+
+  /**
+   * Breadth-first search with segment moves. In each iteration all moves are
+   * evaluated, the best improving move is applied. The search stops when no
+   * move improves the schedule. This algorithm is deterministic.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified. <code>startIndices[j] = n</code> indicates that
+   *          <code>schedule[j][n]</code> can be modified but
+   *          <code>schedule[j][n-1]</code> not.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a move.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param <C> The context type.
+   * @param <T> The route item type (i.e. the locations that are part of a
+   *          route).
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> bfs(
+      ImmutableList<ImmutableList<T>> schedule,
+      ImmutableList<Integer> startIndices, C context,
+      RouteEvaluator<C, T> evaluator) {
+    return bfs(schedule, startIndices, context, evaluator,
+      DEFAULT_MAX_SEGMENT_LENGTH, RouteCostCache.<C, T>create());
+  }
+
+  /**
+   * Same as
+   * {@link #bfs(ImmutableList, ImmutableList, Object, RouteEvaluator)} but
+   * with the specified maximum segment length and cache.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified.
+   * @param context The context to the schedule.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param maxSegmentLength The maximum length of a relocated segment, must be
+   *          positive.
+   * @param cache The cache in which route costs are stored, it can be shared
+   *          between invocations with the same context instance.
+   * @param <C> The context type.
+   * @param <T> The route item type.
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> bfs(
+      ImmutableList<ImmutableList<T>> schedule,
+      ImmutableList<Integer> startIndices, C context,
+      RouteEvaluator<C, T> evaluator, int maxSegmentLength,
+      RouteCostCache<C, T> cache) {
+    return search(schedule, startIndices, context, evaluator,
+      maxSegmentLength, Optional.<RandomGenerator>absent(), cache);
+  }
+
+  /**
+   * Depth-first search with segment moves. In each iteration the moves are
+   * evaluated in a random order, the first improving move is applied. Only
+   * the moves that are evaluated are generated. The search stops when no move
+   * improves the schedule.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified.
+   * @param context The context to the schedule.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param rng The random number generator that is used to randomize the
+   *          ordering of the moves.
+   * @param <C> The context type.
+   * @param <T> The route item type.
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> dfs(
+      ImmutableList<ImmutableList<T>> schedule,
+      ImmutableList<Integer> startIndices, C context,
+      RouteEvaluator<C, T> evaluator, RandomGenerator rng) {
+    return dfs(schedule, startIndices, context, evaluator, rng,
+      DEFAULT_MAX_SEGMENT_LENGTH, RouteCostCache.<C, T>create());
+  }
+
+  /**
+   * Same as
+   * {@link #dfs(ImmutableList, ImmutableList, Object, RouteEvaluator, RandomGenerator)}
+   * but with the specified maximum segment length and cache.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified.
+   * @param context The context to the schedule.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param rng The random number generator that is used to randomize the
+   *          ordering of the moves.
+   * @param maxSegmentLength The maximum length of a relocated segment, must be
+   *          positive.
+   * @param cache The cache in which route costs are stored, it can be shared
+   *          between invocations with the same context instance.
+   * @param <C> The context type.
+   * @param <T> The route item type.
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> dfs(
+      ImmutableList<ImmutableList<T>> schedule,
+      ImmutableList<Integer> startIndices, C context,
+      RouteEvaluator<C, T> evaluator, RandomGenerator rng,
+      int maxSegmentLength, RouteCostCache<C, T> cache) {
+    return search(schedule, startIndices, context, evaluator,
+      maxSegmentLength, Optional.of(rng), cache);
+  }
+
+  static <C, T> ImmutableList<ImmutableList<T>> search(
+      ImmutableList<ImmutableList<T>> schedule,
+      ImmutableList<Integer> startIndices, C context,
+      RouteEvaluator<C, T> evaluator, int maxSegmentLength,
+      Optional<RandomGenerator> rng, RouteCostCache<C, T> cache) {
+    checkArgument(schedule.size() == startIndices.size());
+    checkArgument(maxSegmentLength > 0,
+      "maxSegmentLength must be positive, is %s.", maxSegmentLength);
+
+    Schedule<C, T> bestSchedule = Schedule.create(context, schedule,
+      startIndices, evaluator);
+    for (int i = 0; i < bestSchedule.routes.size(); i++) {
+      cache.put(context, i, bestSchedule.routes.get(i),
+        bestSchedule.objectiveValues.get(i));
+    }
+
+    boolean isImproving = true;
+    while (isImproving) {
+      isImproving = false;
+      final Schedule<C, T> curBest = bestSchedule;
+      final MoveCursor<C, T> moves = MoveCursor.create(curBest,
+        maxSegmentLength);
+      if (rng.isPresent()) {
+        final LazyPermutation order = new LazyPermutation(moves.size(),
+            rng.get());
+        while (order.hasNext()) {
+          if (moves.moveTo(order.next())) {
+            final SwapEvaluation<T> eval = moves.evaluate(cache);
+            if (eval.diff < 0d) {
+              // first improving move is chosen as new starting point
+              bestSchedule = Swaps.apply(curBest, eval);
+              isImproving = true;
+              break;
+            }
+          }
+        }
+      } else {
+        SwapEvaluation<T> best = null;
+        double bestObjectiveValue = curBest.objectiveValue;
+        for (int i = 0; i < moves.size(); i++) {
+          if (moves.moveTo(i)) {
+            final SwapEvaluation<T> eval = moves.evaluate(cache);
+            if (eval.diff < bestObjectiveValue - curBest.objectiveValue) {
+              best = eval;
+              bestObjectiveValue = curBest.objectiveValue + eval.diff;
+            }
+          }
+        }
+        if (best != null) {
+          bestSchedule = Swaps.apply(curBest, best);
+          isImproving = true;
+        }
+      }
+    }
+    return bestSchedule.routes;
+  }
+
+  static <T> ImmutableList<T> reverse(List<T> route, int from, int to) {
+    final ImmutableList.Builder<T> builder = ImmutableList.builder();
+    builder.addAll(route.subList(0, from));
+    builder.addAll(ImmutableList.copyOf(route.subList(from, to)).reverse());
+    builder.addAll(route.subList(to, route.size()));
+    return builder.build();
+  }
+
+  static <T> ImmutableList<T> remove(List<T> route, int from, int to) {
+    final ImmutableList.Builder<T> builder = ImmutableList.builder();
+    builder.addAll(route.subList(0, from));
+    builder.addAll(route.subList(to, route.size()));
+    return builder.build();
+  }
+
+  static <T> ImmutableList<T> insert(List<T> route, List<T> segment,
+      int index) {
+    final ImmutableList.Builder<T> builder = ImmutableList.builder();
+    builder.addAll(route.subList(0, index));
+    builder.addAll(segment);
+    builder.addAll(route.subList(index, route.size()));
+    return builder.build();
+  }
+
+  /**
+   * Provides random access to all moves of a schedule. The moves are grouped
+   * in blocks: a relocation block contains all moves of one segment, a
+   * reversal block contains the reversals of all segments that start at the
+   * same position. The current move is only valid until the next call to
+   * {@link #moveTo(int)}.
+   */
+  static final class MoveCursor<C, T> {
+    static final int RELOCATE = 0;
+    static final int REVERSE = 1;
+
+    private final Schedule<C, T> schedule;
+    // blocks encoded as (type, row, index, length, movable)
+    private final int[] blocks;
+    // offsets[b] is the index of the first move of block b
+    private final long[] offsets;
+    private final int numBlocks;
+
+    // the current move
+    private int block;
+    private int toRow;
+    private int position;
+
+    // the removal of the segment of the last evaluated block
+    private int removedBlock;
+    private ImmutableList<T> removed;
+    private double removedCost;
+
+    private MoveCursor(Schedule<C, T> s, int[] bs, long[] offs, int n) {
+      schedule = s;
+      blocks = bs;
+      offsets = offs;
+      numBlocks = n;
+      removedBlock = -1;
+      removed = ImmutableList.of();
+    }
+
+    /**
+     * @return The number of indices of {@link #moveTo(int)}, this includes
+     *         the indices of the moves that have the existing result.
+     */
+    int size() {
+      return (int) offsets[numBlocks];
+    }
+
+    /**
+     * Sets the current move to the move with the specified index.
+     * @param index The index, must be <code>&ge; 0</code> and
+     *          <code>&lt; {@link #size()}</code>.
+     * @return <code>false</code> if the move has the existing result and
+     *         should be skipped, <code>true</code> otherwise.
+     */
+    boolean moveTo(int index) {
+      checkArgument(index >= 0 && index < size(),
+        "index must be >= 0 and < %s, it is %s.", size(), index);
+      int b = Arrays.binarySearch(offsets, 0, numBlocks + 1, index);
+      if (b < 0) {
+        b = -b - 2;
+      }
+      block = b;
+      final int row = blocks[5 * b + 1];
+      final int from = blocks[5 * b + 2];
+      final int length = blocks[5 * b + 3];
+      long rank = index - offsets[b];
+      if (blocks[5 * b] == REVERSE) {
+        toRow = row;
+        // the last position of the reversed segment
+        position = from + 1 + (int) rank;
+        return true;
+      }
+      final boolean movable = blocks[5 * b + 4] == 1;
+      final int lower = movable ? 0 : row;
+      final int upper = movable ? schedule.routes.size() : row + 1;
+      for (int i = lower; i < upper; i++) {
+        final long count = numPositions(row, length, i);
+        if (rank < count) {
+          toRow = i;
+          position = schedule.startIndices.get(i) + (int) rank;
+          return toRow != row || position != from;
+        }
+        rank -= count;
+      }
+      throw new IllegalStateException();
+    }
+
+    /**
+     * Evaluates the current move.
+     * @param cache The route cost cache.
+     * @return The evaluation.
+     */
+    SwapEvaluation<T> evaluate(RouteCostCache<C, T> cache) {
+      final int row = blocks[5 * block + 1];
+      final int from = blocks[5 * block + 2];
+      final ImmutableList<T> route = schedule.routes.get(row);
+      final double originalCost = schedule.objectiveValues.get(row);
+      if (blocks[5 * block] == REVERSE) {
+        final ImmutableList<T> newRoute = reverse(route, from, position + 1);
+        final long fingerprint = schedule.fingerprints().builder()
+            .slice(row, 0, from)
+            .reversed(row, from, position + 1)
+            .slice(row, position + 1, route.size())
+            .fingerprint();
+        final double newCost = Swaps.computeCost(schedule, row, newRoute,
+          from, fingerprint, cache);
+        return new SwapEvaluation<T>(ImmutableList.of(row),
+            ImmutableList.of(newRoute), ImmutableList.of(newCost),
+            newCost - originalCost);
+      }
+      final int to = from + blocks[5 * block + 3];
+      final List<T> segment = route.subList(from, to);
+      if (removedBlock != block) {
+        removedBlock = block;
+        removed = remove(route, from, to);
+        removedCost = Double.NaN;
+      }
+      if (toRow == row) {
+        final ImmutableList<T> newRoute = insert(removed, segment, position);
+        final Fingerprints.Builder builder = schedule.fingerprints().builder();
+        if (position <= from) {
+          builder.slice(row, 0, position)
+              .slice(row, from, to)
+              .slice(row, position, from)
+              .slice(row, to, route.size());
+        } else {
+          // position is relative to the route without the segment
+          final int end = position + to - from;
+          builder.slice(row, 0, from)
+              .slice(row, to, end)
+              .slice(row, from, to)
+              .slice(row, end, route.size());
+        }
+        final double newCost = Swaps.computeCost(schedule, row, newRoute,
+          Math.min(from, position), builder.fingerprint(), cache);
+        return new SwapEvaluation<T>(ImmutableList.of(row),
+            ImmutableList.of(newRoute), ImmutableList.of(newCost),
+            newCost - originalCost);
+      }
+      if (Double.isNaN(removedCost)) {
+        final long fingerprint = schedule.fingerprints().builder()
+            .slice(row, 0, from)
+            .slice(row, to, route.size())
+            .fingerprint();
+        removedCost = Swaps.computeCost(schedule, row, removed, from,
+          fingerprint, cache);
+      }
+      final ImmutableList<T> newRoute = insert(schedule.routes.get(toRow),
+        segment, position);
+      final long fingerprint = schedule.fingerprints().builder()
+          .slice(toRow, 0, position)
+          .slice(row, from, to)
+          .slice(toRow, position, schedule.routes.get(toRow).size())
+          .fingerprint();
+      final double newCost = Swaps.computeCost(schedule, toRow, newRoute,
+        position, fingerprint, cache);
+      final double diff = removedCost - originalCost + newCost
+        - schedule.objectiveValues.get(toRow);
+      return new SwapEvaluation<T>(ImmutableList.of(row, toRow),
+          ImmutableList.of(removed, newRoute),
+          ImmutableList.of(removedCost, newCost), diff);
+    }
+
+    // the number of insertion positions of a segment of row in toRow
+    long numPositions(int row, int length, int toRow) {
+      int size = schedule.routes.get(toRow).size();
+      if (toRow == row) {
+        size -= length;
+      }
+      return size + 1 - schedule.startIndices.get(toRow);
+    }
+
+    static <C, T> MoveCursor<C, T> create(Schedule<C, T> s,
+        int maxSegmentLength) {
+      int[] blocks = new int[0];
+      long[] offsets = new long[1];
+      int n = 0;
+      for (int r = 0; r < s.routes.size(); r++) {
+        final ImmutableList<T> route = s.routes.get(r);
+        final Map<T, Integer> occurrences = occurrences(route);
+        for (int i = s.startIndices.get(r); i < route.size(); i++) {
+          final int maxLength = Math.min(maxSegmentLength, route.size() - i);
+          for (int len = 1; len <= maxLength; len++) {
+            final boolean movable = isMovable(route.subList(i, i + len),
+              occurrences);
+            if (5 * n + 5 > blocks.length) {
+              blocks = Arrays.copyOf(blocks, 2 * blocks.length + 5);
+              offsets = Arrays.copyOf(offsets, blocks.length / 5 + 1);
+            }
+            blocks[5 * n] = RELOCATE;
+            blocks[5 * n + 1] = r;
+            blocks[5 * n + 2] = i;
+            blocks[5 * n + 3] = len;
+            blocks[5 * n + 4] = movable ? 1 : 0;
+            long weight = 0;
+            final int lower = movable ? 0 : r;
+            final int upper = movable ? s.routes.size() : r + 1;
+            for (int j = lower; j < upper; j++) {
+              int size = s.routes.get(j).size();
+              if (j == r) {
+                size -= len;
+              }
+              weight += size + 1 - s.startIndices.get(j);
+            }
+            offsets[n + 1] = offsets[n] + weight;
+            n++;
+          }
+          if (i < route.size() - 1) {
+            if (5 * n + 5 > blocks.length) {
+              blocks = Arrays.copyOf(blocks, 2 * blocks.length + 5);
+              offsets = Arrays.copyOf(offsets, blocks.length / 5 + 1);
+            }
+            blocks[5 * n] = REVERSE;
+            blocks[5 * n + 1] = r;
+            blocks[5 * n + 2] = i;
+            blocks[5 * n + 3] = 0;
+            blocks[5 * n + 4] = 0;
+            offsets[n + 1] = offsets[n] + route.size() - 1 - i;
+            n++;
+          }
+        }
+      }
+      checkArgument(offsets[n] <= Integer.MAX_VALUE,
+        "Too many moves: %s.", offsets[n]);
+      return new MoveCursor<C, T>(s, blocks, offsets, n);
+    }
+
+    static <T> Map<T, Integer> occurrences(List<T> route) {
+      final Map<T, Integer> map = newHashMap();
+      for (final T t : route) {
+        final Integer count = map.get(t);
+        map.put(t, count == null ? 1 : count + 1);
+      }
+      return map;
+    }
+
+    // a segment can move to another row if it contains all occurrences of
+    // its items and none of its items occurs only once
+    static <T> boolean isMovable(List<T> segment,
+        Map<T, Integer> routeOccurrences) {
+      final Map<T, Integer> occurrences = occurrences(segment);
+      for (final Map.Entry<T, Integer> entry : occurrences.entrySet()) {
+        final int count = entry.getValue();
+        if (count < 2 || count != routeOccurrences.get(entry.getKey())) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
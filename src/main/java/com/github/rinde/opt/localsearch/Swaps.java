@@ -16,48 +16,66 @@
 package com.github.rinde.opt.localsearch;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Predicates.equalTo;
 import static com.google.common.base.Predicates.not;
 import static com.google.common.collect.Collections2.filter;
 import static com.google.common.collect.Lists.newArrayList;
-import static com.google.common.collect.Maps.newLinkedHashMap;
-import static com.google.common.collect.Sets.newLinkedHashSet;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Sets.newHashSet;
 
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nullable;
 
-import org.apache.commons.math3.random.RandomAdaptor;
 import org.apache.commons.math3.random.RandomGenerator;
 
-import com.github.rinde.opt.localsearch.Insertions.InsertionIndexGenerator;
-import com.google.common.base.Function;
+import com.github.rinde.opt.localsearch.Insertions.InsertionIndexCursor;
+import com.github.rinde.opt.localsearch.Insertions.PrunedInsertionIndexCursor;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Optional;
-import com.google.common.base.Predicates;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterators;
-import com.google.common.collect.Range;
+import com.google.common.primitives.Ints;
 
 /**
  * Class for swap algorithms. Currently supports two variants of 2-opt:
  * <ul>
  * <li>Breadth-first 2-opt search:
  * {@link #bfsOpt2(ImmutableList, ImmutableList, Object, RouteEvaluator)}.</li>
+ * <li>Parallel breadth-first 2-opt search:
+ * {@link #bfsOpt2(ImmutableList, ImmutableList, Object, RouteEvaluator, ExecutorService)}
+ * .</li>
  * <li>Depth-first 2-opt search:
  * {@link #dfsOpt2(ImmutableList, ImmutableList, Object, RouteEvaluator, RandomGenerator)}
  * .</li>
  * </ul>
+ * When the {@link RouteEvaluator} is an {@link IncrementalRouteEvaluator} a
+ * swap is evaluated starting from the first position that it modifies. Route
+ * costs are stored in a {@link RouteCostCache}, a cache can be supplied to
+ * share it between invocations with the same context instance. When the
+ * {@link RouteEvaluator} is a {@link MonotoneRouteEvaluator} the breadth-first
+ * searches skip the insertion positions of which a lower bound on the cost
+ * shows that they can not improve the schedule.
  * @author Rinde van Lon
  */
 public final class Swaps {
 
+  // number of tasks per iteration of the parallel search
+  static final int PARALLEL_TASKS = 4 * Runtime.getRuntime()
+      .availableProcessors();
+
+  // margin for rounding errors in the lower bound of a swap
+  static final double EPSILON = 1e-3;
+
   private Swaps() {}
 
   /**
@@ -83,8 +101,102 @@ public final class Swaps {
       ImmutableList<ImmutableList<T>> schedule,
       ImmutableList<Integer> startIndices, C context,
       RouteEvaluator<C, T> evaluator) {
+    return bfsOpt2(schedule, startIndices, context, evaluator,
+      RouteCostCache.<C, T>create());
+  }
+
+  /**
+   * Same as
+   * {@link #bfsOpt2(ImmutableList, ImmutableList, Object, RouteEvaluator)}
+   * but uses the specified cache for route costs.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified. <code>startIndices[j] = n</code> indicates that
+   *          <code>schedule[j][n]</code> can be modified but
+   *          <code>schedule[j][n-1]</code> not.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a swap.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param cache The cache in which route costs are stored, it can be shared
+   *          between invocations with the same context instance.
+   * @param <C> The context type.
+   * @param <T> The route item type (i.e. the locations that are part of a
+   *          route).
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> bfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      ImmutableList<Integer> startIndices, C context,
+      RouteEvaluator<C, T> evaluator, RouteCostCache<C, T> cache) {
+    return opt2(schedule, startIndices, context, evaluator, false,
+      Optional.<RandomGenerator>absent(), Optional.<ExecutorService>absent(),
+      cache);
+  }
+
+  /**
+   * Parallel version of
+   * {@link #bfsOpt2(ImmutableList, ImmutableList, Object, RouteEvaluator)}.
+   * In every iteration all swaps are evaluated concurrently using the
+   * specified executor, after which the best swap is selected in the same way
+   * as the sequential search. As a result, this method returns exactly the same
+   * schedule as the sequential version. Since the evaluator is called
+   * concurrently it must be thread-safe.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified. <code>startIndices[j] = n</code> indicates that
+   *          <code>schedule[j][n]</code> can be modified but
+   *          <code>schedule[j][n-1]</code> not.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a swap.
+   * @param evaluator Thread-safe {@link RouteEvaluator} that can compute the
+   *          cost of a single route.
+   * @param executor The executor that is used to evaluate the swaps, for
+   *          example a {@link java.util.concurrent.ForkJoinPool}.
+   * @param <C> The context type.
+   * @param <T> The route item type (i.e. the locations that are part of a
+   *          route).
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> bfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      ImmutableList<Integer> startIndices, C context,
+      RouteEvaluator<C, T> evaluator, ExecutorService executor) {
+    return bfsOpt2(schedule, startIndices, context, evaluator, executor,
+      RouteCostCache.<C, T>create());
+  }
+
+  /**
+   * Same as
+   * {@link #bfsOpt2(ImmutableList, ImmutableList, Object, RouteEvaluator, ExecutorService)}
+   * but uses the specified cache for route costs.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified. <code>startIndices[j] = n</code> indicates that
+   *          <code>schedule[j][n]</code> can be modified but
+   *          <code>schedule[j][n-1]</code> not.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a swap.
+   * @param evaluator Thread-safe {@link RouteEvaluator} that can compute the
+   *          cost of a single route.
+   * @param executor The executor that is used to evaluate the swaps.
+   * @param cache The cache in which route costs are stored, it can be shared
+   *          between invocations with the same context instance.
+   * @param <C> The context type.
+   * @param <T> The route item type (i.e. the locations that are part of a
+   *          route).
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> bfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      ImmutableList<Integer> startIndices, C context,
+      RouteEvaluator<C, T> evaluator, ExecutorService executor,
+      RouteCostCache<C, T> cache) {
     return opt2(schedule, startIndices, context, evaluator, false,
-      Optional.<RandomGenerator>absent());
+      Optional.<RandomGenerator>absent(), Optional.of(executor), cache);
   }
 
   /**
@@ -113,24 +225,58 @@ public final class Swaps {
       ImmutableList<ImmutableList<T>> schedule,
       ImmutableList<Integer> startIndices, C context,
       RouteEvaluator<C, T> evaluator, RandomGenerator rng) {
+    return dfsOpt2(schedule, startIndices, context, evaluator, rng,
+      RouteCostCache.<C, T>create());
+  }
+
+  /**
+   * Same as
+   * {@link #dfsOpt2(ImmutableList, ImmutableList, Object, RouteEvaluator, RandomGenerator)}
+   * but uses the specified cache for route costs.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified. <code>startIndices[j] = n</code> indicates that
+   *          <code>schedule[j][n]</code> can be modified but
+   *          <code>schedule[j][n-1]</code> not.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a swap.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param rng The random number generator that is used to randomize the
+   *          ordering of the swaps.
+   * @param cache The cache in which route costs are stored, it can be shared
+   *          between invocations with the same context instance.
+   * @param <C> The context type.
+   * @param <T> The route item type (i.e. the locations that are part of a
+   *          route).
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> dfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      ImmutableList<Integer> startIndices, C context,
+      RouteEvaluator<C, T> evaluator, RandomGenerator rng,
+      RouteCostCache<C, T> cache) {
     return opt2(schedule, startIndices, context, evaluator, true,
-      Optional.of(rng));
+      Optional.of(rng), Optional.<ExecutorService>absent(), cache);
   }
 
   static <C, T> ImmutableList<ImmutableList<T>> opt2(
       ImmutableList<ImmutableList<T>> schedule,
       ImmutableList<Integer> startIndices, C context,
       RouteEvaluator<C, T> evaluator, boolean depthFirst,
-      Optional<RandomGenerator> rng) {
+      Optional<RandomGenerator> rng, Optional<ExecutorService> executor,
+      RouteCostCache<C, T> routeCostCache) {
 
     checkArgument(schedule.size() == startIndices.size());
+    checkArgument(!depthFirst || !executor.isPresent(),
+      "Depth-first search can not be executed in parallel.");
 
     final Schedule<C, T> baseSchedule = Schedule.create(context, schedule,
       startIndices, evaluator);
 
-    final Map<ImmutableList<T>, Double> routeCostCache = newLinkedHashMap();
     for (int i = 0; i < baseSchedule.routes.size(); i++) {
-      routeCostCache.put(baseSchedule.routes.get(i),
+      routeCostCache.put(context, i, baseSchedule.routes.get(i),
         baseSchedule.objectiveValues.get(i));
     }
 
@@ -140,90 +286,153 @@ public final class Swaps {
       isImproving = false;
 
       final Schedule<C, T> curBest = bestSchedule;
-      Iterator<Swap<T>> it = swapIterator(curBest);
       if (depthFirst) {
-        // randomize ordering of swaps
-        final List<Swap<T>> swaps = newArrayList(it);
-        Collections.shuffle(swaps, new RandomAdaptor(rng.get()));
-        it = swaps.iterator();
+        // visits the swaps in a random order, only the visited swaps are
+        // generated
+        final SwapCursor<C, T> cursor = SwapCursor.create(curBest, false);
+        final LazyPermutation order = new LazyPermutation(cursor.size(),
+            rng.get());
+        while (order.hasNext()) {
+          if (!cursor.moveTo(order.next())) {
+            // the swap has the existing result
+            continue;
+          }
+          final Optional<Schedule<C, T>> newSchedule = Swaps.swap(curBest,
+            cursor.swap, 0d, routeCostCache);
+          if (newSchedule.isPresent()) {
+            // first improving swap is chosen as new starting point (depth
+            // first).
+            isImproving = true;
+            bestSchedule = newSchedule.get();
+            break;
+          }
+        }
+        continue;
       }
 
-      while (it.hasNext()) {
-        final Swap<T> swapOperation = it.next();
-        final Optional<Schedule<C, T>> newSchedule = Swaps.swap(curBest,
-          swapOperation,
-          bestSchedule.objectiveValue - curBest.objectiveValue,
-          routeCostCache);
+      final SwapCursor<C, T> cursor = SwapCursor.create(curBest, true);
+      if (executor.isPresent()) {
+        final Optional<Schedule<C, T>> newSchedule = parallelSwap(curBest,
+          cursor.split(PARALLEL_TASKS), routeCostCache.synchronizedView(),
+          executor.get());
+        if (newSchedule.isPresent()) {
+          isImproving = true;
+          bestSchedule = newSchedule.get();
+        }
+        continue;
+      }
 
+      while (cursor.advance()) {
+        final Optional<Schedule<C, T>> newSchedule = Swaps.swap(curBest,
+          cursor.swap, cursor.threshold.value, routeCostCache);
         if (newSchedule.isPresent()) {
           isImproving = true;
           bestSchedule = newSchedule.get();
-          if (depthFirst) {
-            // first improving swap is chosen as new starting point (depth
-            // first).
-            break;
-          }
+          cursor.threshold.value = bestSchedule.objectiveValue
+            - curBest.objectiveValue;
         }
       }
     }
     return bestSchedule.routes;
   }
 
-  static <C, T> Iterator<Swap<T>> swapIterator(Schedule<C, T> schedule) {
-    final ImmutableList.Builder<Iterator<Swap<T>>> iteratorBuilder =
-      ImmutableList
-          .builder();
-    final Set<T> seen = newLinkedHashSet();
-    for (int i = 0; i < schedule.routes.size(); i++) {
-      final ImmutableList<T> row = schedule.routes.get(i);
-      for (int j = 0; j < row.size(); j++) {
-        final T t = row.get(j);
-        if (j >= schedule.startIndices.get(i) && !seen.contains(t)) {
-          iteratorBuilder.add(oneItemSwapIterator(schedule,
-            schedule.startIndices, t, i));
+  /**
+   * Evaluates all swaps concurrently and selects the best swap using the same
+   * selection rule as the sequential breadth-first search. Every cursor is
+   * consumed by a separate task, each task records the swaps that improve
+   * over its own best swap. Since a swap that is accepted by the sequential
+   * search improves over the best swap of its task as well, replaying the
+   * recorded swaps in order selects the same swap.
+   * @param s The schedule to perform the swaps on.
+   * @param cursors The cursors over consecutive ranges of the swaps.
+   * @param cache The route cost cache, its lookups must be synchronized.
+   * @param executor The executor to use.
+   * @return The schedule resulting from the best swap if it improves the
+   *         schedule, {@link Optional#absent()} otherwise.
+   */
+  static <C, T> Optional<Schedule<C, T>> parallelSwap(final Schedule<C, T> s,
+      List<SwapCursor<C, T>> cursors,
+      final RouteCostCache<C, T> cache,
+      ExecutorService executor) {
+    if (s.isIncremental()) {
+      // routes are prepared lazily, this is not thread-safe
+      for (int i = 0; i < s.routes.size(); i++) {
+        s.preparedRoute(i);
+      }
+    }
+    s.fingerprints();
+    final List<Callable<List<SwapEvaluation<T>>>> tasks = newArrayList();
+    for (final SwapCursor<C, T> cursor : cursors) {
+      tasks.add(new Callable<List<SwapEvaluation<T>>>() {
+        @Override
+        public List<SwapEvaluation<T>> call() {
+          final List<SwapEvaluation<T>> improving = newArrayList();
+          while (cursor.advance()) {
+            final SwapEvaluation<T> eval = evaluate(s, cursor.swap, cache);
+            if (eval.diff < cursor.threshold.value) {
+              improving.add(eval);
+              cursor.threshold.value = s.objectiveValue + eval.diff
+                - s.objectiveValue;
+            }
+          }
+          return improving;
         }
-        seen.add(t);
+      });
+    }
+    final List<List<SwapEvaluation<T>>> results = newArrayList();
+    try {
+      for (final Future<List<SwapEvaluation<T>>> f : executor
+          .invokeAll(tasks)) {
+        results.add(f.get());
       }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (final ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
     }
-    return Iterators.concat(iteratorBuilder.build().iterator());
-  }
 
-  static <C, T> Iterator<Swap<T>> oneItemSwapIterator(Schedule<C, T> schedule,
-      ImmutableList<Integer> startIndices, T item, int fromRow) {
-    final ImmutableList<Integer> indices = indices(
-      schedule.routes.get(fromRow), item);
-    final ImmutableList.Builder<Iterator<Swap<T>>> iteratorBuilder =
-      ImmutableList
-          .builder();
-
-    Range<Integer> range;
-    if (indices.size() == 1) {
-      range = Range.closedOpen(fromRow, fromRow + 1);
-    } else {
-      range = Range.closedOpen(0, schedule.routes.size());
+    // the threshold is computed exactly as in the sequential search such that
+    // the same swap is selected
+    SwapEvaluation<T> best = null;
+    double bestObjectiveValue = s.objectiveValue;
+    for (final List<SwapEvaluation<T>> improving : results) {
+      for (final SwapEvaluation<T> eval : improving) {
+        if (eval.diff < bestObjectiveValue - s.objectiveValue) {
+          best = eval;
+          bestObjectiveValue = s.objectiveValue + eval.diff;
+        }
+      }
+    }
+    if (best == null) {
+      return Optional.absent();
     }
+    return Optional.of(apply(s, best));
+  }
 
-    for (int i = range.lowerEndpoint(); i < range.upperEndpoint(); i++) {
-      int rowSize = schedule.routes.get(i).size();
-      if (fromRow == i) {
-        rowSize -= indices.size();
-      }
-      Iterator<ImmutableList<Integer>> it = new InsertionIndexGenerator(
-          indices.size(), rowSize, startIndices.get(i));
-      // filter out swaps that have existing result
-      if (fromRow == i) {
-        it = Iterators.filter(it, Predicates.not(Predicates.equalTo(indices)));
+  /**
+   * Creates an iterator over all swaps of the schedule, every swap is a new
+   * object. The swaps are in the same order as in {@link SwapCursor}.
+   * @param schedule The schedule.
+   * @return The iterator.
+   */
+  static <C, T> Iterator<Swap<T>> swapIterator(Schedule<C, T> schedule) {
+    final SwapCursor<C, T> cursor = SwapCursor.create(schedule, false);
+    return new AbstractIterator<Swap<T>>() {
+      @Override
+      @Nullable
+      protected Swap<T> computeNext() {
+        if (cursor.advance()) {
+          return cursor.swap.copy();
+        }
+        return endOfData();
       }
-      iteratorBuilder.add(Iterators.transform(it, new IndexToSwapTransform<T>(
-          item, fromRow, i)));
-    }
-    return Iterators.concat(iteratorBuilder.build().iterator());
+    };
   }
 
   static <C, T> Optional<Schedule<C, T>> swap(Schedule<C, T> s, Swap<T> swap,
       double threshold) {
-    return swap(s, swap, threshold,
-      new LinkedHashMap<ImmutableList<T>, Double>());
+    return swap(s, swap, threshold, RouteCostCache.<C, T>create());
   }
 
   /**
@@ -248,8 +457,36 @@ public final class Swaps {
    *         (lower) than the threshold, {@link Optional#absent()} otherwise.
    */
   static <C, T> Optional<Schedule<C, T>> swap(Schedule<C, T> s, Swap<T> swap,
-      double threshold, Map<ImmutableList<T>, Double> cache) {
+      double threshold, RouteCostCache<C, T> cache) {
+    final SwapEvaluation<T> eval = evaluate(s, swap, cache);
+    if (eval.diff < threshold) {
+      // it improves
+      return Optional.of(apply(s, eval));
+    }
+    return Optional.absent();
+  }
 
+  // creates the schedule that results from an evaluated swap
+  static <C, T> Schedule<C, T> apply(Schedule<C, T> s, SwapEvaluation<T> eval) {
+    final ImmutableList<ImmutableList<T>> newRoutes = replace(s.routes,
+      eval.rows, eval.routes);
+    final double newObjectiveValue = s.objectiveValue + eval.diff;
+    final ImmutableList<Double> newObjectiveValues = replace(
+      s.objectiveValues, eval.rows, eval.costs);
+    return Schedule.create(s.context, newRoutes, s.startIndices,
+      newObjectiveValues, newObjectiveValue, s.evaluator);
+  }
+
+  /**
+   * Computes the new routes and the cost difference of a swap, see
+   * {@link #swap(Schedule, Swap, double, RouteCostCache)}.
+   * @param s The schedule to perform the swap on.
+   * @param swap The swap.
+   * @param cache The route cost cache.
+   * @return The evaluation of the swap.
+   */
+  static <C, T> SwapEvaluation<T> evaluate(Schedule<C, T> s, Swap<T> swap,
+      RouteCostCache<C, T> cache) {
     checkArgument(swap.fromRow >= 0 && swap.fromRow < s.routes.size(),
       "fromRow must be >= 0 and < %s, it is %s.", s.routes.size(),
       swap.fromRow);
@@ -263,79 +500,84 @@ public final class Swaps {
       final double originalCost = s.objectiveValues.get(swap.fromRow);
       final ImmutableList<T> newRoute = inListSwap(s.routes.get(swap.fromRow),
         swap.toIndices, swap.item);
+      final int[] positions = s.fingerprints().positions(swap.fromRow,
+        swap.item);
 
-      final double newCost = computeCost(s, swap.fromRow, newRoute, cache);
+      // the new route equals the original route up to the first modified
+      // position
+      final int fromIndex = Math.min(positions[0], swap.toIndices.get(0));
+      final long fingerprint = s.fingerprints().moved(swap.fromRow, positions,
+        swap.toIndices, swap.item);
+      final double newCost = computeCost(s, swap.fromRow, newRoute, fromIndex,
+        fingerprint, cache);
       final double diff = newCost - originalCost;
+      return new SwapEvaluation<T>(ImmutableList.of(swap.fromRow),
+          ImmutableList.of(newRoute), ImmutableList.of(newCost), diff);
+    }
+    // 2. swap between vehicles
 
-      if (diff < threshold) {
-        // it improves
-        final ImmutableList<ImmutableList<T>> newRoutes = replace(s.routes,
-          ImmutableList.of(swap.fromRow), ImmutableList.of(newRoute));
-        final double newObjectiveValue = s.objectiveValue + diff;
-        final ImmutableList<Double> newObjectiveValues = replace(
-          s.objectiveValues, ImmutableList.of(swap.fromRow),
-          ImmutableList.of(newCost));
-        return Optional
-            .of(Schedule.create(s.context, newRoutes, s.startIndices,
-              newObjectiveValues, newObjectiveValue, s.evaluator));
-      } else {
-        return Optional.absent();
-      }
-    } else {
-      // 2. swap between vehicles
-
-      // compute cost of removal from original vehicle
-      final double originalCostA = s.objectiveValues.get(swap.fromRow);
-      final ImmutableList<T> newRouteA = ImmutableList.copyOf(filter(
-        s.routes.get(swap.fromRow), not(equalTo(swap.item))));
-      final int itemCount = s.routes.get(swap.fromRow).size()
-          - newRouteA.size();
-      checkArgument(
-        itemCount > 0,
-        "The item (%s) is not in row %s, hence it cannot be swapped to another row.",
-        swap.item, swap.fromRow);
-      checkArgument(
-        itemCount == swap.toIndices.size(),
-        "The number of occurences in the fromRow (%s) should equal the number of insertion indices (%s).",
-        itemCount, swap.toIndices.size());
-
-      final double newCostA = computeCost(s, swap.fromRow, newRouteA, cache);
-      final double diffA = newCostA - originalCostA;
-
-      // compute cost of insertion in new vehicle
-      final double originalCostB = s.objectiveValues.get(swap.toRow);
-      final ImmutableList<T> newRouteB = Insertions.insert(
-        s.routes.get(swap.toRow), swap.toIndices, swap.item);
-
-      final double newCostB = computeCost(s, swap.toRow, newRouteB, cache);
-      final double diffB = newCostB - originalCostB;
-
-      final double diff = diffA + diffB;
-      if (diff < threshold) {
-        final ImmutableList<Integer> rows = ImmutableList.of(swap.fromRow,
-          swap.toRow);
-        final ImmutableList<ImmutableList<T>> newRoutes = replace(s.routes,
-          rows, ImmutableList.of(newRouteA, newRouteB));
-        final double newObjectiveValue = s.objectiveValue + diff;
-        final ImmutableList<Double> newObjectiveValues = replace(
-          s.objectiveValues, rows, ImmutableList.of(newCostA, newCostB));
-
-        return Optional
-            .of(Schedule.create(s.context, newRoutes, s.startIndices,
-              newObjectiveValues, newObjectiveValue, s.evaluator));
-      } else {
-        return Optional.absent();
-      }
+    // compute cost of removal from original vehicle
+    final double originalCostA = s.objectiveValues.get(swap.fromRow);
+    final ImmutableList<T> newRouteA = ImmutableList.copyOf(filter(
+      s.routes.get(swap.fromRow), not(equalTo(swap.item))));
+    final int itemCount = s.routes.get(swap.fromRow).size()
+        - newRouteA.size();
+    checkArgument(
+      itemCount > 0,
+      "The item (%s) is not in row %s, hence it cannot be swapped to another row.",
+      swap.item, swap.fromRow);
+    checkArgument(
+      itemCount == swap.toIndices.size(),
+      "The number of occurences in the fromRow (%s) should equal the number of insertion indices (%s).",
+      itemCount, swap.toIndices.size());
+
+    final int[] positions = s.fingerprints().positions(swap.fromRow,
+      swap.item);
+    final double newCostA = computeCost(s, swap.fromRow, newRouteA,
+      positions[0], s.fingerprints().moved(swap.fromRow, positions,
+        ImmutableList.<Integer>of(), swap.item),
+      cache);
+    final double diffA = newCostA - originalCostA;
+
+    // compute cost of insertion in new vehicle
+    final double originalCostB = s.objectiveValues.get(swap.toRow);
+    final ImmutableList<T> newRouteB = Insertions.insert(
+      s.routes.get(swap.toRow), swap.toIndices, swap.item);
+
+    final double newCostB = computeCost(s, swap.toRow, newRouteB,
+      swap.toIndices.get(0), s.fingerprints().moved(swap.toRow, new int[0],
+        swap.toIndices, swap.item),
+      cache);
+    final double diffB = newCostB - originalCostB;
+
+    final double diff = diffA + diffB;
+    return new SwapEvaluation<T>(ImmutableList.of(swap.fromRow, swap.toRow),
+        ImmutableList.of(newRouteA, newRouteB),
+        ImmutableList.of(newCostA, newCostB), diff);
+  }
+
+  // computes the cost without using a cache
+  static <C, T> double computeCost(Schedule<C, T> s, int row,
+      ImmutableList<T> newRoute, int fromIndex) {
+    if (s.isIncremental()) {
+      return s.preparedRoute(row).computeCost(newRoute, fromIndex);
     }
+    return s.evaluator.computeCost(s.context, row, newRoute);
   }
 
+  // the fingerprint of the new route is derived from the fingerprints of the
+  // schedule, see Fingerprints
   static <C, T> double computeCost(Schedule<C, T> s, int row,
-      ImmutableList<T> newRoute, Map<ImmutableList<T>, Double> cache) {
-    if (cache.containsKey(newRoute)) {
-      return cache.get(newRoute);
+      ImmutableList<T> newRoute, int fromIndex, long fingerprint,
+      RouteCostCache<C, T> cache) {
+    final RouteCostCache.Key key = new RouteCostCache.Key(row,
+        newRoute.size(), fingerprint);
+    final Double cached = cache.get(key);
+    if (cached != null) {
+      return cached;
     }
-    final double newCost = s.evaluator.computeCost(s.context, row, newRoute);
-    cache.put(newRoute, newCost);
+    final double newCost = computeCost(s, row, newRoute, fromIndex);
+    cache.put(key, newCost);
     return newCost;
   }
 
@@ -354,7 +596,7 @@ public final class Swaps {
    *           therefore considered a bug.
    */
   static <T> ImmutableList<T> inListSwap(ImmutableList<T> originalList,
-      ImmutableList<Integer> insertionIndices, T item) {
+      List<Integer> insertionIndices, T item) {
     checkArgument(!originalList.isEmpty(), "The list may not be empty.");
     final List<T> newList = newArrayList(originalList);
     final List<Integer> indices = removeAll(newList, item);
@@ -413,19 +655,29 @@ public final class Swaps {
     return ImmutableList.copyOf(newL);
   }
 
+  /**
+   * A swap, the fields are only modified by the {@link SwapCursor} that owns
+   * the swap.
+   */
   static class Swap<T> {
-    final T item;
-    final int fromRow;
-    final int toRow;
-    final ImmutableList<Integer> toIndices;
+    T item;
+    int fromRow;
+    int toRow;
+    List<Integer> toIndices;
 
-    Swap(T i, int from, int to, ImmutableList<Integer> toInd) {
+    Swap(T i, int from, int to, List<Integer> toInd) {
       item = i;
       fromRow = from;
       toRow = to;
       toIndices = toInd;
     }
 
+    // an immutable copy of the current state of this swap
+    Swap<T> copy() {
+      return new Swap<T>(item, fromRow, toRow,
+          ImmutableList.copyOf(toIndices));
+    }
+
     @Override
     public String toString() {
       return MoreObjects.toStringHelper(this).add("item", item)
@@ -434,21 +686,358 @@ public final class Swaps {
     }
   }
 
-  static class IndexToSwapTransform<T> implements
-      Function<ImmutableList<Integer>, Swap<T>> {
+  /**
+   * The threshold of a search, a swap is only accepted if its cost difference
+   * is lower than the threshold value.
+   */
+  static final class Threshold {
+    double value;
+  }
+
+  /**
+   * Skips the first insertion positions of a swap for which the cost
+   * difference is certainly not lower than the threshold. The bound is the
+   * cost difference of the swap in which only the first occurrence of the
+   * item is inserted, since the evaluator is monotone inserting the other
+   * occurrences can only increase the cost.
+   */
+  static final class LowerBoundOracle<C, T> implements InsertionOracle {
+    private final Schedule<C, T> schedule;
     private final T item;
     private final int fromRow;
     private final int toRow;
+    private final Threshold threshold;
+    // the destination row without the item
+    private final ImmutableList<T> row;
+    private final int firstIndex;
+    // cost difference of removing the item from the origin row
+    private double removalDiff;
 
-    IndexToSwapTransform(T it, int from, int to) {
+    LowerBoundOracle(Schedule<C, T> s, T it, int from, int to, Threshold t) {
+      schedule = s;
       item = it;
       fromRow = from;
       toRow = to;
+      threshold = t;
+      firstIndex = s.routes.get(from).indexOf(it);
+      if (from == to) {
+        row = ImmutableList.copyOf(filter(s.routes.get(from),
+          not(equalTo(it))));
+      } else {
+        row = s.routes.get(to);
+      }
+      removalDiff = Double.NaN;
     }
 
     @Override
-    public @Nullable Swap<T> apply(@Nullable ImmutableList<Integer> input) {
-      return new Swap<T>(item, fromRow, toRow, checkNotNull(input));
+    public boolean isPromising(int[] positions, int depth) {
+      if (depth > 0) {
+        return true;
+      }
+      final ImmutableList<T> partial = Insertions.insert(row,
+        ImmutableList.of(positions[0]), item);
+      final double lowerBound;
+      if (fromRow == toRow) {
+        lowerBound = computeCost(schedule, toRow, partial,
+          Math.min(firstIndex, positions[0]))
+          - schedule.objectiveValues.get(toRow);
+      } else {
+        if (Double.isNaN(removalDiff)) {
+          final ImmutableList<T> newRouteA = ImmutableList.copyOf(filter(
+            schedule.routes.get(fromRow), not(equalTo(item))));
+          removalDiff = computeCost(schedule, fromRow, newRouteA, firstIndex)
+            - schedule.objectiveValues.get(fromRow);
+        }
+        lowerBound = removalDiff
+          + computeCost(schedule, toRow, partial, positions[0])
+          - schedule.objectiveValues.get(toRow);
+      }
+      return lowerBound - EPSILON < threshold.value;
+    }
+  }
+
+  static final class SwapEvaluation<T> {
+    final ImmutableList<Integer> rows;
+    final ImmutableList<ImmutableList<T>> routes;
+    final ImmutableList<Double> costs;
+    final double diff;
+
+    SwapEvaluation(ImmutableList<Integer> rs,
+        ImmutableList<ImmutableList<T>> rts, ImmutableList<Double> cs,
+        double d) {
+      rows = rs;
+      routes = rts;
+      costs = cs;
+      diff = d;
+    }
+  }
+
+  /**
+   * Enumerates all swaps of a schedule in a fixed order: for every movable
+   * item in order of its first occurrence, for every destination row, all
+   * ascending insertion positions. The current swap is stored in a single
+   * mutable {@link Swap} object that is only valid until the next call to
+   * {@link #advance()}. The insertion positions are generated by cursors that
+   * are reused for all items with the same number of occurrences.
+   * <p>
+   * The swaps of one item and destination row form a block, a cursor can be
+   * split in cursors over consecutive ranges of blocks that can be consumed
+   * concurrently. When pruning is enabled and the evaluator is a
+   * {@link MonotoneRouteEvaluator}, the insertion positions that can not
+   * improve over {@link #threshold} are skipped.
+   * <p>
+   * Alternatively, {@link #moveTo(int)} provides random access to the swaps
+   * by index, such that they can be visited in a random order without
+   * enumerating them. The two ways of access can not be combined.
+   */
+  static final class SwapCursor<C, T> {
+    final Swap<T> swap;
+    final Threshold threshold;
+    private final Schedule<C, T> schedule;
+    private final List<Block<T>> blocks;
+    private final int toBlock;
+    private final boolean prune;
+    private final Map<Integer, InsertionIndexCursor> cursors;
+    private final Map<Integer, PrunedInsertionIndexCursor> prunedCursors;
+    private final Map<Integer, int[]> buffers;
+    // the first index of each block, computed on the first call to moveTo
+    @Nullable
+    private long[] offsets;
+    private int block;
+    @Nullable
+    private InsertionIndexCursor cursor;
+    @Nullable
+    private PrunedInsertionIndexCursor prunedCursor;
+    @Nullable
+    private int[] original;
+
+    private SwapCursor(Schedule<C, T> s, List<Block<T>> bs, int from, int to,
+        boolean pr) {
+      schedule = s;
+      blocks = bs;
+      block = from;
+      toBlock = to;
+      prune = pr;
+      threshold = new Threshold();
+      cursors = newHashMap();
+      prunedCursors = newHashMap();
+      buffers = newHashMap();
+      swap = new Swap<T>(null, -1, -1, ImmutableList.<Integer>of());
+    }
+
+    /**
+     * Moves to the next swap.
+     * @return <code>true</code> if {@link #swap} is the next swap,
+     *         <code>false</code> if there are no more swaps.
+     */
+    boolean advance() {
+      while (true) {
+        if (cursor != null && cursor.hasNext()) {
+          if (!isOriginal(cursor.next())) {
+            return true;
+          }
+        } else if (prunedCursor != null && prunedCursor.hasNext()) {
+          if (!isOriginal(prunedCursor.next())) {
+            return true;
+          }
+        } else if (block < toBlock) {
+          enter(blocks.get(block++));
+        } else {
+          return false;
+        }
+      }
+    }
+
+    // swaps that have the existing result are skipped
+    private boolean isOriginal(int[] positions) {
+      return original != null && Arrays.equals(original, positions);
+    }
+
+    private void enter(Block<T> b) {
+      final int count = b.indices.length;
+      int rowSize = schedule.routes.get(b.toRow).size();
+      if (b.fromRow == b.toRow) {
+        rowSize -= count;
+        original = b.indices;
+      } else {
+        original = null;
+      }
+      final int startIndex = schedule.startIndices.get(b.toRow);
+      swap.item = b.item;
+      swap.fromRow = b.fromRow;
+      swap.toRow = b.toRow;
+      // with a single occurrence the lower bound equals the cost of the swap
+      if (prune && count > 1) {
+        cursor = null;
+        PrunedInsertionIndexCursor cur = prunedCursors.get(count);
+        if (cur == null) {
+          cur = new PrunedInsertionIndexCursor(count);
+          prunedCursors.put(count, cur);
+        }
+        prunedCursor = cur.reset(rowSize, startIndex,
+          new LowerBoundOracle<C, T>(schedule, b.item, b.fromRow, b.toRow,
+              threshold));
+        swap.toIndices = Ints.asList(cur.positions);
+      } else {
+        prunedCursor = null;
+        InsertionIndexCursor cur = cursors.get(count);
+        if (cur == null) {
+          cur = new InsertionIndexCursor(count);
+          cursors.put(count, cur);
+        }
+        cursor = cur.reset(rowSize, startIndex);
+        swap.toIndices = Ints.asList(cur.positions);
+      }
+    }
+
+    /**
+     * @return The number of indices of {@link #moveTo(int)}, this includes
+     *         the indices of the swaps that have the existing result.
+     */
+    int size() {
+      long total = 0;
+      for (int i = block; i < toBlock; i++) {
+        total += blocks.get(i).weight;
+      }
+      return Ints.checkedCast(total);
+    }
+
+    /**
+     * Sets {@link #swap} to the swap with the specified index.
+     * @param index The index, must be <code>&ge; 0</code> and
+     *          <code>&lt; {@link #size()}</code>.
+     * @return <code>false</code> if the swap has the existing result and
+     *         should be skipped, <code>true</code> otherwise.
+     */
+    boolean moveTo(int index) {
+      if (offsets == null) {
+        final long[] offs = new long[toBlock - block + 1];
+        for (int i = block; i < toBlock; i++) {
+          offs[i - block + 1] = offs[i - block] + blocks.get(i).weight;
+        }
+        offsets = offs;
+      }
+      final long[] offs = offsets;
+      checkArgument(index >= 0 && index < offs[offs.length - 1],
+        "index must be >= 0 and < %s, it is %s.", offs[offs.length - 1], index);
+      // the block that contains index, every block contains at least one
+      // swap
+      int found = Arrays.binarySearch(offs, index);
+      if (found < 0) {
+        found = -found - 2;
+      }
+      final Block<T> b = blocks.get(block + found);
+      final int count = b.indices.length;
+      int[] positions = buffers.get(count);
+      if (positions == null) {
+        positions = new int[count];
+        buffers.put(count, positions);
+      }
+      int rowSize = schedule.routes.get(b.toRow).size();
+      if (b.fromRow == b.toRow) {
+        rowSize -= count;
+      }
+      Insertions.unrank(index - offs[found], rowSize,
+        schedule.startIndices.get(b.toRow), positions);
+      swap.item = b.item;
+      swap.fromRow = b.fromRow;
+      swap.toRow = b.toRow;
+      swap.toIndices = Ints.asList(positions);
+      return b.fromRow != b.toRow || !Arrays.equals(b.indices, positions);
+    }
+
+    /**
+     * Splits the remaining swaps of this cursor in at most <code>n</code>
+     * cursors over consecutive ranges. The ranges are balanced by the number
+     * of insertion positions. Each cursor has its own threshold with the value
+     * of the threshold of this cursor.
+     * @param n The maximum number of cursors.
+     * @return The cursors, ordered by range.
+     */
+    List<SwapCursor<C, T>> split(int n) {
+      checkArgument(n > 0, "n must be positive, is %s.", n);
+      long total = 0;
+      for (int i = block; i < toBlock; i++) {
+        total += blocks.get(i).weight;
+      }
+      final List<SwapCursor<C, T>> parts = newArrayList();
+      int from = block;
+      long sum = 0;
+      for (int i = block; i < toBlock; i++) {
+        sum += blocks.get(i).weight;
+        if (sum * n >= total * (parts.size() + 1) || i == toBlock - 1) {
+          final SwapCursor<C, T> part = new SwapCursor<C, T>(schedule,
+              blocks, from, i + 1, prune);
+          part.threshold.value = threshold.value;
+          parts.add(part);
+          from = i + 1;
+        }
+      }
+      return parts;
+    }
+
+    /**
+     * Creates a cursor over all swaps of the schedule.
+     * @param s The schedule.
+     * @param prune Whether swaps that can not improve over the threshold may
+     *          be skipped, this is only done when the evaluator of the
+     *          schedule is a {@link MonotoneRouteEvaluator}.
+     * @return A new cursor.
+     */
+    static <C, T> SwapCursor<C, T> create(Schedule<C, T> s, boolean prune) {
+      final List<Block<T>> blocks = newArrayList();
+      final Set<T> seen = newHashSet();
+      for (int i = 0; i < s.routes.size(); i++) {
+        final ImmutableList<T> row = s.routes.get(i);
+        for (int j = 0; j < row.size(); j++) {
+          final T t = row.get(j);
+          if (j >= s.startIndices.get(i) && !seen.contains(t)) {
+            addBlocks(s, t, i, blocks);
+          }
+          seen.add(t);
+        }
+      }
+      return new SwapCursor<C, T>(s, blocks, 0, blocks.size(),
+          prune && s.evaluator instanceof MonotoneRouteEvaluator);
+    }
+
+    static <C, T> void addBlocks(Schedule<C, T> s, T item, int fromRow,
+        List<Block<T>> blocks) {
+      final int[] indices = Ints.toArray(indices(s.routes.get(fromRow), item));
+      int lower = fromRow;
+      int upper = fromRow + 1;
+      if (indices.length > 1) {
+        lower = 0;
+        upper = s.routes.size();
+      }
+      for (int i = lower; i < upper; i++) {
+        int rowSize = s.routes.get(i).size();
+        if (i == fromRow) {
+          rowSize -= indices.length;
+        }
+        final long weight = Insertions.multichoose(
+          rowSize + 1 - s.startIndices.get(i), indices.length);
+        blocks.add(new Block<T>(item, fromRow, i, indices, weight));
+      }
+    }
+  }
+
+  // the swaps of one item to one row
+  static final class Block<T> {
+    final T item;
+    final int fromRow;
+    final int toRow;
+    // the positions of the item in the origin row
+    final int[] indices;
+    // the number of insertion positions
+    final long weight;
+
+    Block(T it, int from, int to, int[] ind, long w) {
+      item = it;
+      fromRow = from;
+      toRow = to;
+      indices = ind;
+      weight = w;
     }
   }
 }
@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.mas.comm;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.github.rinde.logistics.pdptw.mas.VehicleHandler;
+import com.github.rinde.logistics.pdptw.mas.comm.SolverBidder.BidEstimator;
+import com.github.rinde.logistics.pdptw.mas.route.RandomRoutePlanner;
+import com.github.rinde.rinsim.central.RandomSolver;
+import com.github.rinde.rinsim.central.SolverModel;
+import com.github.rinde.rinsim.core.model.DependencyProvider;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.experiment.ExperimentTest;
+import com.github.rinde.rinsim.experiment.MASConfiguration;
+import com.github.rinde.rinsim.geom.Point;
+import com.github.rinde.rinsim.pdptw.common.AddVehicleEvent;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.pdptw.common.StatisticsDTO;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06Parser;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests the bid collection of {@link AuctionCommModel}.
+ * @author Rinde van Lon
+ */
+public class AuctionCommModelTest {
+
+  /**
+   * Tests that the concurrent auction selects the same winners as the
+   * sequential auction, including the tie breaking.
+   */
+  @Test
+  public void concurrentEqualsSequential() {
+    final double[] bids = {3, 1, 2, 1, 1.00001, 5 };
+    final List<Bidder> winners = newArrayList();
+    final AuctionCommModel sequential = new AuctionCommModel(
+        new MersenneTwister(123));
+    final ExecutorService pool = new ForkJoinPool(3);
+    final AuctionCommModel concurrent = new AuctionCommModel(
+        new MersenneTwister(123), Optional.of(pool), Long.MAX_VALUE);
+    final List<Bidder> bidders = newArrayList();
+    for (final double bid : bids) {
+      final Bidder b = bidder(bid, 0L, winners);
+      bidders.add(b);
+      sequential.register(b);
+      concurrent.register(b);
+    }
+    for (int i = 0; i < 20; i++) {
+      sequential.receiveParcel(parcel(), 0L);
+      concurrent.receiveParcel(parcel(), 0L);
+    }
+    pool.shutdown();
+    // the winners of both models are recorded alternately
+    assertEquals(40, winners.size());
+    for (int i = 0; i < winners.size(); i += 2) {
+      assertEquals(winners.get(i), winners.get(i + 1));
+      assertEquals(1d, bids[bidders.indexOf(winners.get(i))], 0.001);
+    }
+  }
+
+  /**
+   * Tests that a bid that is computed after the deadline is dropped and that
+   * its bidder is skipped while it is still computing.
+   */
+  @Test
+  public void deadline() {
+    final List<Bidder> winners = newArrayList();
+    final ExecutorService pool = new ForkJoinPool(2);
+    final AuctionCommModel model = new AuctionCommModel(
+        new MersenneTwister(123), Optional.of(pool),
+        TimeUnit.MILLISECONDS.toNanos(50));
+    final ConcurrentBidder slow = bidder(0, 1000L, winners);
+    final ConcurrentBidder fast = bidder(5, 0L, winners);
+    model.register(slow);
+    model.register(fast);
+
+    model.receiveParcel(parcel(), 0L);
+    model.receiveParcel(parcel(), 0L);
+    assertEquals(newArrayList((Bidder) fast, fast), winners);
+    verify(slow, times(1)).prepareBidFor(any(Parcel.class), anyLong());
+    verify(fast, times(2)).prepareBidFor(any(Parcel.class), anyLong());
+    verify(slow, never()).getBidFor(any(Parcel.class), anyLong());
+    pool.shutdown();
+  }
+
+  /**
+   * Tests that the auction waits for all bids if none of the bids is computed
+   * before the deadline.
+   */
+  @Test
+  public void allLate() {
+    final List<Bidder> winners = newArrayList();
+    final ExecutorService pool = new ForkJoinPool(2);
+    final AuctionCommModel model = new AuctionCommModel(
+        new MersenneTwister(123), Optional.of(pool), 1L);
+    final Bidder first = bidder(2, 100L, winners);
+    final Bidder second = bidder(1, 200L, winners);
+    model.register(first);
+    model.register(second);
+    model.receiveParcel(parcel(), 0L);
+    assertEquals(newArrayList(second), winners);
+    pool.shutdown();
+  }
+
+  /**
+   * Tests that the bids of bidders that are not a {@link ConcurrentBidder} are
+   * computed in the simulation thread.
+   */
+  @Test
+  public void plainBidderInSimulationThread() {
+    final List<Bidder> winners = newArrayList();
+    final ExecutorService pool = new ForkJoinPool(2);
+    final AuctionCommModel model = new AuctionCommModel(
+        new MersenneTwister(123), Optional.of(pool),
+        TimeUnit.MILLISECONDS.toNanos(50));
+    final Thread simulationThread = Thread.currentThread();
+    final List<Thread> threads = newArrayList();
+    final Bidder plain = mock(Bidder.class);
+    when(plain.getBidFor(any(Parcel.class), anyLong())).thenAnswer(
+      new Answer<Double>() {
+        @Override
+        public Double answer(InvocationOnMock invocation)
+            throws InterruptedException {
+          threads.add(Thread.currentThread());
+          // the deadline does not apply to the bid of a plain bidder
+          Thread.sleep(100L);
+          return 1d;
+        }
+      });
+    recordWins(plain, winners);
+    model.register(plain);
+    model.register(bidder(2, 0L, winners));
+
+    model.receiveParcel(parcel(), 0L);
+    assertEquals(newArrayList(plain), winners);
+    assertEquals(newArrayList(simulationThread), threads);
+    pool.shutdown();
+  }
+
+  /**
+   * Tests that concurrent auctions with {@link SolverBidder}s give the same
+   * result as sequential auctions on an entire scenario.
+   */
+  @Test
+  public void concurrentScenario() {
+    final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
+    final List<StatisticsDTO> results = newArrayList();
+    final ExecutorService pool = new ForkJoinPool(4);
+    for (final AuctionCommModel.Builder builder : ImmutableList.of(
+      AuctionCommModel.builder(),
+      AuctionCommModel.builder().withExecutor(pool))) {
+      final MASConfiguration config = MASConfiguration.pdptwBuilder()
+          .addEventHandler(AddVehicleEvent.class,
+            new VehicleHandler(RandomRoutePlanner.supplier(),
+                SolverBidder.supplier(objFunc, RandomSolver.supplier())))
+          .addModel(builder)
+          .addModel(SolverModel.builder())
+          .build();
+      results.add(ExperimentTest.singleRun(
+        Gendreau06Parser.parse(new File(
+            "files/scenarios/gendreau06/req_rapide_1_240_24")),
+        config, 123, objFunc, false));
+    }
+    pool.shutdown();
+    assertTrue(objFunc.isValidResult(results.get(0)));
+    assertEquals(results.get(0), results.get(1));
+  }
+
+  /**
+   * Tests that only the bidders with the lowest estimates and the bidders that
+   * can not estimate compute a full bid.
+   */
+  @Test
+  public void prescreening() {
+    final List<Bidder> winners = newArrayList();
+    final AuctionCommModel model = new AuctionCommModel(
+        new MersenneTwister(123), Optional.<ExecutorService>absent(),
+        Long.MAX_VALUE, 3);
+    final Bidder plain = bidder(10, 0L, winners);
+    final EstimatingBidder far = estimatingBidder(1, 9d, winners);
+    final EstimatingBidder near = estimatingBidder(2, 1d, winners);
+    final EstimatingBidder nearer = estimatingBidder(3, 0.5, winners);
+    model.register(plain);
+    model.register(far);
+    model.register(near);
+    model.register(nearer);
+
+    model.receiveParcel(parcel(), 0L);
+    assertEquals(newArrayList((Bidder) near), winners);
+    verify(plain).getBidFor(any(Parcel.class), anyLong());
+    verify(far, never()).getBidFor(any(Parcel.class), anyLong());
+    verify(near).getBidFor(any(Parcel.class), anyLong());
+    verify(nearer).getBidFor(any(Parcel.class), anyLong());
+  }
+
+  /**
+   * Tests that a bidder that is still computing a late bid is not asked for
+   * an estimate.
+   */
+  @Test
+  public void prescreeningSkipsLateBidders() {
+    final List<Bidder> winners = newArrayList();
+    final ExecutorService pool = new ForkJoinPool(2);
+    final AuctionCommModel model = new AuctionCommModel(
+        new MersenneTwister(123), Optional.of(pool),
+        TimeUnit.MILLISECONDS.toNanos(50), 2);
+    final ConcurrentBidder slow = concurrentEstimatingBidder(0, 1000L, 0d,
+      winners);
+    final ConcurrentBidder fast = concurrentEstimatingBidder(5, 0L, 1d,
+      winners);
+    final ConcurrentBidder other = concurrentEstimatingBidder(6, 0L, 2d,
+      winners);
+    model.register(slow);
+    model.register(fast);
+    model.register(other);
+
+    model.receiveParcel(parcel(), 0L);
+    model.receiveParcel(parcel(), 0L);
+    assertEquals(newArrayList((Bidder) fast, fast), winners);
+    verify((EstimatingBidder) slow, times(1)).estimateBidFor(
+      any(Parcel.class), anyLong());
+    verify((EstimatingBidder) other, times(2)).estimateBidFor(
+      any(Parcel.class), anyLong());
+    verify(slow, times(1)).prepareBidFor(any(Parcel.class), anyLong());
+    verify(other, times(1)).prepareBidFor(any(Parcel.class), anyLong());
+    pool.shutdown();
+  }
+
+  /**
+   * Tests auctions with prescreening using both estimators of
+   * {@link SolverBidder} on an entire scenario.
+   */
+  @Test
+  public void prescreeningScenario() {
+    final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
+    for (final BidEstimator estimator : BidEstimator.values()) {
+      final MASConfiguration config = MASConfiguration.pdptwBuilder()
+          .addEventHandler(AddVehicleEvent.class,
+            new VehicleHandler(RandomRoutePlanner.supplier(),
+                SolverBidder.supplier(objFunc, RandomSolver.supplier(),
+                  estimator)))
+          .addModel(AuctionCommModel.builder().withPrescreening(3))
+          .addModel(SolverModel.builder())
+          .build();
+      final StatisticsDTO stats = ExperimentTest.singleRun(
+        Gendreau06Parser.parse(new File(
+            "files/scenarios/gendreau06/req_rapide_1_240_24")),
+        config, 123, objFunc, false);
+      assertTrue(objFunc.isValidResult(stats));
+    }
+  }
+
+  /**
+   * Tests the winner selection that is shared by the auction models.
+   */
+  @Test
+  public void selectWinner() {
+    final RandomGenerator rng = mock(RandomGenerator.class);
+    when(rng.nextInt(2)).thenReturn(1);
+    final Optional<Double> absent = Optional.absent();
+    assertEquals(2, AuctionCommModel.selectWinner(
+      ImmutableList.of(absent, Optional.of(2d), Optional.of(1d),
+        Optional.of(3d)), rng));
+    verify(rng, never()).nextInt(anyInt());
+    assertEquals(3, AuctionCommModel.selectWinner(
+      ImmutableList.of(Optional.of(2d), absent, Optional.of(1d),
+        Optional.of(1.00001), Optional.of(3d)), rng));
+  }
+
+  /**
+   * There must be at least one bid.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void selectWinnerWithoutBids() {
+    AuctionCommModel.selectWinner(
+      ImmutableList.of(Optional.<Double>absent()), new MersenneTwister(123));
+  }
+
+  /**
+   * The number of candidates must be positive.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidPrescreening() {
+    AuctionCommModel.builder().withPrescreening(0);
+  }
+
+  /**
+   * A deadline requires an executor.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void deadlineWithoutExecutor() {
+    AuctionCommModel.builder().withBidDeadline(1, TimeUnit.SECONDS)
+        .build(mock(DependencyProvider.class));
+  }
+
+  /**
+   * The deadline must be positive.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidDeadline() {
+    AuctionCommModel.builder().withBidDeadline(0, TimeUnit.SECONDS);
+  }
+
+  static Parcel parcel() {
+    return new Parcel(Parcel.builder(new Point(0, 0), new Point(1, 1))
+        .buildDTO());
+  }
+
+  static EstimatingBidder estimatingBidder(double bid, double estimate,
+      List<Bidder> winners) {
+    final EstimatingBidder b = mock(EstimatingBidder.class);
+    when(b.estimateBidFor(any(Parcel.class), anyLong())).thenReturn(estimate);
+    when(b.getBidFor(any(Parcel.class), anyLong())).thenReturn(bid);
+    recordWins(b, winners);
+    return b;
+  }
+
+  // a bidder that bids the specified value after the specified delay and
+  // adds itself to the winners when it receives a parcel
+  static ConcurrentBidder bidder(double bid, long delayMillis,
+      List<Bidder> winners) {
+    final ConcurrentBidder b = mock(ConcurrentBidder.class);
+    stubBid(b, bid, delayMillis);
+    recordWins(b, winners);
+    return b;
+  }
+
+  static ConcurrentBidder concurrentEstimatingBidder(double bid,
+      long delayMillis, double estimate, List<Bidder> winners) {
+    final ConcurrentBidder b = mock(ConcurrentBidder.class,
+      withSettings().extraInterfaces(EstimatingBidder.class));
+    when(((EstimatingBidder) b).estimateBidFor(any(Parcel.class), anyLong()))
+        .thenReturn(estimate);
+    stubBid(b, bid, delayMillis);
+    recordWins(b, winners);
+    return b;
+  }
+
+  static void stubBid(ConcurrentBidder b, final double bid,
+      final long delayMillis) {
+    final Callable<Double> computation = new Callable<Double>() {
+      @Override
+      public Double call() throws InterruptedException {
+        Thread.sleep(delayMillis);
+        return bid;
+      }
+    };
+    when(b.prepareBidFor(any(Parcel.class), anyLong())).thenReturn(
+      computation);
+    when(b.getBidFor(any(Parcel.class), anyLong())).thenAnswer(
+      new Answer<Double>() {
+        @Override
+        public Double answer(InvocationOnMock invocation) throws Exception {
+          return computation.call();
+        }
+      });
+  }
+
+  static void recordWins(final Bidder b, final List<Bidder> winners) {
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        winners.add(b);
+        return null;
+      }
+    }).when(b).receiveParcel(any(Parcel.class));
+  }
+}
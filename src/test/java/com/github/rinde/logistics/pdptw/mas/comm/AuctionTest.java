@@ -16,6 +16,7 @@
 package com.github.rinde.logistics.pdptw.mas.comm;
 
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Sets.newHashSet;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertEquals;
@@ -323,6 +324,35 @@ public class AuctionTest {
     rb.unclaim(dp);
   }
 
+  /**
+   * Tests that every change of the assigned or claimed parcels increments the
+   * assignment version.
+   */
+  @Test
+  public void assignmentVersion() {
+    final RandomBidder rb = new RandomBidder(123);
+    final Parcel dp = new Parcel(ape1.getParcelDTO());
+    final Parcel dp2 = new Parcel(ape2.getParcelDTO());
+    final PDPModel pm = mock(PDPModel.class);
+    rb.init(mock(PDPRoadModel.class), pm, mock(Vehicle.class));
+    when(pm.getParcelState(dp)).thenReturn(ParcelState.AVAILABLE);
+    final List<Long> versions = newArrayList(rb.getAssignmentVersion());
+    rb.receiveParcel(dp);
+    versions.add(rb.getAssignmentVersion());
+    rb.receiveParcel(dp2);
+    versions.add(rb.getAssignmentVersion());
+    rb.claim(dp);
+    versions.add(rb.getAssignmentVersion());
+    rb.unclaim(dp);
+    versions.add(rb.getAssignmentVersion());
+    rb.claim(dp);
+    rb.done();
+    versions.add(rb.getAssignmentVersion());
+    rb.releaseParcel(dp2);
+    versions.add(rb.getAssignmentVersion());
+    assertEquals(versions.size(), newHashSet(versions).size());
+  }
+
   static class FixedRoutePlanner extends AbstractRoutePlanner {
     Optional<Parcel> current;
 
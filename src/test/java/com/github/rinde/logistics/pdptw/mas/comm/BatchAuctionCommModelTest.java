@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.mas.comm;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.github.rinde.logistics.pdptw.mas.VehicleHandler;
+import com.github.rinde.logistics.pdptw.mas.route.RandomRoutePlanner;
+import com.github.rinde.rinsim.central.RandomSolver;
+import com.github.rinde.rinsim.central.SolverModel;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.core.model.time.TimeLapseFactory;
+import com.github.rinde.rinsim.experiment.ExperimentTest;
+import com.github.rinde.rinsim.experiment.MASConfiguration;
+import com.github.rinde.rinsim.geom.Point;
+import com.github.rinde.rinsim.pdptw.common.AddVehicleEvent;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.pdptw.common.StatisticsDTO;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06Parser;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests for {@link BatchAuctionCommModel}.
+ * @author Rinde van Lon
+ */
+public class BatchAuctionCommModelTest {
+
+  /**
+   * Tests that the parcels that arrive within the window are auctioned
+   * together at the end of the window.
+   */
+  @Test
+  public void batchWindow() {
+    final BatchAuctionCommModel model = new BatchAuctionCommModel(
+        new MersenneTwister(123), 5000L);
+    final Parcel p1 = parcel();
+    final Parcel p2 = parcel();
+    final List<Parcel> won = newArrayList();
+    final BatchBidder b1 = bidder(ImmutableMap.of(p1, 1d, p2, 1.5), won);
+    final BatchBidder b2 = bidder(ImmutableMap.of(p1, 2d, p2, 2d), won);
+    model.register(b1);
+    model.register(b2);
+
+    model.receiveParcel(p1, 0L);
+    model.afterTick(TimeLapseFactory.create(0L, 1000L));
+    model.receiveParcel(p2, 1000L);
+    model.afterTick(TimeLapseFactory.create(1000L, 2000L));
+    assertEquals(ImmutableList.of(p1, p2), model.getBatch());
+    verify(b1, never()).getBidsFor(anyParcels(), anyLong());
+
+    model.afterTick(TimeLapseFactory.create(5000L, 6000L));
+    assertTrue(model.getBatch().isEmpty());
+    verify(b1).getBidsFor(ImmutableList.of(p1, p2), 6000L);
+    verify(b2).getBidsFor(ImmutableList.of(p1, p2), 6000L);
+    assertEquals(ImmutableList.of(p1, p2), won);
+  }
+
+  /**
+   * Tests that each parcel is assigned to the bidder with the lowest bid for
+   * that parcel and that every bidder computes its bids only once.
+   */
+  @Test
+  public void lowestBidPerParcel() {
+    final BatchAuctionCommModel model = new BatchAuctionCommModel(
+        new MersenneTwister(123), 0L);
+    final Parcel p1 = parcel();
+    final Parcel p2 = parcel();
+    final Parcel p3 = parcel();
+    final List<Parcel> won1 = newArrayList();
+    final List<Parcel> won2 = newArrayList();
+    final BatchBidder b1 = bidder(ImmutableMap.of(p1, 3d, p2, 1d, p3, 2d),
+      won1);
+    final BatchBidder b2 = bidder(ImmutableMap.of(p1, 2d, p2, 5d, p3, 6d),
+      won2);
+    final Bidder b3 = mock(Bidder.class);
+    when(b3.getBidFor(any(Parcel.class), anyLong())).thenReturn(100d);
+    model.register(b1);
+    model.register(b2);
+    model.register(b3);
+
+    model.receiveParcel(p1, 0L);
+    model.receiveParcel(p2, 0L);
+    model.receiveParcel(p3, 0L);
+    model.afterTick(TimeLapseFactory.create(0L, 1000L));
+
+    assertEquals(ImmutableList.of(p2, p3), won1);
+    assertEquals(ImmutableList.of(p1), won2);
+    verify(b1).getBidsFor(ImmutableList.of(p1, p2, p3), 1000L);
+    verify(b2).getBidsFor(ImmutableList.of(p1, p2, p3), 1000L);
+    verify(b3, times(3)).getBidFor(any(Parcel.class), anyLong());
+  }
+
+  /**
+   * The batch window must be non-negative.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidBatchWindow() {
+    BatchAuctionCommModel.builder().withBatchWindow(-1L);
+  }
+
+  /**
+   * Tests that all parcels of a scenario are auctioned and delivered.
+   */
+  @Test
+  public void scenario() {
+    final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
+    final MASConfiguration config = MASConfiguration.pdptwBuilder()
+        .addEventHandler(AddVehicleEvent.class,
+          new VehicleHandler(RandomRoutePlanner.supplier(),
+              SolverBidder.supplier(objFunc, RandomSolver.supplier())))
+        .addModel(BatchAuctionCommModel.builder().withBatchWindow(60000L))
+        .addModel(SolverModel.builder())
+        .build();
+    final StatisticsDTO stats = ExperimentTest.singleRun(
+      Gendreau06Parser.parse(new File(
+          "files/scenarios/gendreau06/req_rapide_1_240_24")),
+      config, 123, objFunc, false);
+    assertTrue(objFunc.isValidResult(stats));
+  }
+
+  static Parcel parcel() {
+    return new Parcel(Parcel.builder(new Point(0, 0), new Point(1, 1))
+        .buildDTO());
+  }
+
+  @SuppressWarnings("unchecked")
+  static ImmutableList<Parcel> anyParcels() {
+    return any(ImmutableList.class);
+  }
+
+  // a bidder that bids the specified values, the won parcels are added to the
+  // list
+  static BatchBidder bidder(final Map<Parcel, Double> values,
+      final List<Parcel> won) {
+    final BatchBidder b = mock(BatchBidder.class);
+    when(b.getBidsFor(anyParcels(), anyLong())).thenAnswer(
+      new Answer<ImmutableList<Double>>() {
+        @Override
+        public ImmutableList<Double> answer(InvocationOnMock invocation) {
+          final ImmutableList.Builder<Double> bids = ImmutableList.builder();
+          for (final Object p : (List<?>) invocation.getArguments()[0]) {
+            bids.add(values.get(p));
+          }
+          return bids.build();
+        }
+      });
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        won.add((Parcel) invocation.getArguments()[0]);
+        return null;
+      }
+    }).when(b).receiveParcel(any(Parcel.class));
+    return b;
+  }
+}
@@ -29,8 +29,10 @@ import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
 import com.github.rinde.logistics.pdptw.mas.VehicleHandler;
+import com.github.rinde.logistics.pdptw.mas.comm.NegotiatingBidder.SelectNegotiatorsHeuristic;
 import com.github.rinde.logistics.pdptw.mas.route.GotoClosestRoutePlanner;
 import com.github.rinde.logistics.pdptw.mas.route.RandomRoutePlanner;
+import com.github.rinde.logistics.pdptw.mas.route.SolverRoutePlanner;
 import com.github.rinde.rinsim.central.RandomSolver;
 import com.github.rinde.rinsim.central.SolverModel;
 import com.github.rinde.rinsim.core.Simulator;
@@ -106,6 +108,36 @@ public class CommunicationIntegrationTest implements TickListener {
           .addModel(CommTestModel.builder())
           .addModel(SolverModel.builder())
           .build() },
+        { MASConfiguration.pdptwBuilder()
+          .addEventHandler(AddVehicleEvent.class,
+            new VehicleHandler(RandomRoutePlanner.supplier(),
+              SolverBidder.supplier(objFunc, RandomSolver.supplier())))
+          .addModel(BatchAuctionCommModel.builder().withBatchWindow(60000L))
+          .addModel(CommTestModel.builder())
+          .addModel(SolverModel.builder())
+          .build() },
+        { MASConfiguration.pdptwBuilder()
+          .addEventHandler(AddVehicleEvent.class,
+            new VehicleHandler(
+              SolverRoutePlanner.supplier(RandomSolver.supplier()),
+              NegotiatingBidder.supplier(objFunc, RandomSolver.supplier(),
+                RandomSolver.supplier(), 3,
+                SelectNegotiatorsHeuristic.VEHICLE_POSITION)))
+          .addModel(AuctionCommModel.builder())
+          .addModel(CommTestModel.builder())
+          .addModel(SolverModel.builder())
+          .build() },
+        { MASConfiguration.pdptwBuilder()
+          .addEventHandler(AddVehicleEvent.class,
+            new VehicleHandler(
+              SolverRoutePlanner.supplier(RandomSolver.supplier()),
+              NegotiatingBidder.supplier(objFunc, RandomSolver.supplier(),
+                RandomSolver.supplier(), 3,
+                SelectNegotiatorsHeuristic.FIRST_DESTINATION_POSITION)))
+          .addModel(AuctionCommModel.builder())
+          .addModel(CommTestModel.builder())
+          .addModel(SolverModel.builder())
+          .build() },
         { MASConfiguration
           .pdptwBuilder()
           .addEventHandler(AddVehicleEvent.class,
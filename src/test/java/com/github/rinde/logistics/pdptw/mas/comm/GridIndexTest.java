@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.mas.comm;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.github.rinde.rinsim.geom.Point;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests for {@link GridIndex}.
+ * @author Rinde van Lon
+ */
+public class GridIndexTest {
+
+  /**
+   * Tests that the nearest items equal the items found by a stable sort on
+   * distance, also when items are moved and removed.
+   */
+  @Test
+  public void nearestEqualsSort() {
+    final RandomGenerator rng = new MersenneTwister(123);
+    for (int i = 0; i < 20; i++) {
+      final GridIndex<Integer> index = GridIndex.create(new Point(0, 0),
+        new Point(10, 10));
+      final Map<Integer, Point> positions = newLinkedHashMap();
+      for (int j = 0; j < 500; j++) {
+        final Integer item = rng.nextInt(100);
+        if (rng.nextDouble() < .2) {
+          index.remove(item);
+          positions.remove(item);
+        } else {
+          // integer coordinates result in many equal distances, some items
+          // are outside of the area
+          final Point p = new Point(rng.nextInt(14) - 2, rng.nextInt(14) - 2);
+          index.put(item, p);
+          positions.put(item, p);
+        }
+        assertEquals(positions.size(), index.size());
+        if (!positions.isEmpty()) {
+          final Point ref = new Point(rng.nextInt(10), rng.nextInt(10));
+          final int k = 1 + rng.nextInt(10);
+          assertEquals(bruteForce(positions, ref, k), index.nearest(ref, k));
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that all items are returned when there are less than k items, and
+   * that items at the same position are ordered by insertion.
+   */
+  @Test
+  public void samePosition() {
+    final GridIndex<String> index = GridIndex.create(new Point(0, 0),
+      new Point(0, 0));
+    assertTrue(index.nearest(new Point(0, 0), 3).isEmpty());
+    index.put("C", new Point(5, 5));
+    index.put("A", new Point(0, 0));
+    index.put("B", new Point(0, 0));
+    assertEquals(ImmutableList.of("A", "B", "C"),
+      index.nearest(new Point(0, 0), 5));
+    assertEquals(ImmutableList.of("C", "A"),
+      index.nearest(new Point(4, 4), 2));
+
+    index.remove("A");
+    index.put("A", new Point(0, 0));
+    assertEquals(ImmutableList.of("B", "A"),
+      index.nearest(new Point(0, 0), 2));
+  }
+
+  /**
+   * K must be positive.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidK() {
+    GridIndex.<String> create(new Point(0, 0), new Point(1, 1))
+      .nearest(new Point(0, 0), 0);
+  }
+
+  static <T> List<T> bruteForce(Map<T, Point> positions, final Point ref,
+    int k) {
+    final List<Map.Entry<T, Point>> entries = newArrayList(positions
+      .entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<T, Point>>() {
+      @Override
+      public int compare(@Nullable Map.Entry<T, Point> o1,
+        @Nullable Map.Entry<T, Point> o2) {
+        return Double.compare(Point.distance(o1.getValue(), ref),
+          Point.distance(o2.getValue(), ref));
+      }
+    });
+    final List<T> result = newArrayList();
+    for (final Map.Entry<T, Point> e : entries.subList(0,
+      Math.min(k, entries.size()))) {
+      result.add(e.getKey());
+    }
+    return result;
+  }
+}
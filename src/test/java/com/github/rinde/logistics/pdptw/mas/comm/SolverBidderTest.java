@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.mas.comm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.rinde.logistics.pdptw.mas.Truck;
+import com.github.rinde.logistics.pdptw.mas.VehicleHandler;
+import com.github.rinde.logistics.pdptw.mas.comm.SolverBidder.Baseline;
+import com.github.rinde.logistics.pdptw.mas.route.SolverRoutePlanner;
+import com.github.rinde.logistics.pdptw.solver.CheapestInsertionHeuristic;
+import com.github.rinde.rinsim.central.SolverModel;
+import com.github.rinde.rinsim.core.Simulator;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.core.model.pdp.ParcelDTO;
+import com.github.rinde.rinsim.core.model.road.RoadModel;
+import com.github.rinde.rinsim.experiment.ExperimentTest;
+import com.github.rinde.rinsim.experiment.MASConfiguration;
+import com.github.rinde.rinsim.geom.Point;
+import com.github.rinde.rinsim.pdptw.common.AddParcelEvent;
+import com.github.rinde.rinsim.pdptw.common.AddVehicleEvent;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.GendreauTestUtil;
+import com.github.rinde.rinsim.util.TimeWindow;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests for {@link SolverBidder}.
+ * @author Rinde van Lon
+ */
+public class SolverBidderTest {
+  Simulator simulator;
+  Truck truck;
+  SolverBidder bidder;
+
+  /**
+   * Sets up a simulation with one truck to which two parcels are assigned.
+   */
+  @Before
+  public void setUp() {
+    final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
+    final List<AddParcelEvent> events = ImmutableList.of(
+      AddParcelEvent.create(parcel(new Point(1, 1), new Point(3, 3))),
+      AddParcelEvent.create(parcel(new Point(2, 1), new Point(1, 3))));
+    final MASConfiguration config = MASConfiguration.pdptwBuilder()
+        .addEventHandler(AddVehicleEvent.class, new VehicleHandler(
+            SolverRoutePlanner.supplier(
+              CheapestInsertionHeuristic.supplier(objFunc)),
+            SolverBidder.supplier(objFunc,
+              CheapestInsertionHeuristic.supplier(objFunc))))
+        .addModel(AuctionCommModel.builder())
+        .addModel(SolverModel.builder())
+        .build();
+    simulator = ExperimentTest.init(
+      GendreauTestUtil.createWithTrucks(events, 1), config, 123, false);
+    simulator.tick();
+    simulator.tick();
+    truck = simulator.getModelProvider().getModel(RoadModel.class)
+        .getObjectsOfType(Truck.class).iterator().next();
+    bidder = (SolverBidder) truck.getCommunicator();
+    assertEquals(2, bidder.getParcels().size());
+    assertFalse(bidder.currentRoute().isEmpty());
+  }
+
+  /**
+   * Tests that the baseline is reused by auctions in the same tick.
+   */
+  @Test
+  public void baselineReusedInSameTick() {
+    final long time = simulator.getCurrentTime();
+    final Parcel p = bidder.getParcels().iterator().next();
+    final Baseline baseline = bidder.baseline(time);
+    bidder.getBidFor(p, time);
+    assertSame(baseline, bidder.baseline(time));
+    bidder.getBidsFor(ImmutableList.of(p, p), time);
+    assertSame(baseline, bidder.baseline(time));
+    bidder.prepareBidFor(p, time);
+    assertSame(baseline, bidder.baseline(time));
+  }
+
+  /**
+   * Tests that the baseline is computed again when the time, the assignment
+   * version or the route changes.
+   */
+  @Test
+  public void baselineInvalidation() {
+    final long time = simulator.getCurrentTime();
+    final Baseline baseline = bidder.baseline(time);
+
+    // time
+    final Baseline later = bidder.baseline(time + 1);
+    assertNotSame(baseline, later);
+    assertSame(later, bidder.baseline(time + 1));
+
+    // version, the truck has claimed the first parcel of its route
+    final Parcel p = bidder.getClaimedParcels().iterator().next();
+    bidder.unclaim(p);
+    bidder.claim(p);
+    final Baseline claimed = bidder.baseline(time + 1);
+    assertNotSame(later, claimed);
+    assertSame(claimed, bidder.baseline(time + 1));
+
+    // route, the claimed parcel remains the first destination
+    final Parcel other = bidder.currentRoute().get(1);
+    final ImmutableList<Parcel> route = ImmutableList.of(p, p, other, other);
+    assertNotEquals(route, bidder.currentRoute());
+    truck.setRoute(route);
+    final Baseline rerouted = bidder.baseline(time + 1);
+    assertNotSame(claimed, rerouted);
+    assertEquals(route, rerouted.route);
+  }
+
+  /**
+   * Tests that the batch bid of a single parcel is equal to its bid.
+   */
+  @Test
+  public void batchBidOfSingleParcel() {
+    final long time = simulator.getCurrentTime();
+    final Parcel p = bidder.currentRoute().get(0);
+    assertEquals(bidder.getBidFor(p, time),
+      bidder.getBidsFor(ImmutableList.of(p), time).get(0), 0.00001);
+  }
+
+  static ParcelDTO parcel(Point from, Point to) {
+    return Parcel.builder(from, to)
+        .pickupTimeWindow(TimeWindow.create(1, 3600000))
+        .deliveryTimeWindow(TimeWindow.create(1, 7200000))
+        .neededCapacity(0)
+        .orderAnnounceTime(1L)
+        .pickupDuration(1000L)
+        .deliveryDuration(1000L)
+        .buildDTO();
+  }
+}
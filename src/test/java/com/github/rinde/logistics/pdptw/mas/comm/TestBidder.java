@@ -37,6 +37,7 @@ public class TestBidder extends RandomBidder {
    */
   public void removeAll() {
     assignedParcels.clear();
+    assignmentChanged();
     eventDispatcher
         .dispatchEvent(new Event(CommunicatorEventType.CHANGE, this));
   }
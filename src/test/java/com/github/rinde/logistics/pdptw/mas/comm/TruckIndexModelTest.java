@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.mas.comm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.github.rinde.logistics.pdptw.mas.Truck;
+import com.github.rinde.logistics.pdptw.mas.VehicleHandler;
+import com.github.rinde.logistics.pdptw.mas.comm.NegotiatingBidder.SelectNegotiatorsHeuristic;
+import com.github.rinde.logistics.pdptw.mas.route.SolverRoutePlanner;
+import com.github.rinde.logistics.pdptw.solver.CheapestInsertionHeuristic;
+import com.github.rinde.rinsim.central.SolverModel;
+import com.github.rinde.rinsim.core.Simulator;
+import com.github.rinde.rinsim.core.model.pdp.PDPModel;
+import com.github.rinde.rinsim.core.model.pdp.PDPModel.ParcelState;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.core.model.road.RoadModel;
+import com.github.rinde.rinsim.experiment.ExperimentTest;
+import com.github.rinde.rinsim.experiment.MASConfiguration;
+import com.github.rinde.rinsim.geom.Point;
+import com.github.rinde.rinsim.pdptw.common.AddParcelEvent;
+import com.github.rinde.rinsim.pdptw.common.AddVehicleEvent;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.GendreauTestUtil;
+import com.github.rinde.rinsim.util.TimeWindow;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests for {@link TruckIndexModel}.
+ * @author Rinde van Lon
+ */
+public class TruckIndexModelTest {
+
+  /**
+   * Tests that the incrementally updated indices are equal to indices that
+   * are built from scratch during a simulation with negotiating trucks.
+   */
+  @Test
+  public void incrementalEqualsRebuild() {
+    final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
+    final RandomGenerator rng = new MersenneTwister(123);
+    final ImmutableList.Builder<AddParcelEvent> events =
+      ImmutableList.builder();
+    // the parcels are announced while the trucks are driving and servicing
+    for (int i = 0; i < 20; i++) {
+      final long announce = i * 300000L;
+      events.add(AddParcelEvent.create(Parcel.builder(
+        new Point(rng.nextDouble() * 5, rng.nextDouble() * 5),
+        new Point(rng.nextDouble() * 5, rng.nextDouble() * 5))
+        .pickupTimeWindow(TimeWindow.create(announce, 36000000))
+        .deliveryTimeWindow(TimeWindow.create(announce, 36000000))
+        .neededCapacity(0)
+        .orderAnnounceTime(announce)
+        .pickupDuration(120000L)
+        .deliveryDuration(120000L)
+        .buildDTO()));
+    }
+    final MASConfiguration config = MASConfiguration.pdptwBuilder()
+      .addEventHandler(AddVehicleEvent.class, new VehicleHandler(
+        SolverRoutePlanner.supplier(
+          CheapestInsertionHeuristic.supplier(objFunc)),
+        NegotiatingBidder.supplier(objFunc,
+          CheapestInsertionHeuristic.supplier(objFunc),
+          CheapestInsertionHeuristic.supplier(objFunc), 2,
+          SelectNegotiatorsHeuristic.FIRST_DESTINATION_POSITION)))
+      .addModel(AuctionCommModel.builder())
+      .addModel(SolverModel.builder())
+      .addModel(TruckIndexModel.builder())
+      .build();
+    final Simulator sim = ExperimentTest.init(
+      GendreauTestUtil.createWithTrucks(events.build(), 4), config, 123,
+      false);
+    final RoadModel rm = sim.getModelProvider().getModel(RoadModel.class);
+    final TruckIndexModel model = sim.getModelProvider().getModel(
+      TruckIndexModel.class);
+
+    final PDPModel pm = sim.getModelProvider().getModel(PDPModel.class);
+
+    boolean moved = false;
+    for (int i = 0; i < 15000; i++) {
+      sim.tick();
+      final GridIndex<Truck> positions = GridIndex.create(
+        rm.getBounds().get(0), rm.getBounds().get(1));
+      final GridIndex<Truck> destinations = GridIndex.create(
+        rm.getBounds().get(0), rm.getBounds().get(1));
+      for (final Truck t : rm.getObjectsOfType(Truck.class)) {
+        positions.put(t, rm.getPosition(t));
+        destinations.put(t, model.getDestination(t));
+        moved |= !model.getDestination(t).equals(rm.getPosition(t));
+      }
+      assertEquals(4, model.size());
+      final List<Point> references = ImmutableList.of(rm.getBounds().get(0),
+        rm.getBounds().get(1), new Point(2.5, 2.5));
+      for (final Point p : references) {
+        assertEquals(positions.nearest(p, 4), model.nearestByPosition(p, 4));
+        assertEquals(destinations.nearest(p, 4),
+          model.nearestByDestination(p, 4));
+      }
+    }
+    assertTrue(moved);
+    assertEquals(20, pm.getParcels(ParcelState.DELIVERED).size());
+  }
+}
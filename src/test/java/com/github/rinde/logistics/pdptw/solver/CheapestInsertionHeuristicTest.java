@@ -17,14 +17,26 @@ package com.github.rinde.logistics.pdptw.solver;
 
 import static com.github.rinde.logistics.pdptw.solver.CheapestInsertionHeuristic.modifyCosts;
 import static com.github.rinde.logistics.pdptw.solver.CheapestInsertionHeuristic.modifySchedule;
+import static com.google.common.collect.Lists.newArrayList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
+import com.github.rinde.logistics.pdptw.solver.CheapestInsertionHeuristic.Insertion;
+import com.github.rinde.logistics.pdptw.solver.ParcelRouteEvaluatorTest.StateRecorder;
+import com.github.rinde.opt.localsearch.IncrementalRouteEvaluator.PreparedRoute;
+import com.github.rinde.opt.localsearch.MonotoneRouteEvaluator;
 import com.github.rinde.rinsim.central.Central;
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.Solver;
 import com.github.rinde.rinsim.central.SolverValidator;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
 import com.github.rinde.rinsim.experiment.Experiment;
 import com.github.rinde.rinsim.experiment.ExperimentResults;
 import com.github.rinde.rinsim.experiment.PostProcessors;
@@ -32,6 +44,7 @@ import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
 import com.github.rinde.rinsim.pdptw.common.StatisticsDTO;
 import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
 import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06Parser;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 
 public class CheapestInsertionHeuristicTest {
@@ -66,6 +79,126 @@ public class CheapestInsertionHeuristicTest {
     }
   }
 
+  /**
+   * Tests that the parallel evaluation of the vehicles gives the same result
+   * as the sequential evaluation, for both insertion modes.
+   */
+  @Test
+  public void parallelEqualsSequential() {
+    final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
+    final List<GlobalStateObject> states = newArrayList();
+    Experiment.build(objFunc)
+        .addScenario(Gendreau06Parser.parse(new File(
+            "files/scenarios/gendreau06/req_rapide_1_240_24")))
+        .addConfiguration(Central.solverConfiguration(
+          new StateRecorder(CheapestInsertionHeuristic.supplier(objFunc),
+              states)))
+        .perform();
+    assertTrue(!states.isEmpty());
+
+    final ExecutorService pool = new ForkJoinPool(3);
+    final Optional<ExecutorService> exec = Optional.of(pool);
+    final Optional<ExecutorService> none = Optional.absent();
+    final Solver sequential = new CheapestInsertionHeuristic(objFunc);
+    final Solver parallel = new CheapestInsertionHeuristic(objFunc, exec,
+        Optional.<Integer>absent());
+    final Solver regretSequential = new CheapestInsertionHeuristic(objFunc,
+        none, Optional.of(3));
+    final Solver regretParallel = new CheapestInsertionHeuristic(objFunc,
+        exec, Optional.of(3));
+    // every fifth state to keep the test fast
+    for (int i = 0; i < states.size(); i += 5) {
+      final GlobalStateObject state = states.get(i);
+      assertEquals(sequential.solve(state), parallel.solve(state));
+      final ImmutableList<ImmutableList<Parcel>> regretSchedule =
+        regretSequential.solve(state);
+      assertEquals(regretSchedule, regretParallel.solve(state));
+      SolverValidator.validateOutputs(regretSchedule, state);
+    }
+    pool.shutdown();
+  }
+
+  /**
+   * Tests that skipping the pickup positions of which the lower bound is not
+   * cheaper gives the same insertions as trying all positions.
+   */
+  @Test
+  public void pruning() {
+    final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
+    final List<GlobalStateObject> states = newArrayList();
+    Experiment.build(objFunc)
+        .addScenario(Gendreau06Parser.parse(new File(
+            "files/scenarios/gendreau06/req_rapide_1_240_24")))
+        .addConfiguration(Central.solverConfiguration(
+          new StateRecorder(CheapestInsertionHeuristic.supplier(objFunc),
+              states)))
+        .perform();
+    final ParcelRouteEvaluator evaluator = ParcelRouteEvaluator.create(objFunc);
+    assertTrue(evaluator instanceof MonotoneRouteEvaluator);
+    // every tenth state to keep the test fast
+    for (int i = 0; i < states.size(); i += 10) {
+      final GlobalStateObject state = states.get(i);
+      final ImmutableList<ImmutableList<Parcel>> schedule =
+        new CheapestInsertionHeuristic(objFunc).solve(state);
+      for (int v = 0; v < state.getVehicles().size(); v++) {
+        final PreparedRoute<Parcel> route = evaluator.prepare(state, v,
+          schedule.get(v));
+        for (final Parcel p : state.getAvailableParcels()) {
+          if (route.getRoute().contains(p)) {
+            continue;
+          }
+          final Insertion expected = CheapestInsertionHeuristic
+              .cheapestInsertion(state, v, route, p, false);
+          final Insertion actual = CheapestInsertionHeuristic
+              .cheapestInsertion(state, v, route, p, true);
+          assertEquals(expected.route, actual.route);
+          assertEquals(expected.cost, actual.cost, 0d);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that regret insertion constructs valid schedules for an entire
+   * scenario.
+   */
+  @Test
+  public void regret() {
+    final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
+    final ExecutorService pool = new ForkJoinPool(2);
+    final ExperimentResults er = Experiment
+        .build(objFunc)
+        .addScenario(
+          Gendreau06Parser.parse(new File(
+              "files/scenarios/gendreau06/req_rapide_1_240_24")))
+        .addConfiguration(
+          Central.solverConfiguration(SolverValidator.wrap(
+            CheapestInsertionHeuristic.regretSupplier(objFunc, 2, pool))))
+        .usePostProcessor(PostProcessors.statisticsPostProcessor())
+        .perform();
+    pool.shutdown();
+    final StatisticsDTO stats = (StatisticsDTO) er.getResults().asList()
+        .get(0).getResultObject();
+    assertTrue(objFunc.isValidResult(stats));
+  }
+
+  /**
+   * Tests the regret computation.
+   */
+  @Test
+  public void regretTest() {
+    final Insertion[] insertions = {ins(0, 5d), ins(1, 2d), ins(2, 3d) };
+    assertEquals(1d, CheapestInsertionHeuristic.regret(insertions, 2), 0d);
+    assertEquals(4d, CheapestInsertionHeuristic.regret(insertions, 3), 0d);
+    assertEquals(4d, CheapestInsertionHeuristic.regret(insertions, 4), 0d);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void regretSupplierArgFail() {
+    CheapestInsertionHeuristic.regretSupplier(
+      Gendreau06ObjectiveFunction.instance(), 1);
+  }
+
   @SuppressWarnings("unchecked")
   @Test
   public void modifyScheduleTest() {
@@ -96,6 +229,10 @@ public class CheapestInsertionHeuristicTest {
     assertEquals(ImmutableList.of(1d, 2d, 8d, 4d), result);
   }
 
+  static Insertion ins(int vehicle, double cost) {
+    return new Insertion(null, vehicle, ImmutableList.<Parcel>of(), cost);
+  }
+
   static ImmutableList<String> r(String... s) {
     return ImmutableList.copyOf(s);
   }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.github.rinde.logistics.pdptw.solver.HeuristicSolver.Prefixes;
+
+/**
+ * Tests for {@link HeuristicSolver}.
+ * @author Rinde van Lon
+ */
+public class HeuristicSolverTest {
+
+  /**
+   * Applies random sequences of accepted and undone shift moves and checks
+   * that the incremental evaluation of each move equals the full evaluation
+   * of the permutation.
+   */
+  @Test
+  public void incrementalEqualsConstruct() {
+    final RandomGenerator rng = new MersenneTwister(123L);
+    for (int instance = 0; instance < 50; instance++) {
+      final int n = 4 + rng.nextInt(20);
+      final int[][] travelTime = new int[n][n];
+      final int[] releaseDates = new int[n];
+      final int[] dueDates = new int[n];
+      final int[] serviceTime = new int[n];
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < n; j++) {
+          travelTime[i][j] = i == j ? 0 : 1 + rng.nextInt(100);
+        }
+        releaseDates[i] = rng.nextInt(500);
+        dueDates[i] = releaseDates[i] + rng.nextInt(500);
+        serviceTime[i] = rng.nextInt(10);
+      }
+      final int[][] servicePairs = new int[0][];
+
+      final int[] current = new int[n];
+      for (int i = 0; i < n; i++) {
+        current[i] = i;
+      }
+      final Prefixes accepted = new Prefixes(n);
+      final Prefixes candidate = new Prefixes(n);
+      int currentObj = accepted.evaluate(current, 0, accepted, travelTime,
+          releaseDates, dueDates, serviceTime);
+      assertEquals(HeuristicSolver.construct(current, travelTime,
+          releaseDates, dueDates, servicePairs, serviceTime).objectiveValue,
+          currentObj);
+
+      for (int it = 0; it < 500; it++) {
+        final int i = 1 + rng.nextInt(n - 2);
+        int j = 1 + rng.nextInt(n - 3);
+        if (j >= i) {
+          j++;
+        }
+        MultiVehicleHeuristicSolver.shift(current, i, j);
+        final int from = Math.min(i, j);
+        final int newObj = candidate.evaluate(current, from, accepted,
+            travelTime, releaseDates, dueDates, serviceTime);
+        assertEquals(HeuristicSolver.construct(current, travelTime,
+            releaseDates, dueDates, servicePairs, serviceTime).objectiveValue,
+            newObj);
+        if (rng.nextBoolean()) {
+          accepted.copySuffix(candidate, from);
+          currentObj = newObj;
+        } else {
+          MultiVehicleHeuristicSolver.shift(current, j, i);
+        }
+        assertEquals(HeuristicSolver.construct(current, travelTime,
+            releaseDates, dueDates, servicePairs, serviceTime).objectiveValue,
+            currentObj);
+      }
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.junit.Test;
+
+import com.github.rinde.logistics.pdptw.solver.HistogramSearchListener.BestSolution;
+import com.github.rinde.logistics.pdptw.solver.SearchListener.Move;
+import com.github.rinde.logistics.pdptw.solver.SolverBudgetTest.Instance;
+import com.google.common.primitives.Longs;
+
+/**
+ * Tests for {@link HistogramSearchListener}.
+ * @author Rinde van Lon
+ */
+public class HistogramSearchListenerTest {
+  static final int ITERATIONS = 100;
+
+  /**
+   * Tests the log2 buckets of the histograms.
+   */
+  @Test
+  public void bucket() {
+    assertEquals(0, HistogramSearchListener.bucket(0L));
+    assertEquals(1, HistogramSearchListener.bucket(1L));
+    assertEquals(2, HistogramSearchListener.bucket(2L));
+    assertEquals(2, HistogramSearchListener.bucket(3L));
+    assertEquals(3, HistogramSearchListener.bucket(4L));
+    assertEquals(63, HistogramSearchListener.bucket(Long.MAX_VALUE));
+  }
+
+  /**
+   * Tests the metrics that are published by {@link HeuristicSolver}.
+   */
+  @Test
+  public void heuristicSolver() {
+    final Instance i = Instance.create(10, 1, 123L);
+    final HistogramSearchListener listener = HistogramSearchListener.create();
+    final HeuristicSolver solver = new HeuristicSolver(new MersenneTwister(123),
+        100, SolverBudget.unlimited().withMaxIterations(ITERATIONS), listener);
+    solver.solve(i.travelTime, i.releaseDates, i.dueDates, i.servicePairs,
+      i.serviceTimes, null);
+    assertMetrics(listener, Move.SHIFT);
+    assertEquals(0L, listener.getAccepted(Move.REASSIGNMENT)
+      + listener.getRejected(Move.REASSIGNMENT));
+
+    listener.reset();
+    assertEquals(0L, listener.getSearches());
+    assertEquals(0L, listener.getIterations());
+    assertTrue(listener.getBestTrace().isEmpty());
+  }
+
+  /**
+   * Tests the metrics that are published by
+   * {@link MultiVehicleHeuristicSolver}.
+   */
+  @Test
+  public void multiVehicleHeuristicSolver() {
+    final Instance i = Instance.create(10, 3, 123L);
+    final HistogramSearchListener listener = HistogramSearchListener.create();
+    final MultiVehicleHeuristicSolver solver = new MultiVehicleHeuristicSolver(
+        new MersenneTwister(123), MultiVehicleHeuristicSolver.options(100,
+          SolverBudget.unlimited().withMaxIterations(ITERATIONS))
+            .withListener(listener));
+    i.validate(i.solve(solver));
+    assertMetrics(listener, Move.SHIFT, Move.REASSIGNMENT);
+  }
+
+  /**
+   * Tests that the trace only keeps the most recent best solutions.
+   */
+  @Test
+  public void traceCapacity() {
+    final HistogramSearchListener listener = HistogramSearchListener.create(2);
+    listener.bestFound(3d, 1L, 10L);
+    listener.bestFound(2d, 2L, 20L);
+    listener.bestFound(1d, 3L, 30L);
+    assertEquals(2, listener.getBestTrace().size());
+    assertEquals(2L, listener.getBestTrace().get(0).getIteration());
+    assertEquals(3L, listener.getBestTrace().get(1).getIteration());
+  }
+
+  static void assertMetrics(HistogramSearchListener listener, Move... moves) {
+    assertEquals(1L, listener.getSearches());
+    assertEquals(ITERATIONS, listener.getIterations());
+    long evaluated = 0;
+    for (final Move m : moves) {
+      evaluated += listener.getAccepted(m) + listener.getRejected(m);
+    }
+    assertEquals(ITERATIONS, evaluated);
+    assertEquals(1L, Longs.max(listener.getIterationsHistogram()));
+    assertEquals(1L, sum(listener.getIterationsHistogram()));
+    assertEquals(1L, sum(listener.getTimeToBestHistogram()));
+    assertEquals(1L, sum(listener.getIterationsToBestHistogram()));
+    assertFalse(listener.getBestTrace().isEmpty());
+
+    double previous = Double.POSITIVE_INFINITY;
+    for (final BestSolution b : listener.getBestTrace()) {
+      assertTrue(b.getObjective() < previous);
+      assertTrue(b.getIteration() < ITERATIONS);
+      previous = b.getObjective();
+    }
+  }
+
+  static long sum(long[] histogram) {
+    long sum = 0;
+    for (final long l : histogram) {
+      sum += l;
+    }
+    return sum;
+  }
+}
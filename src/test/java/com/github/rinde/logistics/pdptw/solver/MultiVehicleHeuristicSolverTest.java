@@ -16,23 +16,32 @@
 package com.github.rinde.logistics.pdptw.solver;
 
 import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.measure.unit.SI;
 
 import org.apache.commons.math3.random.MersenneTwister;
 import org.junit.Test;
 
+import com.github.rinde.logistics.pdptw.solver.SearchListener.Move;
 import com.github.rinde.rinsim.central.Central;
 import com.github.rinde.rinsim.central.DebugSolverCreator;
+import com.github.rinde.rinsim.central.Solver;
 import com.github.rinde.rinsim.central.Solvers;
 import com.github.rinde.rinsim.central.arrays.ArraysSolvers;
+import com.github.rinde.rinsim.central.arrays.SolutionObject;
 import com.github.rinde.rinsim.core.model.pdp.Parcel;
 import com.github.rinde.rinsim.experiment.Experiment;
+import com.github.rinde.rinsim.experiment.ExperimentResults;
+import com.github.rinde.rinsim.experiment.PostProcessors;
 import com.github.rinde.rinsim.geom.Point;
 import com.github.rinde.rinsim.pdptw.common.AddParcelEvent;
 import com.github.rinde.rinsim.pdptw.common.StatisticsDTO;
@@ -41,7 +50,10 @@ import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
 import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06Parser;
 import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06Scenario;
 import com.github.rinde.rinsim.scenario.gendreau06.GendreauTestUtil;
+import com.github.rinde.rinsim.util.StochasticSupplier;
 import com.github.rinde.rinsim.util.TimeWindow;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
 
 /**
  * @author Rinde van Lon
@@ -67,6 +79,43 @@ public class MultiVehicleHeuristicSolverTest {
         .perform();
   }
 
+  /**
+   * Tests the validity of multi-start mode, with and without sharing, and that
+   * multi-start without sharing is deterministic.
+   */
+  @Test
+  public void testMultiStart() {
+    final ExecutorService pool = new ForkJoinPool(2);
+    final MultiVehicleHeuristicSolver.Options options =
+      MultiVehicleHeuristicSolver.options(50,
+        MultiVehicleHeuristicSolver.budget(100)).withExecutor(pool);
+    final double cost = multiStartCost(MultiVehicleHeuristicSolver.supplier(
+      options.withMultiStart(2, 0)));
+    assertEquals(cost, multiStartCost(MultiVehicleHeuristicSolver.supplier(
+      options.withMultiStart(2, 0))), 0d);
+    multiStartCost(MultiVehicleHeuristicSolver.supplier(
+      options.withMultiStart(2, 10)));
+    pool.shutdown();
+  }
+
+  static double multiStartCost(StochasticSupplier<Solver> solver) {
+    final Gendreau06ObjectiveFunction objFunc = Gendreau06ObjectiveFunction
+        .instance();
+    final ExperimentResults er = Experiment
+        .build(objFunc)
+        .addConfiguration(Central.solverConfiguration(solver))
+        .addScenario(
+          Gendreau06Parser.parse(new File(
+              "files/scenarios/gendreau06/req_rapide_1_240_24")))
+        .withRandomSeed(123)
+        .usePostProcessor(PostProcessors.statisticsPostProcessor())
+        .perform();
+    final StatisticsDTO stats = (StatisticsDTO) er.getResults().asList()
+        .get(0).getResultObject();
+    assertTrue(objFunc.isValidResult(stats));
+    return objFunc.computeCost(stats);
+  }
+
   /**
    * Tests the correctness of the computation of the objective value of
    * {@link MultiVehicleHeuristicSolver}.
@@ -133,4 +182,214 @@ public class MultiVehicleHeuristicSolverTest {
       assertEquals(arrObjVal, objVal, 0.01);
     }
   }
+
+  /**
+   * Tests the in place shift of an element in a permutation.
+   */
+  @Test
+  public void shift() {
+    final int[] perm = {0, 1, 2, 3, 4, 5 };
+    assertEquals(1, MultiVehicleHeuristicSolver.shift(perm, 1, 4));
+    assertArrayEquals(new int[] {0, 2, 3, 4, 1, 5 }, perm);
+    assertEquals(4, MultiVehicleHeuristicSolver.shift(perm, 3, 1));
+    assertArrayEquals(new int[] {0, 4, 2, 3, 1, 5 }, perm);
+    assertEquals(2, MultiVehicleHeuristicSolver.shift(perm, 2, 2));
+    assertArrayEquals(new int[] {0, 4, 2, 3, 1, 5 }, perm);
+  }
+
+  /**
+   * Tests that a search that starts from the current solutions does not
+   * return a worse solution.
+   */
+  @Test
+  public void warmStart() {
+    final SolverBudgetTest.Instance i = SolverBudgetTest.Instance.create(10,
+      3, 123L);
+    final SolutionObject[] current = i.solve(new MultiVehicleHeuristicSolver(
+        new MersenneTwister(123), 100, 200));
+
+    // without iterations the current solutions are returned
+    final SolutionObject[] same = i.solve(new MultiVehicleHeuristicSolver(
+        new MersenneTwister(456), MultiVehicleHeuristicSolver.options(100,
+          SolverBudget.unlimited().withMaxIterations(0))), current);
+    i.validate(same);
+    for (int v = 0; v < current.length; v++) {
+      assertArrayEquals(current[v].route, same[v].route);
+    }
+
+    final SolutionObject[] improved = i.solve(new MultiVehicleHeuristicSolver(
+        new MersenneTwister(456), 100, 200), current);
+    i.validate(improved);
+    assertTrue(objective(improved) <= objective(current));
+  }
+
+  /**
+   * Tests that locations that are missing in the current solutions (e.g.
+   * new orders) are added to the initial solution.
+   */
+  @Test
+  public void warmStartRepair() {
+    final SolverBudgetTest.Instance i = SolverBudgetTest.Instance.create(10,
+      3, 123L);
+    final SolutionObject[] current = i.solve(new MultiVehicleHeuristicSolver(
+        new MersenneTwister(123), 100, 200));
+    // the first order is not in the routes
+    final int n = i.releaseDates.length;
+    final SolutionObject[] partial = new SolutionObject[current.length];
+    for (int v = 0; v < current.length; v++) {
+      final List<Integer> route = newArrayList();
+      for (final int loc : current[v].route) {
+        if (loc != 1 && loc != 2) {
+          route.add(loc);
+        }
+      }
+      partial[v] = new SolutionObject(Ints.toArray(route),
+          current[v].arrivalTimes, current[v].objectiveValue);
+    }
+    final SolutionObject[] sol = i.solve(new MultiVehicleHeuristicSolver(
+        new MersenneTwister(456), MultiVehicleHeuristicSolver.options(100,
+          SolverBudget.unlimited().withMaxIterations(0))), partial);
+    i.validate(sol);
+    int visits = 0;
+    for (final SolutionObject so : sol) {
+      visits += so.route.length - 2;
+    }
+    assertEquals(n - 2, visits);
+  }
+  /**
+   * Tests that the adaptive search produces valid solutions in strict mode.
+   */
+  @Test
+  public void adaptation() {
+    final SolverBudgetTest.Instance i = SolverBudgetTest.Instance.create(20,
+      3, 123L);
+    final HistogramSearchListener listener = HistogramSearchListener.create();
+    final MultiVehicleHeuristicSolver solver = new MultiVehicleHeuristicSolver(
+        new MersenneTwister(123), MultiVehicleHeuristicSolver.options(2,
+          SolverBudget.unlimited().withMaxIterations(5000))
+            .withStrictMode(true)
+            .withAdaptation(SolverAdaptation.none()
+                .withOperatorSelection(100, .5, .1)
+                .withListLengthSchedule(64, 1))
+            .withListener(listener));
+    i.validate(i.solve(solver));
+    assertEquals(5000L, listener.getIterations());
+    assertTrue(listener.getAccepted(Move.SHIFT)
+      + listener.getRejected(Move.SHIFT) > 0);
+    assertTrue(listener.getAccepted(Move.REASSIGNMENT)
+      + listener.getRejected(Move.REASSIGNMENT) > 0);
+  }
+
+  /**
+   * Tests that the minimum probability of the operator selection is validated
+   * against the number of moves when the options are created.
+   */
+  @Test
+  public void minProbability() {
+    final SolverAdaptation adaptation = SolverAdaptation.none()
+        .withOperatorSelection(100, .5, .3);
+    final MultiVehicleHeuristicSolver.Options options =
+      MultiVehicleHeuristicSolver.options(2, SolverBudget.unlimited())
+          .withAdaptation(adaptation);
+    assertEquals(adaptation, options.getAdaptation());
+
+    boolean fail = false;
+    try {
+      options.withMoves(MultiVehicleHeuristicSolver.ALL_MOVES);
+    } catch (final IllegalArgumentException e) {
+      fail = true;
+      assertTrue(e.getMessage().contains("minimum probability"));
+    }
+    assertTrue(fail);
+
+    fail = false;
+    try {
+      options.withAdaptation(SolverAdaptation.none()
+          .withOperatorSelection(100, .5, .6));
+    } catch (final IllegalArgumentException e) {
+      fail = true;
+    }
+    assertTrue(fail);
+  }
+
+  /**
+   * Tests that every move produces valid solutions in strict mode, and that
+   * only the enabled moves are used.
+   */
+  @Test
+  public void moves() {
+    for (final Move m : MultiVehicleHeuristicSolver.ALL_MOVES) {
+      for (final int vehicles : new int[] {1, 3}) {
+        final SolverBudgetTest.Instance i = SolverBudgetTest.Instance.create(
+          20, vehicles, 123L);
+        final HistogramSearchListener listener = HistogramSearchListener
+            .create();
+        i.validate(i.solve(new MultiVehicleHeuristicSolver(
+            new MersenneTwister(123), MultiVehicleHeuristicSolver.options(20,
+              SolverBudget.unlimited().withMaxIterations(2000))
+                .withStrictMode(true)
+                .withMoves(ImmutableSet.of(m))
+                .withListener(listener))));
+        assertEquals(2000L, listener.getAccepted(m) + listener.getRejected(m));
+      }
+    }
+  }
+
+  /**
+   * Tests {@link MultiVehicleHeuristicSolver#relocate}.
+   */
+  @Test
+  public void relocate() {
+    final int[] source = {0, 1, 2, 3, 4, 5, 6};
+    final int[] perm = source.clone();
+    MultiVehicleHeuristicSolver.relocate(perm, source, 1, 5, 2, 4, 1, 5);
+    assertArrayEquals(new int[] {0, 2, 1, 3, 5, 4, 6}, perm);
+
+    final int[] perm2 = source.clone();
+    MultiVehicleHeuristicSolver.relocate(perm2, source, 1, 5, 1, 2, 4, 5);
+    assertArrayEquals(new int[] {0, 3, 4, 5, 1, 2, 6}, perm2);
+  }
+
+  /**
+   * Tests {@link MultiVehicleHeuristicSolver#orOpt}.
+   */
+  @Test
+  public void orOpt() {
+    // the route visits the even positions of the permutation
+    final int[] perm = {0, 10, 1, 11, 2, 12, 3, 13, 4, 14};
+    final int[] route = {0, 10, 11, 12, 13, 14, 4};
+    final int[] locations = new int[15];
+    for (int i = 0; i < perm.length; i++) {
+      locations[perm[i]] = i;
+    }
+    final int[] backward = perm.clone();
+    MultiVehicleHeuristicSolver.orOpt(backward, route, locations, 3, 1, 2);
+    assertArrayEquals(new int[] {0, 12, 1, 13, 2, 10, 3, 11, 4, 14},
+      backward);
+
+    final int[] forward = perm.clone();
+    MultiVehicleHeuristicSolver.orOpt(forward, route, locations, 1, 3, 2);
+    assertArrayEquals(new int[] {0, 12, 1, 13, 2, 10, 3, 11, 4, 14},
+      forward);
+  }
+
+  /**
+   * Tests that a grown list repeats the original list.
+   */
+  @Test
+  public void grow() {
+    assertArrayEquals(new double[] {1, 2, 3, 1, 2, 3},
+      MultiVehicleHeuristicSolver.grow(new double[] {1, 2, 3}, 6), 0);
+    assertArrayEquals(new double[] {1, 2, 3, 1},
+      MultiVehicleHeuristicSolver.grow(new double[] {1, 2, 3}, 4), 0);
+  }
+
+
+  static int objective(SolutionObject[] sols) {
+    int obj = 0;
+    for (final SolutionObject so : sols) {
+      obj += so.objectiveValue;
+    }
+    return obj;
+  }
 }
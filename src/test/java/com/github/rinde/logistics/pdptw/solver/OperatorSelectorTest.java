@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OperatorSelector}.
+ * @author Rinde van Lon
+ */
+public class OperatorSelectorTest {
+  static final double EPSILON = 1e-9;
+
+  /**
+   * Tests that the operator with the highest improvement per nanosecond gains
+   * weight, and that the minimum probability is respected.
+   */
+  @Test
+  public void adapt() {
+    final OperatorSelector selector = new OperatorSelector(SolverAdaptation
+        .none().withOperatorSelection(2, .5, .1), 3);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(1d / 3, selector.getProbability(i), EPSILON);
+    }
+
+    // operator 1 improves, operator 0 does not, operator 2 is not used
+    selector.update(0, 0, 10);
+    selector.update(1, 5, 10);
+    assertEquals(.1 + .7 * (1d / 6), selector.getProbability(0), EPSILON);
+    assertEquals(.1 + .7 * (.5 / 3 + .5 * 2 / 3), selector.getProbability(1),
+      EPSILON);
+    assertEquals(1d / 3, selector.getProbability(2), EPSILON);
+    assertEquals(1d, sum(selector), EPSILON);
+
+    for (int i = 0; i < 100; i++) {
+      selector.update(0, 0, 10);
+      selector.update(1, 5, 10);
+    }
+    assertEquals(.1, selector.getProbability(0), 1e-6);
+    assertEquals(1d, sum(selector), EPSILON);
+  }
+
+  /**
+   * Tests that the weights do not change without improvements.
+   */
+  @Test
+  public void noImprovement() {
+    final OperatorSelector selector = new OperatorSelector(SolverAdaptation
+        .none().withOperatorSelection(1, 1, 0), 2);
+    selector.update(0, 0, 10);
+    selector.update(1, 0, 1);
+    assertEquals(.5, selector.getProbability(0), EPSILON);
+    assertEquals(.5, selector.getProbability(1), EPSILON);
+  }
+
+  /**
+   * Tests that the selection follows the probabilities.
+   */
+  @Test
+  public void select() {
+    final OperatorSelector selector = new OperatorSelector(SolverAdaptation
+        .none().withOperatorSelection(2, 1, 0), 2);
+    selector.update(0, 0, 1);
+    selector.update(1, 1, 1);
+    assertEquals(1d, selector.getProbability(1), EPSILON);
+    final RandomGenerator rng = new MersenneTwister(123);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(1, selector.select(rng));
+    }
+    final OperatorSelector uniform = new OperatorSelector(SolverAdaptation
+        .none().withOperatorSelection(), 2);
+    int zeros = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (uniform.select(rng) == 0) {
+        zeros++;
+      }
+    }
+    assertTrue(zeros > 400 && zeros < 600);
+  }
+
+  /**
+   * Tests that too many operators for the minimum probability are rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void tooManyOperators() {
+    new OperatorSelector(SolverAdaptation.none().withOperatorSelection(1, 1,
+      .4), 3);
+  }
+
+  static double sum(OperatorSelector selector) {
+    double sum = 0;
+    for (int i = 0; i < 3; i++) {
+      sum += selector.getProbability(i);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.rinde.opt.localsearch.IncrementalRouteEvaluator;
+import com.github.rinde.opt.localsearch.IncrementalRouteEvaluator.PreparedRoute;
+import com.github.rinde.opt.localsearch.Insertions;
+import com.github.rinde.opt.localsearch.MonotoneRouteEvaluator;
+import com.github.rinde.opt.localsearch.Segments;
+import com.github.rinde.opt.localsearch.Swaps;
+import com.github.rinde.rinsim.central.Central;
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.GlobalStateObject.VehicleStateObject;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.experiment.Experiment;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06Parser;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests that the incremental evaluation of {@link ParcelRouteEvaluator} equals
+ * the full evaluation.
+ * @author Rinde van Lon
+ */
+public class ParcelRouteEvaluatorTest {
+
+  /**
+   * Compares the incremental and full costs of all insertions in the states
+   * of a simulated scenario.
+   */
+  @Test
+  public void incrementalEqualsFull() {
+    final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
+    final List<GlobalStateObject> states = newArrayList();
+    Experiment.build(objFunc)
+        .addScenario(Gendreau06Parser.parse(new File(
+            "files/scenarios/gendreau06/req_rapide_1_240_24")))
+        .addConfiguration(Central.solverConfiguration(
+          new StateRecorder(CheapestInsertionHeuristic.supplier(objFunc),
+              states)))
+        .perform();
+    assertTrue(!states.isEmpty());
+
+    final ParcelRouteEvaluator evaluator = new ParcelRouteEvaluator(objFunc);
+    int comparisons = 0;
+    // every tenth state to keep the test fast
+    for (int s = 0; s < states.size(); s += 10) {
+      final GlobalStateObject state = states.get(s);
+      final ImmutableList<ImmutableList<Parcel>> schedule =
+        CheapestInsertionHeuristic.createSchedule(state);
+      final ImmutableSet<Parcel> newParcels = CheapestInsertionHeuristic
+          .unassignedParcels(state);
+      for (int i = 0; i < schedule.size(); i++) {
+        final ImmutableList<Parcel> route = schedule.get(i);
+        final PreparedRoute<Parcel> prepared = evaluator.prepare(state, i,
+          route);
+        assertEquals(evaluator.computeCost(state, i, route),
+          prepared.getCost(), 0d);
+
+        final int startIndex = state.getVehicles().get(i).getDestination()
+            .isPresent() ? 1 : 0;
+        for (final Parcel p : newParcels) {
+          final Iterator<ImmutableList<Parcel>> it = Insertions
+              .insertionsIterator(route, p, startIndex, 2);
+          while (it.hasNext()) {
+            final ImmutableList<Parcel> r = it.next();
+            final int from = CheapestInsertionHeuristic.firstDifference(route,
+              r);
+            assertEquals(evaluator.computeCost(state, i, r),
+              prepared.computeCost(r, from), 0d);
+            // evaluating from an earlier position gives the same result
+            assertEquals(evaluator.computeCost(state, i, r),
+              prepared.computeCost(r, startIndex), 0d);
+            comparisons++;
+          }
+        }
+      }
+    }
+    assertTrue(comparisons > 0);
+  }
+
+  /**
+   * Compares the incremental and full costs of all routes that are evaluated
+   * by the breadth-first searches of {@link Swaps} and {@link Segments} in
+   * the states of a simulated scenario. Without a
+   * {@link MonotoneRouteEvaluator} the searches evaluate every swap and every
+   * segment move of each intermediate schedule. This includes routes from
+   * which an item is removed, reordered routes, routes with parcels that are
+   * in cargo and routes of vehicles with a fixed destination.
+   */
+  @Test
+  public void incrementalEqualsFullForLocalSearch() {
+    final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
+    final List<GlobalStateObject> states = newArrayList();
+    Experiment.build(objFunc)
+        .addScenario(Gendreau06Parser.parse(new File(
+            "files/scenarios/gendreau06/req_rapide_1_240_24")))
+        .addConfiguration(Central.solverConfiguration(
+          new StateRecorder(CheapestInsertionHeuristic.supplier(objFunc),
+              states)))
+        .perform();
+
+    final CheckingEvaluator evaluator = new CheckingEvaluator(
+        new ParcelRouteEvaluator(objFunc));
+    final Solver cih = new CheapestInsertionHeuristic(objFunc);
+    // every fortieth state to keep the test fast
+    for (int s = 0; s < states.size(); s += 40) {
+      final GlobalStateObject state = states.get(s);
+      final ImmutableList<ImmutableList<Parcel>> schedule = cih.solve(state);
+      final ImmutableList.Builder<Integer> startIndices = ImmutableList
+          .builder();
+      for (final VehicleStateObject vso : state.getVehicles()) {
+        startIndices.add(vso.getDestination().isPresent() ? 1 : 0);
+      }
+      Swaps.bfsOpt2(schedule, startIndices.build(), state, evaluator);
+      Segments.bfs(schedule, startIndices.build(), state, evaluator);
+    }
+    assertTrue(evaluator.comparisons > 0);
+    assertTrue(evaluator.removals > 0);
+    assertTrue(evaluator.withDestination > 0);
+  }
+
+  /**
+   * Tests that {@link CheapestInsertionHeuristic#firstDifference(List, List)}
+   * finds the first modified position.
+   */
+  @Test
+  public void firstDifference() {
+    assertEquals(0, CheapestInsertionHeuristic.firstDifference(
+      ImmutableList.of("A"), ImmutableList.of("B", "A")));
+    assertEquals(1, CheapestInsertionHeuristic.firstDifference(
+      ImmutableList.of("A", "B"), ImmutableList.of("A", "C", "B")));
+    assertEquals(2, CheapestInsertionHeuristic.firstDifference(
+      ImmutableList.of("A", "B"), ImmutableList.of("A", "B", "C")));
+  }
+
+  // compares every incremental evaluation with the full evaluation
+  static class CheckingEvaluator implements
+      IncrementalRouteEvaluator<GlobalStateObject, Parcel> {
+    final ParcelRouteEvaluator delegate;
+    int comparisons;
+    int removals;
+    int withDestination;
+
+    CheckingEvaluator(ParcelRouteEvaluator deleg) {
+      delegate = deleg;
+    }
+
+    @Override
+    public double computeCost(GlobalStateObject context, int routeIndex,
+        ImmutableList<Parcel> newRoute) {
+      return delegate.computeCost(context, routeIndex, newRoute);
+    }
+
+    @Override
+    public PreparedRoute<Parcel> prepare(final GlobalStateObject context,
+        final int routeIndex, final ImmutableList<Parcel> route) {
+      final PreparedRoute<Parcel> prepared = delegate.prepare(context,
+        routeIndex, route);
+      assertEquals(delegate.computeCost(context, routeIndex, route),
+        prepared.getCost(), 0d);
+      return new PreparedRoute<Parcel>() {
+        @Override
+        public ImmutableList<Parcel> getRoute() {
+          return prepared.getRoute();
+        }
+
+        @Override
+        public double getCost() {
+          return prepared.getCost();
+        }
+
+        @Override
+        public double computeCost(ImmutableList<Parcel> newRoute,
+            int fromIndex) {
+          final double cost = prepared.computeCost(newRoute, fromIndex);
+          assertEquals(delegate.computeCost(context, routeIndex, newRoute),
+            cost, 0d);
+          comparisons++;
+          if (newRoute.size() < route.size()) {
+            removals++;
+          }
+          if (context.getVehicles().get(routeIndex).getDestination()
+              .isPresent()) {
+            withDestination++;
+          }
+          return cost;
+        }
+      };
+    }
+  }
+
+  static class StateRecorder implements StochasticSupplier<Solver> {
+    final StochasticSupplier<Solver> delegate;
+    final List<GlobalStateObject> states;
+
+    StateRecorder(StochasticSupplier<Solver> deleg,
+        List<GlobalStateObject> list) {
+      delegate = deleg;
+      states = list;
+    }
+
+    @Override
+    public Solver get(long seed) {
+      final Solver solver = delegate.get(seed);
+      return new Solver() {
+        @Override
+        public ImmutableList<ImmutableList<Parcel>> solve(
+            GlobalStateObject state) {
+          states.add(state);
+          return solver.solve(state);
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomAdaptor;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ProblemStructure}.
+ * @author Rinde van Lon
+ */
+public class ProblemStructureTest {
+
+  /**
+   * Tests the maps of a structure and that a rebuild reuses the structure
+   * when the number of locations does not change.
+   */
+  @Test
+  public void rebuild() {
+    final ProblemStructure ps = ProblemStructure.create(6,
+      new int[][] {{1, 3 } }, new int[][] {{1, 2 } }, new int[] {0, 4 });
+    assertArrayEquals(new int[] {-1, 3, -1, -1, -1, -1 },
+      ps.pickupToDeliveryMap);
+    assertArrayEquals(new int[] {-1, -1, -1, 1, -1, -1 },
+      ps.deliveryToPickupMap);
+    assertArrayEquals(new int[] {-1, -1, 1, -1, 1, -1 },
+      ps.fixedVehicleAssignment);
+
+    final ProblemStructure updated = ps.rebuild(6, new int[][] {{4, 2 } },
+      new int[0][], new int[] {0, 0 });
+    assertSame(ps, updated);
+    assertArrayEquals(new int[] {-1, -1, -1, -1, 2, -1 },
+      ps.pickupToDeliveryMap);
+    assertArrayEquals(new int[] {-1, -1, 4, -1, -1, -1 },
+      ps.deliveryToPickupMap);
+    assertArrayEquals(new int[] {-1, -1, -1, -1, -1, -1 },
+      ps.fixedVehicleAssignment);
+
+    assertNotSame(ps, ps.rebuild(8, new int[0][], new int[0][], new int[0]));
+  }
+
+  /**
+   * Tests that all pickups precede their deliveries after the correction and
+   * that only the misordered pairs are moved.
+   */
+  @Test
+  public void correctPickupDeliveryOrder() {
+    final RandomGenerator rng = new MersenneTwister(123);
+    final int n = 42;
+    final int[][] pairs = new int[(n - 2) / 2][];
+    for (int p = 0; p < pairs.length; p++) {
+      pairs[p] = new int[] {1 + 2 * p, 2 + 2 * p };
+    }
+    for (int r = 0; r < 10; r++) {
+      final List<Integer> elements = new ArrayList<Integer>();
+      for (int i = 1; i < n - 1; i++) {
+        elements.add(i);
+      }
+      Collections.shuffle(elements, new RandomAdaptor(rng));
+      elements.add(0, 0);
+      elements.add(n - 1);
+
+      final List<Integer> before = new ArrayList<Integer>(elements);
+      ProblemStructure.correctPickupDeliveryOrder(pairs, elements);
+      assertTrue(elements.get(0) == 0);
+      assertTrue(elements.get(n - 1) == n - 1);
+      for (final int[] pair : pairs) {
+        final int pickup = elements.indexOf(pair[0]);
+        final int delivery = elements.indexOf(pair[1]);
+        assertTrue(pickup < delivery);
+        // a misordered pair is swapped, the other pairs are not moved
+        final int oldPickup = before.indexOf(pair[0]);
+        final int oldDelivery = before.indexOf(pair[1]);
+        assertEquals(Math.min(oldPickup, oldDelivery), pickup);
+        assertEquals(Math.max(oldPickup, oldDelivery), delivery);
+      }
+    }
+  }
+}
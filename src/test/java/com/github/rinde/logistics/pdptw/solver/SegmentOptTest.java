@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.rinde.logistics.pdptw.solver.ParcelRouteEvaluatorTest.StateRecorder;
+import com.github.rinde.rinsim.central.Central;
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.central.SolverValidator;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.experiment.Experiment;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06Parser;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Test of {@link SegmentOpt}.
+ * @author Rinde van Lon
+ */
+public class SegmentOptTest {
+
+  /**
+   * Tests that decorating the insertion heuristic with {@link SegmentOpt}
+   * gives valid schedules that are never worse than the undecorated schedules.
+   */
+  @Test
+  public void neverWorse() {
+    final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
+    final List<GlobalStateObject> states = newArrayList();
+    Experiment.build(objFunc)
+        .addScenario(Gendreau06Parser.parse(new File(
+            "files/scenarios/gendreau06/req_rapide_1_240_24")))
+        .addConfiguration(Central.solverConfiguration(
+          new StateRecorder(CheapestInsertionHeuristic.supplier(objFunc),
+              states)))
+        .perform();
+    assertTrue(!states.isEmpty());
+
+    final Solver cih = CheapestInsertionHeuristic.supplier(objFunc).get(0L);
+    final Solver bfs = SegmentOpt.breadthFirstSupplier(
+      CheapestInsertionHeuristic.supplier(objFunc), objFunc).get(123L);
+    final Solver dfs = SegmentOpt.depthFirstSupplier(
+      CheapestInsertionHeuristic.supplier(objFunc), objFunc).get(123L);
+    final ParcelRouteEvaluator evaluator = ParcelRouteEvaluator.create(objFunc);
+    // every tenth state to keep the test fast
+    for (int i = 0; i < states.size(); i += 10) {
+      final GlobalStateObject state = states.get(i);
+      final double cost = cost(evaluator, state, cih.solve(state));
+      for (final Solver solver : ImmutableList.of(bfs, dfs)) {
+        final ImmutableList<ImmutableList<Parcel>> schedule = solver
+            .solve(state);
+        SolverValidator.validateOutputs(schedule, state);
+        assertTrue(cost(evaluator, state, schedule) <= cost + 0.0001);
+      }
+    }
+  }
+
+  static double cost(ParcelRouteEvaluator evaluator, GlobalStateObject state,
+      ImmutableList<ImmutableList<Parcel>> schedule) {
+    double cost = 0;
+    for (int i = 0; i < schedule.size(); i++) {
+      cost += evaluator.computeCost(state, i, schedule.get(i));
+    }
+    return cost;
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.github.rinde.logistics.pdptw.solver.SolverBudget.Limit;
+import com.github.rinde.rinsim.central.arrays.ArraysSolverValidator;
+import com.github.rinde.rinsim.central.arrays.SolutionObject;
+
+/**
+ * Tests for {@link SolverBudget} and the solvers that use it.
+ * @author Rinde van Lon
+ */
+public class SolverBudgetTest {
+  static final int ORDERS = 10;
+  static final int VEHICLES = 3;
+
+  /**
+   * Tests the limits of a budget.
+   */
+  @Test
+  public void limits() {
+    final SolverBudget unlimited = SolverBudget.unlimited();
+    assertEquals(Long.MAX_VALUE, unlimited.getMaxDurationNanos());
+    assertEquals(Long.MAX_VALUE, unlimited.getMaxIterations());
+    assertEquals(Long.MAX_VALUE, unlimited.getMaxNonImprovements());
+
+    final SolverBudget budget = unlimited.withMaxDuration(2, TimeUnit.SECONDS)
+        .withMaxIterations(10).withMaxNonImprovements(5);
+    assertEquals(2000000000L, budget.getMaxDurationNanos());
+    assertEquals(10L, budget.getMaxIterations());
+    assertEquals(5L, budget.getMaxNonImprovements());
+
+    final SolverBudget.Tracker tracker = budget.start();
+    assertEquals(null, tracker.check(9, 5));
+    assertEquals(Limit.ITERATIONS, tracker.check(10, 0));
+    assertEquals(Limit.NON_IMPROVEMENTS, tracker.check(0, 6));
+    assertEquals(Limit.DURATION,
+      unlimited.withMaxDuration(0, TimeUnit.NANOSECONDS).start().check(0, 0));
+  }
+
+  /**
+   * Negative limits are not allowed.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeIterations() {
+    SolverBudget.unlimited().withMaxIterations(-1);
+  }
+
+  /**
+   * Tests that {@link HeuristicSolver} does exactly the budgeted number of
+   * iterations.
+   */
+  @Test
+  public void heuristicSolverIterations() {
+    final Instance i = Instance.create(ORDERS, 1, 123L);
+    final HeuristicSolver solver = new HeuristicSolver(new MersenneTwister(123),
+        100, SolverBudget.unlimited().withMaxIterations(10));
+    assertFalse(solver.getLastStatistics().isPresent());
+    final SolutionObject sol = solver.solve(i.travelTime, i.releaseDates,
+      i.dueDates, i.servicePairs, i.serviceTimes, null);
+    ArraysSolverValidator.validateOutputs(sol, i.travelTime, i.releaseDates,
+      i.dueDates, i.servicePairs, i.serviceTimes, null);
+    final SearchStatistics stats = solver.getLastStatistics().get();
+    assertEquals(10L, stats.getIterations());
+    assertEquals(Limit.ITERATIONS, stats.getLimit());
+    assertTrue(stats.getElapsedNanos() >= 0);
+  }
+
+  /**
+   * Tests that an exhausted deadline results in the initial solution.
+   */
+  @Test
+  public void multiVehicleDeadline() {
+    final Instance i = Instance.create(ORDERS, VEHICLES, 123L);
+    final MultiVehicleHeuristicSolver solver = new MultiVehicleHeuristicSolver(
+        new MersenneTwister(123), MultiVehicleHeuristicSolver.options(100,
+          SolverBudget.unlimited().withMaxDuration(0, TimeUnit.MILLISECONDS)));
+    i.validate(i.solve(solver));
+    final SearchStatistics stats = solver.getLastStatistics().get();
+    assertEquals(0L, stats.getIterations());
+    assertEquals(Limit.DURATION, stats.getLimit());
+  }
+
+  /**
+   * Tests that the non-improvement budget is equivalent to the original
+   * stopping criterion of {@link MultiVehicleHeuristicSolver}.
+   */
+  @Test
+  public void multiVehicleNonImprovements() {
+    final Instance i = Instance.create(ORDERS, VEHICLES, 123L);
+    final MultiVehicleHeuristicSolver budgeted =
+      new MultiVehicleHeuristicSolver(new MersenneTwister(123),
+          MultiVehicleHeuristicSolver.options(100,
+            SolverBudget.unlimited().withMaxNonImprovements(200)));
+    final MultiVehicleHeuristicSolver original =
+      new MultiVehicleHeuristicSolver(new MersenneTwister(123), 100, 200);
+    final SolutionObject[] sol = i.solve(budgeted);
+    final SolutionObject[] expected = i.solve(original);
+    for (int v = 0; v < VEHICLES; v++) {
+      assertArrayEquals(expected[v].route, sol[v].route);
+    }
+    assertEquals(Limit.NON_IMPROVEMENTS,
+      budgeted.getLastStatistics().get().getLimit());
+    assertEquals(original.getLastStatistics().get().getIterations(),
+      budgeted.getLastStatistics().get().getIterations());
+  }
+
+  /**
+   * Tests that the iterations of all trajectories are counted in multi-start
+   * mode.
+   */
+  @Test
+  public void multiStartIterations() {
+    final Instance i = Instance.create(ORDERS, VEHICLES, 123L);
+    final MultiVehicleHeuristicSolver solver = new MultiVehicleHeuristicSolver(
+        new MersenneTwister(123), MultiVehicleHeuristicSolver.options(100,
+          SolverBudget.unlimited().withMaxIterations(50))
+            .withStrictMode(true)
+            .withMultiStart(3, 10));
+    i.validate(i.solve(solver));
+    final SearchStatistics stats = solver.getLastStatistics().get();
+    assertEquals(150L, stats.getIterations());
+    assertEquals(Limit.ITERATIONS, stats.getLimit());
+  }
+
+  static class Instance {
+    final int[][] travelTime;
+    final int[] releaseDates;
+    final int[] dueDates;
+    final int[][] servicePairs;
+    final int[] serviceTimes;
+    final int[][] vehicleTravelTimes;
+    final int[][] inventories;
+    final int[] remainingServiceTimes;
+    final int[] currentDestinations;
+
+    Instance(int orders, int vehicles, RandomGenerator rng) {
+      final int n = 2 * orders + 2;
+      final double[][] points = new double[n][];
+      for (int i = 0; i < n; i++) {
+        points[i] = new double[] {rng.nextDouble(), rng.nextDouble() };
+      }
+      // the depot
+      points[n - 1] = points[0];
+      travelTime = new int[n][n];
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < n; j++) {
+          travelTime[i][j] = (int) Math.ceil(1000 * Math.hypot(
+            points[i][0] - points[j][0], points[i][1] - points[j][1]));
+        }
+      }
+      releaseDates = new int[n];
+      dueDates = new int[n];
+      serviceTimes = new int[n];
+      servicePairs = new int[orders][];
+      for (int i = 1; i < n - 1; i++) {
+        dueDates[i] = 1000 + rng.nextInt(5000);
+        serviceTimes[i] = 100;
+      }
+      dueDates[n - 1] = 10000;
+      for (int o = 0; o < orders; o++) {
+        servicePairs[o] = new int[] {1 + 2 * o, 2 + 2 * o };
+      }
+      vehicleTravelTimes = new int[vehicles][];
+      for (int v = 0; v < vehicles; v++) {
+        vehicleTravelTimes[v] = travelTime[0];
+      }
+      inventories = new int[0][];
+      remainingServiceTimes = new int[vehicles];
+      currentDestinations = new int[vehicles];
+    }
+
+    SolutionObject[] solve(MultiVehicleHeuristicSolver solver) {
+      return solve(solver, null);
+    }
+
+    SolutionObject[] solve(MultiVehicleHeuristicSolver solver,
+        @Nullable SolutionObject[] currentSolutions) {
+      return solver.solve(travelTime, releaseDates, dueDates, servicePairs,
+        serviceTimes, vehicleTravelTimes, inventories, remainingServiceTimes,
+        currentDestinations, currentSolutions);
+    }
+
+    void validate(SolutionObject[] sols) {
+      ArraysSolverValidator.validateOutputs(sols, travelTime, releaseDates,
+        dueDates, servicePairs, serviceTimes, vehicleTravelTimes, inventories,
+        remainingServiceTimes, currentDestinations);
+    }
+
+    static Instance create(int orders, int vehicles, long seed) {
+      return new Instance(orders, vehicles, new MersenneTwister(seed));
+    }
+  }
+}
@@ -18,17 +18,21 @@ package com.github.rinde.opt.localsearch;
 import static com.github.rinde.opt.localsearch.Insertions.insert;
 import static com.github.rinde.opt.localsearch.Insertions.insertions;
 import static com.github.rinde.opt.localsearch.Insertions.insertionsIterator;
+import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Sets.newHashSet;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
 import org.junit.Test;
 
+import com.github.rinde.opt.localsearch.Insertions.InsertionIndexCursor;
 import com.github.rinde.opt.localsearch.Insertions.InsertionIndexGenerator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -229,6 +233,111 @@ public class InsertionsTest {
     assertTrue(fail);
   }
 
+  /**
+   * Tests that the pruned iterator produces all insertions in the same order
+   * when the oracle accepts everything.
+   */
+  @Test
+  public void prunedInsertionsIterator() {
+    final InsertionOracle all = new InsertionOracle() {
+      @Override
+      public boolean isPromising(int[] positions, int depth) {
+        return true;
+      }
+    };
+    for (int n = 1; n < 4; n++) {
+      for (int start = 0; start < 4; start++) {
+        assertEquals(
+            ImmutableList.copyOf(insertionsIterator(
+                InsertionsTest.list(A, B, C), Z, start, n)),
+            ImmutableList.copyOf(insertionsIterator(
+                InsertionsTest.list(A, B, C), Z, start, n, all)));
+      }
+    }
+  }
+
+  /**
+   * Tests that all insertions with a rejected prefix are skipped.
+   */
+  @Test
+  public void prunedInsertionsIteratorSkip() {
+    final List<String> prefixes = newArrayList();
+    final InsertionOracle oracle = new InsertionOracle() {
+      @Override
+      public boolean isPromising(int[] positions, int depth) {
+        prefixes.add(Arrays.toString(Arrays.copyOf(positions, depth + 1)));
+        // first position 1 and second position 3 are rejected
+        return !(depth == 0 && positions[0] == 1
+          || depth == 1 && positions[1] == 3);
+      }
+    };
+    final Iterator<ImmutableList<String>> it = insertionsIterator(
+        InsertionsTest.list(A, B, C), Z, 0, 2, oracle);
+    // the iterator is lazy
+    assertTrue(prefixes.isEmpty());
+    assertEquals(asList(
+        InsertionsTest.list(Z, Z, A, B, C),
+        InsertionsTest.list(Z, A, Z, B, C),
+        InsertionsTest.list(Z, A, B, Z, C),
+        InsertionsTest.list(A, B, Z, Z, C)), ImmutableList.copyOf(it));
+    assertEquals(asList("[0]", "[0, 0]", "[0, 1]", "[0, 2]", "[0, 3]", "[1]",
+        "[2]", "[2, 2]", "[2, 3]", "[3]", "[3, 3]"), prefixes);
+
+    final InsertionOracle none = new InsertionOracle() {
+      @Override
+      public boolean isPromising(int[] positions, int depth) {
+        return false;
+      }
+    };
+    assertFalse(insertionsIterator(InsertionsTest.list(A, B), Z, 0, 2, none)
+        .hasNext());
+  }
+
+  /**
+   * Tests correct failure of the pruned iterator.
+   */
+  @Test
+  public void prunedInsertionsIteratorNextFail() {
+    final Iterator<ImmutableList<String>> it = insertionsIterator(
+        InsertionsTest.list(A), Z, 1, 1, new InsertionOracle() {
+          @Override
+          public boolean isPromising(int[] positions, int depth) {
+            return true;
+          }
+        });
+    assertEquals(InsertionsTest.list(A, Z), it.next());
+    boolean fail = false;
+    try {
+      it.next();
+    } catch (final NoSuchElementException e) {
+      fail = true;
+    }
+    assertTrue(fail);
+  }
+
+  /**
+   * Tests that unranking gives the insertions in the order of the cursor.
+   */
+  @Test
+  public void unrank() {
+    for (int n = 1; n < 4; n++) {
+      for (int size = 0; size < 5; size++) {
+        for (int start = 0; start <= size; start++) {
+          final InsertionIndexCursor cursor = new InsertionIndexCursor(n)
+              .reset(size, start);
+          final int[] positions = new int[n];
+          long rank = 0;
+          while (cursor.hasNext()) {
+            final int[] expected = cursor.next();
+            Insertions.unrank(rank++, size, start, positions);
+            assertTrue(Arrays.equals(expected, positions));
+          }
+          assertEquals(Insertions.multichoose(size + 1 - start, n), rank);
+        }
+      }
+    }
+  }
+
   /**
    * Test for several insertion combinations.
    */
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.github.rinde.opt.localsearch.InsertionsTest.list;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomAdaptor;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.github.rinde.opt.localsearch.SwapsTest.SortDirection;
+import com.github.rinde.opt.localsearch.SwapsTest.StringListEvaluator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+
+/**
+ * Test of {@link IntSwaps}.
+ * @author Rinde van Lon
+ */
+public class IntSwapsTest {
+
+  /**
+   * Tests that the breadth-first search finds the same schedule as
+   * {@link Swaps}.
+   */
+  @Test
+  public void bfsEquivalence() {
+    final RandomGenerator rng = new MersenneTwister(123);
+    for (int i = 0; i < 20; i++) {
+      final ImmutableList<ImmutableList<String>> schedule = randomSchedule(rng);
+      final ImmutableList<Integer> startIndices = randomStartIndices(schedule,
+        rng);
+      assertEquals(
+        Swaps.bfsOpt2(schedule, startIndices, SortDirection.ASCENDING,
+          new StringListEvaluator()),
+        IntSwaps.bfsOpt2(schedule, startIndices, SortDirection.ASCENDING,
+          new StringListEvaluator()));
+    }
+  }
+
+  /**
+   * Tests that the depth-first search finds the same schedule as {@link Swaps}
+   * when using the same random seed.
+   */
+  @Test
+  public void dfsEquivalence() {
+    final RandomGenerator rng = new MersenneTwister(456);
+    for (int i = 0; i < 20; i++) {
+      final ImmutableList<ImmutableList<String>> schedule = randomSchedule(rng);
+      final ImmutableList<Integer> startIndices = randomStartIndices(schedule,
+        rng);
+      final long seed = rng.nextLong();
+      assertEquals(
+        Swaps.dfsOpt2(schedule, startIndices, SortDirection.DESCENDING,
+          new StringListEvaluator(), new MersenneTwister(seed)),
+        IntSwaps.dfsOpt2(schedule, startIndices, SortDirection.DESCENDING,
+          new StringListEvaluator(), new MersenneTwister(seed)));
+    }
+  }
+
+  /**
+   * Tests the int based search directly.
+   */
+  @Test
+  public void intSchedule() {
+    final int[][] schedule = new int[][] {{3, 1, 1, 3 }, {0, 2 } };
+    final int[][] result = IntSwaps.bfsOpt2(schedule, new int[] {0, 0 },
+      null, new IntRouteEvaluator<Object>() {
+        @Override
+        public double computeCost(Object context, int routeIndex,
+            int[] newRoute, int length) {
+          // number of descents
+          double cost = 0;
+          for (int i = 1; i < length; i++) {
+            if (newRoute[i - 1] > newRoute[i]) {
+              cost++;
+            }
+          }
+          return cost;
+        }
+      });
+    assertArrayEquals(new int[] {1, 1, 3, 3 }, result[0]);
+    assertArrayEquals(new int[] {0, 2 }, result[1]);
+    // input is left untouched
+    assertArrayEquals(new int[] {3, 1, 1, 3 }, schedule[0]);
+  }
+
+  /**
+   * Tests that {@link Insertions#insert(int[], int, int[], int, int[])} is
+   * consistent with the list based variant.
+   */
+  @Test
+  public void insertEquivalence() {
+    final int[] route = new int[] {0, 1, 2, 3 };
+    final int[] dest = new int[6];
+    final Insertions.InsertionIndexCursor cursor =
+      new Insertions.InsertionIndexCursor(2);
+    cursor.reset(route.length, 1);
+    int count = 0;
+    while (cursor.hasNext()) {
+      final int[] positions = cursor.next();
+      final int length = Insertions.insert(route, route.length, positions, 9,
+        dest);
+      assertEquals(
+        Insertions.insert(list(0, 1, 2, 3), Ints.asList(positions), 9),
+        Ints.asList(dest).subList(0, length));
+      count++;
+    }
+    assertEquals(10, count);
+  }
+
+  static ImmutableList<ImmutableList<String>> randomSchedule(
+      RandomGenerator rng) {
+    final int rows = 1 + rng.nextInt(3);
+    final List<List<String>> routes = newArrayList();
+    for (int i = 0; i < rows; i++) {
+      routes.add(Lists.<String>newArrayList());
+    }
+    final int items = 3 + rng.nextInt(6);
+    for (int i = 0; i < items; i++) {
+      final String item = Character.toString((char) ('A' + i));
+      final List<String> route = routes.get(rng.nextInt(rows));
+      route.add(item);
+      if (rng.nextBoolean()) {
+        route.add(item);
+      }
+    }
+    final ImmutableList.Builder<ImmutableList<String>> builder =
+      ImmutableList.builder();
+    for (final List<String> route : routes) {
+      Collections.shuffle(route, new RandomAdaptor(rng));
+      builder.add(ImmutableList.copyOf(route));
+    }
+    return builder.build();
+  }
+
+  static ImmutableList<Integer> randomStartIndices(
+      ImmutableList<ImmutableList<String>> schedule, RandomGenerator rng) {
+    final ImmutableList.Builder<Integer> builder = ImmutableList.builder();
+    for (final ImmutableList<String> route : schedule) {
+      builder.add(route.isEmpty() ? 0 : rng.nextInt(Math.min(2,
+        route.size()) + 1));
+    }
+    return builder.build();
+  }
+}
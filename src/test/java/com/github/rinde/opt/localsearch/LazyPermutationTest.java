@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.junit.Test;
+
+/**
+ * Tests for {@link LazyPermutation}.
+ * @author Rinde van Lon
+ */
+public class LazyPermutationTest {
+
+  /**
+   * Tests that every element is generated exactly once and that the
+   * permutation only depends on the seed.
+   */
+  @Test
+  public void permutation() {
+    for (int n = 0; n < 50; n++) {
+      final LazyPermutation p1 = new LazyPermutation(n, new MersenneTwister(n));
+      final LazyPermutation p2 = new LazyPermutation(n, new MersenneTwister(n));
+      final int[] counts = new int[n];
+      for (int i = 0; i < n; i++) {
+        final int element = p1.next();
+        assertEquals(element, p2.next());
+        counts[element]++;
+      }
+      assertFalse(p1.hasNext());
+      final int[] ones = new int[n];
+      Arrays.fill(ones, 1);
+      assertEquals(Arrays.toString(ones), Arrays.toString(counts));
+    }
+  }
+
+  /**
+   * Tests that each element is equally likely to come first.
+   */
+  @Test
+  public void uniform() {
+    final MersenneTwister rng = new MersenneTwister(123);
+    final int[] counts = new int[4];
+    for (int i = 0; i < 40000; i++) {
+      counts[new LazyPermutation(4, rng).next()]++;
+    }
+    for (final int c : counts) {
+      assertEquals(10000, c, 500);
+    }
+  }
+
+  /**
+   * Tests that an exhausted permutation fails.
+   */
+  @Test(expected = NoSuchElementException.class)
+  public void nextFail() {
+    new LazyPermutation(0, new MersenneTwister(123)).next();
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.github.rinde.opt.localsearch.InsertionsTest.list;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.github.rinde.opt.localsearch.SwapsTest.SortDirection;
+import com.github.rinde.opt.localsearch.SwapsTest.StringListEvaluator;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Test of {@link RouteCostCache}.
+ * @author Rinde van Lon
+ */
+public class RouteCostCacheTest {
+
+  /**
+   * Tests lookups and statistics.
+   */
+  @Test
+  public void lookup() {
+    final RouteCostCache<Object, String> cache = RouteCostCache.create(10);
+    final Object context = new Object();
+    assertFalse(cache.getIfPresent(context, 0, list("A", "B")).isPresent());
+    cache.put(context, 0, list("A", "B"), 3d);
+    assertEquals(3d, cache.getIfPresent(context, 0, list("A", "B")).get(), 0d);
+
+    // different route index, route or context
+    assertFalse(cache.getIfPresent(context, 1, list("A", "B")).isPresent());
+    assertFalse(cache.getIfPresent(context, 0, list("B", "A")).isPresent());
+    assertFalse(cache.getIfPresent(new Object(), 0, list("A", "B"))
+        .isPresent());
+
+    assertEquals(1, cache.stats().hitCount());
+    assertEquals(4, cache.stats().missCount());
+    assertEquals(1, cache.size());
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+  }
+
+  /**
+   * Tests that a cache only holds the costs of a single context.
+   */
+  @Test
+  public void contextSwitch() {
+    final RouteCostCache<Object, String> cache = RouteCostCache.create(10);
+    final Object context1 = new Object();
+    final Object context2 = new Object();
+    cache.put(context1, 0, list("A"), 1d);
+    cache.put(context1, 0, list("B"), 2d);
+    assertEquals(2, cache.size());
+    cache.put(context2, 0, list("A"), 3d);
+    assertEquals(1, cache.size());
+    assertFalse(cache.getIfPresent(context1, 0, list("A")).isPresent());
+    assertEquals(3d, cache.getIfPresent(context2, 0, list("A")).get(), 0d);
+  }
+
+  /**
+   * Tests that the fingerprints that are derived from the fingerprints of a
+   * schedule equal the fingerprints of the resulting routes.
+   */
+  @Test
+  public void derivedFingerprints() {
+    final ImmutableList<String> route = list("A", "B", "C", "B", "D", "E");
+    final Fingerprints fps = Fingerprints.create(
+      ImmutableList.of(route, list("F", "G")));
+    assertEquals(Fingerprints.of(route),
+      fps.builder().slice(0, 0, 6).fingerprint());
+    assertEquals(Fingerprints.of(list("A", "E", "D", "B", "C", "B", "F")),
+      fps.builder().slice(0, 0, 1).reversed(0, 1, 6).slice(1, 0, 1)
+          .fingerprint());
+
+    final int[] positions = fps.positions(0, "B");
+    assertArrayEquals(new int[] {1, 3}, positions);
+    assertEquals(
+      Fingerprints.of(Swaps.inListSwap(route, list(0, 4), "B")),
+      fps.moved(0, positions, list(0, 4), "B"));
+    assertEquals(Fingerprints.of(list("A", "C", "D", "E")),
+      fps.moved(0, positions, ImmutableList.<Integer>of(), "B"));
+    assertEquals(Fingerprints.of(list("B", "F", "G", "B")),
+      fps.moved(1, new int[0], list(0, 2), "B"));
+    assertFalse(Fingerprints.of(route) == Fingerprints.of(route.reverse()));
+  }
+
+  /**
+   * Tests that the size of the cache is bounded.
+   */
+  @Test
+  public void eviction() {
+    final RouteCostCache<Object, Integer> cache = RouteCostCache.create(5);
+    final Object context = new Object();
+    for (int i = 0; i < 20; i++) {
+      cache.put(context, 0, list(i), i);
+    }
+    assertTrue(cache.size() <= 5);
+    assertEquals(20 - cache.size(), cache.stats().evictionCount());
+    // the most recent entry is still present
+    assertTrue(cache.getIfPresent(context, 0, list(19)).isPresent());
+  }
+
+  /**
+   * Tests that a small (shared) cache does not change the result of the search.
+   */
+  @Test
+  public void boundedCacheInSearch() {
+    final RandomGenerator rng = new MersenneTwister(789);
+    final RouteCostCache<SortDirection, String> cache = RouteCostCache
+        .create(3);
+    for (int i = 0; i < 10; i++) {
+      final ImmutableList<ImmutableList<String>> s = IntSwapsTest
+          .randomSchedule(rng);
+      final ImmutableList<Integer> startIndices = IntSwapsTest
+          .randomStartIndices(s, rng);
+      assertEquals(
+        Swaps.bfsOpt2(s, startIndices, SortDirection.ASCENDING,
+          new StringListEvaluator()),
+        Swaps.bfsOpt2(s, startIndices, SortDirection.ASCENDING,
+          new StringListEvaluator(), cache));
+    }
+    assertTrue(cache.size() <= 3);
+    assertTrue(cache.stats().evictionCount() > 0);
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2013-2015 Rinde van Lon, iMinds DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.github.rinde.opt.localsearch.InsertionsTest.list;
+import static com.google.common.collect.Maps.newHashMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.github.rinde.opt.localsearch.Segments.MoveCursor;
+import com.github.rinde.opt.localsearch.SwapsTest.DistanceEvaluator;
+import com.github.rinde.opt.localsearch.SwapsTest.SortDirection;
+import com.github.rinde.opt.localsearch.SwapsTest.StringListEvaluator;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Test of {@link Segments}.
+ * @author Rinde van Lon
+ */
+public class SegmentsTest {
+
+  /**
+   * A reversed route is sorted by a single reversal.
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void reversal() {
+    final ImmutableList<ImmutableList<String>> schedule = list(list("D", "C",
+      "B", "A"));
+    assertEquals(list(list("A", "B", "C", "D")),
+      Segments.bfs(schedule, list(0), SortDirection.ASCENDING,
+        new StringListEvaluator()));
+    // the first item can not be moved
+    assertEquals(list(list("A", "B", "C", "D", "E")),
+      Segments.bfs(list(list("A", "D", "C", "B", "E")), list(1), SortDirection.ASCENDING,
+        new StringListEvaluator()));
+  }
+
+  /**
+   * A segment is relocated within its route.
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void relocation() {
+    final ImmutableList<ImmutableList<String>> schedule = list(list("C", "D",
+      "E", "A", "B"));
+    final RouteCostCache<SortDirection, String> cache = RouteCostCache.create();
+    assertEquals(list(list("A", "B", "C", "D", "E")),
+      Segments.bfs(schedule, list(0), SortDirection.ASCENDING,
+        new StringListEvaluator(), 2, cache));
+    assertEquals(list(list("A", "B", "C", "D", "E")),
+      Segments.dfs(schedule, list(0), SortDirection.ASCENDING,
+        new StringListEvaluator(), new MersenneTwister(123), 1, cache));
+  }
+
+  /**
+   * A segment is only moved to another route if it contains all occurrences of
+   * its items.
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void relocationBetweenRoutes() {
+    // routes with a higher index are more expensive
+    assertEquals(list(list("A", "A", "C"), InsertionsTest.<String>list()),
+      Segments.bfs(list(list("C"), list("A", "A")), list(0, 0),
+        SortDirection.ASCENDING, new DistanceEvaluator()));
+    // items that occur once are never moved to another route
+    assertEquals(list(InsertionsTest.<String>list(), list("A", "B")),
+      Segments.bfs(list(InsertionsTest.<String>list(), list("B", "A")),
+        list(0, 0),
+        SortDirection.ASCENDING, new DistanceEvaluator()));
+  }
+
+  /**
+   * Tests that the searches never make a schedule worse and that they respect
+   * the start indices and the occurrences of the items.
+   */
+  @Test
+  public void randomSchedules() {
+    final RandomGenerator rng = new MersenneTwister(789);
+    final DistanceEvaluator evaluator = new DistanceEvaluator();
+    for (int i = 0; i < 30; i++) {
+      final ImmutableList<ImmutableList<String>> schedule = IntSwapsTest
+        .randomSchedule(rng);
+      final ImmutableList<Integer> startIndices = IntSwapsTest
+        .randomStartIndices(schedule, rng);
+      final long seed = rng.nextLong();
+      final ImmutableList<ImmutableList<String>> dfs = Segments.dfs(schedule,
+        startIndices, SortDirection.ASCENDING, evaluator,
+        new MersenneTwister(seed));
+      assertEquals(dfs, Segments.dfs(schedule, startIndices,
+        SortDirection.ASCENDING, evaluator, new MersenneTwister(seed)));
+
+      for (final ImmutableList<ImmutableList<String>> result : list(dfs,
+        Segments.bfs(schedule, startIndices, SortDirection.ASCENDING,
+          evaluator))) {
+        assertTrue(cost(result, evaluator) <= cost(schedule, evaluator));
+        assertConsistent(schedule, startIndices, result);
+      }
+
+      // every single move preserves the occurrences of the items
+      final Schedule<SortDirection, String> s = Schedule.create(
+        SortDirection.ASCENDING, schedule, startIndices, evaluator);
+      final MoveCursor<SortDirection, String> moves = MoveCursor.create(s, 3);
+      final RouteCostCache<SortDirection, String> cache =
+        RouteCostCache.create();
+      for (int j = 0; j < moves.size(); j++) {
+        if (moves.moveTo(j)) {
+          final Swaps.SwapEvaluation<String> eval = moves.evaluate(cache);
+          final Schedule<SortDirection, String> applied = Swaps.apply(s, eval);
+          assertConsistent(schedule, startIndices, applied.routes);
+          assertEquals(cost(applied.routes, evaluator) - s.objectiveValue,
+            eval.diff, 0.0001);
+        }
+      }
+    }
+  }
+
+  /**
+   * The maximum segment length must be positive.
+   */
+  @SuppressWarnings("unchecked")
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidMaxSegmentLength() {
+    Segments.bfs(list(list("A")), list(0), SortDirection.ASCENDING,
+      new StringListEvaluator(), 0, RouteCostCache
+        .<SortDirection, String>create());
+  }
+
+  static double cost(ImmutableList<ImmutableList<String>> schedule,
+      RouteEvaluator<SortDirection, String> evaluator) {
+    double cost = 0;
+    for (int i = 0; i < schedule.size(); i++) {
+      cost += evaluator.computeCost(SortDirection.ASCENDING, i,
+        schedule.get(i));
+    }
+    return cost;
+  }
+
+  static void assertConsistent(ImmutableList<ImmutableList<String>> original,
+      ImmutableList<Integer> startIndices,
+      ImmutableList<ImmutableList<String>> result) {
+    assertEquals(original.size(), result.size());
+    final Map<String, Integer> originalRows = newHashMap();
+    final Map<String, Integer> originalCounts = newHashMap();
+    final Map<String, Integer> counts = newHashMap();
+    for (int i = 0; i < original.size(); i++) {
+      assertEquals(original.get(i).subList(0, startIndices.get(i)),
+        result.get(i).subList(0, startIndices.get(i)));
+      for (final String item : original.get(i)) {
+        originalRows.put(item, i);
+        increment(originalCounts, item);
+      }
+      for (final String item : result.get(i)) {
+        increment(counts, item);
+      }
+    }
+    assertEquals(originalCounts, counts);
+    for (int i = 0; i < result.size(); i++) {
+      for (final String item : result.get(i)) {
+        if (originalCounts.get(item) == 1) {
+          assertEquals(originalRows.get(item).intValue(), i);
+        }
+      }
+    }
+  }
+
+  static void increment(Map<String, Integer> counts, String item) {
+    final Integer count = counts.get(item);
+    counts.put(item, count == null ? 1 : count + 1);
+  }
+}
@@ -29,6 +29,10 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -86,6 +90,61 @@ public class SwapsTest {
     }
   }
 
+  /**
+   * Tests that a split cursor and random access give the same swaps as the
+   * complete cursor, and that the cursor reuses its swap object.
+   */
+  @Test
+  public void swapCursorSplit() {
+    final RandomGenerator rng = new MersenneTwister(123);
+    for (int i = 0; i < 20; i++) {
+      final ImmutableList<ImmutableList<String>> routes = IntSwapsTest
+          .randomSchedule(rng);
+      final Schedule<SortDirection, String> s = Schedule.create(
+        SortDirection.ASCENDING, routes,
+        IntSwapsTest.randomStartIndices(routes, rng),
+        new StringListEvaluator());
+      final List<String> expected = newArrayList();
+      final Iterator<Swap<String>> it = Swaps.swapIterator(s);
+      while (it.hasNext()) {
+        expected.add(it.next().toString());
+      }
+      final Swaps.SwapCursor<SortDirection, String> cursor =
+        Swaps.SwapCursor.create(s, false);
+      final Swap<String> swap = cursor.swap;
+      final List<String> actual = newArrayList();
+      while (cursor.advance()) {
+        assertTrue(swap == cursor.swap);
+        actual.add(swap.toString());
+      }
+      assertEquals(expected, actual);
+
+      // random access gives the same swaps
+      final Swaps.SwapCursor<SortDirection, String> random =
+        Swaps.SwapCursor.create(s, false);
+      final List<String> byIndex = newArrayList();
+      for (int j = 0; j < random.size(); j++) {
+        if (random.moveTo(j)) {
+          byIndex.add(random.swap.toString());
+        }
+      }
+      assertEquals(expected, byIndex);
+
+      for (int n = 1; n < 6; n++) {
+        final List<String> split = newArrayList();
+        final List<Swaps.SwapCursor<SortDirection, String>> parts =
+          Swaps.SwapCursor.create(s, false).split(n);
+        assertTrue(parts.size() <= n);
+        for (final Swaps.SwapCursor<SortDirection, String> part : parts) {
+          while (part.advance()) {
+            split.add(part.swap.toString());
+          }
+        }
+        assertEquals(expected, split);
+      }
+    }
+  }
+
   /**
    * Evaluator providing an objective function for sorting strings in ascending
    * or descending order.
@@ -343,6 +402,93 @@ public class SwapsTest {
     assertEquals(InsertionsTest.list(), removeAll(newArrayList(), A));
   }
 
+  /**
+   * Tests that the parallel breadth-first search finds the same schedule as the
+   * sequential search.
+   */
+  @Test
+  public void parallelBfsOpt2() {
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    final RandomGenerator rng = new MersenneTwister(123);
+    // cost depends on the route index
+    final RouteEvaluator<SortDirection, String> evaluator =
+      new RouteEvaluator<SortDirection, String>() {
+        final StringListEvaluator delegate = new StringListEvaluator();
+
+        @Override
+        public double computeCost(SortDirection context, int routeIndex,
+            ImmutableList<String> newRoute) {
+          return delegate.computeCost(context, routeIndex, newRoute)
+              + routeIndex * newRoute.size() + 1d / (1 + routeIndex);
+        }
+      };
+    for (int i = 0; i < 20; i++) {
+      final ImmutableList<ImmutableList<String>> s = IntSwapsTest
+          .randomSchedule(rng);
+      final ImmutableList<Integer> startIndices = IntSwapsTest
+          .randomStartIndices(s, rng);
+      assertEquals(
+        Swaps.bfsOpt2(s, startIndices, SortDirection.ASCENDING, evaluator),
+        Swaps.bfsOpt2(s, startIndices, SortDirection.ASCENDING, evaluator,
+          pool));
+    }
+    pool.shutdown();
+  }
+
+  /**
+   * Tests that skipping the swaps that can not improve the schedule does not
+   * change the result of the breadth-first searches.
+   */
+  @Test
+  public void monotoneBfsOpt2() {
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    final RandomGenerator rng = new MersenneTwister(123);
+    final RouteEvaluator<SortDirection, String> evaluator =
+      new DistanceEvaluator();
+    final RouteEvaluator<SortDirection, String> monotoneEvaluator =
+      new MonotoneDistanceEvaluator();
+    for (int i = 0; i < 50; i++) {
+      final ImmutableList<ImmutableList<String>> s = IntSwapsTest
+          .randomSchedule(rng);
+      final ImmutableList<Integer> startIndices = IntSwapsTest
+          .randomStartIndices(s, rng);
+      final ImmutableList<ImmutableList<String>> expected = Swaps.bfsOpt2(s,
+        startIndices, SortDirection.ASCENDING, evaluator);
+      assertEquals(expected, Swaps.bfsOpt2(s, startIndices,
+        SortDirection.ASCENDING, monotoneEvaluator));
+      assertEquals(expected, Swaps.bfsOpt2(s, startIndices,
+        SortDirection.ASCENDING, monotoneEvaluator, pool));
+    }
+    pool.shutdown();
+  }
+
+  /**
+   * Items are locations on a line, the cost is the travel distance from and
+   * to the origin plus the lateness at every item. The cost never decreases
+   * when an item is inserted.
+   */
+  static class DistanceEvaluator implements
+      RouteEvaluator<SortDirection, String> {
+    @Override
+    public double computeCost(SortDirection context, int routeIndex,
+        ImmutableList<String> newRoute) {
+      int location = 0;
+      double time = 0;
+      double lateness = 0;
+      for (final String item : newRoute) {
+        final int next = item.charAt(0) - 'A' + 1;
+        time += Math.abs(next - location);
+        lateness += Math.max(0, time - 2 * next);
+        location = next;
+      }
+      time += location;
+      return (1 + routeIndex) * time + lateness;
+    }
+  }
+
+  static class MonotoneDistanceEvaluator extends DistanceEvaluator implements
+      MonotoneRouteEvaluator<SortDirection, String> {}
+
   /**
    * Test replace with valid inputs.
    */